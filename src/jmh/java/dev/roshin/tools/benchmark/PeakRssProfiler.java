@@ -0,0 +1,54 @@
+package dev.roshin.tools.benchmark;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.profile.InternalProfiler;
+import org.openjdk.jmh.results.AggregationPolicy;
+import org.openjdk.jmh.results.IterationResult;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.ScalarResult;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Reports the peak resident set size of the benchmark JVM, read from {@code /proc/self/status}. The peak covers the
+ * whole fork up to the end of each iteration, so run with forks to get one value per trial. Reports nothing on systems
+ * without {@code /proc}.
+ * <p>
+ * Enable with {@code -prof dev.roshin.tools.benchmark.PeakRssProfiler}.
+ */
+public class PeakRssProfiler implements InternalProfiler {
+
+    private static final Path STATUS = Paths.get("/proc/self/status");
+
+    @Override
+    public String getDescription() {
+        return "Peak resident set size of the JVM (Linux only)";
+    }
+
+    @Override
+    public void beforeIteration(BenchmarkParams benchmarkParams, IterationParams iterationParams) {
+    }
+
+    @Override
+    public Collection<? extends Result> afterIteration(BenchmarkParams benchmarkParams,
+                                                       IterationParams iterationParams, IterationResult result) {
+        try {
+            for (String line : Files.readAllLines(STATUS)) {
+                // For example "VmHWM:    123456 kB"
+                if (line.startsWith("VmHWM:")) {
+                    double megabytes = Long.parseLong(line.replaceAll("\\D", "")) / 1024.0;
+                    return List.of(new ScalarResult("rss.peak", megabytes, "MB", AggregationPolicy.MAX));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // Not on Linux, or the format is not the expected one
+        }
+        return List.of();
+    }
+}
@@ -0,0 +1,165 @@
+package dev.roshin.tools.benchmark;
+
+import com.google.common.base.Preconditions;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+
+/**
+ * Generates reproducible JAR files, spec files and user library files for the benchmarks.
+ * <p>
+ * Content is derived from a fixed seed, so two runs with the same parameters produce byte for byte the same corpus.
+ * Every JAR file has {@code entriesPerJar} class entries of {@code entrySize} random bytes, followed by a
+ * {@code pom.properties} entry, which is where the Maven archiver puts it.
+ */
+public class SyntheticCorpus {
+
+    private static final long SEED = 0x5EED;
+
+    // Private constructor to prevent instantiation
+    private SyntheticCorpus() {
+    }
+
+    /**
+     * @param index The index of the artifact in the corpus.
+     * @return The group ID of the artifact, shared by groups of ten artifacts as in real dependency sets.
+     */
+    public static String groupId(int index) {
+        return "com.example.group" + (index / 10);
+    }
+
+    /**
+     * @param index The index of the artifact in the corpus.
+     * @return The artifact ID of the artifact.
+     */
+    public static String artifactId(int index) {
+        return "artifact-" + index;
+    }
+
+    /**
+     * @param index The index of the artifact in the corpus.
+     * @return The version of the artifact.
+     */
+    public static String version(int index) {
+        return "1." + (index % 7) + "." + (index % 3);
+    }
+
+    /**
+     * Writes {@code jarCount} JAR files named {@code artifact-<index>.jar} to the folder.
+     *
+     * @param folder        The folder to write to, which must exist.
+     * @param jarCount      The number of JAR files.
+     * @param entriesPerJar The number of class entries per JAR file.
+     * @param entrySize     The size in bytes of each class entry.
+     * @param sources       Whether to write source JAR files named {@code artifact-<index>-sources.jar} instead.
+     * @return The JAR files, in index order.
+     * @throws IOException If a JAR file could not be written.
+     */
+    public static List<Path> createJars(Path folder, int jarCount, int entriesPerJar, int entrySize, boolean sources)
+            throws IOException {
+        Preconditions.checkArgument(jarCount >= 0 && entriesPerJar >= 0 && entrySize >= 0,
+                "Corpus sizes cannot be negative.");
+        Random random = new Random(SEED);
+        byte[] content = new byte[entrySize];
+        List<Path> jars = new ArrayList<>(jarCount);
+        for (int i = 0; i < jarCount; i++) {
+            Path jar = folder.resolve(artifactId(i) + (sources ? "-sources.jar" : ".jar"));
+            String packagePath = groupId(i).replace('.', '/') + "/" + artifactId(i).replace('-', '_');
+            try (JarOutputStream jos = new JarOutputStream(Files.newOutputStream(jar))) {
+                for (int entry = 0; entry < entriesPerJar; entry++) {
+                    jos.putNextEntry(new JarEntry(packagePath + "/Class" + entry + (sources ? ".java" : ".class")));
+                    random.nextBytes(content);
+                    jos.write(content);
+                    jos.closeEntry();
+                }
+                jos.putNextEntry(new JarEntry("META-INF/maven/" + groupId(i) + "/" + artifactId(i) + "/pom.properties"));
+                Properties props = new Properties();
+                props.setProperty("groupId", groupId(i));
+                props.setProperty("artifactId", artifactId(i));
+                props.setProperty("version", version(i));
+                props.store(jos, null);
+                jos.closeEntry();
+            }
+            jars.add(jar);
+        }
+        return jars;
+    }
+
+    /**
+     * Writes a spec file with one {@code groupId:artifactId:version} line per artifact. Every fifth entry has no
+     * version, as if the latest version was requested.
+     *
+     * @param specFile      The spec file to write.
+     * @param artifactCount The number of artifacts.
+     * @throws IOException If the spec file could not be written.
+     */
+    public static void createSpecFile(Path specFile, int artifactCount) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(specFile)) {
+            for (int i = 0; i < artifactCount; i++) {
+                writer.write(groupId(i) + ":" + artifactId(i));
+                if (i % 5 != 0) {
+                    writer.write(":" + version(i));
+                }
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * Writes a user libraries file with {@code libraryCount} libraries of {@code archivesPerLibrary} archives each.
+     *
+     * @param userLibrariesFile  The user libraries file to write.
+     * @param prefix             The prefix of the library names, to tell files apart.
+     * @param libraryCount       The number of libraries.
+     * @param archivesPerLibrary The number of archives per library.
+     * @throws IOException If the user libraries file could not be written.
+     */
+    public static void createUserLibrariesFile(Path userLibrariesFile, String prefix, int libraryCount,
+                                               int archivesPerLibrary) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(userLibrariesFile)) {
+            writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<eclipse-userlibraries version=\"2\">\n");
+            for (int library = 0; library < libraryCount; library++) {
+                writer.write("  <library name=\"" + prefix + "-" + library + "\" systemlibrary=\"false\">\n");
+                for (int archive = 0; archive < archivesPerLibrary; archive++) {
+                    String path = "C:/jars/" + prefix + "/" + library + "/" + artifactId(archive);
+                    writer.write("    <archive path=\"" + path + ".jar\" source=\"" + path + "-sources.jar\" />\n");
+                }
+                writer.write("  </library>\n");
+            }
+            writer.write("</eclipse-userlibraries>\n");
+        }
+    }
+
+    /**
+     * Deletes the folder and everything in it.
+     *
+     * @param folder The folder to delete.
+     */
+    public static void delete(Path folder) {
+        if (folder == null || !Files.exists(folder)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(folder)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package dev.roshin.tools.download_jars;
+
+import dev.roshin.tools.benchmark.SyntheticCorpus;
+import dev.roshin.tools.download_jars.domain.Artifact;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks parsing spec files.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ArtifactDownloaderBenchmark {
+
+    @Param({"100", "10000"})
+    public int artifactCount;
+
+    private Path corpus;
+    private Path specFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        corpus = Files.createTempDirectory("artifact-downloader-benchmark");
+        specFile = corpus.resolve("spec.txt");
+        SyntheticCorpus.createSpecFile(specFile, artifactCount);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        SyntheticCorpus.delete(corpus);
+    }
+
+    @Benchmark
+    public List<Artifact> parseSpecFile() {
+        return ArtifactDownloader.parseSpecFile(specFile);
+    }
+}
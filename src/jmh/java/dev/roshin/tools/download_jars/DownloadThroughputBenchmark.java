@@ -0,0 +1,105 @@
+package dev.roshin.tools.download_jars;
+
+import dev.roshin.tools.benchmark.SyntheticCorpus;
+import dev.roshin.tools.download_jars.domain.Artifact;
+import dev.roshin.tools.download_jars.domain.ArtifactCatalog;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks downloading a spec file of artifacts with their sources from a {@link LocalMavenRepository} in the same
+ * JVM, so the numbers do not depend on a network.
+ * <p>
+ * Each invocation does what {@code ArtifactDownloader.downloadArtifacts} does for a fresh folder, parsing the spec
+ * and downloading every artifact, but on an executor of {@code concurrency} threads instead of
+ * {@link ArtifactDownloader#DOWNLOAD_PARALLELISM}. Concurrency above the HTTP connection pool size only adds waiting
+ * threads. The score is spec files downloaded per second, so the wall time of one download is its inverse, and the aux
+ * counters report the artifacts and bytes downloaded per second. The repository also runs in the benchmark JVM, so
+ * allocation rates from {@code -prof gc} and the peak RSS from {@code PeakRssProfiler} include the serving side.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1, time = 5)
+@Measurement(iterations = 3, time = 5)
+public class DownloadThroughputBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int artifactCount;
+
+    @Param({"1", "8"})
+    public int concurrency;
+
+    @Param({"16384", "262144"})
+    public int jarSize;
+
+    @Param({"0", "20"})
+    public int latencyMillis;
+
+    private Path corpus;
+    private Path specFile;
+    private Path jarsPath;
+    private Path sourcesPath;
+    private LocalMavenRepository repository;
+    private ExecutorService executor;
+
+    /**
+     * Artifacts and bytes downloaded, reported per second.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Transfer {
+        public long artifacts;
+        public long bytes;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        corpus = Files.createTempDirectory("download-throughput-benchmark");
+        repository = LocalMavenRepository.start();
+        repository.setLatency(Duration.ofMillis(latencyMillis));
+        specFile = Files.write(corpus.resolve("spec.txt"), repository.addSyntheticArtifacts(artifactCount, jarSize));
+        executor = Executors.newFixedThreadPool(concurrency);
+    }
+
+    @Setup(Level.Invocation)
+    public void cleanFolders() throws IOException {
+        SyntheticCorpus.delete(corpus.resolve("jars"));
+        SyntheticCorpus.delete(corpus.resolve("sources"));
+        jarsPath = Files.createDirectories(corpus.resolve("jars"));
+        sourcesPath = Files.createDirectories(corpus.resolve("sources"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        executor.shutdownNow();
+        repository.close();
+        SyntheticCorpus.delete(corpus);
+    }
+
+    @Benchmark
+    public long downloadArtifacts(Transfer transfer) {
+        long servedBefore = repository.bytesServed();
+        List<Artifact> artifacts = ArtifactDownloader.parseSpecFile(specFile);
+        List<CompletableFuture<Optional<Artifact>>> downloads = ArtifactDownloader.startDownloads(artifacts,
+                new ArtifactCatalog(), false, jarsPath, sourcesPath, null, false, false, executor, null,
+                DownloadRun.unlimited());
+        long downloaded = downloads.stream().map(CompletableFuture::join).filter(Optional::isPresent).count();
+        if (downloaded != artifactCount) {
+            throw new IllegalStateException("Downloaded " + downloaded + " of " + artifactCount + " artifacts");
+        }
+        transfer.artifacts += downloaded;
+        transfer.bytes += repository.bytesServed() - servedBefore;
+        return downloaded;
+    }
+}
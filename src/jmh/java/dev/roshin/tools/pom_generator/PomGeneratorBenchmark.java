@@ -0,0 +1,61 @@
+package dev.roshin.tools.pom_generator;
+
+import dev.roshin.tools.benchmark.SyntheticCorpus;
+import dev.roshin.tools.download_jars.domain.Artifact;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarFile;
+
+/**
+ * Benchmarks scanning a folder of JAR files for their POM properties.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PomGeneratorBenchmark {
+
+    @Param({"100", "1000"})
+    public int jarCount;
+
+    @Param({"50", "500"})
+    public int entriesPerJar;
+
+    @Param({"2048"})
+    public int entrySize;
+
+    private Path corpus;
+    private File[] files;
+    private JarFile jar;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        corpus = Files.createTempDirectory("pom-generator-benchmark");
+        List<Path> jars = SyntheticCorpus.createJars(corpus, jarCount, entriesPerJar, entrySize, false);
+        files = jars.stream().map(Path::toFile).toArray(File[]::new);
+        jar = new JarFile(files[files.length / 2]);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        jar.close();
+        SyntheticCorpus.delete(corpus);
+    }
+
+    @Benchmark
+    public List<Artifact> createArtifactList() {
+        return PomGenerator.createArtifactList(files, true);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Properties extractPomProperties() {
+        return PomGenerator.extractPomProperties(jar);
+    }
+}
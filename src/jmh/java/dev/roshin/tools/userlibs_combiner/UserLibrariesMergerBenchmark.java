@@ -0,0 +1,55 @@
+package dev.roshin.tools.userlibs_combiner;
+
+import dev.roshin.tools.benchmark.SyntheticCorpus;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks merging several user library files into one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class UserLibrariesMergerBenchmark {
+
+    @Param({"2", "40"})
+    public int inputCount;
+
+    @Param({"5"})
+    public int librariesPerInput;
+
+    @Param({"200"})
+    public int archivesPerLibrary;
+
+    private Path corpus;
+    private Path outputXml;
+    private List<Path> inputXmls;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        corpus = Files.createTempDirectory("userlibs-merger-benchmark");
+        outputXml = corpus.resolve("combined.userlibraries");
+        inputXmls = new ArrayList<>(inputCount);
+        for (int i = 0; i < inputCount; i++) {
+            Path inputXml = corpus.resolve("input-" + i + ".userlibraries");
+            SyntheticCorpus.createUserLibrariesFile(inputXml, "input-" + i, librariesPerInput, archivesPerLibrary);
+            inputXmls.add(inputXml);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        SyntheticCorpus.delete(corpus);
+    }
+
+    @Benchmark
+    public void mergeUserLibraries() throws Exception {
+        UserLibrariesMerger.mergeUserLibraries(outputXml, inputXmls);
+    }
+}
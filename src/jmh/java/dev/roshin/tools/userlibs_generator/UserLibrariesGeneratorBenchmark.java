@@ -0,0 +1,78 @@
+package dev.roshin.tools.userlibs_generator;
+
+import dev.roshin.tools.benchmark.SyntheticCorpus;
+import dev.roshin.tools.download_jars.domain.Artifact;
+import dev.roshin.tools.download_jars.domain.ArtifactPair;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks writing a user library file from already scanned artifacts.
+ * <p>
+ * {@code generateUserLibraries} writes a new file on every invocation, as the benchmark did before unchanged files were
+ * skipped, so it stays comparable with earlier results. {@code generateUserLibrariesUnchanged} measures regenerating a
+ * file whose archives did not change, which only reads and compares the existing file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class UserLibrariesGeneratorBenchmark {
+
+    @Param({"100", "1000"})
+    public int artifactCount;
+
+    private Path corpus;
+    private Path outputXml;
+    private List<ArtifactPair> artifactPairs;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        corpus = Files.createTempDirectory("userlibs-generator-benchmark");
+        outputXml = corpus.resolve("output.userlibraries");
+        artifactPairs = new ArrayList<>(artifactCount);
+        for (int i = 0; i < artifactCount; i++) {
+            Path jar = corpus.resolve("jars").resolve(SyntheticCorpus.artifactId(i) + ".jar");
+            Path sourceJar = corpus.resolve("sources").resolve(SyntheticCorpus.artifactId(i) + "-sources.jar");
+            Artifact artifact = new Artifact(SyntheticCorpus.groupId(i), SyntheticCorpus.artifactId(i),
+                    Optional.of(SyntheticCorpus.version(i)), Optional.of(jar));
+            Artifact sourceArtifact = new Artifact(SyntheticCorpus.groupId(i), SyntheticCorpus.artifactId(i),
+                    Optional.of(SyntheticCorpus.version(i)), Optional.of(sourceJar));
+            artifactPairs.add(new ArtifactPair(artifact, Optional.of(sourceArtifact)));
+        }
+        // The file the unchanged case compares against
+        UserLibrariesGenerator.generateUserLibraries(artifactPairs, "benchmark-library", outputXml, null);
+    }
+
+    /**
+     * Removes the output before each invocation, so every invocation writes the file.
+     */
+    @State(Scope.Thread)
+    public static class NoOutput {
+        @Setup(Level.Invocation)
+        public void deleteOutput(UserLibrariesGeneratorBenchmark benchmark) throws IOException {
+            Files.deleteIfExists(benchmark.outputXml);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        SyntheticCorpus.delete(corpus);
+    }
+
+    @Benchmark
+    public void generateUserLibraries(NoOutput noOutput) {
+        UserLibrariesGenerator.generateUserLibraries(artifactPairs, "benchmark-library", outputXml, null);
+    }
+
+    @Benchmark
+    public void generateUserLibrariesUnchanged() {
+        UserLibrariesGenerator.generateUserLibraries(artifactPairs, "benchmark-library", outputXml, null);
+    }
+}
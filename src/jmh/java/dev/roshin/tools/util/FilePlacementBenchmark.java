@@ -0,0 +1,56 @@
+package dev.roshin.tools.util;
+
+import dev.roshin.tools.benchmark.SyntheticCorpus;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks placing a folder of JAR files, as from a local repository, with each placement strategy. The target folder
+ * is next to the source folder, so every strategy works. Each invocation replaces the files placed by the previous one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FilePlacementBenchmark {
+
+    @Param({"1000"})
+    public int jarCount;
+
+    @Param({"10", "100"})
+    public int entriesPerJar;
+
+    @Param({"2048"})
+    public int entrySize;
+
+    @Param({"HARD_LINK", "TRANSFER", "COPY"})
+    public FilePlacement.Strategy strategy;
+
+    private Path corpus;
+    private Path target;
+    private List<Path> jars;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        corpus = Files.createTempDirectory("file-placement-benchmark");
+        jars = SyntheticCorpus.createJars(Files.createDirectory(corpus.resolve("source")), jarCount, entriesPerJar,
+                entrySize, false);
+        target = Files.createDirectory(corpus.resolve("target"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        SyntheticCorpus.delete(corpus);
+    }
+
+    @Benchmark
+    public void place() throws IOException {
+        for (Path jar : jars) {
+            FilePlacement.place(jar, target.resolve(jar.getFileName()), strategy);
+        }
+    }
+}
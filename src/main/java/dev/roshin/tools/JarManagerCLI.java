@@ -3,25 +3,41 @@ package dev.roshin.tools;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
 import com.google.common.base.Verify;
+import dev.roshin.tools.batch.BatchRunner;
+import dev.roshin.tools.batch.BatchStep;
 import dev.roshin.tools.config.Config;
+import dev.roshin.tools.conflict_checker.ClassConflictDetector;
+import dev.roshin.tools.daemon.DaemonClient;
+import dev.roshin.tools.daemon.JarManagerDaemon;
+import dev.roshin.tools.dedupe_jars.JarDeduplicator;
 import dev.roshin.tools.download_jars.ArtifactDownloader;
+import dev.roshin.tools.download_jars.LockFile;
 import dev.roshin.tools.pom_generator.PomGenerator;
 import dev.roshin.tools.userlibs_combiner.UserLibrariesMerger;
 import dev.roshin.tools.userlibs_generator.UserLibrariesGenerator;
 import dev.roshin.tools.util.AnsiLogger;
 import dev.roshin.tools.util.CommonUtils;
+import dev.roshin.tools.util.JarDiscovery;
+import dev.roshin.tools.verify_jars.JarVerifier;
 import org.fusesource.jansi.AnsiConsole;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import picocli.CommandLine;
 import picocli.CommandLine.Command;
+import picocli.CommandLine.Mixin;
 import picocli.CommandLine.Option;
 import picocli.CommandLine.Parameters;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.OptionalInt;
+import java.util.Set;
 import java.util.concurrent.Callable;
 
 @Command(name = "jar-manager", mixinStandardHelpOptions = true,
@@ -30,7 +46,12 @@ import java.util.concurrent.Callable;
                 JarManagerCLI.GeneratePom.class,
                 JarManagerCLI.DownloadJars.class,
                 JarManagerCLI.GenerateUserLibs.class,
-                JarManagerCLI.CombineUserLibs.class
+                JarManagerCLI.CombineUserLibs.class,
+                JarManagerCLI.CheckConflicts.class,
+                JarManagerCLI.VerifyJars.class,
+                JarManagerCLI.DedupeJars.class,
+                JarManagerCLI.Daemon.class,
+                JarManagerCLI.Batch.class
         })
 public class JarManagerCLI implements Callable<Integer> {
 
@@ -48,11 +69,18 @@ public class JarManagerCLI implements Callable<Integer> {
         @Option(names = {"-c", "--config"}, description = "Path to the configuration file.")
         protected String configPath;
 
-        protected Logger logger;
+        private Logger logger;
 
-        protected BaseCommand() {
-            logger = LoggerFactory.getLogger(getClass());
-            CommonUtils.printLogLocation();
+        /**
+         * Picocli creates every subcommand up front, so logging is only configured once the running command logs.
+         *
+         * @return The logger of the command.
+         */
+        protected Logger logger() {
+            if (logger == null) {
+                logger = LoggerFactory.getLogger(getClass());
+            }
+            return logger;
         }
 
         protected void loadConfig() {
@@ -75,10 +103,49 @@ public class JarManagerCLI implements Callable<Integer> {
             // Load configuration from the external file, overriding defaults
             Config.getInstance().loadExternalConfig(configFilePath);
         }
+
+        /**
+         * @param paths The path arguments of a command, some of which may not be set.
+         * @return The paths that are set.
+         */
+        protected static Set<Path> paths(String... paths) {
+            Set<Path> set = new LinkedHashSet<>();
+            for (String path : paths) {
+                if (!Strings.isNullOrEmpty(path)) {
+                    set.add(Paths.get(path));
+                }
+            }
+            return set;
+        }
+    }
+
+    /**
+     * Options controlling how folders of JAR files are walked, shared by the commands that read such folders.
+     */
+    static class DiscoveryOptions {
+        @Option(names = {"--recursive"}, description = "Also look for JAR files in sub folders.")
+        private boolean recursive;
+
+        @Option(names = {"--max-depth"}, description = "Maximum folder depth to look for JAR files in, where 1 is " +
+                "the folder itself. Implies --recursive.")
+        private Integer maxDepth;
+
+        @Option(names = {"--include"}, description = "Glob of the JAR files to use, matched against the path " +
+                "relative to the folder and the file name. Can be repeated.")
+        private List<String> includes;
+
+        @Option(names = {"--exclude"}, description = "Glob of the JAR files and folders to skip, matched against the " +
+                "path relative to the folder and the file name. Can be repeated.")
+        private List<String> excludes;
+
+        JarDiscovery.Options toOptions() {
+            int depth = maxDepth != null ? maxDepth : recursive ? Integer.MAX_VALUE : 1;
+            return new JarDiscovery.Options(depth, includes, excludes);
+        }
     }
 
     @Command(name = "generate-pom", description = "Generate POM XML from JARs.")
-    static class GeneratePom extends BaseCommand {
+    static class GeneratePom extends BaseCommand implements BatchStep {
         @Option(names = {"--folder-path"}, description = "Path to the folder containing .jar files.", required = true)
         private String folderPath;
 
@@ -95,6 +162,13 @@ public class JarManagerCLI implements Callable<Integer> {
                   in an email""")
         private boolean additionalFileEmailFriendlyFormat;
 
+        @Option(names = {"--sorted"}, description = "Sort entries by groupId, artifactId and version so the output is " +
+                "stable across runs and can be diffed.")
+        private boolean sorted;
+
+        @Mixin
+        private DiscoveryOptions discoveryOptions;
+
         @Override
         public Integer call() {
             AnsiLogger.info("Generating POM XML for JARs in: {}", folderPath);
@@ -103,19 +177,36 @@ public class JarManagerCLI implements Callable<Integer> {
             Preconditions.checkArgument(!Strings.isNullOrEmpty(outputPath), "Output path cannot be null or empty.");
             try {
                 // Call the POM generator utility
-                PomGenerator.generatePomEntries(Paths.get(folderPath), Paths.get(outputPath), additionalInfo, additionalFileEmailFriendlyFormat);
+                PomGenerator.generatePomEntries(Paths.get(folderPath), Paths.get(outputPath), additionalInfo,
+                        additionalFileEmailFriendlyFormat, sorted, discoveryOptions.toOptions());
             } catch (Exception e) {
                 AnsiLogger.error("Failed to generate POM XML: {}", e.getMessage());
-                logger.error("Failed to generate POM XML", e);
+                logger().error("Failed to generate POM XML", e);
                 return 1;
             }
 
             return 0;
         }
+
+        @Override
+        public Set<Path> inputs() {
+            return paths(folderPath);
+        }
+
+        @Override
+        public Set<Path> outputs() {
+            Set<Path> outputs = paths(outputPath);
+            if (additionalInfo && !Strings.isNullOrEmpty(outputPath)) {
+                // Named the way PomGenerator names it, replacing the extension of the output file
+                Path output = Paths.get(outputPath);
+                outputs.add(output.resolveSibling(CommonUtils.getFileNameWithoutExtension(output) + ".additional"));
+            }
+            return outputs;
+        }
     }
 
     @Command(name = "download-jars", description = "Download JARs based on specifications.")
-    static class DownloadJars extends BaseCommand {
+    static class DownloadJars extends BaseCommand implements BatchStep {
         @Parameters(index = "0", description = "Path to the specification text file.")
         private String specFile;
 
@@ -137,72 +228,217 @@ public class JarManagerCLI implements Callable<Integer> {
         @Option(names = {"--changes-log"}, description = "Path to the changes text file that will be appended to.")
         private String changesLog;
 
+        @Option(names = {"--locked"}, description = "Download the versions recorded in the <spec file>.lock " +
+                "lockfile, without looking up versions, keeping files that match it and failing if a downloaded " +
+                "file does not.")
+        private boolean locked;
+
+        @Option(names = {"--deadline"}, description = "Seconds the downloads may take in total. Downloads still " +
+                "running then are cancelled and the command fails.")
+        private Long deadlineSeconds;
+
+        @Mixin
+        private DiscoveryOptions discoveryOptions;
+
         @Override
         public Integer call() {
-            System.out.println("Downloading JARs based on specifications from: " + specFile);
+            AnsiLogger.info("Downloading JARs based on specifications from: {}", specFile);
             loadConfig();
             Preconditions.checkArgument(!Strings.isNullOrEmpty(specFile), "Spec path cannot be null or empty.");
             Preconditions.checkArgument(!Strings.isNullOrEmpty(targetFolder), "Output path cannot be null or empty.");
+            Preconditions.checkArgument(deadlineSeconds == null || deadlineSeconds > 0, "Deadline must be positive.");
             try {
                 // Call the JAR downloader utility
                 ArtifactDownloader.downloadArtifacts(Paths.get(specFile), Paths.get(targetFolder), sourceTargetFolder,
-                        updateDifferentOnly, changesLog, useRemoteName, explicitDelete);
+                        updateDifferentOnly, changesLog, useRemoteName, explicitDelete, discoveryOptions.toOptions(),
+                        locked, deadlineSeconds == null ? null : Duration.ofSeconds(deadlineSeconds));
             } catch (Exception e) {
                 AnsiLogger.error("Failed to download JARs: {}", e.getMessage());
-                logger.error("Failed to download JARs", e);
+                logger().error("Failed to download JARs", e);
                 return 1;
             }
 
 
             return 0;
         }
+
+        @Override
+        public Set<Path> inputs() {
+            Set<Path> inputs = paths(specFile);
+            if (locked && !Strings.isNullOrEmpty(specFile)) {
+                inputs.add(LockFile.pathFor(Paths.get(specFile)));
+            }
+            return inputs;
+        }
+
+        @Override
+        public Set<Path> outputs() {
+            Set<Path> outputs = paths(targetFolder, sourceTargetFolder, changesLog);
+            if (!locked && !Strings.isNullOrEmpty(specFile)) {
+                outputs.add(LockFile.pathFor(Paths.get(specFile)));
+            }
+            return outputs;
+        }
     }
 
     @Command(name = "generate-userlibs", description = "Generate user libraries XML.")
-    static class GenerateUserLibs extends BaseCommand {
+    static class GenerateUserLibs extends BaseCommand implements BatchStep {
 
-        @Parameters(index = "0", description = "Name of the user library.")
+        @Parameters(index = "0", arity = "0..1", description = "Name of the user library. Not used with " +
+                "--shared-libs.")
         private String libraryName;
 
-        @Parameters(index = "1", description = "Path to the specification text file.")
+        @Parameters(index = "1", arity = "0..1", description = "Path to the specification text file. Not used with " +
+                "--shared-libs.")
         private String specFile;
 
-        @Option(names = {"--output-xml"}, description = "Path to output the user libraries XML file.", required = true)
+        @Option(names = {"--output-xml"}, description = "Path to output the user libraries XML file, or the folder " +
+                "to output one file per library to with --separate.", required = true)
         private String outputXml;
 
-        @Option(names = {"--jars-path"}, description = "Path where JAR files are stored.", required = true)
+        @Option(names = {"--jars-path"}, description = "Path where JAR files are stored. Required unless " +
+                "--shared-libs is set.")
         private String jarsPath;
 
-        @Option(names = {"--jars-source-path"}, description = "Path where source JAR files are stored.")
+        @Option(names = {"--jars-source-path"}, description = "Path where source JAR files are stored. Not used " +
+                "with --shared-libs.")
         private String jarsSourcePath;
 
         @Option(names = {"--changes-log"}, description = "Path to the changes text file that will be appended to.")
         private String changesLog;
 
+        @Option(names = {"--download"}, description = "Download the JARs of the spec file, and their sources if " +
+                "--jars-source-path is set, and generate the library from them.")
+        private boolean download;
+
+        @Option(names = {"--dont-overwrite"}, description = "Keep JAR files that already have the requested " +
+                "version instead of downloading them again. Only applies with --download.")
+        private boolean dontOverwrite;
+
+        @Option(names = {"--deadline"}, description = "Seconds the downloads may take in total. Downloads still " +
+                "running then are cancelled and the command fails. Only applies with --download.")
+        private Long deadlineSeconds;
+
+        @Option(names = {"--from-spec"}, description = "Compute the JAR paths from the spec file instead of opening " +
+                "the JAR files, only checking that each file exists. JARs are expected at <artifactId>.jar, and " +
+                "sources at <artifactId>-sources.jar.")
+        private boolean fromSpec;
+
+        @Option(names = {"--trust-spec"}, description = "Like --from-spec, without checking that the files exist.")
+        private boolean trustSpec;
+
+        @Option(names = {"--use-remote-name"}, description = "With --from-spec or --trust-spec, JARs are expected " +
+                "at their remote name, <artifactId>-<version>.jar.")
+        private boolean useRemoteName;
+
+        @Option(names = {"--shared-libs"}, description = "Path to the text file listing the libraries to generate, " +
+                "one <name>;<spec file>;<JAR folder>;<source JAR folder> line per library.")
+        private String sharedLibs;
+
+        @Option(names = {"--separate"}, description = "Write one <name>.userlibraries file per library of " +
+                "--shared-libs to the --output-xml folder instead of a single file.")
+        private boolean separate;
+
+        @Mixin
+        private DiscoveryOptions discoveryOptions;
+
         @Override
         public Integer call() {
-            System.out.println("Generating user libraries XML to: " + outputXml);
+            AnsiLogger.info("Generating user libraries XML to: {}", outputXml);
             loadConfig();
             // Add logic to generate or manage XML and JAR files
-            Preconditions.checkArgument(!Strings.isNullOrEmpty(libraryName), "Library name cannot be null or empty.");
-            Preconditions.checkArgument(!Strings.isNullOrEmpty(specFile), "Spec path cannot be null or empty.");
             Preconditions.checkArgument(!Strings.isNullOrEmpty(outputXml), "Output path cannot be null or empty.");
-            Preconditions.checkArgument(!Strings.isNullOrEmpty(jarsPath), "JAR target path cannot be null or empty.");
+            if (!Strings.isNullOrEmpty(sharedLibs)) {
+                Preconditions.checkArgument(libraryName == null && specFile == null && jarsPath == null
+                                && jarsSourcePath == null,
+                        "Library name, spec path, JAR target path and source JAR path come from the shared libraries " +
+                                "file.");
+            } else {
+                Preconditions.checkArgument(!separate, "--separate can only be used with --shared-libs.");
+                Preconditions.checkArgument(!Strings.isNullOrEmpty(libraryName), "Library name cannot be null or empty.");
+                Preconditions.checkArgument(!Strings.isNullOrEmpty(specFile), "Spec path cannot be null or empty.");
+                Preconditions.checkArgument(!Strings.isNullOrEmpty(jarsPath), "JAR target path cannot be null or empty.");
+            }
+            boolean specDriven = fromSpec || trustSpec;
+            Preconditions.checkArgument(!specDriven || (!download && Strings.isNullOrEmpty(sharedLibs)),
+                    "--from-spec and --trust-spec cannot be used with --download or --shared-libs.");
+            Preconditions.checkArgument(specDriven || !useRemoteName,
+                    "--use-remote-name can only be used with --from-spec or --trust-spec.");
+            Preconditions.checkArgument(!dontOverwrite || download, "--dont-overwrite can only be used with --download.");
+            Preconditions.checkArgument(deadlineSeconds == null || download,
+                    "--deadline can only be used with --download.");
+            Preconditions.checkArgument(deadlineSeconds == null || deadlineSeconds > 0, "Deadline must be positive.");
+            Duration deadline = deadlineSeconds == null ? null : Duration.ofSeconds(deadlineSeconds);
             try {
                 // Call the user libraries generator utility
-                UserLibrariesGenerator.generateUserLibs(libraryName, Paths.get(specFile), Paths.get(outputXml),
-                        Paths.get(jarsPath), jarsSourcePath, changesLog);
+                if (!Strings.isNullOrEmpty(sharedLibs)) {
+                    UserLibrariesGenerator.generateSharedLibs(Paths.get(sharedLibs), Paths.get(outputXml), separate,
+                            download, dontOverwrite, changesLog, discoveryOptions.toOptions(), deadline);
+                } else if (specDriven) {
+                    UserLibrariesGenerator.generateUserLibsFromSpec(libraryName, Paths.get(specFile),
+                            Paths.get(outputXml), Paths.get(jarsPath), jarsSourcePath, changesLog, useRemoteName,
+                            trustSpec);
+                } else if (download) {
+                    UserLibrariesGenerator.downloadAndGenerateUserLibs(libraryName, Paths.get(specFile),
+                            Paths.get(outputXml), Paths.get(jarsPath), jarsSourcePath, changesLog, dontOverwrite,
+                            discoveryOptions.toOptions(), deadline);
+                } else {
+                    UserLibrariesGenerator.generateUserLibs(libraryName, Paths.get(specFile), Paths.get(outputXml),
+                            Paths.get(jarsPath), jarsSourcePath, changesLog, discoveryOptions.toOptions());
+                }
             } catch (Exception e) {
                 AnsiLogger.error("Failed to generate user libraries XML: {}", e.getMessage());
-                logger.error("Failed to generate user libraries XML", e);
+                logger().error("Failed to generate user libraries XML", e);
                 return 1;
             }
             return 0;
         }
+
+        @Override
+        public Set<Path> inputs() {
+            Set<Path> inputs = paths(specFile, sharedLibs);
+            if (!Strings.isNullOrEmpty(sharedLibs) && Files.exists(Paths.get(sharedLibs))) {
+                UserLibrariesGenerator.parseSharedLibsFile(Paths.get(sharedLibs))
+                        .forEach(library -> inputs.add(library.specFile()));
+            }
+            inputs.addAll(jarFolders());
+            return inputs;
+        }
+
+        @Override
+        public Set<Path> outputs() {
+            Set<Path> outputs = paths(outputXml, changesLog);
+            if (download) {
+                // Downloads write to the folders the library is generated from, and the lockfiles of the spec files
+                outputs.addAll(jarFolders());
+                if (!Strings.isNullOrEmpty(specFile)) {
+                    outputs.add(LockFile.pathFor(Paths.get(specFile)));
+                }
+                if (!Strings.isNullOrEmpty(sharedLibs) && Files.exists(Paths.get(sharedLibs))) {
+                    UserLibrariesGenerator.parseSharedLibsFile(Paths.get(sharedLibs))
+                            .forEach(library -> outputs.add(LockFile.pathFor(library.specFile())));
+                }
+            }
+            return outputs;
+        }
+
+        private Set<Path> jarFolders() {
+            Set<Path> folders = paths(jarsPath, jarsSourcePath);
+            if (!Strings.isNullOrEmpty(sharedLibs) && Files.exists(Paths.get(sharedLibs))) {
+                for (UserLibrariesGenerator.SharedLibrary library :
+                        UserLibrariesGenerator.parseSharedLibsFile(Paths.get(sharedLibs))) {
+                    folders.add(library.jarsPath());
+                    if (library.sourcesPath() != null) {
+                        folders.add(library.sourcesPath());
+                    }
+                }
+            }
+            return folders;
+        }
     }
 
     @Command(name = "combine-userlibs", description = "Combine multiple user libraries XML files.")
-    static class CombineUserLibs extends BaseCommand {
+    static class CombineUserLibs extends BaseCommand implements BatchStep {
 
         @Parameters(index = "0", description = "Paths to the XML files to combine.", split = " ")
         private Path[] xmls;
@@ -210,28 +446,304 @@ public class JarManagerCLI implements Callable<Integer> {
         @Option(names = {"--output-xml"}, description = "Path to output the combined user libraries XML file.", required = true)
         private String outputXml;
 
+        @Option(names = {"--on-duplicate"}, description = "How to merge libraries with the same name: keep-all, " +
+                "first-wins, last-wins, union or fail. Default: ${DEFAULT-VALUE}.", defaultValue = "keep-all")
+        private String onDuplicate;
+
         @Override
         public Integer call() {
-            System.out.println("Combining user libraries XML files to: " + outputXml);
+            AnsiLogger.info("Combining user libraries XML files to: {}", outputXml);
             loadConfig();
             // Add logic to combine XML files
             Preconditions.checkArgument(xmls != null && xmls.length > 1, "At least two XML files are required to combine.");
             Preconditions.checkArgument(!Strings.isNullOrEmpty(outputXml), "Output path cannot be null or empty.");
             try {
-                // Add logic to combine XML files
-                UserLibrariesMerger.mergeUserLibraries(Paths.get(outputXml), List.of(xmls));
+                UserLibrariesMerger.mergeUserLibraries(Paths.get(outputXml), List.of(xmls),
+                        UserLibrariesMerger.DuplicatePolicy.fromLabel(onDuplicate));
             } catch (Exception e) {
                 AnsiLogger.error("Failed to combine user libraries XML: {}", e.getMessage());
-                logger.error("Failed to combine user libraries XML", e);
+                logger().error("Failed to combine user libraries XML", e);
                 return 1;
             }
             return 0;
         }
+
+        @Override
+        public Set<Path> inputs() {
+            return xmls == null ? Set.of() : new LinkedHashSet<>(List.of(xmls));
+        }
+
+        @Override
+        public Set<Path> outputs() {
+            return paths(outputXml);
+        }
+    }
+
+    @Command(name = "check-conflicts", description = "Find duplicate classes and split packages across JARs.")
+    static class CheckConflicts extends BaseCommand implements BatchStep {
+        @Option(names = {"--folder-path"}, description = "Path to the folder containing .jar files.", required = true)
+        private String folderPath;
+
+        @Option(names = {"--fail-on-conflicts"}, description = "Exit with a non-zero code if any conflicts are found.")
+        private boolean failOnConflicts;
+
+        @Mixin
+        private DiscoveryOptions discoveryOptions;
+
+        @Override
+        public Integer call() {
+            AnsiLogger.info("Checking for class conflicts in JARs in: {}", folderPath);
+            loadConfig();
+            Preconditions.checkArgument(!Strings.isNullOrEmpty(folderPath), "Folder path cannot be null or empty.");
+            try {
+                ClassConflictDetector.ConflictReport report = ClassConflictDetector.checkConflicts(
+                        Paths.get(folderPath), discoveryOptions.toOptions());
+                if (failOnConflicts && report.hasConflicts()) {
+                    return 2;
+                }
+            } catch (Exception e) {
+                AnsiLogger.error("Failed to check for class conflicts: {}", e.getMessage());
+                logger().error("Failed to check for class conflicts", e);
+                return 1;
+            }
+            return 0;
+        }
+
+        @Override
+        public Set<Path> inputs() {
+            return paths(folderPath);
+        }
+
+        @Override
+        public Set<Path> outputs() {
+            return Set.of();
+        }
+    }
+
+    @Command(name = "verify", description = "Check that the JAR files in a folder are intact.")
+    static class VerifyJars extends BaseCommand implements BatchStep {
+        @Parameters(index = "0", description = "Path to the folder containing .jar files.")
+        private String folderPath;
+
+        @Option(names = {"--central-directory-only"}, description = "Only check the ZIP structure, without " +
+                "decompressing the entries to check their CRCs.")
+        private boolean centralDirectoryOnly;
+
+        @Option(names = {"--lockfile"}, description = "Path to a download-jars lockfile to compare the SHA-1 of the " +
+                "JAR files with.")
+        private String lockFile;
+
+        @Option(names = {"--repository-checksums"}, description = "Compare the SHA-1 of JAR files with POM " +
+                "properties with the checksum published by the Maven repository, when the lockfile does not cover " +
+                "them.")
+        private boolean repositoryChecksums;
+
+        @Mixin
+        private DiscoveryOptions discoveryOptions;
+
+        @Override
+        public Integer call() {
+            AnsiLogger.info("Verifying JARs in: {}", folderPath);
+            loadConfig();
+            Preconditions.checkArgument(!Strings.isNullOrEmpty(folderPath), "Folder path cannot be null or empty.");
+            try {
+                JarVerifier.VerificationReport report = JarVerifier.verify(Paths.get(folderPath),
+                        discoveryOptions.toOptions(), centralDirectoryOnly,
+                        Strings.isNullOrEmpty(lockFile) ? null : Paths.get(lockFile), repositoryChecksums);
+                if (report.hasProblems()) {
+                    return 2;
+                }
+            } catch (Exception e) {
+                AnsiLogger.error("Failed to verify JARs: {}", e.getMessage());
+                logger().error("Failed to verify JARs", e);
+                return 1;
+            }
+            return 0;
+        }
+
+        @Override
+        public Set<Path> inputs() {
+            return paths(folderPath, lockFile);
+        }
+
+        @Override
+        public Set<Path> outputs() {
+            return Set.of();
+        }
+    }
+
+    @Command(name = "dedupe", description = "Replace identical JAR files across folders with hard links to one " +
+            "copy.")
+    static class DedupeJars extends BaseCommand implements BatchStep {
+        @Parameters(index = "0", arity = "1..*", description = "Paths to the folders containing .jar files.")
+        private List<Path> folders;
+
+        @Option(names = {"--dry-run"}, description = "Only report the identical JAR files, without replacing any.")
+        private boolean dryRun;
+
+        @Mixin
+        private DiscoveryOptions discoveryOptions;
+
+        @Override
+        public Integer call() {
+            AnsiLogger.info("Deduplicating JARs in: {}", folders);
+            loadConfig();
+            Preconditions.checkArgument(folders != null && !folders.isEmpty(), "At least one folder is required.");
+            try {
+                JarDeduplicator.dedupe(folders, discoveryOptions.toOptions(), dryRun);
+            } catch (Exception e) {
+                AnsiLogger.error("Failed to deduplicate JARs: {}", e.getMessage());
+                logger().error("Failed to deduplicate JARs", e);
+                return 1;
+            }
+            return 0;
+        }
+
+        @Override
+        public Set<Path> inputs() {
+            return folders == null ? Set.of() : new LinkedHashSet<>(folders);
+        }
+
+        @Override
+        public Set<Path> outputs() {
+            return dryRun ? Set.of() : inputs();
+        }
+    }
+
+    @Command(name = "daemon", description = "Keep a JVM running in the background that runs the commands " +
+            "forwarded with " + DaemonClient.VIA_DAEMON + ", with warm caches.")
+    static class Daemon extends BaseCommand {
+        @Option(names = {"--socket"}, description = "Path of the Unix domain socket to listen on. Default: a socket " +
+                "in the temporary folder for the current folder.")
+        private Path socket;
+
+        @Option(names = {"--idle-timeout"}, description = "Minutes without commands after which the daemon stops. " +
+                "Default: ${DEFAULT-VALUE}.", defaultValue = "30")
+        private long idleTimeoutMinutes;
+
+        @Option(names = {"--stop"}, description = "Stop the daemon listening on the socket instead of starting one.")
+        private boolean stop;
+
+        @Override
+        public Integer call() {
+            loadConfig();
+            Path socketPath = socket != null ? socket : DaemonClient.defaultSocket();
+            if (stop) {
+                if (!DaemonClient.stop(socketPath)) {
+                    AnsiLogger.warning("No daemon is listening on: {}", socketPath);
+                    return 1;
+                }
+                AnsiLogger.success("Daemon stopped: {}", socketPath);
+                return 0;
+            }
+            Preconditions.checkArgument(idleTimeoutMinutes > 0, "Idle timeout must be positive.");
+            try {
+                JarManagerDaemon.serve(socketPath, Duration.ofMinutes(idleTimeoutMinutes), JarManagerCLI::run);
+            } catch (Exception e) {
+                AnsiLogger.error("Failed to run the daemon: {}", e.getMessage());
+                logger().error("Failed to run the daemon", e);
+                return 1;
+            }
+            return 0;
+        }
+    }
+
+    @Command(name = "batch", description = "Run the commands of a manifest in one JVM, running commands that do not " +
+            "depend on each other in parallel.")
+    static class Batch extends BaseCommand {
+        @Parameters(index = "0", description = "Path to the manifest, with the arguments of one generate-pom, " +
+                "download-jars, generate-userlibs, combine-userlibs, check-conflicts, verify or dedupe command per " +
+                "line.")
+        private Path manifest;
+
+        @Option(names = {"--parallelism"}, description = "Maximum number of commands running at the same time. " +
+                "Default: ${DEFAULT-VALUE}.", defaultValue = "4")
+        private int parallelism;
+
+        @Override
+        public Integer call() {
+            loadConfig();
+            Verify.verify(Files.exists(manifest), "Batch manifest does not exist: %s", manifest);
+            Preconditions.checkArgument(parallelism > 0, "Parallelism must be positive.");
+
+            List<BatchRunner.Step> steps = new ArrayList<>();
+            for (BatchRunner.ManifestLine line : BatchRunner.parseManifest(manifest)) {
+                CommandLine.ParseResult parseResult;
+                try {
+                    parseResult = new CommandLine(new JarManagerCLI()).parseArgs(line.args().toArray(String[]::new));
+                } catch (CommandLine.ParameterException e) {
+                    AnsiLogger.error("Invalid command on line {} of the batch manifest: {}", line.lineNumber(),
+                            e.getMessage());
+                    return 2;
+                }
+                Object command = parseResult.hasSubcommand()
+                        ? parseResult.subcommand().commandSpec().userObject() : null;
+                if (!(command instanceof BatchStep batchStep)) {
+                    AnsiLogger.error("Line {} of the batch manifest is not a command that can run in a batch: {}",
+                            line.lineNumber(), line.text());
+                    return 2;
+                }
+                if (((BaseCommand) command).configPath != null) {
+                    AnsiLogger.error("Line {} of the batch manifest has its own --config, which would apply to " +
+                            "every command of the batch. Pass it to the batch command instead.", line.lineNumber());
+                    return 2;
+                }
+                steps.add(new BatchRunner.Step(line.lineNumber(), line.text(), batchStep));
+            }
+
+            // Steps reading the same folders share what was read from their JAR files
+            PomGenerator.enableScanCache(100_000);
+            List<BatchRunner.StepResult> results = BatchRunner.run(steps, parallelism);
+            int failures = 0;
+            for (BatchRunner.StepResult result : results) {
+                switch (result.status()) {
+                    case SUCCEEDED -> AnsiLogger.success("Line {} succeeded in {} ms: {}",
+                            result.step().lineNumber(), result.duration().toMillis(), result.step().commandLine());
+                    case FAILED -> AnsiLogger.error("Line {} failed with exit code {}: {}",
+                            result.step().lineNumber(), result.exitCode(), result.step().commandLine());
+                    case SKIPPED -> AnsiLogger.warning("Line {} was skipped: {}", result.step().lineNumber(),
+                            result.step().commandLine());
+                }
+                if (result.status() != BatchRunner.Status.SUCCEEDED) {
+                    failures++;
+                }
+            }
+            if (failures > 0) {
+                AnsiLogger.error("{} of {} commands did not succeed.", failures, results.size());
+                return 1;
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * Runs a command in this JVM.
+     *
+     * @param args The command line arguments.
+     * @return The exit code of the command.
+     */
+    static int run(String[] args) {
+        int exitCode = new CommandLine(new JarManagerCLI()).execute(args);
+        if (exitCode != 0) {
+            // Only failed runs need the details of the log file, and only they pay for looking it up
+            CommonUtils.printLogLocation();
+        }
+        AnsiLogger.flush();
+        return exitCode;
     }
 
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals(DaemonClient.VIA_DAEMON)) {
+            String[] forwarded = Arrays.copyOfRange(args, 1, args.length);
+            OptionalInt exitCode = DaemonClient.forward(DaemonClient.defaultSocket(), forwarded);
+            if (exitCode.isPresent()) {
+                System.exit(exitCode.getAsInt());
+            }
+            // No daemon for this folder, run the command here
+            args = forwarded;
+        }
         AnsiConsole.systemInstall(); // enable colors on Windows
-        int exitCode = new CommandLine(new JarManagerCLI()).execute(args);
+        int exitCode = run(args);
         AnsiConsole.systemUninstall(); // cleanup when done
         System.exit(exitCode);
     }
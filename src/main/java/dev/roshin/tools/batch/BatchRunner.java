@@ -0,0 +1,228 @@
+package dev.roshin.tools.batch;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Stopwatch;
+import dev.roshin.tools.util.AnsiLogger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs the steps of a batch manifest in one JVM, running steps that do not depend on each other at the same time.
+ * <p>
+ * A step depends on an earlier step of the manifest if it reads or writes a path the earlier step writes, or writes a
+ * path the earlier step reads. Paths overlap if they are the same or one is inside the other, so a step writing a
+ * folder comes before a step reading a file in it. Steps without such overlaps run in parallel, and the outcome is the
+ * same as running the manifest line by line. A step whose dependency failed is skipped.
+ */
+public class BatchRunner {
+
+    /**
+     * A step of the batch.
+     *
+     * @param lineNumber  The line of the manifest the step comes from.
+     * @param commandLine The command line of the step, as written in the manifest.
+     * @param command     The command to run.
+     */
+    public record Step(int lineNumber, String commandLine, BatchStep command) {
+    }
+
+    public enum Status {
+        SUCCEEDED, FAILED, SKIPPED
+    }
+
+    /**
+     * @param step     The step.
+     * @param status   Whether the step succeeded, failed, or was skipped because a step it depends on did not succeed.
+     * @param exitCode The exit code of the step, or -1 if it was skipped.
+     * @param duration How long the step ran.
+     */
+    public record StepResult(Step step, Status status, int exitCode, Duration duration) {
+    }
+
+    /**
+     * A non-empty line of a manifest, split into command line arguments.
+     *
+     * @param lineNumber The line number, starting from 1.
+     * @param text       The line as written.
+     * @param args       The arguments.
+     */
+    public record ManifestLine(int lineNumber, String text, List<String> args) {
+    }
+
+    // Private constructor to prevent instantiation
+    private BatchRunner() {
+    }
+
+    /**
+     * Reads a batch manifest. Each line is the command line of a step, without the program name. Arguments are
+     * separated by spaces and can be quoted with double or single quotes. Empty lines and lines starting with
+     * {@code #} are ignored.
+     *
+     * @param manifest The manifest file.
+     * @return The lines with a command, in file order.
+     */
+    public static List<ManifestLine> parseManifest(Path manifest) {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(manifest);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read batch manifest: " + manifest, e);
+        }
+        List<ManifestLine> manifestLines = new ArrayList<>();
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            manifestLines.add(new ManifestLine(i + 1, line, tokenize(line, i + 1)));
+        }
+        return manifestLines;
+    }
+
+    /**
+     * Splits a line into arguments, the way a shell would for quoted and unquoted words.
+     */
+    static List<String> tokenize(String line, int lineNumber) {
+        List<String> args = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean inArgument = false;
+        char quote = 0;
+        for (char c : line.toCharArray()) {
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+                inArgument = true;
+            } else if (Character.isWhitespace(c)) {
+                if (inArgument) {
+                    args.add(current.toString());
+                    current.setLength(0);
+                    inArgument = false;
+                }
+            } else {
+                current.append(c);
+                inArgument = true;
+            }
+        }
+        Preconditions.checkArgument(quote == 0, "Unterminated quote on line %s of the batch manifest.", lineNumber);
+        if (inArgument) {
+            args.add(current.toString());
+        }
+        return args;
+    }
+
+    /**
+     * Finds the earlier steps each step has to wait for.
+     *
+     * @param steps The steps, in manifest order.
+     * @return For each step, the indexes of the earlier steps it depends on.
+     */
+    public static List<List<Integer>> dependencies(List<Step> steps) {
+        List<Set<Path>> inputs = new ArrayList<>();
+        List<Set<Path>> outputs = new ArrayList<>();
+        for (Step step : steps) {
+            inputs.add(normalize(step.command().inputs()));
+            outputs.add(normalize(step.command().outputs()));
+        }
+        List<List<Integer>> dependencies = new ArrayList<>();
+        for (int step = 0; step < steps.size(); step++) {
+            List<Integer> stepDependencies = new ArrayList<>();
+            for (int earlier = 0; earlier < step; earlier++) {
+                if (overlap(outputs.get(earlier), inputs.get(step)) || overlap(outputs.get(earlier), outputs.get(step))
+                        || overlap(inputs.get(earlier), outputs.get(step))) {
+                    stepDependencies.add(earlier);
+                }
+            }
+            dependencies.add(stepDependencies);
+        }
+        return dependencies;
+    }
+
+    /**
+     * Runs the steps, each as soon as the steps it depends on succeeded.
+     *
+     * @param steps       The steps, in manifest order.
+     * @param parallelism The maximum number of steps running at the same time.
+     * @return The result of each step, in manifest order.
+     */
+    public static List<StepResult> run(List<Step> steps, int parallelism) {
+        Preconditions.checkArgument(parallelism > 0, "Parallelism must be positive.");
+        Logger logger = LoggerFactory.getLogger(BatchRunner.class);
+        List<List<Integer>> dependencies = dependencies(steps);
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try {
+            List<CompletableFuture<StepResult>> results = new ArrayList<>();
+            for (int i = 0; i < steps.size(); i++) {
+                Step step = steps.get(i);
+                CompletableFuture<?>[] waitFor = dependencies.get(i).stream().map(results::get)
+                        .toArray(CompletableFuture[]::new);
+                results.add(CompletableFuture.allOf(waitFor).thenApplyAsync(done -> {
+                    for (CompletableFuture<?> dependency : waitFor) {
+                        if (((StepResult) dependency.join()).status() != Status.SUCCEEDED) {
+                            AnsiLogger.warning(logger, "Skipping line {} as a step it depends on did not succeed: {}",
+                                    step.lineNumber(), step.commandLine());
+                            return new StepResult(step, Status.SKIPPED, -1, Duration.ZERO);
+                        }
+                    }
+                    return runStep(step, logger);
+                }, executor));
+            }
+            return results.stream().map(CompletableFuture::join).toList();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static StepResult runStep(Step step, Logger logger) {
+        AnsiLogger.info("Running line {}: {}", step.lineNumber(), step.commandLine());
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        int exitCode;
+        try {
+            exitCode = step.command().call();
+        } catch (Exception e) {
+            AnsiLogger.error("Line {} failed: {}", step.lineNumber(), e.getMessage());
+            logger.error("Line {} of the batch failed: {}", step.lineNumber(), step.commandLine(), e);
+            exitCode = 1;
+        }
+        return new StepResult(step, exitCode == 0 ? Status.SUCCEEDED : Status.FAILED, exitCode,
+                stopwatch.elapsed());
+    }
+
+    private static Set<Path> normalize(Set<Path> paths) {
+        Set<Path> normalized = new HashSet<>();
+        for (Path path : paths) {
+            if (path != null) {
+                normalized.add(path.toAbsolutePath().normalize());
+            }
+        }
+        return normalized;
+    }
+
+    private static boolean overlap(Set<Path> first, Set<Path> second) {
+        for (Path a : first) {
+            for (Path b : second) {
+                if (a.startsWith(b) || b.startsWith(a)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
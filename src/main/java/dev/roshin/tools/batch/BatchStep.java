@@ -0,0 +1,22 @@
+package dev.roshin.tools.batch;
+
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+/**
+ * A command that can run as a step of a batch. The paths a step reads and writes decide which steps of the batch it
+ * has to wait for.
+ */
+public interface BatchStep extends Callable<Integer> {
+
+    /**
+     * @return The files and folders the step reads.
+     */
+    Set<Path> inputs();
+
+    /**
+     * @return The files and folders the step writes.
+     */
+    Set<Path> outputs();
+}
@@ -1,6 +1,8 @@
 package dev.roshin.tools.config;
 
 
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import dev.roshin.tools.config.util.MavenSettingsParser;
 import org.slf4j.LoggerFactory;
 
@@ -8,30 +10,42 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.Optional;
 import java.util.Properties;
 
 public class Config {
     private static Config instance;
+    private final Properties defaults = new Properties();
     private final Properties config = new Properties();
-    private final MavenSettingsParser.Server server;
+    // Maven settings are only parsed by the commands that talk to a repository, once per command
+    private volatile Supplier<MavenSettingsParser.Server> server;
+    // The local repository Maven uses, if it exists
+    private volatile Supplier<Optional<Path>> mavenLocalRepository;
 
     private Config() {
         // Load default configuration from resources
         try (InputStream resourceStream = Config.class.getResourceAsStream("/config.properties")) {
             if (resourceStream != null) {
-                config.load(resourceStream);
+                defaults.load(resourceStream);
             }
         } catch (IOException e) {
             throw new RuntimeException("Failed to load default configuration from resources.", e);
         }
+        config.putAll(defaults);
+        readMavenSettingsLazily();
+    }
 
-        // Load maven configuration from settings.xml
-        // Get the API key, URL, and other details from Maven settings
-        server = MavenSettingsParser.getServerCredentials("central");
+    private void readMavenSettingsLazily() {
+        server = Suppliers.memoize(() -> MavenSettingsParser.getServerCredentials("central"));
+        mavenLocalRepository = Suppliers.memoize(() -> MavenSettingsParser
+                .getLocalRepository()
+                .or(() -> Optional.of(Paths.get(System.getProperty("user.home"), ".m2", "repository")))
+                .filter(Files::isDirectory));
     }
 
-    public static Config getInstance() {
+    public static synchronized Config getInstance() {
         if (instance == null) {
             instance = new Config();
         }
@@ -49,6 +63,17 @@ public class Config {
         }
     }
 
+    /**
+     * Drops the values loaded from external configuration files, so a command of a daemon does not see the
+     * configuration of the previous one. The Maven settings are read again when next needed, as
+     * {@code settings.xml} may have changed since the previous command.
+     */
+    public void restoreDefaults() {
+        config.clear();
+        config.putAll(defaults);
+        readMavenSettingsLazily();
+    }
+
     private String getProperty(String key) {
         return config.getProperty(key);
     }
@@ -56,13 +81,66 @@ public class Config {
     public String getMavenBaseUrl() {
         return getProperty("base.url");
     }
+
+    /**
+     * The local Maven repository artifacts are taken from before they are downloaded. It is the
+     * {@code local.repository} property if set, where {@code none} turns the local repository off, and otherwise the
+     * {@code localRepository} of {@code ~/.m2/settings.xml} or {@code ~/.m2/repository}.
+     *
+     * @return The local repository, or empty if there is none.
+     */
+    public Optional<Path> getLocalRepository() {
+        String localRepository = getProperty("local.repository");
+        if (localRepository == null || localRepository.isBlank()) {
+            return mavenLocalRepository.get();
+        }
+        if (localRepository.trim().equalsIgnoreCase("none")) {
+            return Optional.empty();
+        }
+        return Optional.of(Paths.get(localRepository.trim()));
+    }
+
+    /**
+     * @return How long to wait for a connection to the repository, from {@code http.connect.timeout.seconds}.
+     */
+    public Duration getHttpConnectTimeout() {
+        return getSeconds("http.connect.timeout.seconds");
+    }
+
+    /**
+     * @return How long a connection to the repository may stay silent before a request fails, from
+     * {@code http.socket.timeout.seconds}.
+     */
+    public Duration getHttpSocketTimeout() {
+        return getSeconds("http.socket.timeout.seconds");
+    }
+
+    /**
+     * @return The longest a single download request may take, including reading the response, from
+     * {@code http.request.timeout.seconds}.
+     */
+    public Duration getHttpRequestTimeout() {
+        return getSeconds("http.request.timeout.seconds");
+    }
+
+    private Duration getSeconds(String key) {
+        String value = getProperty(key);
+        try {
+            return Duration.ofSeconds(Long.parseLong(value.trim()));
+        } catch (NullPointerException | NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number of seconds for " + key + ": " + value, e);
+        }
+    }
+
     public Optional<String> getMavenApiKey() {
+        // Get the API key, URL, and other details from Maven settings
+        MavenSettingsParser.Server server = this.server.get();
         if (server != null) {
             return Optional.ofNullable(server.password());
         }
         return Optional.empty();
     }
     public String getMavenUrl() {
-        return server.url();
+        return server.get().url();
     }
 }
@@ -7,7 +7,11 @@ import org.jdom2.input.SAXBuilder;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.List;
+import java.util.Optional;
 
 public class MavenSettingsParser {
 
@@ -56,6 +60,39 @@ public class MavenSettingsParser {
         return null;
     }
 
+    /**
+     * Reads the local repository configured in {@code ~/.m2/settings.xml}.
+     *
+     * @return The configured local repository, or empty if there is no settings file or it does not configure one.
+     */
+    public static Optional<Path> getLocalRepository() {
+        return getLocalRepository(Paths.get(System.getProperty("user.home"), ".m2", "settings.xml"));
+    }
+
+    /**
+     * Reads the local repository configured in a settings file. {@code ${user.home}} in the path is replaced, as
+     * Maven does.
+     *
+     * @param settingsFile The settings file.
+     * @return The configured local repository, or empty if the file does not exist or does not configure one.
+     */
+    public static Optional<Path> getLocalRepository(Path settingsFile) {
+        if (!Files.isRegularFile(settingsFile)) {
+            return Optional.empty();
+        }
+        try {
+            Element rootNode = new SAXBuilder().build(settingsFile.toFile()).getRootElement();
+            String localRepository = rootNode.getChildTextTrim("localRepository", rootNode.getNamespace());
+            if (localRepository == null || localRepository.isEmpty()) {
+                return Optional.empty();
+            }
+            return Optional.of(Paths.get(localRepository.replace("${user.home}", System.getProperty("user.home"))));
+        } catch (Exception e) {
+            LoggerFactory.getLogger(MavenSettingsParser.class).error("Error parsing Maven settings", e);
+            return Optional.empty();
+        }
+    }
+
     public record Server(String id, String username, String password, String url) {
     }
 }
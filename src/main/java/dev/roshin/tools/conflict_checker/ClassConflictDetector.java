@@ -0,0 +1,375 @@
+package dev.roshin.tools.conflict_checker;
+
+import com.google.common.base.Throwables;
+import com.google.common.base.Verify;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import dev.roshin.tools.util.AnsiLogger;
+import dev.roshin.tools.util.JarDiscovery;
+import dev.roshin.tools.util.LongIntHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Finds classes that are shipped by more than one JAR file in a folder, and packages that are split across JAR files.
+ * <p>
+ * Only the central directory of each JAR file is read, which holds every entry's name and CRC, so no class is ever
+ * decompressed. JAR files are read in parallel and merged into a single index keyed by a 64-bit hash of the class
+ * name, so the index holds primitive arrays instead of one {@code String} per class.
+ */
+public class ClassConflictDetector {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClassConflictDetector.class);
+
+    // Number of JAR files read at the same time
+    private static final int PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+    // Number of identical duplicate class names kept per pair of JAR files, to give an idea of what overlaps
+    private static final int SAMPLE_SIZE = 5;
+
+    /**
+     * Classes that are present in both JAR files.
+     *
+     * @param firstJar         The first JAR file.
+     * @param secondJar        The second JAR file.
+     * @param identicalCount   The number of duplicate classes with the same bytecode in both JAR files.
+     * @param sampleIdentical  Some of the duplicate classes with the same bytecode.
+     * @param differingClasses The duplicate classes with different bytecode, which are the dangerous ones.
+     */
+    public record DuplicateClasses(Path firstJar, Path secondJar, int identicalCount, List<String> sampleIdentical,
+                                   List<String> differingClasses) {
+    }
+
+    /**
+     * A package that has classes in more than one JAR file.
+     *
+     * @param packageName The name of the package.
+     * @param jars        The JAR files that have classes in the package.
+     */
+    public record SplitPackage(String packageName, List<Path> jars) {
+    }
+
+    /**
+     * The result of a conflict check.
+     *
+     * @param jarCount         The number of JAR files that were read.
+     * @param classCount       The number of distinct class names that were found.
+     * @param duplicateClasses The duplicate classes, grouped per pair of JAR files.
+     * @param splitPackages    The packages that are split across JAR files.
+     */
+    public record ConflictReport(int jarCount, int classCount, List<DuplicateClasses> duplicateClasses,
+                                 List<SplitPackage> splitPackages) {
+
+        /**
+         * @return True if any duplicate classes or split packages were found.
+         */
+        public boolean hasConflicts() {
+            return !duplicateClasses.isEmpty() || !splitPackages.isEmpty();
+        }
+    }
+
+    /**
+     * Checks the JAR files below the folder for duplicate classes and split packages and prints a report.
+     *
+     * @param folderPath       The folder containing the JAR files.
+     * @param discoveryOptions The options controlling which JAR files below the folder are used.
+     * @return The report of the conflicts found.
+     */
+    public static ConflictReport checkConflicts(Path folderPath, JarDiscovery.Options discoveryOptions) {
+        Verify.verify(Files.isDirectory(folderPath), "Folder does not exist: %s", folderPath);
+
+        ConflictReport report;
+        try (Stream<Path> jars = JarDiscovery.find(folderPath, discoveryOptions, ".jar")) {
+            report = buildReport(jars.filter(jar -> !jar.getFileName().toString().contains("sources")));
+        }
+        printReport(folderPath, report);
+        return report;
+    }
+
+    /**
+     * Reads every JAR file in the stream and builds the conflict report.
+     *
+     * @param jars The JAR files to check.
+     * @return The report of the conflicts found.
+     */
+    protected static ConflictReport buildReport(Stream<Path> jars) {
+        ClassIndex index = new ClassIndex();
+        ExecutorService executor = Executors.newFixedThreadPool(PARALLELISM);
+        try {
+            List<Future<?>> reads = Lists.newArrayList();
+            jars.forEach(jar -> {
+                int jarIndex = index.addJar(jar);
+                reads.add(executor.submit(() -> readJar(index, jarIndex, jar)));
+            });
+            for (Future<?> read : reads) {
+                Futures.getUnchecked(read);
+            }
+        } catch (UncheckedExecutionException e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw e;
+        } finally {
+            executor.shutdownNow();
+        }
+        return index.toReport();
+    }
+
+    /**
+     * Reads the central directory of a single JAR file and merges its classes into the index.
+     *
+     * @param index    The index to merge into.
+     * @param jarIndex The index of the JAR file.
+     * @param jar      The JAR file.
+     */
+    private static void readJar(ClassIndex index, int jarIndex, Path jar) {
+        List<String> classNames = new ArrayList<>();
+        int[] crcs = new int[64];
+        try (ZipFile zipFile = new ZipFile(jar.toFile())) {
+            var entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if (!isClassEntry(name)) {
+                    continue;
+                }
+                if (classNames.size() == crcs.length) {
+                    crcs = Arrays.copyOf(crcs, crcs.length * 2);
+                }
+                crcs[classNames.size()] = (int) entry.getCrc();
+                classNames.add(name);
+            }
+        } catch (IOException e) {
+            AnsiLogger.error(logger, "Could not read JAR file {}: {}", jar, e.getMessage());
+            return;
+        }
+        index.merge(jarIndex, classNames, crcs);
+    }
+
+    /**
+     * @param entryName The name of a JAR entry.
+     * @return True if the entry is a class that could clash with the classes of another JAR file.
+     */
+    private static boolean isClassEntry(String entryName) {
+        return entryName.endsWith(".class")
+                && !entryName.startsWith("META-INF/")
+                && !entryName.equals("module-info.class");
+    }
+
+    /**
+     * 64-bit FNV-1a hash of the name, with a final mix so similar names spread over all bits.
+     */
+    static long hash64(String name) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < name.length(); i++) {
+            hash ^= name.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static void printReport(Path folderPath, ConflictReport report) {
+        AnsiLogger.info("Checked {} classes in {} JAR files in: {}", report.classCount(), report.jarCount(),
+                folderPath);
+        for (DuplicateClasses duplicates : report.duplicateClasses()) {
+            AnsiLogger.warning(logger, "{} and {} share {} identical and {} different classes",
+                    duplicates.firstJar().getFileName(), duplicates.secondJar().getFileName(),
+                    duplicates.identicalCount(), duplicates.differingClasses().size());
+            for (String className : duplicates.differingClasses()) {
+                AnsiLogger.warning("    different bytecode: {}", className);
+            }
+            for (String className : duplicates.sampleIdentical()) {
+                AnsiLogger.info("    identical: {}", className);
+            }
+        }
+        for (SplitPackage splitPackage : report.splitPackages()) {
+            AnsiLogger.warning(logger, "Package {} is split across: {}", splitPackage.packageName(),
+                    splitPackage.jars().stream().map(Path::getFileName).toList());
+        }
+        if (report.hasConflicts()) {
+            AnsiLogger.warning("Found {} pairs of JAR files with duplicate classes and {} split packages",
+                    report.duplicateClasses().size(), report.splitPackages().size());
+        } else {
+            AnsiLogger.success("No duplicate classes or split packages found");
+        }
+    }
+
+    /**
+     * Index of every class name seen so far, built from primitive arrays.
+     * <p>
+     * A class name is only kept as a {@code String} once it turns out to be a duplicate. Two different names that
+     * hash to the same 64-bit value would be reported as duplicates; with a few million classes the odds of that are
+     * around one in a million.
+     * <p>
+     * A duplicate class keeps every JAR file it is in with its CRC, so every pair of those JAR files is compared, and
+     * the report does not depend on the order the JAR files were read in.
+     */
+    private static class ClassIndex {
+        private final List<Path> jars = new ArrayList<>();
+
+        // Class name hash to the position of its first occurrence in the arrays below
+        private final LongIntHashMap classes = new LongIntHashMap(1 << 16);
+        private int[] firstJar = new int[1 << 16];
+        private int[] firstCrc = new int[1 << 16];
+
+        // Package name hash to the position of its first occurrence in packageFirstJar
+        private final LongIntHashMap packages = new LongIntHashMap();
+        private int[] packageFirstJar = new int[1 << 10];
+
+        // Only filled for actual conflicts, duplicate classes keyed by the position of the class
+        private final Map<Integer, Occurrences> duplicateClasses = new HashMap<>();
+        private final Map<String, Set<Integer>> splitPackages = new HashMap<>();
+
+        synchronized int addJar(Path jar) {
+            jars.add(jar);
+            return jars.size() - 1;
+        }
+
+        synchronized void merge(int jarIndex, List<String> classNames, int[] crcs) {
+            Set<String> jarPackages = new HashSet<>();
+            for (int i = 0; i < classNames.size(); i++) {
+                String className = classNames.get(i);
+                int slash = className.lastIndexOf('/');
+                jarPackages.add(slash < 0 ? "" : className.substring(0, slash));
+
+                int position = classes.size();
+                int existing = classes.putIfAbsent(hash64(className), position);
+                if (existing == LongIntHashMap.NOT_FOUND) {
+                    if (position == firstJar.length) {
+                        firstJar = Arrays.copyOf(firstJar, position * 2);
+                        firstCrc = Arrays.copyOf(firstCrc, position * 2);
+                    }
+                    firstJar[position] = jarIndex;
+                    firstCrc[position] = crcs[i];
+                } else if (firstJar[existing] != jarIndex) {
+                    duplicateClasses.computeIfAbsent(existing,
+                                    key -> new Occurrences(className, firstJar[existing], firstCrc[existing]))
+                            .add(jarIndex, crcs[i]);
+                }
+            }
+            for (String packageName : jarPackages) {
+                int position = packages.size();
+                int existing = packages.putIfAbsent(hash64(packageName), position);
+                if (existing == LongIntHashMap.NOT_FOUND) {
+                    if (position == packageFirstJar.length) {
+                        packageFirstJar = Arrays.copyOf(packageFirstJar, position * 2);
+                    }
+                    packageFirstJar[position] = jarIndex;
+                } else {
+                    Set<Integer> packageJars = splitPackages.computeIfAbsent(packageName, key -> new TreeSet<>());
+                    packageJars.add(packageFirstJar[existing]);
+                    packageJars.add(jarIndex);
+                }
+            }
+        }
+
+        synchronized ConflictReport toReport() {
+            // Classes in name order, so the samples of identical classes are the same on every run
+            List<Occurrences> sortedClasses = new ArrayList<>(duplicateClasses.values());
+            sortedClasses.sort(Comparator.comparing(Occurrences::className));
+            Map<Long, PairConflicts> pairConflicts = new HashMap<>();
+            for (Occurrences occurrences : sortedClasses) {
+                for (int i = 0; i < occurrences.jars.size(); i++) {
+                    for (int j = i + 1; j < occurrences.jars.size(); j++) {
+                        pairConflicts.computeIfAbsent(pairKey(occurrences.jars.get(i), occurrences.jars.get(j)),
+                                        key -> new PairConflicts())
+                                .add(occurrences.className, occurrences.crcs.get(i).equals(occurrences.crcs.get(j)));
+                    }
+                }
+            }
+
+            List<DuplicateClasses> duplicates = new ArrayList<>();
+            for (Map.Entry<Long, PairConflicts> entry : pairConflicts.entrySet()) {
+                Path first = jars.get((int) (entry.getKey() >>> 32));
+                Path second = jars.get((int) (long) entry.getKey());
+                if (first.compareTo(second) > 0) {
+                    Path swap = first;
+                    first = second;
+                    second = swap;
+                }
+                PairConflicts conflicts = entry.getValue();
+                conflicts.differing.sort(null);
+                duplicates.add(new DuplicateClasses(first, second, conflicts.identicalCount,
+                        List.copyOf(conflicts.sampleIdentical), List.copyOf(conflicts.differing)));
+            }
+            duplicates.sort(Comparator.comparing(DuplicateClasses::firstJar).thenComparing(DuplicateClasses::secondJar));
+
+            List<SplitPackage> split = new ArrayList<>();
+            for (Map.Entry<String, Set<Integer>> entry : splitPackages.entrySet()) {
+                split.add(new SplitPackage(entry.getKey().replace('/', '.'),
+                        entry.getValue().stream().map(jars::get).sorted().toList()));
+            }
+            split.sort(Comparator.comparing(SplitPackage::packageName));
+            return new ConflictReport(jars.size(), classes.size(), duplicates, split);
+        }
+
+        private static long pairKey(int firstJar, int secondJar) {
+            return ((long) Math.min(firstJar, secondJar) << 32) | Math.max(firstJar, secondJar);
+        }
+    }
+
+    /**
+     * The JAR files a duplicate class is in, with the CRC of the class in each.
+     */
+    private static class Occurrences {
+        private final String className;
+        private final List<Integer> jars = new ArrayList<>();
+        private final List<Integer> crcs = new ArrayList<>();
+
+        Occurrences(String className, int firstJar, int firstCrc) {
+            this.className = className;
+            add(firstJar, firstCrc);
+        }
+
+        void add(int jarIndex, int crc) {
+            jars.add(jarIndex);
+            crcs.add(crc);
+        }
+
+        String className() {
+            return className;
+        }
+    }
+
+    /**
+     * The duplicate classes found between two JAR files.
+     */
+    private static class PairConflicts {
+        private int identicalCount;
+        private final List<String> sampleIdentical = new ArrayList<>();
+        private final List<String> differing = new ArrayList<>();
+
+        void add(String entryName, boolean identical) {
+            String className = entryName.substring(0, entryName.length() - ".class".length()).replace('/', '.');
+            if (identical) {
+                identicalCount++;
+                if (sampleIdentical.size() < SAMPLE_SIZE) {
+                    sampleIdentical.add(className);
+                }
+            } else {
+                differing.add(className);
+            }
+        }
+    }
+}
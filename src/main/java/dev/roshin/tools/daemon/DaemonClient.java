@@ -0,0 +1,133 @@
+package dev.roshin.tools.daemon;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.OptionalInt;
+
+/**
+ * Forwards command line arguments to a running {@link JarManagerDaemon} and relays its output.
+ * <p>
+ * The client only needs the JDK, so a forwarded command skips the class loading and warm up of a full run.
+ */
+public class DaemonClient {
+
+    /**
+     * First argument that makes the command line forward the rest of the arguments to the daemon.
+     */
+    public static final String VIA_DAEMON = "--via-daemon";
+
+    // Private constructor to prevent instantiation
+    private DaemonClient() {
+    }
+
+    /**
+     * @return The socket of the daemon serving the current working folder.
+     */
+    public static Path defaultSocket() {
+        return DaemonProtocol.defaultSocket(Paths.get(""));
+    }
+
+    /**
+     * Runs a command on the daemon listening on the socket, relaying its output to the standard output and error.
+     *
+     * @param socketPath The socket of the daemon.
+     * @param args       The command line arguments.
+     * @return The exit code of the command, or empty if no daemon is listening on the socket.
+     */
+    public static OptionalInt forward(Path socketPath, String[] args) {
+        return forward(socketPath, args, System.out, System.err);
+    }
+
+    /**
+     * Runs a command on the daemon listening on the socket.
+     *
+     * @param socketPath The socket of the daemon.
+     * @param args       The command line arguments.
+     * @param out        The stream to relay the standard output of the command to.
+     * @param err        The stream to relay the standard error of the command to.
+     * @return The exit code of the command, or empty if no daemon is listening on the socket.
+     */
+    public static OptionalInt forward(Path socketPath, String[] args, OutputStream out, OutputStream err) {
+        SocketChannel channel = connect(socketPath);
+        if (channel == null) {
+            return OptionalInt.empty();
+        }
+        try (channel) {
+            DataOutputStream request = new DataOutputStream(Channels.newOutputStream(channel));
+            DaemonProtocol.writeRequest(request, Paths.get(""), args);
+            DataInputStream response = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            while (true) {
+                byte type = response.readByte();
+                if (type == DaemonProtocol.EXIT) {
+                    out.flush();
+                    err.flush();
+                    return OptionalInt.of(response.readInt());
+                }
+                byte[] bytes = new byte[response.readInt()];
+                response.readFully(bytes);
+                (type == DaemonProtocol.STDERR ? err : out).write(bytes);
+            }
+        } catch (EOFException e) {
+            System.err.println("The daemon closed the connection before the command finished.");
+            return OptionalInt.of(1);
+        } catch (IOException e) {
+            System.err.println("Lost the connection to the daemon: " + e.getMessage());
+            return OptionalInt.of(1);
+        }
+    }
+
+    /**
+     * Asks the daemon listening on the socket to stop.
+     *
+     * @param socketPath The socket of the daemon.
+     * @return True if a daemon was listening and was asked to stop.
+     */
+    public static boolean stop(Path socketPath) {
+        SocketChannel channel = connect(socketPath);
+        if (channel == null) {
+            return false;
+        }
+        try (channel) {
+            DaemonProtocol.writeRequest(new DataOutputStream(Channels.newOutputStream(channel)), Paths.get(""), null);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return The connection to the daemon, or null if none is listening on the socket.
+     */
+    static SocketChannel connect(Path socketPath) {
+        if (!Files.exists(socketPath)) {
+            return null;
+        }
+        SocketChannel channel = null;
+        try {
+            channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+            channel.connect(UnixDomainSocketAddress.of(socketPath));
+            return channel;
+        } catch (IOException e) {
+            // A socket file left behind by a daemon that did not shut down cleanly
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // Nothing to release
+                }
+            }
+            return null;
+        }
+    }
+}
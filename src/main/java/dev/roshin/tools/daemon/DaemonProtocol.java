@@ -0,0 +1,117 @@
+package dev.roshin.tools.daemon;
+
+import com.google.common.hash.Hashing;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Messages exchanged between the daemon and its clients over the socket.
+ * <p>
+ * A request is the working folder of the client, followed by the number of arguments and the arguments, or
+ * {@link #STOP} instead of the number of arguments to stop the daemon. The response is a sequence of frames, each a
+ * type byte followed by its payload: standard output and error frames carry a length and bytes, and the exit frame
+ * carries the exit code of the command and ends the response.
+ */
+class DaemonProtocol {
+
+    static final byte STDOUT = 'O';
+    static final byte STDERR = 'E';
+    static final byte EXIT = 'X';
+
+    // Number of arguments of a request to stop the daemon
+    static final int STOP = -1;
+
+    // Private constructor to prevent instantiation
+    private DaemonProtocol() {
+    }
+
+    /**
+     * The socket of the daemon serving a working folder. Each folder has its own daemon, as relative paths in the
+     * arguments are resolved against the working folder of the daemon.
+     *
+     * @param workingFolder The working folder.
+     * @return The socket path, in the temporary folder.
+     */
+    static Path defaultSocket(Path workingFolder) {
+        String folderHash = Hashing.sha256()
+                .hashString(workingFolder.toAbsolutePath().normalize().toString(), StandardCharsets.UTF_8)
+                .toString().substring(0, 16);
+        return Paths.get(System.getProperty("java.io.tmpdir"),
+                "jarmanager-" + System.getProperty("user.name") + "-" + folderHash + ".sock");
+    }
+
+    static void writeRequest(DataOutputStream out, Path workingFolder, String[] args) throws IOException {
+        out.writeUTF(workingFolder.toAbsolutePath().normalize().toString());
+        if (args == null) {
+            out.writeInt(STOP);
+        } else {
+            out.writeInt(args.length);
+            for (String arg : args) {
+                out.writeUTF(arg);
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * @return The arguments, or null for a request to stop the daemon.
+     */
+    static String[] readArguments(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count == STOP) {
+            return null;
+        }
+        String[] args = new String[count];
+        for (int i = 0; i < count; i++) {
+            args[i] = in.readUTF();
+        }
+        return args;
+    }
+
+    static void writeExit(DataOutputStream out, int exitCode) throws IOException {
+        synchronized (out) {
+            out.writeByte(EXIT);
+            out.writeInt(exitCode);
+            out.flush();
+        }
+    }
+
+    /**
+     * Output stream writing everything written to it as frames of one type. Writes are not buffered, so output
+     * reaches the client while the command is still running.
+     */
+    static class FrameOutputStream extends OutputStream {
+        private final DataOutputStream out;
+        private final byte type;
+
+        FrameOutputStream(DataOutputStream out, byte type) {
+            this.out = out;
+            this.type = type;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return;
+            }
+            // Output and error frames of different threads must not interleave
+            synchronized (out) {
+                out.writeByte(type);
+                out.writeInt(length);
+                out.write(bytes, offset, length);
+                out.flush();
+            }
+        }
+    }
+}
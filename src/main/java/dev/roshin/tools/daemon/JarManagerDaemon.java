@@ -0,0 +1,198 @@
+package dev.roshin.tools.daemon;
+
+import com.google.common.base.Preconditions;
+import dev.roshin.tools.config.Config;
+import dev.roshin.tools.pom_generator.PomGenerator;
+import dev.roshin.tools.util.AnsiLogger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
+
+/**
+ * Runs commands sent by {@link DaemonClient}s in a single long-running JVM.
+ * <p>
+ * Everything a fresh JVM has to set up again for every command stays warm between commands: the JIT compiled code,
+ * the parsed Maven settings, the pooled HTTP connections, the latest versions read from Maven metadata and the
+ * artifacts read from JAR files. The daemon listens on a Unix domain socket that only its user can open, and stops
+ * once no command was received for the idle timeout.
+ * <p>
+ * Commands run one at a time, as their output is captured by replacing the standard output and error of the JVM.
+ * Relative paths are resolved against the working folder of the daemon, so commands from other folders are refused.
+ */
+public class JarManagerDaemon {
+
+    /**
+     * Time without commands after which the daemon stops.
+     */
+    public static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofMinutes(30);
+
+    // Number of JAR files whose artifacts are remembered between commands
+    private static final long SCAN_CACHE_SIZE = 100_000;
+
+    private static final Logger logger = LoggerFactory.getLogger(JarManagerDaemon.class);
+
+    // Private constructor to prevent instantiation
+    private JarManagerDaemon() {
+    }
+
+    /**
+     * Listens on the socket and runs the commands received, until the idle timeout expires or a client asks the
+     * daemon to stop.
+     *
+     * @param socketPath    The socket to listen on. A socket file left behind by a daemon that is gone is replaced.
+     * @param idleTimeout   The time without commands after which the daemon stops.
+     * @param commandRunner Runs the command line arguments of a command and returns its exit code.
+     * @throws IOException If the daemon could not listen on the socket.
+     */
+    public static void serve(Path socketPath, Duration idleTimeout, ToIntFunction<String[]> commandRunner)
+            throws IOException {
+        Preconditions.checkArgument(!idleTimeout.isNegative() && !idleTimeout.isZero(),
+                "Idle timeout must be positive.");
+        SocketChannel running = DaemonClient.connect(socketPath);
+        if (running != null) {
+            running.close();
+            throw new IllegalStateException("A daemon is already listening on: " + socketPath);
+        }
+        Files.deleteIfExists(socketPath);
+
+        PomGenerator.enableScanCache(SCAN_CACHE_SIZE);
+        Path workingFolder = Paths.get("").toAbsolutePath().normalize();
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "daemon-idle-timeout");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            // The socket file appears when binding, before the socket listens, and clients finding it too early
+            // would be refused. Binding to another name and renaming the socket once it listens avoids that.
+            Path boundPath = socketPath.resolveSibling(socketPath.getFileName() + ".bind");
+            Files.deleteIfExists(boundPath);
+            server.bind(UnixDomainSocketAddress.of(boundPath));
+            try {
+                Files.setPosixFilePermissions(boundPath, PosixFilePermissions.fromString("rw-------"));
+            } catch (UnsupportedOperationException e) {
+                logger.debug("Socket permissions are not supported on this file system: {}", socketPath);
+            }
+            Files.move(boundPath, socketPath, StandardCopyOption.ATOMIC_MOVE);
+            AnsiLogger.info("Daemon listening on: {}", socketPath);
+            AnsiLogger.info("Serving commands run from: {}", workingFolder);
+
+            boolean stopped = false;
+            while (!stopped) {
+                ScheduledFuture<?> idle = timer.schedule(() -> closeQuietly(server), idleTimeout.toMillis(),
+                        TimeUnit.MILLISECONDS);
+                SocketChannel client;
+                try {
+                    client = server.accept();
+                } catch (ClosedChannelException e) {
+                    AnsiLogger.info("No command received for {}, stopping the daemon.",
+                            idleTimeout.toString().substring(2).toLowerCase());
+                    break;
+                }
+                idle.cancel(false);
+                stopped = handle(client, workingFolder, commandRunner);
+            }
+        } finally {
+            timer.shutdownNow();
+            Files.deleteIfExists(socketPath);
+        }
+    }
+
+    /**
+     * Runs the command of a client and sends back its output and exit code.
+     *
+     * @return True if the client asked the daemon to stop.
+     */
+    private static boolean handle(SocketChannel client, Path workingFolder, ToIntFunction<String[]> commandRunner) {
+        try (client) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(client)));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(client)));
+            Path clientFolder = Paths.get(in.readUTF());
+            String[] args = DaemonProtocol.readArguments(in);
+            if (args == null) {
+                AnsiLogger.info("Stop requested, stopping the daemon.");
+                return true;
+            }
+
+            PrintStream stdout = new PrintStream(new DaemonProtocol.FrameOutputStream(out, DaemonProtocol.STDOUT),
+                    true, StandardCharsets.UTF_8);
+            PrintStream stderr = new PrintStream(new DaemonProtocol.FrameOutputStream(out, DaemonProtocol.STDERR),
+                    true, StandardCharsets.UTF_8);
+            if (!clientFolder.equals(workingFolder)) {
+                stderr.println("The daemon serves commands run from " + workingFolder + ", not from " +
+                        clientFolder + ". Start a daemon in this folder.");
+                DaemonProtocol.writeExit(out, 2);
+                return false;
+            }
+            if (args.length > 0 && args[0].equals("daemon")) {
+                stderr.println("The daemon cannot run the daemon command.");
+                DaemonProtocol.writeExit(out, 2);
+                return false;
+            }
+
+            logger.info("Running command: {}", String.join(" ", args));
+            int exitCode = run(args, stdout, stderr, commandRunner);
+            DaemonProtocol.writeExit(out, exitCode);
+        } catch (IOException e) {
+            logger.warn("Lost the connection to a client", e);
+        }
+        return false;
+    }
+
+    private static int run(String[] args, PrintStream stdout, PrintStream stderr,
+                           ToIntFunction<String[]> commandRunner) {
+        PrintStream previousOut = System.out;
+        PrintStream previousErr = System.err;
+        // Console output is buffered, so it has to be written out before and after the streams are swapped
+        AnsiLogger.flush();
+        System.setOut(stdout);
+        System.setErr(stderr);
+        try {
+            // The configuration file of a previous command must not leak into this one
+            Config.getInstance().restoreDefaults();
+            return commandRunner.applyAsInt(args);
+        } catch (RuntimeException e) {
+            logger.error("Command failed: {}", String.join(" ", args), e);
+            e.printStackTrace(stderr);
+            return 1;
+        } finally {
+            AnsiLogger.flush();
+            System.setOut(previousOut);
+            System.setErr(previousErr);
+            stdout.flush();
+            stderr.flush();
+        }
+    }
+
+    private static void closeQuietly(ServerSocketChannel server) {
+        try {
+            server.close();
+        } catch (IOException e) {
+            logger.warn("Could not close the daemon socket", e);
+        }
+    }
+}
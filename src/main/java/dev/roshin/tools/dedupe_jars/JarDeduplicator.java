@@ -0,0 +1,320 @@
+package dev.roshin.tools.dedupe_jars;
+
+import com.google.common.base.Throwables;
+import com.google.common.base.Verify;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.MoreFiles;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import dev.roshin.tools.util.AnsiLogger;
+import dev.roshin.tools.util.FilePlacement;
+import dev.roshin.tools.util.JarDiscovery;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Replaces JAR files with the same content across folders by hard links to a single copy, so the content takes disk
+ * space once and is served from one set of cached pages to every reader.
+ * <p>
+ * Only files of the same size can be identical, so files with a size of their own are never read. Files that are
+ * already links to each other are read once. The others are hashed with SHA-256 in parallel. Files are only linked to a
+ * copy on the same file store, so each file store keeps a copy of its own.
+ * <p>
+ * Linked files share their content: a tool writing into one of them in place changes all of them. The commands of this
+ * tool always replace files rather than write into them.
+ * <p>
+ * A file is only replaced if it and the file it is linked to still have the size, modification time and file key they
+ * had before hashing, so a JAR file rewritten during the run, for example by a download, is left as it is.
+ */
+public class JarDeduplicator {
+
+    private static final Logger logger = LoggerFactory.getLogger(JarDeduplicator.class);
+
+    // Number of JAR files hashed at the same time
+    private static final int PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * JAR files with the same content on the same file store.
+     *
+     * @param size       The size of each file, in bytes.
+     * @param kept       The file the others are linked to, which is the one with the most links already.
+     * @param duplicates The files replaced by a link to the kept file, not counting those that already were.
+     */
+    public record DuplicateGroup(long size, Path kept, List<Path> duplicates) {
+    }
+
+    /**
+     * The result of a deduplication.
+     *
+     * @param jarCount    The number of JAR files found in the folders.
+     * @param hashedCount The number of files that were hashed.
+     * @param groups      The groups of identical files that were not all linked yet.
+     * @param linkedCount The number of files replaced by a link.
+     * @param savedBytes  The disk space freed, or that would be freed by a dry run.
+     */
+    public record DedupeReport(int jarCount, int hashedCount, List<DuplicateGroup> groups, int linkedCount,
+                               long savedBytes) {
+    }
+
+    // Private constructor to prevent instantiation
+    private JarDeduplicator() {
+    }
+
+    /**
+     * Links identical JAR files below the folders to one copy and prints a report.
+     *
+     * @param folders          The folders containing the JAR files.
+     * @param discoveryOptions The options controlling which JAR files below the folders are used.
+     * @param dryRun           Only report the duplicates, without replacing any file.
+     * @return The report of the duplicates found.
+     */
+    public static DedupeReport dedupe(List<Path> folders, JarDiscovery.Options discoveryOptions, boolean dryRun) {
+        Set<Path> jars = new LinkedHashSet<>();
+        for (Path folder : folders) {
+            Verify.verify(Files.isDirectory(folder), "Folder does not exist: %s", folder);
+            try (Stream<Path> found = JarDiscovery.find(folder, discoveryOptions, ".jar")) {
+                found.map(jar -> jar.toAbsolutePath().normalize()).forEach(jars::add);
+            }
+        }
+
+        DedupeReport report = dedupe(jars, dryRun);
+        printReport(report, dryRun);
+        return report;
+    }
+
+    /**
+     * Finds the identical files and, unless it is a dry run, links them.
+     *
+     * @param jars   The JAR files.
+     * @param dryRun Only find the duplicates.
+     * @return The report of the duplicates found.
+     */
+    protected static DedupeReport dedupe(Set<Path> jars, boolean dryRun) {
+        // Group by size, then by file, as a file with several links only needs to be read once
+        Map<Long, Map<Object, List<Path>>> bySize = new HashMap<>();
+        Map<Path, FileState> states = new HashMap<>();
+        for (Path jar : jars) {
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(jar, BasicFileAttributes.class);
+            } catch (IOException e) {
+                AnsiLogger.warning(logger, "Could not read {}, leaving it as it is: {}", jar, e.getMessage());
+                continue;
+            }
+            states.put(jar, FileState.of(attributes));
+            Object fileKey = attributes.fileKey() != null ? attributes.fileKey() : jar;
+            bySize.computeIfAbsent(attributes.size(), size -> new LinkedHashMap<>())
+                    .computeIfAbsent(fileKey, key -> new ArrayList<>()).add(jar);
+        }
+
+        List<FileLinks> candidates = new ArrayList<>();
+        bySize.forEach((size, files) -> {
+            if (files.size() > 1) {
+                files.values().forEach(paths -> candidates.add(new FileLinks(size, paths)));
+            }
+        });
+        Map<FileLinks, HashCode> hashes = hash(candidates);
+
+        // Files with the same size and hash are identical, but can only be linked on the same file store
+        Map<HashCode, List<FileLinks>> byContent = new LinkedHashMap<>();
+        for (FileLinks file : candidates) {
+            HashCode hash = hashes.get(file);
+            if (hash != null) {
+                byContent.computeIfAbsent(hash, key -> new ArrayList<>()).add(file);
+            }
+        }
+        List<DuplicateGroup> groups = new ArrayList<>();
+        for (List<FileLinks> identical : byContent.values()) {
+            for (List<FileLinks> sameStore : byFileStore(identical)) {
+                if (sameStore.size() > 1) {
+                    groups.add(toGroup(sameStore));
+                }
+            }
+        }
+        groups.sort(Comparator.comparing(DuplicateGroup::kept));
+
+        int linkedCount = 0;
+        long savedBytes = 0;
+        for (DuplicateGroup group : groups) {
+            // The duplicates of a file that already has other links only free space once all of them are replaced
+            Map<Object, Integer> remainingLinks = new HashMap<>();
+            Map<Path, Object> fileKeys = new HashMap<>();
+            for (Path duplicate : group.duplicates()) {
+                Object fileKey = fileKey(duplicate);
+                fileKeys.put(duplicate, fileKey);
+                remainingLinks.merge(fileKey, 1, Integer::sum);
+            }
+            for (Path duplicate : group.duplicates()) {
+                if (!dryRun) {
+                    // The hashes are only as recent as the files they were taken from
+                    if (!states.get(group.kept()).matches(group.kept()) || !states.get(duplicate).matches(duplicate)) {
+                        AnsiLogger.warning(logger, "{} or {} changed since it was hashed, leaving {} as it is",
+                                duplicate, group.kept(), duplicate);
+                        continue;
+                    }
+                    try {
+                        FilePlacement.replaceWithLink(group.kept(), duplicate);
+                    } catch (IOException e) {
+                        AnsiLogger.warning(logger, "Could not link {} to {}: {}", duplicate, group.kept(),
+                                e.getMessage());
+                        continue;
+                    }
+                }
+                linkedCount++;
+                if (remainingLinks.merge(fileKeys.get(duplicate), -1, Integer::sum) == 0) {
+                    savedBytes += group.size();
+                }
+            }
+        }
+        return new DedupeReport(jars.size(), hashes.size(), groups, linkedCount, savedBytes);
+    }
+
+    /*
+     * Hashes one path of each file in parallel. Files that could not be read are left out.
+     */
+    private static Map<FileLinks, HashCode> hash(List<FileLinks> files) {
+        Map<FileLinks, HashCode> hashes = new HashMap<>();
+        ExecutorService executor = Executors.newFixedThreadPool(PARALLELISM);
+        try {
+            Map<FileLinks, Future<HashCode>> hashing = new LinkedHashMap<>();
+            for (FileLinks file : files) {
+                hashing.put(file, executor.submit(() -> {
+                    try {
+                        return MoreFiles.asByteSource(file.paths().get(0)).hash(Hashing.sha256());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }));
+            }
+            for (Map.Entry<FileLinks, Future<HashCode>> entry : hashing.entrySet()) {
+                try {
+                    hashes.put(entry.getKey(), Futures.getUnchecked(entry.getValue()));
+                } catch (UncheckedExecutionException e) {
+                    if (!(e.getCause() instanceof UncheckedIOException)) {
+                        throw e;
+                    }
+                    AnsiLogger.warning(logger, "Could not read {}, leaving it as it is: {}",
+                            entry.getKey().paths().get(0), e.getCause().getMessage());
+                }
+            }
+        } catch (UncheckedExecutionException e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw e;
+        } finally {
+            executor.shutdownNow();
+        }
+        return hashes;
+    }
+
+    /*
+     * Splits identical files by the file store they are on.
+     */
+    private static List<List<FileLinks>> byFileStore(List<FileLinks> identical) {
+        List<List<FileLinks>> stores = new ArrayList<>();
+        for (FileLinks file : identical) {
+            List<FileLinks> store = stores.stream()
+                    .filter(candidate -> FilePlacement.sameFileStore(candidate.get(0).paths().get(0),
+                            file.paths().get(0)))
+                    .findFirst()
+                    .orElse(null);
+            if (store == null) {
+                store = new ArrayList<>();
+                stores.add(store);
+            }
+            store.add(file);
+        }
+        return stores;
+    }
+
+    /*
+     * Keeps the file with the most links, so the fewest paths are replaced, and the first path of it in sort order.
+     */
+    private static DuplicateGroup toGroup(List<FileLinks> identical) {
+        FileLinks kept = identical.stream()
+                .max(Comparator.<FileLinks>comparingInt(file -> file.paths().size())
+                        .thenComparing(file -> file.paths().get(0), Comparator.reverseOrder()))
+                .orElseThrow();
+        List<Path> duplicates = new ArrayList<>();
+        for (FileLinks file : identical) {
+            if (file != kept) {
+                duplicates.addAll(file.paths());
+            }
+        }
+        duplicates.sort(Comparator.naturalOrder());
+        return new DuplicateGroup(kept.size(), kept.paths().stream().sorted().findFirst().orElseThrow(), duplicates);
+    }
+
+    private static Object fileKey(Path path) {
+        try {
+            Object fileKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+            return fileKey != null ? fileKey : path;
+        } catch (IOException e) {
+            return path;
+        }
+    }
+
+    private static void printReport(DedupeReport report, boolean dryRun) {
+        AnsiLogger.info("Found {} JAR files, hashed {} of them", report.jarCount(), report.hashedCount());
+        for (DuplicateGroup group : report.groups()) {
+            AnsiLogger.info("{} copies of {} ({} bytes)", group.duplicates().size() + 1, group.kept(), group.size());
+            for (Path duplicate : group.duplicates()) {
+                AnsiLogger.info("    {}", duplicate);
+            }
+        }
+        long savedMegabytes = report.savedBytes() / (1024 * 1024);
+        if (report.groups().isEmpty()) {
+            AnsiLogger.success("No duplicate JAR files found");
+        } else if (dryRun) {
+            AnsiLogger.info("Linking {} JAR files would free {} MB", report.linkedCount(), savedMegabytes);
+        } else {
+            AnsiLogger.success("Linked {} JAR files, freeing {} MB", report.linkedCount(), savedMegabytes);
+        }
+    }
+
+    /**
+     * The attributes that change when a file is written or replaced.
+     */
+    record FileState(Object fileKey, FileTime lastModified, long size) {
+        static FileState of(BasicFileAttributes attributes) {
+            return new FileState(attributes.fileKey(), attributes.lastModifiedTime(), attributes.size());
+        }
+
+        /**
+         * @param path The path the state was read from.
+         * @return Whether the file at the path still has this state.
+         */
+        boolean matches(Path path) {
+            try {
+                return equals(of(Files.readAttributes(path, BasicFileAttributes.class)));
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * The paths of one file, more than one if it already has several links.
+     */
+    private record FileLinks(long size, List<Path> paths) {
+    }
+}
@@ -5,33 +5,51 @@ import com.google.common.base.Verify;
 import com.google.common.collect.Lists;
 import dev.roshin.tools.config.Config;
 import dev.roshin.tools.download_jars.domain.Artifact;
+import dev.roshin.tools.download_jars.domain.ArtifactCatalog;
+import dev.roshin.tools.download_jars.util.HttpClientProvider;
+import dev.roshin.tools.download_jars.util.LocalRepository;
 import dev.roshin.tools.download_jars.util.MavenMetadataUtility;
 import dev.roshin.tools.pom_generator.PomGenerator;
 import dev.roshin.tools.util.AnsiLogger;
 import dev.roshin.tools.util.ChangesFileUtil;
+import dev.roshin.tools.util.FilePlacement;
+import dev.roshin.tools.util.JarDiscovery;
 import org.apache.hc.client5.http.classic.methods.HttpGet;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
-import org.apache.hc.client5.http.impl.classic.HttpClients;
-import org.apache.hc.core5.http.io.HttpClientResponseHandler;
-import org.apache.hc.core5.http.io.entity.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
+import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
 
 public class ArtifactDownloader {
 
+    /**
+     * Number of artifacts downloaded at the same time.
+     */
+    public static final int DOWNLOAD_PARALLELISM = HttpClientProvider.MAX_CONNECTIONS_PER_ROUTE;
+
     /*
-     * Download the artifact from the Maven repository.
+     * Download the artifact from the Maven repository as part of a run, recording the files in a lockfile.
      *
      * @param artifact The artifact to download.
      * @param existingArtifact The existing artifact in the target folder.
@@ -40,24 +58,40 @@ public class ArtifactDownloader {
      * @param targetFolderPath The target folder to download the artifact.
      * @param sourceTargetFolderPath The target folder to download the sources.
      * @param downloadSources Download the sources.
+     * @param changesLog The changes log to record the download in, or null to not record it.
      * @param apiKey The API key to access the Maven repository.
      * @param useRemoteName Use the remote name for the downloaded artifact.
      * @param explicitDelete Explicitly delete the existing artifact.
+     * @param lock The lockfile to record the files in, including an existing artifact that is kept, or null to not
+     * record them.
+     * @param run The run the download is part of, which gives each request its deadline and can cancel it.
      *
-     * @return The downloaded artifact.
+     * @return The downloaded artifact, or empty if the download failed or was cancelled.
      */
     protected static Optional<Artifact> downloadArtifact(final Artifact artifact, final Artifact existingArtifact,
                                                          final boolean replaceOnlyIfDifferent, final String artifactPath,
                                                          final Path targetFolderPath, final Path sourceTargetFolderPath,
-                                                         final boolean downloadSources, final boolean updateChangesLog,
-                                                         final String apiKey, boolean useRemoteName, boolean explicitDelete) {
+                                                         final boolean downloadSources, final ChangesFileUtil changesLog,
+                                                         final String apiKey, boolean useRemoteName, boolean explicitDelete,
+                                                         final LockFile lock, final DownloadRun run) {
         Logger logger = LoggerFactory.getLogger(ArtifactDownloader.class);
+        if (run.isCancelled()) {
+            run.artifactCancelled();
+            return Optional.empty();
+        }
 
         logger.info("Requested version of {} is {}", artifact.artifactId(), artifact.version());
         String versionString = artifact.version().orElse("latest");
         //Get the latest version of the artifact, if version is latest
         if (versionString.equals("latest")) {
-            Optional<String> versionOptional = MavenMetadataUtility.getLatestVersion(artifactPath, apiKey);
+            Optional<String> versionOptional;
+            try {
+                versionOptional = MavenMetadataUtility.getLatestVersion(artifactPath, apiKey, run);
+            } catch (CancellationException e) {
+                run.artifactCancelled();
+                logger.info("Version lookup of {} cancelled", artifact.artifactId());
+                return Optional.empty();
+            }
             if (versionOptional.isPresent()) {
                 versionString = versionOptional.get();
             } else {
@@ -72,6 +106,11 @@ public class ArtifactDownloader {
                 existingArtifact.version().get().equals(versionString)) {
             AnsiLogger.info(logger, "Artifact {} of version {} already exists, skipping download",
                     artifact.artifactId(), versionString);
+            if (existingArtifact.localJarPath().isPresent()) {
+                recordInLock(lock, artifact, versionString, artifactPath, existingArtifact.localJarPath().get(),
+                        downloadSources ? sourceTargetFolderPath.resolve(artifact.artifactId() + "-sources.jar")
+                                : null);
+            }
             return Optional.of(existingArtifact);
         }
 
@@ -101,58 +140,55 @@ public class ArtifactDownloader {
 
         // Download the artifact
         try {
-            URI downloadUri = new URI(downloadUrl);
-            HttpClientResponseHandler<byte[]> responseHandler = response -> {
-                if (response.getCode() == 200) { // Check for HTTP 200 OK
-                    return EntityUtils.toByteArray(response.getEntity());
-                } else {
-                    throw new RuntimeException("Failed to download artifact: HTTP " + response.getCode());
-                }
-            };
+            // Nothing is placed once the run is cancelled, not even from the local repository
+            run.checkNotCancelled();
 
-            try (CloseableHttpClient client = HttpClients.createDefault()) {
-                HttpGet request = new HttpGet(downloadUri);
-                request.setHeader("X-JFrog-Art-Api", apiKey);
+            // The client is shared by all downloads, so it is not closed here
+            CloseableHttpClient client = HttpClientProvider.getClient();
 
-                // The jar name is the artifact name with the jar extension or the remote name
-                String jarName = useRemoteName ? remoteName : artifact.artifactId() + ".jar";
+            // Files already in the local Maven repository are placed without a download
+            Optional<Path> localRepository = Config.getInstance().getLocalRepository();
 
-                byte[] artifactData = client.execute(request, responseHandler);
-                String jarPath = targetFolderPath + "/" + jarName;
-                try (FileOutputStream outstream = new FileOutputStream(jarPath)) {
-                    outstream.write(artifactData);
-                }
-
-                // Download the sources if required
-                if (downloadSources) {
-                    URI sourcesUri = new URI(sourcesUrl);
-                    HttpGet sourceRequest = new HttpGet(sourcesUri);
-                    sourceRequest.setHeader("X-JFrog-Art-Api", apiKey);
-
-                    String sourceJarName = artifact.artifactId() + "-sources.jar";
+            // The jar name is the artifact name with the jar extension or the remote name
+            String jarName = useRemoteName ? remoteName : artifact.artifactId() + ".jar";
 
-                    byte[] sourcesData = client.execute(sourceRequest, responseHandler);
-                    String sourceJarPath = sourceTargetFolderPath + "/" + sourceJarName;
-                    try (FileOutputStream outstream = new FileOutputStream(sourceJarPath)) {
-                        outstream.write(sourcesData);
-                    }
-                }
+            String jarPath = targetFolderPath + "/" + jarName;
+            if (!placeFromLocalRepository(localRepository, artifact, versionString, null, Paths.get(jarPath))) {
+                downloadFile(client, run, downloadUrl, apiKey, Paths.get(jarPath));
+            }
 
-                // Update the changes log, if required
-                if (updateChangesLog) {
-                    // Figure out action
-                    ChangesFileUtil.Action action = existingArtifact == null ? ChangesFileUtil.Action.ADDED
-                            : ChangesFileUtil.Action.UPDATED;
-                    String previousVersion = existingArtifact == null ? "" : existingArtifact.version()
-                            .orElse("");
-                    ChangesFileUtil.getInstance(Paths.get("")).addEntry(action, jarName, artifact.groupId(),
-                            artifact.artifactId(), versionString, previousVersion);
+            // Download the sources if required
+            if (downloadSources) {
+                String sourceJarName = artifact.artifactId() + "-sources.jar";
+                String sourceJarPath = sourceTargetFolderPath + "/" + sourceJarName;
+                if (!placeFromLocalRepository(localRepository, artifact, versionString, "sources",
+                        Paths.get(sourceJarPath))) {
+                    downloadFile(client, run, sourcesUrl, apiKey, Paths.get(sourceJarPath));
                 }
+            }
 
-                // Create the artifact response object
-                return Optional.of(new Artifact(artifact.groupId(), artifact.artifactId(),
-                        Optional.of(versionString), Optional.of(Paths.get(jarPath))));
+            recordInLock(lock, artifact, versionString, artifactPath, Paths.get(jarPath),
+                    downloadSources ? Paths.get(sourceTargetFolderPath + "/" + artifact.artifactId() + "-sources.jar")
+                            : null);
+
+            // Update the changes log, if required
+            if (changesLog != null) {
+                // Figure out action
+                ChangesFileUtil.Action action = existingArtifact == null ? ChangesFileUtil.Action.ADDED
+                        : ChangesFileUtil.Action.UPDATED;
+                String previousVersion = existingArtifact == null ? "" : existingArtifact.version()
+                        .orElse("");
+                changesLog.addEntry(action, jarName, artifact.groupId(),
+                        artifact.artifactId(), versionString, previousVersion);
             }
+
+            // Create the artifact response object
+            return Optional.of(new Artifact(artifact.groupId(), artifact.artifactId(),
+                    Optional.of(versionString), Optional.of(Paths.get(jarPath))));
+        } catch (CancellationException e) {
+            run.artifactCancelled();
+            logger.info("Download of {} cancelled", artifact.artifactId());
+            return Optional.empty();
         } catch (Exception e) {
             AnsiLogger.error(logger, "Error downloading artifact: {}", e.getMessage());
             logger.error("Error downloading artifact", e);
@@ -161,6 +197,94 @@ public class ArtifactDownloader {
     }
 
 
+    /*
+     * Records the files of an artifact in the lockfile.
+     *
+     * @param lock The lockfile, or null to not record them.
+     * @param artifact The artifact, as requested in the spec file.
+     * @param version The resolved version.
+     * @param artifactPath The URL of the artifact in the repository, without the version.
+     * @param jar The JAR file.
+     * @param sourceJar The source JAR file, or null if sources are not downloaded.
+     */
+    private static void recordInLock(final LockFile lock, final Artifact artifact, final String version,
+                                     final String artifactPath, final Path jar, final Path sourceJar) {
+        if (lock == null) {
+            return;
+        }
+        String spec = LockFile.specOf(artifact);
+        String url = String.format("%s/%s/%s-%s", artifactPath, version, artifact.artifactId(), version);
+        try {
+            lock.record(spec, LockFile.Kind.JAR, version, jar, url + ".jar");
+            if (sourceJar != null && Files.exists(sourceJar)) {
+                lock.record(spec, LockFile.Kind.SOURCES, version, sourceJar, url + "-sources.jar");
+            }
+        } catch (IOException e) {
+            AnsiLogger.warning(LoggerFactory.getLogger(ArtifactDownloader.class),
+                    "Could not record {} in the lockfile: {}", spec, e.getMessage());
+        }
+    }
+
+    /*
+     * Places a file of the artifact from the local Maven repository, if it is there.
+     *
+     * @param localRepository The local repository, or empty if there is none.
+     * @param artifact The artifact.
+     * @param version The resolved version of the artifact.
+     * @param classifier The classifier of the file, or null for the main JAR.
+     * @param target The path to place the file at.
+     *
+     * @return Whether the file was placed, otherwise it has to be downloaded.
+     */
+    private static boolean placeFromLocalRepository(final Optional<Path> localRepository, final Artifact artifact,
+                                                    final String version, final String classifier, final Path target) {
+        if (localRepository.isEmpty()) {
+            return false;
+        }
+        Optional<Path> localFile = LocalRepository.find(localRepository.get(), artifact.groupId(),
+                artifact.artifactId(), version, classifier);
+        if (localFile.isEmpty()) {
+            return false;
+        }
+        Logger logger = LoggerFactory.getLogger(ArtifactDownloader.class);
+        try {
+            FilePlacement.Strategy strategy = LocalRepository.place(localFile.get(), target);
+            logger.info("Placed {} from the local repository by {}", localFile.get(), strategy);
+            return true;
+        } catch (IOException e) {
+            logger.warn("Failed to place {} from the local repository, downloading it", localFile.get(), e);
+            return false;
+        }
+    }
+
+    /*
+     * Downloads a file to a .part file next to it and moves it into place once it is complete, so a failed or cancelled
+     * download never leaves a truncated file behind. The move replaces an existing file rather than writing into it, as
+     * it can be a link into the local repository that must not be written through.
+     */
+    private static void downloadFile(final CloseableHttpClient client, final DownloadRun run, final String url,
+                                     final String apiKey, final Path target) throws IOException, URISyntaxException {
+        Path part = target.resolveSibling(target.getFileName() + ".part");
+        HttpGet request = new HttpGet(new URI(url));
+        request.setConfig(HttpClientProvider.requestConfig());
+        request.setHeader("X-JFrog-Art-Api", apiKey);
+        try {
+            run.execute(client, request, response -> {
+                if (response.getCode() != 200) { // Check for HTTP 200 OK
+                    throw new RuntimeException("Failed to download artifact: HTTP " + response.getCode());
+                }
+                try (InputStream content = response.getEntity().getContent()) {
+                    Files.copy(content, part, StandardCopyOption.REPLACE_EXISTING);
+                }
+                return null;
+            });
+            Files.move(part, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(part);
+        }
+    }
+
+
     /*
      * Download the artifacts specified in the spec file.
      *
@@ -176,6 +300,82 @@ public class ArtifactDownloader {
     public static void downloadArtifacts(final Path specFilePath, final Path targetFolderPath,
                                          final String sourceTargetFolder, final boolean updateDifferentOnly,
                                          final String changesLogPathString, boolean useRemoteName, boolean explicitDelete) {
+        downloadArtifacts(specFilePath, targetFolderPath, sourceTargetFolder, updateDifferentOnly, changesLogPathString,
+                useRemoteName, explicitDelete, JarDiscovery.Options.flat());
+    }
+
+    /*
+     * Download the artifacts specified in the spec file.
+     *
+     * @param specFilePath The path to the spec file.
+     * @param targetFolderPath The target folder to download the artifacts.
+     * @param sourceTargetFolder The target folder to download the sources.
+     * @param updateDifferentOnly Replace the existing artifacts only if different.
+     * @param changesLogPathString The path to the changes log file.
+     * @param useRemoteName Use the remote name for the downloaded artifacts.
+     * @param explicitDelete Explicitly delete the existing artifacts.
+     * @param discoveryOptions The options controlling which existing JARs below the target folder are considered.
+     *
+     */
+    public static void downloadArtifacts(final Path specFilePath, final Path targetFolderPath,
+                                         final String sourceTargetFolder, final boolean updateDifferentOnly,
+                                         final String changesLogPathString, boolean useRemoteName, boolean explicitDelete,
+                                         final JarDiscovery.Options discoveryOptions) {
+        downloadArtifacts(specFilePath, targetFolderPath, sourceTargetFolder, updateDifferentOnly, changesLogPathString,
+                useRemoteName, explicitDelete, discoveryOptions, false);
+    }
+
+    /*
+     * Download the artifacts specified in the spec file.
+     * <p>
+     * Without locked, the versions and files of the run are written to the lockfile of the spec file. With locked,
+     * they are taken from that lockfile instead: no versions are looked up, files that match their entry are kept,
+     * and the rest are downloaded and checked against the SHA-1 of their entry.
+     *
+     * @param specFilePath The path to the spec file.
+     * @param targetFolderPath The target folder to download the artifacts.
+     * @param sourceTargetFolder The target folder to download the sources.
+     * @param updateDifferentOnly Replace the existing artifacts only if different.
+     * @param changesLogPathString The path to the changes log file.
+     * @param useRemoteName Use the remote name for the downloaded artifacts.
+     * @param explicitDelete Explicitly delete the existing artifacts.
+     * @param discoveryOptions The options controlling which existing JARs below the target folder are considered.
+     * @param locked Download exactly what the lockfile of the spec file records.
+     *
+     */
+    public static void downloadArtifacts(final Path specFilePath, final Path targetFolderPath,
+                                         final String sourceTargetFolder, final boolean updateDifferentOnly,
+                                         final String changesLogPathString, boolean useRemoteName, boolean explicitDelete,
+                                         final JarDiscovery.Options discoveryOptions, boolean locked) {
+        downloadArtifacts(specFilePath, targetFolderPath, sourceTargetFolder, updateDifferentOnly, changesLogPathString,
+                useRemoteName, explicitDelete, discoveryOptions, locked, null);
+    }
+
+    /*
+     * Download the artifacts specified in the spec file, within a deadline.
+     * <p>
+     * Each request is aborted once it takes longer than the configured request timeout. When the deadline passes, or
+     * the JVM is stopped with Ctrl-C, the downloads in flight are aborted, no new ones are started, and partial files
+     * are removed. The run ends with a summary of the downloaded, failed and cancelled artifacts, and a cancelled run
+     * throws once the summary is written.
+     *
+     * @param specFilePath The path to the spec file.
+     * @param targetFolderPath The target folder to download the artifacts.
+     * @param sourceTargetFolder The target folder to download the sources.
+     * @param updateDifferentOnly Replace the existing artifacts only if different.
+     * @param changesLogPathString The path to the changes log file.
+     * @param useRemoteName Use the remote name for the downloaded artifacts.
+     * @param explicitDelete Explicitly delete the existing artifacts.
+     * @param discoveryOptions The options controlling which existing JARs below the target folder are considered.
+     * @param locked Download exactly what the lockfile of the spec file records.
+     * @param deadline The longest the downloads may take, or null for no limit.
+     *
+     */
+    public static void downloadArtifacts(final Path specFilePath, final Path targetFolderPath,
+                                         final String sourceTargetFolder, final boolean updateDifferentOnly,
+                                         final String changesLogPathString, boolean useRemoteName, boolean explicitDelete,
+                                         final JarDiscovery.Options discoveryOptions, boolean locked,
+                                         final Duration deadline) {
         Logger logger = LoggerFactory.getLogger(ArtifactDownloader.class);
 
         // Check if spec file exists
@@ -183,16 +383,29 @@ public class ArtifactDownloader {
 
         // Get the list of artifacts to download
         List<Artifact> artifacts = parseSpecFile(specFilePath);
+        List<String> specs = artifacts.stream().map(LockFile::specOf).toList();
+
+        // In locked mode every spec entry must be in the lockfile, checked before anything is downloaded
+        Path lockFilePath = LockFile.pathFor(specFilePath);
+        LockFile lock;
+        if (locked) {
+            Verify.verify(Files.exists(lockFilePath), "Lockfile does not exist: %s", lockFilePath);
+            lock = LockFile.read(lockFilePath);
+            List<String> unlocked = specs.stream()
+                    .filter(spec -> lock.get(spec, LockFile.Kind.JAR).isEmpty())
+                    .toList();
+            Verify.verify(unlocked.isEmpty(), "Spec entries missing from lockfile %s: %s", lockFilePath, unlocked);
+        } else {
+            lock = LockFile.create();
+        }
 
         // Check if the target folder exists
         Verify.verify(Files.exists(targetFolderPath), "Target folder does not exist: %s",
                 targetFolderPath);
 
         // We only need to download source files if the sourceTargetFolderPath is not null
-        boolean downloadSources = false;
         Path sourceTargetFolderPath = null;
         if (!Strings.isNullOrEmpty(sourceTargetFolder)) {
-            downloadSources = true;
             sourceTargetFolderPath = Paths.get(sourceTargetFolder);
             Verify.verify(Files.exists(sourceTargetFolderPath), "Source target folder does not" +
                             " exist: %s",
@@ -200,49 +413,220 @@ public class ArtifactDownloader {
         }
 
         // We only need to update the changelog if the changesLogPath is not null
-        boolean updateChangesLog = false;
+        ChangesFileUtil changesLog = null;
         if (!Strings.isNullOrEmpty(changesLogPathString)) {
             Path changesLogPath = Paths.get(changesLogPathString);
-            updateChangesLog = true;
-            Verify.verify(Files.exists(changesLogPath.getParent()), "Changes log file does " +
+            Verify.verify(Files.exists(changesLogPath.toAbsolutePath().getParent()), "Changes log file does " +
                     "not exist: %s", changesLogPath);
-            ChangesFileUtil.getInstance(changesLogPath);
+            changesLog = ChangesFileUtil.getInstance(changesLogPath);
         }
 
         // If we are updating only new files, get the current list of files in the target folder
-        List<Artifact> existingArtifacts = Lists.newArrayList();
-        if (updateDifferentOnly) {
-            // Get jar files in target folder
-            File dir = targetFolderPath.toFile();
-            File[] files = dir.listFiles((d, name) -> name.endsWith(".jar"));
-            if (files == null) {
+        ArtifactCatalog existingArtifacts = new ArtifactCatalog();
+        Map<Artifact, String> lockedSpecs = new HashMap<>();
+        if (locked) {
+            // The lockfile already tells which files are up to date, so the target folder is not scanned
+            artifacts = lockedArtifacts(artifacts, lock, targetFolderPath, sourceTargetFolderPath, useRemoteName,
+                    lockedSpecs);
+        } else if (updateDifferentOnly) {
+            // Get artifacts from the jar files in the target folder
+            try (Stream<Path> jars = JarDiscovery.find(targetFolderPath, discoveryOptions, ".jar")) {
+                existingArtifacts = PomGenerator.createArtifactCatalog(jars, true);
+            }
+            if (existingArtifacts.isEmpty()) {
                 AnsiLogger.warning(logger, "No JAR files found in target folder: {}, " +
                         "update only flag is ignored", targetFolderPath);
             } else {
-                // Get artifacts in the target folder
-                existingArtifacts = PomGenerator.createArtifactList(files, true);
                 // Remove existing artifacts from the list
                 // this only removes jars with versions, not the latest
-                artifacts.removeAll(existingArtifacts);
+                artifacts.removeIf(existingArtifacts::contains);
             }
         }
 
-        // Get the api key and base url from the configuration
-        String baseUrl = Config.getInstance().getMavenBaseUrl();
-        String apiKey = Config.getInstance().getMavenApiKey().orElse("");
-        // Download the artifacts
+        // Download the artifacts, cancelling them all if the JVM is stopped, for example with Ctrl-C
+        DownloadRun run = new DownloadRun(Config.getInstance().getHttpRequestTimeout());
+        run.cancelOnExit();
+        ExecutorService executor = Executors.newFixedThreadPool(DOWNLOAD_PARALLELISM);
+        try {
+            List<CompletableFuture<Optional<Artifact>>> downloads = startDownloads(artifacts, existingArtifacts,
+                    updateDifferentOnly, targetFolderPath, sourceTargetFolderPath, changesLog, useRemoteName,
+                    explicitDelete, executor, locked ? null : lock, run);
+            run.await(downloads, deadline);
+            run.printSummary();
+        } finally {
+            executor.shutdownNow();
+            run.finish();
+        }
+        Verify.verify(!run.isCancelled(), "Download cancelled: %s", run.cancelReason());
+
+        if (locked) {
+            List<String> mismatches = new ArrayList<>();
+            for (Artifact artifact : artifacts) {
+                String spec = lockedSpecs.get(artifact);
+                checkLocked(lock, spec, LockFile.Kind.JAR,
+                        lockedJarPath(artifact, targetFolderPath, useRemoteName), mismatches);
+                if (sourceTargetFolderPath != null) {
+                    checkLocked(lock, spec, LockFile.Kind.SOURCES,
+                            lockedSourcesPath(artifact, sourceTargetFolderPath), mismatches);
+                }
+            }
+            Verify.verify(mismatches.isEmpty(), "Downloaded files do not match lockfile %s: %s", lockFilePath,
+                    mismatches);
+        } else {
+            try {
+                if (lock.write(lockFilePath, specs)) {
+                    AnsiLogger.info(logger, "Wrote lockfile {}", lockFilePath);
+                } else {
+                    AnsiLogger.info(logger, "Lockfile unchanged, skipped writing: {}", lockFilePath);
+                }
+            } catch (IOException e) {
+                AnsiLogger.warning(logger, "Failed to write lockfile {}: {}", lockFilePath, e.getMessage());
+                logger.warn("Failed to write lockfile", e);
+            }
+        }
+    }
+
+    /*
+     * Pins the artifacts to the versions of the lockfile and leaves out the ones whose files match their entries.
+     *
+     * @param artifacts The artifacts of the spec file, all of which are in the lockfile.
+     * @param lock The lockfile.
+     * @param targetFolderPath The target folder of the artifacts.
+     * @param sourceTargetFolderPath The target folder of the sources, or null if they are not downloaded.
+     * @param useRemoteName Use the remote name for the downloaded artifacts.
+     * @param lockedSpecs Filled with the spec entry of each returned artifact.
+     *
+     * @return The pinned artifacts that need to be downloaded.
+     */
+    private static List<Artifact> lockedArtifacts(final List<Artifact> artifacts, final LockFile lock,
+                                                  final Path targetFolderPath, final Path sourceTargetFolderPath,
+                                                  boolean useRemoteName, final Map<Artifact, String> lockedSpecs) {
+        Logger logger = LoggerFactory.getLogger(ArtifactDownloader.class);
+        List<Artifact> pinned = new ArrayList<>(artifacts.size());
         for (Artifact artifact : artifacts) {
-            // Download the artifact
-            Artifact existingArtifact = existingArtifacts.stream()
-                    .filter(a -> a.artifactId().equals(artifact.artifactId()))
-                    .findFirst()
-                    .orElse(null);
-
-            Optional<Artifact> downloadedArtifact = downloadArtifact(artifact, existingArtifact,
-                    updateDifferentOnly, createArtifactPath(baseUrl, artifact), targetFolderPath, sourceTargetFolderPath,
-                    downloadSources, updateChangesLog, apiKey, useRemoteName, explicitDelete);
+            String spec = LockFile.specOf(artifact);
+            LockFile.Entry jar = lock.get(spec, LockFile.Kind.JAR).orElseThrow();
+            Artifact lockedArtifact = new Artifact(artifact.groupId(), artifact.artifactId(),
+                    Optional.of(jar.version()), Optional.empty());
+            boolean upToDate = lock.matches(jar, lockedJarPath(lockedArtifact, targetFolderPath, useRemoteName));
+            if (upToDate && sourceTargetFolderPath != null) {
+                Optional<LockFile.Entry> sources = lock.get(spec, LockFile.Kind.SOURCES);
+                upToDate = sources.isPresent()
+                        && lock.matches(sources.get(), lockedSourcesPath(lockedArtifact, sourceTargetFolderPath));
+            }
+            if (upToDate) {
+                AnsiLogger.info(logger, "Artifact {} of version {} matches the lockfile, skipping download",
+                        artifact.artifactId(), jar.version());
+            } else {
+                pinned.add(lockedArtifact);
+                lockedSpecs.put(lockedArtifact, spec);
+            }
+        }
+        return pinned;
+    }
+
+    /*
+     * Checks a downloaded file against its lockfile entry, if it has one.
+     *
+     * @param lock The lockfile.
+     * @param spec The spec entry of the file.
+     * @param kind Whether the file is the JAR or the source JAR.
+     * @param file The file.
+     * @param mismatches Filled with the files that are missing or do not match their entry.
+     */
+    private static void checkLocked(final LockFile lock, final String spec, final LockFile.Kind kind,
+                                    final Path file, final List<String> mismatches) {
+        Optional<LockFile.Entry> entry = lock.get(spec, kind);
+        if (entry.isEmpty()) {
+            return;
+        }
+        try {
+            if (!Files.isRegularFile(file) || !LockFile.sha1(file).equals(entry.get().sha1())) {
+                mismatches.add(file.toString());
+            }
+        } catch (IOException e) {
+            mismatches.add(file.toString());
+        }
+    }
+
+    private static Path lockedJarPath(final Artifact artifact, final Path targetFolderPath, boolean useRemoteName) {
+        String version = artifact.version().orElseThrow();
+        return targetFolderPath.resolve(useRemoteName ? artifact.artifactId() + "-" + version + ".jar"
+                : artifact.artifactId() + ".jar");
+    }
+
+    private static Path lockedSourcesPath(final Artifact artifact, final Path sourceTargetFolderPath) {
+        return sourceTargetFolderPath.resolve(artifact.artifactId() + "-sources.jar");
+    }
+
+    /*
+     * Starts downloading the artifacts on the executor as part of a run, recording the files in a lockfile. Each
+     * artifact is resolved and downloaded on its own, so one artifact can be downloading while the latest version of
+     * the next one is being looked up.
+     *
+     * @param artifacts The artifacts to download.
+     * @param existingArtifacts The artifacts already in the target folder.
+     * @param updateDifferentOnly Replace the existing artifacts only if different.
+     * @param targetFolderPath The target folder to download the artifacts.
+     * @param sourceTargetFolderPath The target folder to download the sources, or null to not download them.
+     * @param changesLog The changes log to record the downloads in, or null to not record them.
+     * @param useRemoteName Use the remote name for the downloaded artifacts.
+     * @param explicitDelete Explicitly delete the existing artifacts.
+     * @param executor The executor to download on.
+     * @param lock The lockfile to record the files in, or null to not record them.
+     * @param run The run the downloads are part of.
+     *
+     * @return One future per artifact, in the order of the artifacts, completing with the downloaded artifact, the
+     * existing artifact if it was not replaced, or empty if the download failed or was cancelled.
+     */
+    public static List<CompletableFuture<Optional<Artifact>>> startDownloads(
+            final List<Artifact> artifacts, final ArtifactCatalog existingArtifacts, final boolean updateDifferentOnly,
+            final Path targetFolderPath, final Path sourceTargetFolderPath, final ChangesFileUtil changesLog,
+            boolean useRemoteName, boolean explicitDelete, final Executor executor, final LockFile lock,
+            final DownloadRun run) {
+        List<CompletableFuture<Optional<Artifact>>> downloads = new ArrayList<>(artifacts.size());
+        for (Artifact artifact : artifacts) {
+            Artifact existingArtifact = existingArtifacts.findByArtifactId(artifact.artifactId()).orElse(null);
+            downloads.add(startDownload(artifact, existingArtifact, updateDifferentOnly, targetFolderPath,
+                    sourceTargetFolderPath, changesLog, useRemoteName, explicitDelete, executor, lock, run));
         }
+        return downloads;
+    }
 
+    /*
+     * Starts downloading an artifact on the executor as part of a run, recording its files in a lockfile.
+     *
+     * @param artifact The artifact to download.
+     * @param existingArtifact The existing artifact in the target folder, or null.
+     * @param updateDifferentOnly Replace the existing artifact only if different.
+     * @param targetFolderPath The target folder to download the artifact.
+     * @param sourceTargetFolderPath The target folder to download the sources, or null to not download them.
+     * @param changesLog The changes log to record the download in, or null to not record it.
+     * @param useRemoteName Use the remote name for the downloaded artifact.
+     * @param explicitDelete Explicitly delete the existing artifact.
+     * @param executor The executor to download on.
+     * @param lock The lockfile to record the files in, or null to not record them.
+     * @param run The run the download is part of.
+     *
+     * @return A future completing with the downloaded artifact, the existing artifact if it was not replaced, or empty
+     * if the download failed or was cancelled.
+     */
+    public static CompletableFuture<Optional<Artifact>> startDownload(
+            final Artifact artifact, final Artifact existingArtifact, final boolean updateDifferentOnly,
+            final Path targetFolderPath, final Path sourceTargetFolderPath, final ChangesFileUtil changesLog,
+            boolean useRemoteName, boolean explicitDelete, final Executor executor, final LockFile lock,
+            final DownloadRun run) {
+        // Get the api key and base url from the configuration
+        String baseUrl = Config.getInstance().getMavenBaseUrl();
+        String apiKey = Config.getInstance().getMavenApiKey().orElse("");
+        String artifactPath = createArtifactPath(baseUrl, artifact);
+        return CompletableFuture.supplyAsync(() -> {
+            Optional<Artifact> downloaded = downloadArtifact(artifact, existingArtifact, updateDifferentOnly,
+                    artifactPath, targetFolderPath, sourceTargetFolderPath, sourceTargetFolderPath != null, changesLog,
+                    apiKey, useRemoteName, explicitDelete, lock, run);
+            run.artifactFinished(downloaded.isPresent());
+            return downloaded;
+        }, executor);
     }
 
 
@@ -267,7 +651,7 @@ public class ArtifactDownloader {
      * @param specFilePath The path to the spec file.
      * @return A list of artifacts to download.
      */
-    protected static List<Artifact> parseSpecFile(Path specFilePath) {
+    public static List<Artifact> parseSpecFile(Path specFilePath) {
         Logger logger = LoggerFactory.getLogger(ArtifactDownloader.class);
         // The file is assumed to exist
         List<Artifact> artifacts = Lists.newArrayList();
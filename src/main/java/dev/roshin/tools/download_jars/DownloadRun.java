@@ -0,0 +1,263 @@
+package dev.roshin.tools.download_jars;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import dev.roshin.tools.util.AnsiLogger;
+import org.apache.hc.client5.http.classic.methods.HttpUriRequestBase;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.core5.http.io.HttpClientResponseHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The requests of one download run, so they can be given a deadline each and all be cancelled at once.
+ * <p>
+ * A request that is still running when its deadline passes is aborted, however much data it is still receiving, so a
+ * slow connection cannot hold up the run for longer than the deadline. Cancelling the run aborts every request in
+ * flight and makes every later request fail at once, which is what the whole-run deadline and Ctrl-C do.
+ * <p>
+ * A run is started with {@link #cancelOnExit()}, awaited with {@link #await(Collection, Duration)} and ended with
+ * {@link #finish()}, whether it succeeded or not.
+ */
+public class DownloadRun {
+
+    // Aborts the requests that run past their deadline, shared by all runs
+    private static final Supplier<ScheduledThreadPoolExecutor> DEADLINES = Suppliers.memoize(() -> {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "download-deadlines");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    });
+
+    // How long stopping the JVM waits for cancelled downloads to clean up
+    private static final long CANCEL_GRACE_SECONDS = 5;
+
+    private final Duration requestTimeout;
+    private final Set<HttpUriRequestBase> inFlight = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger finishedArtifacts = new AtomicInteger();
+    private final AtomicInteger completedArtifacts = new AtomicInteger();
+    private final AtomicInteger cancelledArtifacts = new AtomicInteger();
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private volatile String cancelReason;
+    private Thread cancelOnExit;
+
+    /**
+     * @param requestTimeout The longest a single request may take, including reading the response, or null for no
+     *                       limit.
+     */
+    public DownloadRun(Duration requestTimeout) {
+        this.requestTimeout = requestTimeout;
+    }
+
+    /**
+     * @return A run without request deadlines, which is only stopped by cancelling it.
+     */
+    public static DownloadRun unlimited() {
+        return new DownloadRun(null);
+    }
+
+    /**
+     * Cancels the run when the JVM is stopped, for example with Ctrl-C, until {@link #finish()} is called. Stopping
+     * the JVM then waits a moment for the downloads to remove their partial files and the summary to be written.
+     */
+    public synchronized void cancelOnExit() {
+        Preconditions.checkState(cancelOnExit == null, "Run already cancels on exit");
+        cancelOnExit = new Thread(() -> {
+            cancel("interrupted");
+            try {
+                finished.await(CANCEL_GRACE_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            AnsiLogger.flush();
+        }, "download-cancel");
+        Runtime.getRuntime().addShutdownHook(cancelOnExit);
+    }
+
+    /**
+     * Marks the run as finished, so stopping the JVM no longer waits for it or cancels it.
+     */
+    public synchronized void finish() {
+        finished.countDown();
+        if (cancelOnExit != null) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(cancelOnExit);
+            } catch (IllegalStateException e) {
+                // The JVM is already shutting down and running the hook
+            }
+            cancelOnExit = null;
+        }
+    }
+
+    /**
+     * Waits for the downloads of the run to complete, cancelling the run once the deadline passes.
+     *
+     * @param downloads The downloads of the run.
+     * @param deadline  The longest the downloads may take, or null for no limit.
+     */
+    public void await(Collection<? extends CompletableFuture<?>> downloads, Duration deadline) {
+        CompletableFuture<Void> all = CompletableFuture.allOf(downloads.toArray(CompletableFuture[]::new));
+        if (deadline != null) {
+            try {
+                all.get(deadline.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                cancel("deadline of " + deadline.toSeconds() + " seconds passed");
+            } catch (InterruptedException e) {
+                cancel("interrupted");
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                // Failed downloads are reported by their artifact
+            }
+        }
+        // Cancelled downloads stop quickly, as their requests were aborted
+        all.join();
+    }
+
+    /**
+     * Writes how many artifacts of the run were downloaded, failed or were cancelled.
+     */
+    public void printSummary() {
+        Logger logger = LoggerFactory.getLogger(DownloadRun.class);
+        int total = finishedArtifacts.get();
+        int completed = completedArtifacts.get();
+        int cancelled = cancelledArtifacts.get();
+        int failed = total - completed - cancelled;
+        if (isCancelled()) {
+            AnsiLogger.warning(logger, "Download cancelled ({}): {} of {} artifacts completed, {} failed, {} cancelled",
+                    cancelReason, completed, total, failed, cancelled);
+        } else if (failed > 0) {
+            AnsiLogger.warning(logger, "{} of {} artifacts completed, {} failed", completed, total, failed);
+        } else {
+            AnsiLogger.success("{} of {} artifacts completed", completed, total);
+        }
+    }
+
+    /**
+     * Executes a request of the run, aborting it if it runs past its deadline or the run is cancelled.
+     *
+     * @param client  The client to execute the request with.
+     * @param request The request.
+     * @param handler The handler of the response.
+     * @param <T>     The type of the result of the handler.
+     * @return The result of the handler.
+     * @throws CancellationException If the run is cancelled.
+     * @throws IOException           If the request failed or ran past its deadline.
+     */
+    public <T> T execute(CloseableHttpClient client, HttpUriRequestBase request,
+                         HttpClientResponseHandler<? extends T> handler) throws IOException {
+        checkNotCancelled();
+        inFlight.add(request);
+        ScheduledFuture<?> deadline = null;
+        try {
+            // A cancel that came in before the request was added did not abort it
+            checkNotCancelled();
+            if (requestTimeout != null) {
+                deadline = DEADLINES.get().schedule(request::cancel, requestTimeout.toMillis(),
+                        TimeUnit.MILLISECONDS);
+            }
+            return client.execute(request, handler);
+        } catch (IOException | RuntimeException e) {
+            checkNotCancelled();
+            if (request.isCancelled()) {
+                InterruptedIOException timeout = new InterruptedIOException("Request to " + request.getRequestUri()
+                        + " took longer than " + requestTimeout.toSeconds() + " seconds");
+                timeout.initCause(e);
+                throw timeout;
+            }
+            throw e;
+        } finally {
+            if (deadline != null) {
+                deadline.cancel(false);
+            }
+            inFlight.remove(request);
+        }
+    }
+
+    /**
+     * Cancels the run, aborting the requests in flight. Only the first reason is kept.
+     *
+     * @param reason Why the run is cancelled, for the summary.
+     */
+    public void cancel(String reason) {
+        if (cancelReason == null) {
+            synchronized (this) {
+                if (cancelReason == null) {
+                    cancelReason = reason;
+                }
+            }
+        }
+        for (HttpUriRequestBase request : inFlight) {
+            request.cancel();
+        }
+    }
+
+    /**
+     * @throws CancellationException If the run is cancelled.
+     */
+    public void checkNotCancelled() {
+        String reason = cancelReason;
+        if (reason != null) {
+            throw new CancellationException("Download cancelled: " + reason);
+        }
+    }
+
+    /**
+     * @return Whether the run is cancelled.
+     */
+    public boolean isCancelled() {
+        return cancelReason != null;
+    }
+
+    /**
+     * @return Why the run was cancelled, or null if it was not.
+     */
+    public String cancelReason() {
+        return cancelReason;
+    }
+
+    /**
+     * Counts an artifact whose download is done, whether it completed, failed or was cancelled.
+     *
+     * @param completed Whether the artifact was downloaded or kept.
+     */
+    void artifactFinished(boolean completed) {
+        finishedArtifacts.incrementAndGet();
+        if (completed) {
+            completedArtifacts.incrementAndGet();
+        }
+    }
+
+    /**
+     * Counts an artifact whose download was cancelled.
+     */
+    void artifactCancelled() {
+        cancelledArtifacts.incrementAndGet();
+    }
+
+    /**
+     * @return The number of artifacts whose download was cancelled.
+     */
+    public int cancelledArtifacts() {
+        return cancelledArtifacts.get();
+    }
+}
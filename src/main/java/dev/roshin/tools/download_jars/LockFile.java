@@ -0,0 +1,238 @@
+package dev.roshin.tools.download_jars;
+
+import com.google.common.base.Preconditions;
+import com.google.common.io.MoreFiles;
+import dev.roshin.tools.download_jars.domain.Artifact;
+import dev.roshin.tools.util.CommonUtils;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The lockfile of a spec file, recording what each spec entry resolved to: the version, the URL it was downloaded
+ * from, and the size and SHA-1 of the file. It is written next to the spec file as {@code <spec file>.lock}, one
+ * {@code <spec entry>;<jar|sources>;<version>;<size>;<sha1>;<url>} line per file, in spec order.
+ * <p>
+ * With a lockfile, a run does not need any metadata requests, and most files can be checked without opening them. A
+ * file with a different size than recorded never matches, and is not hashed. A file with the recorded size is only
+ * hashed when it changed after the lockfile was written; otherwise it matches without being read.
+ * <p>
+ * A file counts as changed when its modification time or, where the file system has one, its change time is later
+ * than the lockfile. The modification time alone is not enough: a file replaced by a copy that keeps the attributes
+ * of the original, or by a hardlink to a file in {@code ~/.m2}, can have the recorded size and an old modification
+ * time. Both of these do set the change time on Unix. Elsewhere the creation time is used instead, which a copy sets
+ * but a hardlink does not, so there a same-size hardlink with an old modification time is still accepted unhashed.
+ * <p>
+ * Entries can be recorded from several threads at once.
+ */
+public class LockFile {
+
+    public enum Kind {
+        JAR, SOURCES
+    }
+
+    /**
+     * @param spec    The spec entry, {@code groupId:artifactId} or {@code groupId:artifactId:version}.
+     * @param kind    Whether the file is the JAR or the source JAR.
+     * @param version The version the entry resolved to.
+     * @param size    The size of the file, in bytes.
+     * @param sha1    The SHA-1 of the file, in lower case hex.
+     * @param url     The URL the file was downloaded from, or would have been if it was taken from elsewhere.
+     */
+    public record Entry(String spec, Kind kind, String version, long size, String sha1, String url) {
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final FileTime modified;
+
+    private LockFile(FileTime modified) {
+        this.modified = modified;
+    }
+
+    /**
+     * @return An empty lockfile to record a run in.
+     */
+    public static LockFile create() {
+        return new LockFile(null);
+    }
+
+    /**
+     * @param specFile The spec file.
+     * @return The path of its lockfile.
+     */
+    public static Path pathFor(Path specFile) {
+        return specFile.resolveSibling(specFile.getFileName() + ".lock");
+    }
+
+    /**
+     * @param artifact The artifact of a spec entry.
+     * @return The spec entry, as written in the spec file.
+     */
+    public static String specOf(Artifact artifact) {
+        return artifact.groupId() + ":" + artifact.artifactId() + artifact.version().map(v -> ":" + v).orElse("");
+    }
+
+    /**
+     * Reads a lockfile.
+     *
+     * @param lockFile The lockfile.
+     * @return The lockfile.
+     * @throws UncheckedIOException If the file could not be read.
+     * @throws IllegalArgumentException If a line is not a lockfile entry.
+     */
+    public static LockFile read(Path lockFile) {
+        try {
+            LockFile lock = new LockFile(Files.getLastModifiedTime(lockFile));
+            List<String> lines = Files.readAllLines(lockFile);
+            for (int i = 0; i < lines.size(); i++) {
+                String line = lines.get(i).trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                // The URL is last, so it can be split off whatever it contains
+                String[] parts = line.split(";", 6);
+                Preconditions.checkArgument(parts.length == 6, "Invalid entry on line %s of %s", i + 1, lockFile);
+                try {
+                    lock.record(new Entry(parts[0], Kind.valueOf(parts[1].toUpperCase()), parts[2],
+                            Long.parseLong(parts[3]), parts[4], parts[5]));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Invalid entry on line " + (i + 1) + " of " + lockFile, e);
+                }
+            }
+            return lock;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read lockfile: " + lockFile, e);
+        }
+    }
+
+    /**
+     * Records an entry, replacing the entry of the same spec entry and kind.
+     *
+     * @param entry The entry.
+     */
+    public void record(Entry entry) {
+        entries.put(key(entry.spec(), entry.kind()), entry);
+    }
+
+    /**
+     * Records a file, hashing it.
+     *
+     * @param spec    The spec entry.
+     * @param kind    Whether the file is the JAR or the source JAR.
+     * @param version The version the entry resolved to.
+     * @param file    The file.
+     * @param url     The URL of the file.
+     * @throws IOException If the file could not be read.
+     */
+    public void record(String spec, Kind kind, String version, Path file, String url) throws IOException {
+        record(new Entry(spec, kind, version, Files.size(file), sha1(file), url));
+    }
+
+    /**
+     * @param spec The spec entry.
+     * @param kind Whether to get the JAR or the source JAR.
+     * @return The entry, if recorded.
+     */
+    public Optional<Entry> get(String spec, Kind kind) {
+        return Optional.ofNullable(entries.get(key(spec, kind)));
+    }
+
+    /**
+     * @return Every recorded entry, in no particular order.
+     */
+    public Collection<Entry> entries() {
+        return Collections.unmodifiableCollection(entries.values());
+    }
+
+    /**
+     * Checks a file against its entry: the size first, then the SHA-1 only when the file changed after the lockfile
+     * was written, as described in the class documentation.
+     *
+     * @param entry The entry.
+     * @param file  The file.
+     * @return Whether the file exists and matches the entry.
+     */
+    public boolean matches(Entry entry, Path file) {
+        try {
+            if (!Files.isRegularFile(file) || Files.size(file) != entry.size()) {
+                return false;
+            }
+            if (modified != null && changedTime(file).compareTo(modified) <= 0) {
+                return true;
+            }
+            return sha1(file).equals(entry.sha1());
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Writes the entries of the spec entries, in the given order. The entries go to a temporary file of its own, which
+     * replaces the lockfile at once and only if the content changed, so a failed write does not leave half a lockfile
+     * and runs writing the same lockfile do not write over each other's temporary files. An unchanged lockfile keeps
+     * its modification time, which can only make {@link #matches(Entry, Path)} hash more files, never fewer.
+     *
+     * @param lockFile The lockfile to write.
+     * @param specs    The spec entries, in spec order.
+     * @return True if the lockfile was written, false if its content was unchanged.
+     * @throws IOException If the file could not be written.
+     */
+    public boolean write(Path lockFile, List<String> specs) throws IOException {
+        Path temporary = CommonUtils.createSiblingTempFile(lockFile);
+        try {
+            writeEntries(temporary, specs);
+            return CommonUtils.replaceIfChanged(temporary, lockFile);
+        } finally {
+            // Only left behind if writing failed, as a replacement moves or deletes it
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private void writeEntries(Path file, List<String> specs) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            writer.write("# Written by jar-manager, do not edit\n");
+            writer.write("# <spec entry>;<jar|sources>;<version>;<size>;<sha1>;<url>\n");
+            for (String spec : specs) {
+                for (Kind kind : Kind.values()) {
+                    Entry entry = entries.get(key(spec, kind));
+                    if (entry != null) {
+                        writer.write(String.join(";", entry.spec(), entry.kind().name().toLowerCase(),
+                                entry.version(), Long.toString(entry.size()), entry.sha1(), entry.url()));
+                        writer.write('\n');
+                    }
+                }
+            }
+        }
+    }
+
+    // The later of the modification time and the change time, or the creation time without a change time
+    private static FileTime changedTime(Path file) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        FileTime changed;
+        try {
+            changed = (FileTime) Files.getAttribute(file, "unix:ctime");
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            changed = attributes.creationTime();
+        }
+        return changed.compareTo(attributes.lastModifiedTime()) > 0 ? changed : attributes.lastModifiedTime();
+    }
+
+    static String sha1(Path file) throws IOException {
+        return MoreFiles.asByteSource(file).hash(CommonUtils.sha1()).toString();
+    }
+
+    private static String key(String spec, Kind kind) {
+        return spec + ";" + kind;
+    }
+}
@@ -0,0 +1,301 @@
+package dev.roshin.tools.download_jars.domain;
+
+import com.google.common.base.Preconditions;
+import dev.roshin.tools.util.LongIntHashMap;
+
+import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Compact, indexed collection of {@link Artifact}s for large artifact sets.
+ * <p>
+ * Group IDs, artifact IDs and versions are dictionary encoded, so each distinct string is held once and every
+ * artifact is a row of {@code int} codes. Artifacts can be looked up by coordinates, by artifact ID and by local path
+ * without scanning the whole collection. {@link Artifact} records are only created when an artifact is read back.
+ * <p>
+ * This class is not thread safe.
+ */
+public class ArtifactCatalog {
+
+    private static final int NONE = -1;
+    private static final int UNKNOWN = -2;
+
+    private final Dictionary groupIds = new Dictionary();
+    private final Dictionary artifactIds = new Dictionary();
+    private final Dictionary versions = new Dictionary();
+
+    private int size;
+    private int[] groupCodes;
+    private int[] artifactCodes;
+    private int[] versionCodes;
+    private Path[] paths;
+    // Next row with the same group ID and artifact ID, forming a chain per coordinate pair
+    private int[] nextWithSameCoordinates;
+
+    // Group ID and artifact ID codes packed into a long, to the first row with those coordinates
+    private final LongIntHashMap byCoordinates;
+    // Artifact ID code to the first row with that artifact ID
+    private final LongIntHashMap byArtifactId;
+    private final Map<Path, Integer> byPath = new HashMap<>();
+
+    public ArtifactCatalog() {
+        this(16);
+    }
+
+    /**
+     * @param expectedSize The number of artifacts the catalog should hold before it needs to grow.
+     */
+    public ArtifactCatalog(int expectedSize) {
+        int capacity = Math.max(16, expectedSize);
+        groupCodes = new int[capacity];
+        artifactCodes = new int[capacity];
+        versionCodes = new int[capacity];
+        paths = new Path[capacity];
+        nextWithSameCoordinates = new int[capacity];
+        byCoordinates = new LongIntHashMap(expectedSize);
+        byArtifactId = new LongIntHashMap(expectedSize);
+    }
+
+    /**
+     * Creates a catalog holding the given artifacts, in iteration order.
+     *
+     * @param artifacts The artifacts.
+     * @return The catalog.
+     */
+    public static ArtifactCatalog of(Collection<Artifact> artifacts) {
+        ArtifactCatalog catalog = new ArtifactCatalog(artifacts.size());
+        artifacts.forEach(catalog::add);
+        return catalog;
+    }
+
+    /**
+     * Adds an artifact to the catalog.
+     *
+     * @param artifact The artifact to add.
+     */
+    public void add(Artifact artifact) {
+        Preconditions.checkNotNull(artifact, "Artifact cannot be null.");
+        if (size == groupCodes.length) {
+            grow();
+        }
+        int row = size++;
+        int groupCode = groupIds.encode(artifact.groupId());
+        int artifactCode = artifactIds.encode(artifact.artifactId());
+        groupCodes[row] = groupCode;
+        artifactCodes[row] = artifactCode;
+        versionCodes[row] = artifact.version().map(versions::encode).orElse(NONE);
+        paths[row] = artifact.localJarPath().orElse(null);
+        nextWithSameCoordinates[row] = NONE;
+
+        int first = byCoordinates.putIfAbsent(coordinatesKey(groupCode, artifactCode), row);
+        if (first != LongIntHashMap.NOT_FOUND) {
+            // Append to the end of the chain, so lookups return the first artifact added
+            int last = first;
+            while (nextWithSameCoordinates[last] != NONE) {
+                last = nextWithSameCoordinates[last];
+            }
+            nextWithSameCoordinates[last] = row;
+        }
+        byArtifactId.putIfAbsent(artifactCode, row);
+        if (paths[row] != null) {
+            byPath.putIfAbsent(paths[row], row);
+        }
+    }
+
+    /**
+     * @return The number of artifacts in the catalog.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return True if the catalog holds no artifacts.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Finds the first artifact added with the given coordinates.
+     *
+     * @param groupId    The group ID.
+     * @param artifactId The artifact ID.
+     * @param version    The version, or empty to match an artifact without a version.
+     * @return The artifact, or empty if there is none.
+     */
+    public Optional<Artifact> find(String groupId, String artifactId, Optional<String> version) {
+        int row = findRow(groupId, artifactId, version);
+        return row == NONE ? Optional.empty() : Optional.of(get(row));
+    }
+
+    /**
+     * Finds the first artifact added with the given group ID and artifact ID, whatever its version.
+     *
+     * @param groupId    The group ID.
+     * @param artifactId The artifact ID.
+     * @return The artifact, or empty if there is none.
+     */
+    public Optional<Artifact> find(String groupId, String artifactId) {
+        int row = firstRow(groupId, artifactId);
+        return row == NONE ? Optional.empty() : Optional.of(get(row));
+    }
+
+    /**
+     * Finds the first artifact added with the given artifact ID, whatever its group ID and version.
+     *
+     * @param artifactId The artifact ID.
+     * @return The artifact, or empty if there is none.
+     */
+    public Optional<Artifact> findByArtifactId(String artifactId) {
+        int artifactCode = artifactIds.lookup(artifactId);
+        if (artifactCode == NONE) {
+            return Optional.empty();
+        }
+        int row = byArtifactId.get(artifactCode);
+        return row == LongIntHashMap.NOT_FOUND ? Optional.empty() : Optional.of(get(row));
+    }
+
+    /**
+     * Finds the artifact stored at the given local path.
+     *
+     * @param path The local path of the artifact.
+     * @return The artifact, or empty if there is none.
+     */
+    public Optional<Artifact> findByPath(Path path) {
+        Integer row = byPath.get(path);
+        return row == null ? Optional.empty() : Optional.of(get(row));
+    }
+
+    /**
+     * Checks whether the catalog holds an artifact equal to the given one, including its version and local path.
+     *
+     * @param artifact The artifact to look for.
+     * @return True if an equal artifact is in the catalog.
+     */
+    public boolean contains(Artifact artifact) {
+        int versionCode = lookupVersion(artifact.version());
+        Path path = artifact.localJarPath().orElse(null);
+        for (int row = firstRow(artifact.groupId(), artifact.artifactId()); row != NONE;
+             row = nextWithSameCoordinates[row]) {
+            if (versionCodes[row] == versionCode && Objects.equals(paths[row], path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param row The position of the artifact, from 0 to {@link #size()} - 1, in the order artifacts were added.
+     * @return The artifact at the position.
+     */
+    public Artifact get(int row) {
+        Preconditions.checkElementIndex(row, size);
+        int versionCode = versionCodes[row];
+        return new Artifact(groupIds.decode(groupCodes[row]), artifactIds.decode(artifactCodes[row]),
+                versionCode == NONE ? Optional.empty() : Optional.of(versions.decode(versionCode)),
+                Optional.ofNullable(paths[row]));
+    }
+
+    /**
+     * @return A read only view of the artifacts, in the order they were added.
+     */
+    public List<Artifact> artifacts() {
+        return new AbstractList<>() {
+            @Override
+            public Artifact get(int index) {
+                return ArtifactCatalog.this.get(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * @return The first row with the coordinates and version, or {@link #NONE}.
+     */
+    private int findRow(String groupId, String artifactId, Optional<String> version) {
+        int versionCode = lookupVersion(version);
+        for (int row = firstRow(groupId, artifactId); row != NONE; row = nextWithSameCoordinates[row]) {
+            if (versionCodes[row] == versionCode) {
+                return row;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * @return The code of the version, {@link #NONE} for no version, or {@link #UNKNOWN} if no artifact has it.
+     */
+    private int lookupVersion(Optional<String> version) {
+        if (version.isEmpty()) {
+            return NONE;
+        }
+        int versionCode = versions.lookup(version.get());
+        return versionCode == NONE ? UNKNOWN : versionCode;
+    }
+
+    /**
+     * @return The first row with the group ID and artifact ID, or {@link #NONE}.
+     */
+    private int firstRow(String groupId, String artifactId) {
+        int groupCode = groupIds.lookup(groupId);
+        int artifactCode = artifactIds.lookup(artifactId);
+        if (groupCode == NONE || artifactCode == NONE) {
+            return NONE;
+        }
+        int row = byCoordinates.get(coordinatesKey(groupCode, artifactCode));
+        return row == LongIntHashMap.NOT_FOUND ? NONE : row;
+    }
+
+    private static long coordinatesKey(int groupCode, int artifactCode) {
+        return ((long) groupCode << 32) | (artifactCode & 0xFFFFFFFFL);
+    }
+
+    private void grow() {
+        int capacity = groupCodes.length * 2;
+        groupCodes = Arrays.copyOf(groupCodes, capacity);
+        artifactCodes = Arrays.copyOf(artifactCodes, capacity);
+        versionCodes = Arrays.copyOf(versionCodes, capacity);
+        paths = Arrays.copyOf(paths, capacity);
+        nextWithSameCoordinates = Arrays.copyOf(nextWithSameCoordinates, capacity);
+    }
+
+    /**
+     * Maps each distinct string to a small integer code and back. Null is a valid string with its own code.
+     */
+    private static class Dictionary {
+        private final Map<String, Integer> codes = new HashMap<>();
+        private final List<String> strings = new ArrayList<>();
+
+        int encode(String value) {
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = strings.size();
+                codes.put(value, code);
+                strings.add(value);
+            }
+            return code;
+        }
+
+        int lookup(String value) {
+            Integer code = codes.get(value);
+            return code == null ? NONE : code;
+        }
+
+        String decode(int code) {
+            return strings.get(code);
+        }
+    }
+}
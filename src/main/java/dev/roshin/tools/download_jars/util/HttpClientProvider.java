@@ -0,0 +1,83 @@
+package dev.roshin.tools.download_jars.util;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import dev.roshin.tools.config.Config;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+
+/**
+ * Holds the HTTP client shared by every request to the Maven repository.
+ * <p>
+ * Creating a client per request throws away its connections, so every download paid for a new TCP and TLS handshake.
+ * The shared client keeps connections alive between requests, with enough of them for the parallel downloads. It is
+ * created on first use and closed when the JVM exits.
+ * <p>
+ * Connecting, and every read once connected, time out as configured, so a stalled connection fails the request instead
+ * of hanging it. The timeouts are read from the current {@link Config} for each new connection and, through
+ * {@link #requestConfig()}, for each request, so a command of a daemon runs with the timeouts of its own configuration
+ * rather than those of the command that created the client.
+ */
+public class HttpClientProvider {
+
+    /**
+     * Number of connections kept per repository host, which is also the number of downloads that can run at once.
+     */
+    public static final int MAX_CONNECTIONS_PER_ROUTE = 8;
+
+    private static final Supplier<CloseableHttpClient> CLIENT = Suppliers.memoize(HttpClientProvider::createClient);
+
+    // Private constructor to prevent instantiation
+    private HttpClientProvider() {
+    }
+
+    /**
+     * @return The shared client. It must not be closed by the caller, and its requests should be given
+     * {@link #requestConfig()}.
+     */
+    public static CloseableHttpClient getClient() {
+        return CLIENT.get();
+    }
+
+    /**
+     * @return The timeouts of a request, from the current configuration.
+     */
+    public static RequestConfig requestConfig() {
+        Config config = Config.getInstance();
+        return RequestConfig.custom()
+                // Waiting for a pooled connection counts as connecting
+                .setConnectionRequestTimeout(Timeout.of(config.getHttpConnectTimeout()))
+                // Also applies to connections opened under an earlier configuration
+                .setResponseTimeout(Timeout.of(config.getHttpSocketTimeout()))
+                .build();
+    }
+
+    private static ConnectionConfig connectionConfig() {
+        Config config = Config.getInstance();
+        return ConnectionConfig.custom()
+                .setConnectTimeout(Timeout.of(config.getHttpConnectTimeout()))
+                .setSocketTimeout(Timeout.of(config.getHttpSocketTimeout()))
+                .build();
+    }
+
+    private static CloseableHttpClient createClient() {
+        CloseableHttpClient client = HttpClients.custom()
+                .setConnectionManager(PoolingHttpClientConnectionManagerBuilder.create()
+                        .setMaxConnPerRoute(MAX_CONNECTIONS_PER_ROUTE)
+                        .setMaxConnTotal(MAX_CONNECTIONS_PER_ROUTE * 2)
+                        .setConnectionConfigResolver(route -> connectionConfig())
+                        .build())
+                .setDefaultRequestConfig(requestConfig())
+                .evictIdleConnections(TimeValue.ofSeconds(30))
+                .build();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> client.close(CloseMode.GRACEFUL),
+                "http-client-shutdown"));
+        return client;
+    }
+}
@@ -0,0 +1,78 @@
+package dev.roshin.tools.download_jars.util;
+
+import com.google.common.io.MoreFiles;
+import dev.roshin.tools.util.CommonUtils;
+import dev.roshin.tools.util.FilePlacement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Finds artifacts in a local Maven repository, such as {@code ~/.m2/repository}, so they can be placed without a
+ * download.
+ * <p>
+ * A file is only used if it matches the {@code .sha1} file next to it, when there is one. Files without a checksum are
+ * trusted, as Maven itself does not always write one.
+ */
+public class LocalRepository {
+
+    // Private constructor to prevent instantiation
+    private LocalRepository() {
+    }
+
+    /**
+     * Finds a file of an artifact version in the local repository.
+     *
+     * @param repository The root of the local repository.
+     * @param groupId    The group ID.
+     * @param artifactId The artifact ID.
+     * @param version    The version.
+     * @param classifier The classifier, for example {@code sources}, or null for the main JAR.
+     * @return The file, if it exists and matches its checksum.
+     */
+    public static Optional<Path> find(Path repository, String groupId, String artifactId, String version,
+                                      String classifier) {
+        Logger logger = LoggerFactory.getLogger(LocalRepository.class);
+        String fileName = artifactId + "-" + version + (classifier == null ? "" : "-" + classifier) + ".jar";
+        Path file = repository.resolve(groupId.replace('.', '/')).resolve(artifactId).resolve(version)
+                .resolve(fileName);
+        if (!Files.isRegularFile(file)) {
+            return Optional.empty();
+        }
+        Path checksumFile = file.resolveSibling(fileName + ".sha1");
+        if (Files.isRegularFile(checksumFile)) {
+            try {
+                // The file can hold just the checksum or the checksum followed by the file name
+                String[] expected = Files.readString(checksumFile, StandardCharsets.US_ASCII).trim().split("\\s+");
+                String actual = MoreFiles.asByteSource(file).hash(CommonUtils.sha1()).toString();
+                if (!actual.equalsIgnoreCase(expected[0])) {
+                    logger.warn("Ignoring {} in the local repository, its SHA-1 {} does not match {}", file, actual,
+                            expected[0]);
+                    return Optional.empty();
+                }
+            } catch (IOException e) {
+                logger.warn("Ignoring {} in the local repository, its checksum could not be verified", file, e);
+                return Optional.empty();
+            }
+        }
+        return Optional.of(file);
+    }
+
+    /**
+     * Places a file of the local repository at the target path, replacing the file there. The file is linked when the
+     * target is on the same file system, so it takes no space or copying, and copied otherwise.
+     *
+     * @param source The file in the local repository.
+     * @param target The path to place it at.
+     * @return How the file was placed.
+     * @throws IOException If the file could not be placed.
+     */
+    public static FilePlacement.Strategy place(Path source, Path target) throws IOException {
+        return FilePlacement.place(source, target);
+    }
+}
@@ -1,8 +1,10 @@
 package dev.roshin.tools.download_jars.util;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import dev.roshin.tools.download_jars.DownloadRun;
 import org.apache.hc.client5.http.classic.methods.HttpGet;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
-import org.apache.hc.client5.http.impl.classic.HttpClients;
 import org.apache.hc.core5.http.io.HttpClientResponseHandler;
 import org.jdom2.Document;
 import org.jdom2.Element;
@@ -13,10 +15,22 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.time.Duration;
 import java.util.Optional;
 
 public class MavenMetadataUtility {
 
+	/**
+	 * How long a latest version is reused before the metadata is downloaded again.
+	 */
+	public static final Duration LATEST_VERSION_TTL = Duration.ofMinutes(10);
+
+	// Metadata URL to the latest release, shared by the downloads of a run and the commands of a daemon
+	private static final Cache<String, String> LATEST_VERSIONS = CacheBuilder.newBuilder()
+			.expireAfterWrite(LATEST_VERSION_TTL)
+			.maximumSize(10_000)
+			.build();
+
 	/**
 	 * Get the latest version of an artifact from a Maven repository.
 	 *
@@ -25,10 +39,28 @@ public class MavenMetadataUtility {
 	 * @return The latest version of the artifact.
 	 */
 	public static Optional<String> getLatestVersion(String baseUrl, String apiKey) {
+		return getLatestVersion(baseUrl, apiKey, DownloadRun.unlimited());
+	}
+
+	/**
+	 * Get the latest version of an artifact from a Maven repository as part of a download run, so the metadata request
+	 * gets the deadline of the run's requests and is aborted when the run is cancelled.
+	 *
+	 * @param baseUrl The base URL of the Maven repository.
+	 * @param apiKey  The API key to access the Maven repository.
+	 * @param run     The run the lookup is part of.
+	 * @return The latest version of the artifact, or empty if it could not be looked up.
+	 * @throws java.util.concurrent.CancellationException If the run is cancelled.
+	 */
+	public static Optional<String> getLatestVersion(String baseUrl, String apiKey, DownloadRun run) {
 		Logger logger = LoggerFactory.getLogger(MavenMetadataUtility.class);
  
 		String metadataUrl = String.format("%s/maven-metadata.xml", baseUrl);
 		logger.debug("The metadata url is {}", metadataUrl);
+		String cachedVersion = LATEST_VERSIONS.getIfPresent(metadataUrl);
+		if (cachedVersion != null) {
+			return Optional.of(cachedVersion);
+		}
  
 		HttpClientResponseHandler<Optional<String>> responseHandler = response -> {
 			if (response.getCode() == 200) { // Check for HTTP 200 OK
@@ -47,11 +79,16 @@ public class MavenMetadataUtility {
 			}
 		};
  
-		try (CloseableHttpClient client = HttpClients.createDefault()) {
+		try {
+			CloseableHttpClient client = HttpClientProvider.getClient();
 			HttpGet request = new HttpGet(metadataUrl);
+			request.setConfig(HttpClientProvider.requestConfig());
 			request.setHeader("X-JFrog-Art-Api", apiKey); // Set API key in the Authorization header
  
-			return client.execute(request, responseHandler);
+			Optional<String> version = run.execute(client, request, responseHandler);
+			// Failures are not cached, so the next lookup tries again
+			version.ifPresent(release -> LATEST_VERSIONS.put(metadataUrl, release));
+			return version;
 		} catch (IOException e) {
 			logger.error("Could not get metadata xml", e);
 			return Optional.empty();
@@ -1,23 +1,43 @@
 package dev.roshin.tools.pom_generator;
 
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import dev.roshin.tools.config.Config;
 import dev.roshin.tools.download_jars.domain.Artifact;
+import dev.roshin.tools.download_jars.domain.ArtifactCatalog;
 import dev.roshin.tools.util.AnsiLogger;
 import dev.roshin.tools.util.CommonUtils;
+import dev.roshin.tools.util.JarDiscovery;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 import java.util.jar.JarFile;
+import java.util.stream.Stream;
 
 /**
  * PomGenerator is a utility class that generates a POM file with dependencies based on JAR files in a directory.
@@ -26,9 +46,35 @@ public class PomGenerator {
 
     private static final Logger logger = LoggerFactory.getLogger(PomGenerator.class);
 
+    // Number of JAR files read at the same time while scanning
+    private static final int SCAN_PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+    // Number of JAR files submitted but not yet passed on, so a slow JAR file does not leave the other threads idle
+    private static final int SCAN_WINDOW = 2 * SCAN_PARALLELISM;
+
+    // Artifacts already read from JAR files, kept between the commands of a daemon, or null if not enabled
+    private static volatile Cache<Path, ScannedJar> scanCache;
+
+    // Precomputed fragments of a dependency entry, written around the coordinates without any formatting
+    private static final String DEPENDENCY_START = " <dependency>\n <groupId>";
+    private static final String GROUP_ID_END_ARTIFACT_ID_START = "</groupId>\n <artifactId>";
+    private static final String ARTIFACT_ID_END_VERSION_START = "</artifactId>\n <version>";
+    private static final String VERSION_END_DEPENDENCY_END = "</version>\n </dependency>\n";
+
+    /**
+     * Orders artifacts by group ID, artifact ID and version, used when a stable output is requested.
+     */
+    public static final Comparator<Artifact> COORDINATES_ORDER = Comparator
+            .comparing(Artifact::groupId, Comparator.nullsFirst(Comparator.<String>naturalOrder()))
+            .thenComparing(Artifact::artifactId, Comparator.nullsFirst(Comparator.<String>naturalOrder()))
+            .thenComparing(artifact -> artifact.version().orElse(""));
+
 
     /**
      * Generates POM entries for JAR files in the specified directory and writes them to the target file.
+     * Entries are written in the order the folder lists its JAR files, which stays the same between runs as long as
+     * the folder does not change. Use {@link #generatePomEntries(Path, Path, boolean, boolean, boolean)} with
+     * {@code sorted} set for an order that does not depend on the file system.
      *
      * @param directoryPath                     The directory containing the JAR files.
      * @param targetFileName                    The name of the target file to write the POM entries to.
@@ -41,33 +87,91 @@ public class PomGenerator {
      */
     public static void generatePomEntries(Path directoryPath, Path targetFileName, boolean createAdditionalFile,
                                           boolean additionalFileEmailFriendlyFormat) throws IOException {
-        File dir = directoryPath.toFile();
-        File[] files = dir.listFiles((d, name) -> name.endsWith(".jar"));
+        generatePomEntries(directoryPath, targetFileName, createAdditionalFile, additionalFileEmailFriendlyFormat, false);
+    }
 
+    /**
+     * Generates POM entries for JAR files in the specified directory and writes them to the target file.
+     * <p>
+     * Entries are streamed to a temporary file as each JAR is scanned, so memory use does not grow with the size of
+     * the folder. The temporary file only replaces the target file if its content differs, which leaves the target
+     * untouched when nothing changed. If writing fails, the exception is thrown and neither the target nor the
+     * additional file is replaced.
+     *
+     * @param directoryPath                     The directory containing the JAR files.
+     * @param targetFileName                    The name of the target file to write the POM entries to.
+     * @param createAdditionalFile              Whether to create an additional file with URLs for the dependencies.
+     *                                          If true, an additional file will be created with the same name as the
+     *                                          target file but with the suffix ".additional".
+     * @param additionalFileEmailFriendlyFormat Whether to create the additional file in an email-friendly format. Only used if
+     *                                          {@code createAdditionalFile} is true.
+     * @param sorted                            Whether to sort the entries by group ID, artifact ID and version, so
+     *                                          the output is stable across runs and can be diffed. Sorting requires
+     *                                          the artifact list to be collected before writing.
+     * @throws IOException If an I/O error occurs while reading the JAR files or writing to the target file.
+     */
+    public static void generatePomEntries(Path directoryPath, Path targetFileName, boolean createAdditionalFile,
+                                          boolean additionalFileEmailFriendlyFormat, boolean sorted) throws IOException {
+        generatePomEntries(directoryPath, targetFileName, createAdditionalFile, additionalFileEmailFriendlyFormat, sorted,
+                JarDiscovery.Options.flat());
+    }
+
+    /**
+     * Generates POM entries for JAR files found below the specified directory and writes them to the target file.
+     * The JAR files are scanned in parallel while the directory tree is still being walked, and unless {@code sorted}
+     * is set, entries are written in the order the JAR files were found. Sub folders are walked in parallel, so with
+     * more than one level that order, and with it the output, can change between runs.
+     *
+     * @param directoryPath                     The directory containing the JAR files.
+     * @param targetFileName                    The name of the target file to write the POM entries to.
+     * @param createAdditionalFile              Whether to create an additional file with URLs for the dependencies.
+     * @param additionalFileEmailFriendlyFormat Whether to create the additional file in an email-friendly format. Only used if
+     *                                          {@code createAdditionalFile} is true.
+     * @param sorted                            Whether to sort the entries by group ID, artifact ID and version.
+     * @param discoveryOptions                  The options controlling which JAR files below the directory are used.
+     * @throws IOException If an I/O error occurs while reading the JAR files or writing to the target file.
+     */
+    public static void generatePomEntries(Path directoryPath, Path targetFileName, boolean createAdditionalFile,
+                                          boolean additionalFileEmailFriendlyFormat, boolean sorted,
+                                          JarDiscovery.Options discoveryOptions) throws IOException {
         // Create the path for the additional file even though it may not be used
         Path additionalFilePath = null;
+        Path additionalTempPath = null;
 
-        if (files != null) {
-            try (BufferedWriter writer = Files.newBufferedWriter(targetFileName)) {
-                writer.write("<dependencies>\n");
+        if (Files.isDirectory(directoryPath)) {
+            Path tempPath = CommonUtils.createSiblingTempFile(targetFileName);
+            try {
+                try (BufferedWriter writer = Files.newBufferedWriter(tempPath)) {
+                    writer.write("<dependencies>\n");
 
-                if (createAdditionalFile) {
-                    additionalFilePath = targetFileName.resolveSibling(
-                            Paths.get(CommonUtils.getFileNameWithoutExtension(targetFileName) + ".additional")
-                    );
-                    try (BufferedWriter additionalWriter = Files.newBufferedWriter(additionalFilePath)) {
-                        writeEntries(writer, additionalWriter, files, additionalFileEmailFriendlyFormat);
-                    } catch (IOException e) {
-                        logger.error("An error occurred while creating the additional file: {}", additionalFilePath, e);
+                    if (createAdditionalFile) {
+                        additionalFilePath = targetFileName.resolveSibling(
+                                Paths.get(CommonUtils.getFileNameWithoutExtension(targetFileName) + ".additional")
+                        );
+                        additionalTempPath = CommonUtils.createSiblingTempFile(additionalFilePath);
+                        // A failed write must not replace either file, so it is not caught here
+                        try (BufferedWriter additionalWriter = Files.newBufferedWriter(additionalTempPath)) {
+                            writeEntries(writer, additionalWriter, directoryPath, discoveryOptions,
+                                    additionalFileEmailFriendlyFormat, sorted);
+                        }
+                    } else {
+                        writeEntries(writer, null, directoryPath, discoveryOptions, additionalFileEmailFriendlyFormat,
+                                sorted);
                     }
-                } else {
-                    writeEntries(writer, null, files, additionalFileEmailFriendlyFormat);
+                    writer.write("</dependencies>\n");
+                }
+                reportReplacement(CommonUtils.replaceIfChanged(tempPath, targetFileName), "POM entries",
+                        targetFileName);
+                if (createAdditionalFile) {
+                    reportReplacement(CommonUtils.replaceIfChanged(additionalTempPath, additionalFilePath),
+                            "Additional information", additionalFilePath);
+                }
+            } finally {
+                // Only left behind if writing failed, as a replacement moves them
+                Files.deleteIfExists(tempPath);
+                if (additionalTempPath != null) {
+                    Files.deleteIfExists(additionalTempPath);
                 }
-                writer.write("</dependencies>\n");
-            }
-            AnsiLogger.success("POM entries written to: {}", targetFileName.toAbsolutePath());
-            if (createAdditionalFile) {
-                AnsiLogger.success("Additional information written to: {}", additionalFilePath.toAbsolutePath());
             }
         } else {
             AnsiLogger.warning(logger, "No JAR files found in the directory: {}", directoryPath);
@@ -75,25 +179,73 @@ public class PomGenerator {
     }
 
     /**
-     * Generates POM entries for the {@code File}s in the {@code files} array and writes them to the specified writer(s).
+     * Reports whether a generated file was written or left untouched because its content did not change.
+     *
+     * @param replaced    Whether the file was replaced.
+     * @param description The description of the file's content.
+     * @param path        The path of the file.
+     */
+    private static void reportReplacement(boolean replaced, String description, Path path) {
+        if (replaced) {
+            AnsiLogger.success(description + " written to: {}", path.toAbsolutePath());
+        } else {
+            AnsiLogger.info(description + " unchanged, skipped writing: {}", path.toAbsolutePath());
+        }
+    }
+
+    /**
+     * Generates POM entries for the JAR files found below {@code directoryPath} and writes them to the specified
+     * writer(s). Unless {@code sorted} is set, entries are written in the order the JAR files are found, each one
+     * as soon as its JAR file and the ones found before it have been scanned.
      *
      * @param writer                            The writer to write the POM entries to.
      * @param additionalWriter                  The writer to write the additional entries to, or null if no additional file is
      *                                          being created.
-     * @param files                             The array of {@code File}s to generate POM entries for.
+     * @param directoryPath                     The directory containing the JAR files.
+     * @param discoveryOptions                  The options controlling which JAR files below the directory are used.
      * @param additionalFileEmailFriendlyFormat Whether to create the additional file in an email-friendly format.
      *                                          Only used if {@code additionalWriter} is not null.
+     * @param sorted                            Whether to sort the entries by coordinates before writing them.
      * @throws IOException If an I/O error occurs while writing to the writer(s).
      */
-    private static void writeEntries(BufferedWriter writer, BufferedWriter additionalWriter, File[] files,
-                                     boolean additionalFileEmailFriendlyFormat) throws IOException {
-        List<Artifact> artifacts = createArtifactList(files, true);
-        for (Artifact artifact : artifacts) {
-
-            writePomEntry(writer, artifact);
-            if (additionalWriter != null) {
-                writeAdditionalEntry(additionalWriter, artifact, additionalFileEmailFriendlyFormat);
+    private static void writeEntries(BufferedWriter writer, BufferedWriter additionalWriter, Path directoryPath,
+                                     JarDiscovery.Options discoveryOptions, boolean additionalFileEmailFriendlyFormat,
+                                     boolean sorted) throws IOException {
+        try (Stream<Path> jars = JarDiscovery.find(directoryPath, discoveryOptions, ".jar")) {
+            if (sorted) {
+                List<Artifact> artifacts = createArtifactList(jars, true);
+                artifacts.sort(COORDINATES_ORDER);
+                for (Artifact artifact : artifacts) {
+                    writeEntry(writer, additionalWriter, artifact, additionalFileEmailFriendlyFormat);
+                }
+                return;
             }
+            scanArtifacts(jars, true, artifact -> {
+                try {
+                    writeEntry(writer, additionalWriter, artifact, additionalFileEmailFriendlyFormat);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Writes the POM entry and, if requested, the additional entry for a single artifact.
+     *
+     * @param writer                            The writer to write the POM entry to.
+     * @param additionalWriter                  The writer to write the additional entry to, or null.
+     * @param artifact                          The {@code Artifact} to write the entries for.
+     * @param additionalFileEmailFriendlyFormat Whether to write the additional entry in an email-friendly format.
+     * @throws IOException If an I/O error occurs while writing to the writer(s).
+     */
+    private static void writeEntry(BufferedWriter writer, BufferedWriter additionalWriter, Artifact artifact,
+                                   boolean additionalFileEmailFriendlyFormat) throws IOException {
+        writePomEntry(writer, artifact);
+        if (additionalWriter != null) {
+            writeAdditionalEntry(additionalWriter, artifact, additionalFileEmailFriendlyFormat);
         }
     }
 
@@ -104,25 +256,133 @@ public class PomGenerator {
      * @return A list of {@code Artifact}s created from the specified array of {@code File}s.
      */
     public static List<Artifact> createArtifactList(File[] files, boolean filterOutSources) {
+        return createArtifactList(Arrays.stream(files).map(File::toPath), filterOutSources);
+    }
+
+    /**
+     * Creates a list of {@code Artifact}s from the specified stream of JAR files. The files are scanned in parallel,
+     * and the list is in stream order.
+     *
+     * @param jars             The stream of JAR files to create {@code Artifact}s from.
+     * @param filterOutSources Whether to skip source JAR files.
+     * @return A list of {@code Artifact}s created from the JAR files.
+     */
+    public static List<Artifact> createArtifactList(Stream<Path> jars, boolean filterOutSources) {
         List<Artifact> artifacts = Lists.newArrayList();
-        for (File file : files) {
-            if (filterOutSources && file.getName().contains("sources")) {
-                continue;
-            }
-            try (JarFile jar = new JarFile(file)) {
-                Properties props = extractPomProperties(jar);
-                if (props != null) {
-                    String groupId = props.getProperty("groupId");
-                    String artifactId = props.getProperty("artifactId");
-                    String version = props.getProperty("version");
-                    artifacts.add(new Artifact(groupId, artifactId, Optional.of(version), Optional.of(file.toPath())));
+        scanArtifacts(jars, filterOutSources, artifacts::add);
+        return artifacts;
+    }
+
+    /**
+     * Creates an {@code ArtifactCatalog} from the specified stream of JAR files, for callers that look artifacts up
+     * by coordinates or path. The files are scanned in parallel.
+     *
+     * @param jars             The stream of JAR files to create the catalog from.
+     * @param filterOutSources Whether to skip source JAR files.
+     * @return A catalog of the {@code Artifact}s found in the JAR files.
+     */
+    public static ArtifactCatalog createArtifactCatalog(Stream<Path> jars, boolean filterOutSources) {
+        ArtifactCatalog catalog = new ArtifactCatalog();
+        scanArtifacts(jars, filterOutSources, catalog::add);
+        return catalog;
+    }
+
+    /**
+     * Scans the JAR files in the specified stream and passes each {@code Artifact} found to the consumer, in stream
+     * order, on the calling thread. JAR files are scanned in parallel while the stream is still being consumed, but
+     * only a few more than there are threads at a time: the oldest scan is passed on before the next JAR file is
+     * taken from the stream, so memory use does not depend on the number of JAR files. JAR files without POM
+     * properties are skipped.
+     *
+     * @param jars             The stream of JAR files to scan.
+     * @param filterOutSources Whether to skip source JAR files.
+     * @param consumer         The consumer that receives each {@code Artifact}.
+     */
+    public static void scanArtifacts(Stream<Path> jars, boolean filterOutSources, Consumer<Artifact> consumer) {
+        ExecutorService executor = Executors.newFixedThreadPool(SCAN_PARALLELISM);
+        try {
+            Deque<Future<Optional<Artifact>>> scans = new ArrayDeque<>(SCAN_WINDOW);
+            jars.forEach(jar -> {
+                if (filterOutSources && jar.getFileName().toString().contains("sources")) {
+                    return;
                 }
-            } catch (IOException e) {
-                AnsiLogger.error("An error occurred while processing JAR file: {}", file.getName());
-                logger.error("An error occurred while processing JAR file: {}", file.getName(), e);
+                if (scans.size() == SCAN_WINDOW) {
+                    Futures.getUnchecked(scans.remove()).ifPresent(consumer);
+                }
+                scans.add(executor.submit(() -> readArtifact(jar)));
+            });
+            while (!scans.isEmpty()) {
+                Futures.getUnchecked(scans.remove()).ifPresent(consumer);
             }
+        } catch (UncheckedExecutionException e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw e;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Keeps the artifacts read from JAR files, so a JAR file is only opened again once it changes. This is meant for
+     * long-running processes that scan the same folders many times, as a single scan never reads a file twice.
+     *
+     * @param maximumSize The maximum number of JAR files to remember.
+     */
+    public static void enableScanCache(long maximumSize) {
+        scanCache = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+    }
+
+    /**
+     * Reads the {@code Artifact} described by the POM properties of the specified JAR file.
+     *
+     * @param jarPath The JAR file to read.
+     * @return The {@code Artifact}, or empty if the JAR file has no POM properties or could not be read.
+     */
+    public static Optional<Artifact> readArtifact(Path jarPath) {
+        Cache<Path, ScannedJar> cache = scanCache;
+        try {
+            if (cache == null) {
+                return readPomProperties(jarPath);
+            }
+            // A JAR file replaced by another one has a different file key, size or modification time
+            BasicFileAttributes attributes = Files.readAttributes(jarPath, BasicFileAttributes.class);
+            ScannedJar cached = cache.getIfPresent(jarPath);
+            if (cached != null && cached.isSameFile(attributes)) {
+                return cached.artifact();
+            }
+            Optional<Artifact> artifact = readPomProperties(jarPath);
+            cache.put(jarPath, new ScannedJar(attributes.fileKey(), attributes.lastModifiedTime(), attributes.size(),
+                    artifact));
+            return artifact;
+        } catch (IOException e) {
+            AnsiLogger.error("An error occurred while processing JAR file: {}: {}. The verify command can tell " +
+                    "whether the file is damaged.", jarPath.getFileName(), e.getMessage());
+            logger.error("An error occurred while processing JAR file: {}", jarPath.getFileName(), e);
+        }
+        return Optional.empty();
+    }
+
+    private static Optional<Artifact> readPomProperties(Path jarPath) throws IOException {
+        try (JarFile jar = new JarFile(jarPath.toFile())) {
+            Properties props = extractPomProperties(jar);
+            if (props != null) {
+                String groupId = props.getProperty("groupId");
+                String artifactId = props.getProperty("artifactId");
+                String version = props.getProperty("version");
+                return Optional.of(new Artifact(groupId, artifactId, Optional.of(version), Optional.of(jarPath)));
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * The artifact read from a JAR file, with the attributes the file had when it was read.
+     */
+    private record ScannedJar(Object fileKey, FileTime lastModified, long size, Optional<Artifact> artifact) {
+        boolean isSameFile(BasicFileAttributes attributes) {
+            return Objects.equals(fileKey, attributes.fileKey()) &&
+                    lastModified.equals(attributes.lastModifiedTime()) && size == attributes.size();
         }
-        return artifacts;
     }
 
     /**
@@ -148,14 +408,13 @@ public class PomGenerator {
      */
     protected static void writePomEntry(BufferedWriter writer, String groupId, String artifactId, String version)
             throws IOException {
-        String xmlEntry = String.format("""
-                 <dependency>
-                 <groupId>%s</groupId>
-                 <artifactId>%s</artifactId>
-                 <version>%s</version>
-                 </dependency>
-                """, groupId, artifactId, version);
-        writer.write(xmlEntry);
+        writer.write(DEPENDENCY_START);
+        writer.write(groupId);
+        writer.write(GROUP_ID_END_ARTIFACT_ID_START);
+        writer.write(artifactId);
+        writer.write(ARTIFACT_ID_END_VERSION_START);
+        writer.write(version);
+        writer.write(VERSION_END_DEPENDENCY_END);
     }
 
     /**
@@ -1,18 +1,154 @@
 package dev.roshin.tools.userlibs_combiner;
 
-import org.jdom2.Document;
-import org.jdom2.Element;
-import org.jdom2.JDOMException;
-import org.jdom2.input.SAXBuilder;
-import org.jdom2.output.Format;
-import org.jdom2.output.XMLOutputter;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.base.Verify;
+import dev.roshin.tools.util.AnsiLogger;
+import dev.roshin.tools.util.CommonUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
 
+/**
+ * Merges several Eclipse user libraries files into one.
+ * <p>
+ * The inputs are streamed with StAX straight to the output, one at a time and in input order, while the next couple
+ * of inputs are read ahead as raw bytes. Only that fixed window of inputs is held in memory at a time, however many
+ * inputs there are and however many processors the machine has. Libraries with the same name are resolved with a {@link DuplicatePolicy}, and an
+ * archive is only written once, to the first library that has it.
+ */
 public class UserLibrariesMerger {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserLibrariesMerger.class);
+
+    private static final String ROOT_ELEMENT = "eclipse-userlibraries";
+    private static final String LIBRARY_ELEMENT = "library";
+    private static final String ARCHIVE_ELEMENT = "archive";
+    private static final QName NAME_ATTRIBUTE = new QName("name");
+    private static final QName PATH_ATTRIBUTE = new QName("path");
+
+    private static final Pattern WINDOWS_DRIVE = Pattern.compile("^[A-Za-z]:");
+
+    // Number of input files read ahead of the one being written, each held in memory whole
+    private static final int READ_AHEAD = 2;
+
+    private static final XMLEventFactory EVENTS = XMLEventFactory.newFactory();
+    // Parser factories are not thread safe, so each thread merging files has its own
+    private static final ThreadLocal<XMLInputFactory> INPUT_FACTORY =
+            ThreadLocal.withInitial(UserLibrariesMerger::createInputFactory);
+
+    /**
+     * How to merge libraries that have the same name.
+     */
+    public enum DuplicatePolicy {
+        /**
+         * Write every library and archive as is, duplicates included.
+         */
+        KEEP_ALL("keep-all"),
+        /**
+         * Keep the first library with a name and drop the others.
+         */
+        FIRST_WINS("first-wins"),
+        /**
+         * Keep the last library with a name and drop the others.
+         */
+        LAST_WINS("last-wins"),
+        /**
+         * Keep the first library with a name, with the archives of all libraries with that name.
+         */
+        UNION("union"),
+        /**
+         * Fail the merge if two libraries have the same name.
+         */
+        FAIL("fail");
+
+        private final String label;
+
+        DuplicatePolicy(String label) {
+            this.label = label;
+        }
+
+        public String label() {
+            return label;
+        }
+
+        /**
+         * @param label The label of the policy, as used on the command line, for example {@code first-wins}.
+         * @return The policy.
+         */
+        public static DuplicatePolicy fromLabel(String label) {
+            for (DuplicatePolicy policy : values()) {
+                if (policy.label.equalsIgnoreCase(label) || policy.name().equalsIgnoreCase(label)) {
+                    return policy;
+                }
+            }
+            throw new IllegalArgumentException("Unknown duplicate policy: " + label);
+        }
+    }
+
+    /**
+     * A library name that is defined more than once.
+     *
+     * @param name    The name of the library.
+     * @param sources The files defining the library, once per definition, in merge order.
+     */
+    public record DuplicateLibrary(String name, List<Path> sources) {
+    }
+
+    /**
+     * An archive that was not written because an earlier library already has it.
+     *
+     * @param path        The path of the archive, as written in the library that was dropped.
+     * @param keptIn      The library the archive was written to.
+     * @param droppedFrom The library the archive was dropped from.
+     */
+    public record DuplicateArchive(String path, String keptIn, String droppedFrom) {
+    }
+
+    /**
+     * @param libraryCount       The number of libraries written.
+     * @param archiveCount       The number of archives written.
+     * @param duplicateLibraries The library names defined more than once.
+     * @param duplicateArchives  The archives that were dropped.
+     */
+    public record MergeReport(int libraryCount, int archiveCount, List<DuplicateLibrary> duplicateLibraries,
+                              List<DuplicateArchive> duplicateArchives) {
+        public boolean hasDuplicates() {
+            return !duplicateLibraries.isEmpty() || !duplicateArchives.isEmpty();
+        }
+    }
+
     public static void main(String[] args) {
         if (args.length < 2) {
             System.out.println("Usage: java UserLibrariesMerger <output-file> <input-file1> [<input-file2> ...]");
@@ -25,33 +161,442 @@ public class UserLibrariesMerger {
         try {
             mergeUserLibraries(outputPath, inputPaths);
             System.out.println("User libraries merged successfully.");
-        } catch (IOException | JDOMException e) {
+        } catch (IOException | XMLStreamException e) {
             System.err.println("Error merging user libraries: " + e.getMessage());
         }
     }
 
-    public static void mergeUserLibraries(Path outputPath, List<Path> inputPaths) throws IOException, JDOMException {
-        Element rootElement = new Element("eclipse-userlibraries");
-        rootElement.setAttribute("version", "2");
+    /**
+     * Merges the {@code <library>} elements of the input files into a single user libraries file, keeping every
+     * library and archive.
+     *
+     * @see #mergeUserLibraries(Path, List, DuplicatePolicy)
+     */
+    public static MergeReport mergeUserLibraries(Path outputPath, List<Path> inputPaths)
+            throws IOException, XMLStreamException {
+        return mergeUserLibraries(outputPath, inputPaths, DuplicatePolicy.KEEP_ALL);
+    }
+
+    /**
+     * Merges the {@code <library>} elements of the input files into a single user libraries file. The output is
+     * written to a temporary file first, and only replaces the output file once every input was merged.
+     * <p>
+     * Unless the policy is {@link DuplicatePolicy#KEEP_ALL}, an archive is only written to the first library that has
+     * it, comparing normalized paths. The {@link DuplicatePolicy#LAST_WINS} and {@link DuplicatePolicy#UNION} policies
+     * read the inputs twice, to find the duplicates before writing.
+     *
+     * @param outputPath The user libraries file to write.
+     * @param inputPaths The user libraries files to merge, in the order their libraries should appear.
+     * @param policy     How to merge libraries with the same name.
+     * @return What was merged and which duplicates were dropped.
+     * @throws IOException        If an input could not be read or the output could not be written.
+     * @throws XMLStreamException If an input is not a well formed user libraries file.
+     */
+    public static MergeReport mergeUserLibraries(Path outputPath, List<Path> inputPaths, DuplicatePolicy policy)
+            throws IOException, XMLStreamException {
+        Preconditions.checkNotNull(policy, "Duplicate policy cannot be null.");
+        Lookahead lookahead = policy == DuplicatePolicy.LAST_WINS || policy == DuplicatePolicy.UNION
+                ? scanDuplicates(inputPaths, policy) : null;
+
+        MergeReport report;
+        Path tempPath = CommonUtils.createSiblingTempFile(outputPath);
+        try {
+            try (OutputStream outputStream = Files.newOutputStream(tempPath)) {
+                XMLEventWriter writer = XMLOutputFactory.newFactory().createXMLEventWriter(outputStream, "UTF-8");
+                try {
+                    writer.add(EVENTS.createStartDocument("UTF-8", "1.0"));
+                    writer.add(EVENTS.createCharacters("\n"));
+                    writer.add(EVENTS.createStartElement("", "", ROOT_ELEMENT));
+                    writer.add(EVENTS.createAttribute("version", "2"));
+                    Merge merge = new Merge(writer, policy, lookahead);
+                    forEachLibrary(inputPaths, merge::library);
+                    writer.add(EVENTS.createCharacters("\n"));
+                    writer.add(EVENTS.createEndElement("", "", ROOT_ELEMENT));
+                    writer.add(EVENTS.createCharacters("\n"));
+                    writer.add(EVENTS.createEndDocument());
+                    writer.flush();
+                    report = merge.report();
+                } finally {
+                    writer.close();
+                }
+            }
+            CommonUtils.replaceIfChanged(tempPath, outputPath);
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+        printReport(report);
+        AnsiLogger.success("Merged {} user libraries files into: {}", inputPaths.size(), outputPath);
+        return report;
+    }
+
+    /**
+     * Normalizes an archive path for comparison: separators become {@code /}, {@code .} and {@code ..} segments are
+     * resolved, and Windows paths are lower cased, as Windows file names are not case sensitive.
+     *
+     * @param path The path of an archive, as written in a user libraries file.
+     * @return The normalized path.
+     */
+    protected static String normalizeArchivePath(String path) {
+        String slashed = path.replace('\\', '/');
+        Deque<String> segments = new ArrayDeque<>();
+        for (String segment : slashed.split("/")) {
+            if (segment.isEmpty() || segment.equals(".")) {
+                continue;
+            }
+            if (segment.equals("..") && !segments.isEmpty() && !segments.peekLast().equals("..")) {
+                segments.removeLast();
+            } else {
+                segments.addLast(segment);
+            }
+        }
+        String prefix = slashed.startsWith("//") ? "//" : slashed.startsWith("/") ? "/" : "";
+        String normalized = prefix + String.join("/", segments);
+        return WINDOWS_DRIVE.matcher(normalized).lookingAt() ? normalized.toLowerCase(Locale.ROOT) : normalized;
+    }
+
+    /**
+     * Reads the inputs once to find, for each library name, the last library with it and, for the union policy, the
+     * archives of every library with it but the first. Only the archives of duplicate libraries are kept in memory.
+     */
+    private static Lookahead scanDuplicates(List<Path> inputPaths, DuplicatePolicy policy)
+            throws IOException, XMLStreamException {
+        Lookahead lookahead = new Lookahead(new HashMap<>(), new HashMap<>());
+        int[] ordinal = {0};
+        forEachLibrary(inputPaths, (inputPath, library, reader) -> {
+            String name = attribute(library, NAME_ATTRIBUTE);
+            if (name == null) {
+                ordinal[0]++;
+                skipElement(reader);
+                return;
+            }
+            boolean duplicate = lookahead.lastOccurrence().put(name, ordinal[0]++) != null;
+            if (duplicate && policy == DuplicatePolicy.UNION) {
+                List<BufferedArchive> archives =
+                        lookahead.laterArchives().computeIfAbsent(name, key -> new ArrayList<>());
+                readArchives(reader, archives);
+            } else {
+                skipElement(reader);
+            }
+        });
+        return lookahead;
+    }
+
+    /**
+     * Reads the rest of a library element, buffering the events of its archives.
+     */
+    private static void readArchives(EventSource reader, List<BufferedArchive> archives)
+            throws XMLStreamException {
+        while (true) {
+            XMLEvent event = reader.nextEvent();
+            if (event.isEndElement()) {
+                return;
+            }
+            if (event.isStartElement()) {
+                StartElement child = event.asStartElement();
+                List<XMLEvent> events = new ArrayList<>();
+                copyElement(child, reader, events::add);
+                if (isArchive(child)) {
+                    archives.add(new BufferedArchive(attribute(child, PATH_ATTRIBUTE), events));
+                }
+            }
+        }
+    }
+
+    /**
+     * Calls the handler with every {@code <library>} element directly below the root of the inputs, in input order.
+     * The handler receives the start event of the library and must read the source up to and including its end event.
+     * <p>
+     * The input being handled is parsed as the handler reads it, without buffering its events. The raw bytes of up to
+     * {@link #READ_AHEAD} inputs after it are read in the background, so slow reads, for example from network shares,
+     * overlap with the merge instead of adding up.
+     *
+     * @param inputPaths The user libraries files to read.
+     * @param handler    The handler to call.
+     * @throws IOException        If an input could not be read.
+     * @throws XMLStreamException If an input is not a well formed user libraries file.
+     */
+    private static void forEachLibrary(List<Path> inputPaths, LibraryHandler handler)
+            throws IOException, XMLStreamException {
+        ExecutorService executor = Executors.newFixedThreadPool(READ_AHEAD);
+        try {
+            Deque<Future<byte[]>> reads = new ArrayDeque<>(READ_AHEAD + 1);
+            int nextRead = 0;
+            for (Path inputPath : inputPaths) {
+                // Keep the window of reads ahead of this input full
+                while (nextRead < inputPaths.size() && reads.size() <= READ_AHEAD) {
+                    Path readPath = inputPaths.get(nextRead++);
+                    reads.add(executor.submit(() -> Files.readAllBytes(readPath)));
+                }
+                handleLibraries(inputPath, new ByteArrayInputStream(await(reads.remove())), handler);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Calls the handler with each {@code <library>} element directly below the root of the input, as it is parsed.
+     *
+     * @param inputPath   The user libraries file being read.
+     * @param inputStream The content of the file.
+     * @param handler     The handler to call.
+     * @throws IOException        If the input could not be read.
+     * @throws XMLStreamException If the input is not a well formed user libraries file.
+     */
+    private static void handleLibraries(Path inputPath, InputStream inputStream, LibraryHandler handler)
+            throws IOException, XMLStreamException {
+        try (inputStream) {
+            XMLEventReader reader = INPUT_FACTORY.get().createXMLEventReader(inputStream);
+            try {
+                StartElement root = nextStartElement(reader);
+                if (root == null || !root.getName().getLocalPart().equals(ROOT_ELEMENT)) {
+                    throw new XMLStreamException("Invalid input file format. Expected <" + ROOT_ELEMENT +
+                            "> root element: " + inputPath);
+                }
+                int depth = 1;
+                while (reader.hasNext() && depth > 0) {
+                    XMLEvent event = reader.nextEvent();
+                    if (event.isStartElement()) {
+                        if (depth == 1 && event.asStartElement().getName().getLocalPart().equals(LIBRARY_ELEMENT)) {
+                            handler.library(inputPath, event.asStartElement(), reader::nextEvent);
+                        } else {
+                            depth++;
+                        }
+                    } else if (event.isEndElement()) {
+                        depth--;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        }
+    }
 
-        SAXBuilder builder = new SAXBuilder();
+    /**
+     * Waits for a read, rethrowing its failure as is.
+     */
+    private static <T> T await(Future<T> read) throws IOException, XMLStreamException {
+        try {
+            return read.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading user libraries files");
+        } catch (ExecutionException e) {
+            Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+            Throwables.throwIfInstanceOf(e.getCause(), XMLStreamException.class);
+            Throwables.throwIfUnchecked(e.getCause());
+            throw new IllegalStateException(e.getCause());
+        }
+    }
 
-        for (Path inputPath : inputPaths) {
-            Document document = builder.build(Files.newInputStream(inputPath));
-            Element inputRoot = document.getRootElement();
+    /**
+     * Copies an element, starting with its already read start event, up to and including its end event.
+     */
+    private static void copyElement(XMLEvent startEvent, EventSource reader, EventSink sink)
+            throws XMLStreamException {
+        sink.add(startEvent);
+        int depth = 1;
+        while (depth > 0) {
+            XMLEvent event = reader.nextEvent();
+            if (event.isStartElement()) {
+                depth++;
+            } else if (event.isEndElement()) {
+                depth--;
+            }
+            sink.add(event);
+        }
+    }
 
-            if (!inputRoot.getName().equals("eclipse-userlibraries")) {
-                throw new JDOMException("Invalid input file format. Expected <eclipse-userlibraries> root element.");
+    /**
+     * Reads the rest of an element whose start event was already read, up to and including its end event.
+     */
+    private static void skipElement(EventSource reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            XMLEvent event = reader.nextEvent();
+            if (event.isStartElement()) {
+                depth++;
+            } else if (event.isEndElement()) {
+                depth--;
             }
+        }
+    }
 
-            List<Element> libraryElements = inputRoot.getChildren("library");
-            for (Element libraryElement : libraryElements) {
-                rootElement.addContent(libraryElement.clone());
+    /**
+     * @return The next start element of the reader, or null if there is none.
+     */
+    private static StartElement nextStartElement(XMLEventReader reader) throws XMLStreamException {
+        while (reader.hasNext()) {
+            XMLEvent event = reader.nextEvent();
+            if (event.isStartElement()) {
+                return event.asStartElement();
             }
         }
+        return null;
+    }
 
-        Document outputDocument = new Document(rootElement);
-        XMLOutputter outputter = new XMLOutputter(Format.getPrettyFormat());
-        outputter.output(outputDocument, Files.newOutputStream(outputPath));
+    private static boolean isArchive(StartElement element) {
+        return element.getName().getLocalPart().equals(ARCHIVE_ELEMENT);
+    }
+
+    private static String attribute(StartElement element, QName name) {
+        Attribute attribute = element.getAttributeByName(name);
+        return attribute == null ? null : attribute.getValue();
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory inputFactory = XMLInputFactory.newFactory();
+        // User libraries files never need a DTD, and external entities are not to be trusted
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return inputFactory;
+    }
+
+    private static void printReport(MergeReport report) {
+        for (DuplicateLibrary library : report.duplicateLibraries()) {
+            AnsiLogger.warning(logger, "Library {} is defined {} times, in: {}", library.name(),
+                    library.sources().size(), library.sources());
+        }
+        for (DuplicateArchive archive : report.duplicateArchives()) {
+            AnsiLogger.warning(logger, "Dropped archive {} from library {}, it is already in library {}",
+                    archive.path(), archive.droppedFrom(), archive.keptIn());
+        }
+        if (report.hasDuplicates()) {
+            AnsiLogger.warning("Collapsed {} duplicate libraries and {} duplicate archives",
+                    report.duplicateLibraries().size(), report.duplicateArchives().size());
+        }
+        AnsiLogger.info("Wrote {} libraries with {} archives", report.libraryCount(), report.archiveCount());
+    }
+
+    @FunctionalInterface
+    private interface LibraryHandler {
+        void library(Path inputPath, StartElement library, EventSource reader) throws XMLStreamException;
+    }
+
+    @FunctionalInterface
+    private interface EventSource {
+        XMLEvent nextEvent() throws XMLStreamException;
+    }
+
+    @FunctionalInterface
+    private interface EventSink {
+        void add(XMLEvent event) throws XMLStreamException;
+    }
+
+    /**
+     * What the first read of the inputs found.
+     *
+     * @param lastOccurrence The position of the last library with each name, counting libraries across all inputs.
+     * @param laterArchives  For the union policy, the archives of every library with a name but the first.
+     */
+    private record Lookahead(Map<String, Integer> lastOccurrence, Map<String, List<BufferedArchive>> laterArchives) {
+    }
+
+    private record BufferedArchive(String path, List<XMLEvent> events) {
+    }
+
+    /**
+     * State of a merge while the inputs are written.
+     */
+    private static class Merge {
+        private final XMLEventWriter writer;
+        private final DuplicatePolicy policy;
+        private final Lookahead lookahead;
+
+        // Library name to the files defining it, in merge order
+        private final Map<String, List<Path>> sourcesByName = new LinkedHashMap<>();
+        // Normalized archive path to the library it was written to
+        private final Map<String, String> writtenArchives = new HashMap<>();
+        private final List<DuplicateArchive> duplicateArchives = new ArrayList<>();
+        private int ordinal;
+        private int libraryCount;
+        private int archiveCount;
+
+        Merge(XMLEventWriter writer, DuplicatePolicy policy, Lookahead lookahead) {
+            this.writer = writer;
+            this.policy = policy;
+            this.lookahead = lookahead;
+        }
+
+        void library(Path inputPath, StartElement library, EventSource reader) throws XMLStreamException {
+            int position = ordinal++;
+            String name = attribute(library, NAME_ATTRIBUTE);
+            if (!shouldWrite(inputPath, name, position)) {
+                skipElement(reader);
+                return;
+            }
+            libraryCount++;
+            String libraryName = Objects.requireNonNullElse(name, "");
+            writer.add(EVENTS.createCharacters("\n  "));
+            writer.add(library);
+            while (true) {
+                XMLEvent event = reader.nextEvent();
+                if (event.isEndElement()) {
+                    if (policy == DuplicatePolicy.UNION && name != null) {
+                        for (BufferedArchive archive : lookahead.laterArchives().getOrDefault(name, List.of())) {
+                            if (shouldWriteArchive(archive.path(), libraryName)) {
+                                writer.add(EVENTS.createCharacters("\n    "));
+                                for (XMLEvent archiveEvent : archive.events()) {
+                                    writer.add(archiveEvent);
+                                }
+                            }
+                        }
+                    }
+                    writer.add(EVENTS.createCharacters("\n  "));
+                    writer.add(event);
+                    return;
+                }
+                if (event.isStartElement()) {
+                    StartElement child = event.asStartElement();
+                    if (isArchive(child) && !shouldWriteArchive(attribute(child, PATH_ATTRIBUTE), libraryName)) {
+                        skipElement(reader);
+                    } else {
+                        writer.add(EVENTS.createCharacters("\n    "));
+                        copyElement(child, reader, writer::add);
+                    }
+                } else if (!event.isCharacters() || !event.asCharacters().isWhiteSpace()) {
+                    // Indentation is rewritten, anything else such as comments is kept
+                    writer.add(event);
+                }
+            }
+        }
+
+        private boolean shouldWrite(Path inputPath, String name, int position) {
+            if (name == null) {
+                return true;
+            }
+            List<Path> sources = sourcesByName.computeIfAbsent(name, key -> new ArrayList<>());
+            sources.add(inputPath);
+            return switch (policy) {
+                case KEEP_ALL -> true;
+                case FIRST_WINS, UNION -> sources.size() == 1;
+                case LAST_WINS -> lookahead.lastOccurrence().get(name) == position;
+                case FAIL -> {
+                    Verify.verify(sources.size() == 1, "Library %s is defined more than once, in: %s", name,
+                            sources);
+                    yield true;
+                }
+            };
+        }
+
+        private boolean shouldWriteArchive(String path, String library) {
+            if (policy != DuplicatePolicy.KEEP_ALL && path != null) {
+                String keptIn = writtenArchives.putIfAbsent(normalizeArchivePath(path), library);
+                if (keptIn != null) {
+                    duplicateArchives.add(new DuplicateArchive(path, keptIn, library));
+                    return false;
+                }
+            }
+            archiveCount++;
+            return true;
+        }
+
+        MergeReport report() {
+            List<DuplicateLibrary> duplicateLibraries = sourcesByName.entrySet().stream()
+                    .filter(entry -> entry.getValue().size() > 1)
+                    .map(entry -> new DuplicateLibrary(entry.getKey(), List.copyOf(entry.getValue())))
+                    .toList();
+            return new MergeReport(libraryCount, archiveCount, duplicateLibraries, List.copyOf(duplicateArchives));
+        }
     }
-}
\ No newline at end of file
+}
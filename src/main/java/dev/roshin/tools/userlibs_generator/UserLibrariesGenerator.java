@@ -1,31 +1,76 @@
 package dev.roshin.tools.userlibs_generator;
 
 import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
 import com.google.common.base.Verify;
+import com.google.common.base.VerifyException;
+import dev.roshin.tools.config.Config;
+import dev.roshin.tools.download_jars.ArtifactDownloader;
+import dev.roshin.tools.download_jars.DownloadRun;
+import dev.roshin.tools.download_jars.LockFile;
 import dev.roshin.tools.download_jars.domain.Artifact;
+import dev.roshin.tools.download_jars.domain.ArtifactCatalog;
 import dev.roshin.tools.download_jars.domain.ArtifactPair;
 import dev.roshin.tools.pom_generator.PomGenerator;
 import dev.roshin.tools.util.AnsiLogger;
+import dev.roshin.tools.util.ChangesFileUtil;
+import dev.roshin.tools.util.CommonUtils;
+import dev.roshin.tools.util.JarDiscovery;
 import org.jdom2.Document;
 import org.jdom2.Element;
+import org.jdom2.JDOMException;
+import org.jdom2.input.SAXBuilder;
 import org.jdom2.output.Format;
 import org.jdom2.output.XMLOutputter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
 
 public class UserLibrariesGenerator {
+
+    /**
+     * A library of a shared libraries file.
+     *
+     * @param name        The name of the library.
+     * @param specFile    The spec file listing the artifacts of the library.
+     * @param jarsPath    The folder with the JARs of the library.
+     * @param sourcesPath The folder with the source JARs of the library, or null if sources are not included.
+     */
+    public record SharedLibrary(String name, Path specFile, Path jarsPath, Path sourcesPath) {
+    }
+
     public static void generateUserLibs(String libraryName, Path specFIlePath, Path outputXml,
                                         Path jarsPath, String jarsSourcePath, String changeLogFile) {
+        generateUserLibs(libraryName, specFIlePath, outputXml, jarsPath, jarsSourcePath, changeLogFile,
+                JarDiscovery.Options.flat());
+    }
+
+    public static void generateUserLibs(String libraryName, Path specFIlePath, Path outputXml,
+                                        Path jarsPath, String jarsSourcePath, String changeLogFile,
+                                        JarDiscovery.Options discoveryOptions) {
         Logger logger = LoggerFactory.getLogger(UserLibrariesGenerator.class);
         logger.info("Starting UserLibs generation...");
         Preconditions.checkArgument(Files.exists(specFIlePath), "Spec file does not exist: "
@@ -36,99 +81,532 @@ public class UserLibrariesGenerator {
         logger.info("Spec file: {}", specFIlePath);
 
         // Check if we need to get the source jars
-        boolean includeSource = false;
         Path sourcePath = null;
         if (jarsSourcePath != null) {
-            includeSource = true;
             sourcePath = Paths.get(jarsSourcePath);
             logger.info("Source JARs will be included.");
             Verify.verify(Files.exists(sourcePath), "Source JARs path does not exist: " + sourcePath);
         }
 
-        // Get the list of JARs in target folder
-        File dir = jarsPath.toFile();
-        File[] files = dir.listFiles((d, name) -> name.endsWith(".jar"));
-        if (files == null) {
-            AnsiLogger.error("No JAR files found in target folder: {}", jarsPath);
+        Optional<List<ArtifactPair>> jarPairs = scanLibrary(jarsPath, sourcePath, discoveryOptions);
+        if (jarPairs.isEmpty()) {
             return;
         }
-        List<Artifact> artifacts = PomGenerator.createArtifactList(files, true);
-        List<Artifact> sourceArtifacts = null;
-        if (includeSource) {
-            File[] sourceFiles = sourcePath.toFile().listFiles((d, name) -> name.endsWith("-sources.jar"));
-            if (sourceFiles == null) {
-                AnsiLogger.error("No source JAR files found in source folder: {}", sourcePath);
-                return;
+
+        generateUserLibraries(jarPairs.get(), libraryName, outputXml, changeLogFile);
+    }
+
+    /**
+     * Generates the user library from the spec file alone, without opening any JAR.
+     * <p>
+     * The JAR of each artifact is expected at the name the download command gives it: {@code <artifactId>.jar}, or
+     * {@code <artifactId>-<version>.jar} if {@code useRemoteName} is set, and its source JAR at
+     * {@code <artifactId>-sources.jar}. Unless {@code trustSpec} is set, each file is checked with a single file
+     * system lookup, and artifacts without a JAR are left out with a warning. If {@code trustSpec} is set, the paths
+     * are written without looking at the folders at all.
+     *
+     * @param libraryName    The name of the library.
+     * @param specFilePath   The spec file listing the artifacts of the library.
+     * @param outputXml      The user libraries file to write.
+     * @param jarsPath       The folder with the JARs.
+     * @param jarsSourcePath The folder with the source JARs, or null if sources are not included.
+     * @param changeLogFile  The changes file to record library changes in, or null.
+     * @param useRemoteName  Whether the JARs are named after the remote file, with their version.
+     * @param trustSpec      Whether to write the paths without checking that the files exist.
+     */
+    public static void generateUserLibsFromSpec(String libraryName, Path specFilePath, Path outputXml,
+                                                Path jarsPath, String jarsSourcePath, String changeLogFile,
+                                                boolean useRemoteName, boolean trustSpec) {
+        Logger logger = LoggerFactory.getLogger(UserLibrariesGenerator.class);
+        logger.info("Starting UserLibs generation from spec file...");
+        Preconditions.checkArgument(Files.exists(specFilePath), "Spec file does not exist: "
+                + specFilePath);
+        Preconditions.checkArgument(Files.exists(outputXml.toAbsolutePath().getParent()),
+                "Output XML file does not exist: " + outputXml);
+        Path sourcePath = jarsSourcePath == null ? null : Paths.get(jarsSourcePath);
+        if (!trustSpec) {
+            Verify.verify(Files.isDirectory(jarsPath), "JAR folder does not exist: %s", jarsPath);
+            Verify.verify(sourcePath == null || Files.isDirectory(sourcePath), "Source JARs path does not exist: %s",
+                    sourcePath);
+        }
+
+        List<ArtifactPair> jarPairs = new ArrayList<>();
+        for (Artifact artifact : ArtifactDownloader.parseSpecFile(specFilePath)) {
+            if (useRemoteName && artifact.version().isEmpty()) {
+                AnsiLogger.warning(logger, "No version for {}:{} in the spec file, its remote name is unknown and " +
+                        "it is left out of the library", artifact.groupId(), artifact.artifactId());
+                continue;
+            }
+            String jarName = useRemoteName ? artifact.artifactId() + "-" + artifact.version().get() + ".jar"
+                    : artifact.artifactId() + ".jar";
+            Path jar = jarsPath.resolve(jarName);
+            if (!trustSpec && !Files.isRegularFile(jar)) {
+                AnsiLogger.warning(logger, "JAR of {}:{} not found, it is left out of the library: {}",
+                        artifact.groupId(), artifact.artifactId(), jar);
+                continue;
             }
-            sourceArtifacts = PomGenerator.createArtifactList(sourceFiles, false);
+            Artifact jarArtifact = new Artifact(artifact.groupId(), artifact.artifactId(), artifact.version(),
+                    Optional.of(jar));
+            Optional<Artifact> sourceArtifact;
+            if (trustSpec && sourcePath != null) {
+                sourceArtifact = Optional.of(new Artifact(artifact.groupId(), artifact.artifactId(),
+                        artifact.version(), Optional.of(sourcePath.resolve(artifact.artifactId() + "-sources.jar"))));
+            } else {
+                sourceArtifact = findDownloadedSource(jarArtifact, sourcePath);
+            }
+            jarPairs.add(new ArtifactPair(jarArtifact, sourceArtifact));
         }
 
-        // Match the JARs and its sources
-        List<ArtifactPair> jarPairs = matchJarsAndSources(artifacts, sourceArtifacts);
+        generateUserLibraries(jarPairs, libraryName, outputXml, changeLogFile);
+    }
+
+    /**
+     * Downloads the artifacts of the spec file and generates the user library from them, in a single pass.
+     * <p>
+     * Each artifact goes through its own pipeline: its latest version is resolved if needed, its JAR and source JAR are
+     * downloaded, and it becomes an archive of the library as soon as its download finishes, while other artifacts are
+     * still downloading. The downloaded JARs are not opened again, as their coordinates are known from the spec, and
+     * source JARs are found by their download name instead of by scanning the source folder.
+     *
+     * @param libraryName      The name of the library.
+     * @param specFilePath     The spec file listing the artifacts of the library.
+     * @param outputXml        The user libraries file to write.
+     * @param jarsPath         The folder to download the JARs to.
+     * @param jarsSourcePath   The folder to download the source JARs to, or null to not download sources.
+     * @param changeLogFile    The changes file to record downloads and library changes in, or null.
+     * @param dontOverwrite    Keep the JARs already in the JAR folder if they have the requested version.
+     * @param discoveryOptions The options controlling which existing JARs below the JAR folder are considered.
+     */
+    public static void downloadAndGenerateUserLibs(String libraryName, Path specFilePath, Path outputXml,
+                                                   Path jarsPath, String jarsSourcePath, String changeLogFile,
+                                                   boolean dontOverwrite, JarDiscovery.Options discoveryOptions) {
+        downloadAndGenerateUserLibs(libraryName, specFilePath, outputXml, jarsPath, jarsSourcePath, changeLogFile,
+                dontOverwrite, discoveryOptions, null);
+    }
+
+    /**
+     * Downloads the artifacts of the spec file within a deadline and generates the user library from them, as
+     * {@link #downloadAndGenerateUserLibs(String, Path, Path, Path, String, String, boolean, JarDiscovery.Options)}
+     * does.
+     * <p>
+     * The downloads are one run, as for {@code download-jars}: they are cancelled when the deadline passes or the JVM
+     * is stopped with Ctrl-C, in which case no library is generated, and the lockfile of the spec file is written
+     * once they succeed.
+     *
+     * @param libraryName      The name of the library.
+     * @param specFilePath     The spec file listing the artifacts of the library.
+     * @param outputXml        The user libraries file to write.
+     * @param jarsPath         The folder to download the JARs to.
+     * @param jarsSourcePath   The folder to download the source JARs to, or null to not download sources.
+     * @param changeLogFile    The changes file to record downloads and library changes in, or null.
+     * @param dontOverwrite    Keep the JARs already in the JAR folder if they have the requested version.
+     * @param discoveryOptions The options controlling which existing JARs below the JAR folder are considered.
+     * @param deadline         The longest the downloads may take, or null for no limit.
+     */
+    public static void downloadAndGenerateUserLibs(String libraryName, Path specFilePath, Path outputXml,
+                                                   Path jarsPath, String jarsSourcePath, String changeLogFile,
+                                                   boolean dontOverwrite, JarDiscovery.Options discoveryOptions,
+                                                   Duration deadline) {
+        Logger logger = LoggerFactory.getLogger(UserLibrariesGenerator.class);
+        logger.info("Starting UserLibs generation with downloads...");
+        Preconditions.checkArgument(Files.exists(specFilePath), "Spec file does not exist: "
+                + specFilePath);
+        Preconditions.checkArgument(Files.exists(outputXml.toAbsolutePath().getParent()),
+                "Output XML file does not exist: " + outputXml);
+        Verify.verify(Files.isDirectory(jarsPath), "JAR folder does not exist: %s", jarsPath);
+        Path sourcePath = null;
+        if (jarsSourcePath != null) {
+            sourcePath = Paths.get(jarsSourcePath);
+            Verify.verify(Files.isDirectory(sourcePath), "Source JARs path does not exist: %s", sourcePath);
+        }
+        ChangesFileUtil changesLog = Strings.isNullOrEmpty(changeLogFile) ? null
+                : ChangesFileUtil.getInstance(Paths.get(changeLogFile));
+
+        List<Artifact> artifacts = ArtifactDownloader.parseSpecFile(specFilePath);
+        List<ArtifactPair> jarPairs;
+        try (DownloadPipeline pipeline = new DownloadPipeline(changesLog, dontOverwrite, discoveryOptions)) {
+            jarPairs = pipeline.await(List.of(pipeline.library(artifacts, jarsPath, sourcePath)), deadline).get(0);
+            pipeline.writeLockFile(specFilePath, artifacts);
+        }
 
         generateUserLibraries(jarPairs, libraryName, outputXml, changeLogFile);
+    }
 
+    /**
+     * Generates the user libraries listed in a shared libraries file, all at the same time.
+     * <p>
+     * Each line of the file is {@code <name>;<spec file>;<JAR folder>;<source JAR folder>}, where the source JAR
+     * folder is optional. Relative paths are resolved against the folder of the shared libraries file. Libraries that
+     * use the same folders share the work: a folder is scanned only once, and an artifact requested by several
+     * libraries is downloaded only once.
+     *
+     * @param sharedLibsFile   The shared libraries file.
+     * @param outputXml        The user libraries file to write all libraries to, or the folder to write one
+     *                         {@code <name>.userlibraries} file per library to if {@code separate} is set.
+     * @param separate         Whether to write one file per library instead of a single file.
+     * @param download         Whether to download the artifacts of the spec files instead of scanning the JAR folders.
+     * @param dontOverwrite    Keep the JARs already in the JAR folders if they have the requested version.
+     * @param changeLogFile    The changes file to record downloads and library changes in, or null.
+     * @param discoveryOptions The options controlling which JARs below the JAR folders are used.
+     */
+    public static void generateSharedLibs(Path sharedLibsFile, Path outputXml, boolean separate, boolean download,
+                                          boolean dontOverwrite, String changeLogFile,
+                                          JarDiscovery.Options discoveryOptions) {
+        generateSharedLibs(sharedLibsFile, outputXml, separate, download, dontOverwrite, changeLogFile,
+                discoveryOptions, null);
+    }
+
+    /**
+     * Generates the user libraries listed in a shared libraries file, as
+     * {@link #generateSharedLibs(Path, Path, boolean, boolean, boolean, String, JarDiscovery.Options)} does, with a
+     * deadline for the downloads.
+     * <p>
+     * The downloads of all libraries are one run, as for {@code download-jars}: they are cancelled when the deadline
+     * passes or the JVM is stopped with Ctrl-C, in which case no library is generated, and the lockfile of each spec
+     * file is written once they succeed.
+     *
+     * @param sharedLibsFile   The shared libraries file.
+     * @param outputXml        The user libraries file to write all libraries to, or the folder to write one
+     *                         {@code <name>.userlibraries} file per library to if {@code separate} is set.
+     * @param separate         Whether to write one file per library instead of a single file.
+     * @param download         Whether to download the artifacts of the spec files instead of scanning the JAR folders.
+     * @param dontOverwrite    Keep the JARs already in the JAR folders if they have the requested version.
+     * @param changeLogFile    The changes file to record downloads and library changes in, or null.
+     * @param discoveryOptions The options controlling which JARs below the JAR folders are used.
+     * @param deadline         The longest the downloads may take, or null for no limit. Only used with download.
+     */
+    public static void generateSharedLibs(Path sharedLibsFile, Path outputXml, boolean separate, boolean download,
+                                          boolean dontOverwrite, String changeLogFile,
+                                          JarDiscovery.Options discoveryOptions, Duration deadline) {
+        Logger logger = LoggerFactory.getLogger(UserLibrariesGenerator.class);
+        logger.info("Starting shared UserLibs generation...");
+        Preconditions.checkArgument(Files.exists(sharedLibsFile), "Shared libraries file does not exist: "
+                + sharedLibsFile);
+        if (separate) {
+            Verify.verify(Files.isDirectory(outputXml), "Output folder does not exist: %s", outputXml);
+        } else {
+            Preconditions.checkArgument(Files.exists(outputXml.toAbsolutePath().getParent()),
+                    "Output XML file does not exist: " + outputXml);
+        }
+        List<SharedLibrary> sharedLibraries = parseSharedLibsFile(sharedLibsFile);
+        for (SharedLibrary library : sharedLibraries) {
+            Verify.verify(Files.exists(library.specFile()), "Spec file of %s does not exist: %s", library.name(),
+                    library.specFile());
+            Verify.verify(Files.isDirectory(library.jarsPath()), "JAR folder of %s does not exist: %s",
+                    library.name(), library.jarsPath());
+            Verify.verify(library.sourcesPath() == null || Files.isDirectory(library.sourcesPath()),
+                    "Source JARs path of %s does not exist: %s", library.name(), library.sourcesPath());
+        }
+        ChangesFileUtil changesLog = Strings.isNullOrEmpty(changeLogFile) ? null
+                : ChangesFileUtil.getInstance(Paths.get(changeLogFile));
+
+        Map<String, List<ArtifactPair>> libraries = new LinkedHashMap<>();
+        if (download) {
+            try (DownloadPipeline pipeline = new DownloadPipeline(changesLog, dontOverwrite, discoveryOptions)) {
+                List<List<Artifact>> specs = sharedLibraries.stream()
+                        .map(library -> ArtifactDownloader.parseSpecFile(library.specFile()))
+                        .toList();
+                List<CompletableFuture<List<ArtifactPair>>> pipelines = new ArrayList<>();
+                for (int i = 0; i < sharedLibraries.size(); i++) {
+                    pipelines.add(pipeline.library(specs.get(i), sharedLibraries.get(i).jarsPath(),
+                            sharedLibraries.get(i).sourcesPath()));
+                }
+                List<List<ArtifactPair>> pairs = pipeline.await(pipelines, deadline);
+                for (int i = 0; i < sharedLibraries.size(); i++) {
+                    libraries.put(sharedLibraries.get(i).name(), pairs.get(i));
+                    pipeline.writeLockFile(sharedLibraries.get(i).specFile(), specs.get(i));
+                }
+            }
+        } else {
+            // Libraries with the same folders share a single scan
+            Map<List<Path>, CompletableFuture<Optional<List<ArtifactPair>>>> scans = new HashMap<>();
+            for (SharedLibrary library : sharedLibraries) {
+                scans.computeIfAbsent(Arrays.asList(library.jarsPath(), library.sourcesPath()),
+                        folders -> CompletableFuture.supplyAsync(() -> scanLibrary(library.jarsPath(),
+                                library.sourcesPath(), discoveryOptions)));
+            }
+            for (SharedLibrary library : sharedLibraries) {
+                scans.get(Arrays.asList(library.jarsPath(), library.sourcesPath())).join()
+                        .ifPresent(pairs -> libraries.put(library.name(), pairs));
+            }
+        }
+
+        if (separate) {
+            libraries.forEach((name, pairs) -> generateUserLibraries(pairs, name,
+                    outputXml.resolve(name + ".userlibraries"), changeLogFile));
+        } else {
+            generateUserLibraries(libraries, outputXml, changeLogFile);
+        }
+    }
+
+    /**
+     * Parses a shared libraries file. Empty lines and lines starting with {@code #} are ignored, as are invalid lines,
+     * with a warning.
+     *
+     * @param sharedLibsFile The shared libraries file.
+     * @return The libraries, in file order.
+     */
+    public static List<SharedLibrary> parseSharedLibsFile(Path sharedLibsFile) {
+        Logger logger = LoggerFactory.getLogger(UserLibrariesGenerator.class);
+        Path baseFolder = sharedLibsFile.toAbsolutePath().getParent();
+        List<SharedLibrary> libraries = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(sharedLibsFile);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read shared libraries file: " + sharedLibsFile, e);
+        }
+        for (String line : lines) {
+            if (line.isBlank() || line.trim().startsWith("#")) {
+                continue;
+            }
+            String[] parts = line.split(";", -1);
+            if ((parts.length != 3 && parts.length != 4) || parts[0].isBlank() || parts[1].isBlank() ||
+                    parts[2].isBlank()) {
+                AnsiLogger.warning(logger, "Invalid shared library entry: {}", line);
+                continue;
+            }
+            String name = parts[0].trim();
+            Preconditions.checkArgument(names.add(name), "Shared library %s is listed more than once.", name);
+            Path sourcesPath = parts.length == 4 && !parts[3].isBlank() ? baseFolder.resolve(parts[3].trim()) : null;
+            libraries.add(new SharedLibrary(name, baseFolder.resolve(parts[1].trim()),
+                    baseFolder.resolve(parts[2].trim()), sourcesPath));
+        }
+        return libraries;
+    }
 
+    /**
+     * Scans the JARs of a folder and matches them with the source JARs of another folder.
+     *
+     * @param jarsPath         The folder with the JARs.
+     * @param sourcePath       The folder with the source JARs, or null if sources are not included.
+     * @param discoveryOptions The options controlling which JARs below the folders are used.
+     * @return The JARs with their sources, sorted by path, or empty if a folder does not exist.
+     */
+    private static Optional<List<ArtifactPair>> scanLibrary(Path jarsPath, Path sourcePath,
+                                                            JarDiscovery.Options discoveryOptions) {
+        // Get the list of JARs in target folder
+        if (!Files.isDirectory(jarsPath)) {
+            AnsiLogger.error("No JAR files found in target folder: {}", jarsPath);
+            return Optional.empty();
+        }
+        // The source folder is scanned at the same time as the JAR folder, the two scans are independent
+        CompletableFuture<SourceIndex> sourceScan = CompletableFuture.completedFuture(null);
+        if (sourcePath != null) {
+            if (!Files.isDirectory(sourcePath)) {
+                AnsiLogger.error("No source JAR files found in source folder: {}", sourcePath);
+                return Optional.empty();
+            }
+            sourceScan = CompletableFuture.supplyAsync(() -> SourceIndex.scan(sourcePath, discoveryOptions));
+        }
+        List<Artifact> artifacts;
+        try (Stream<Path> jars = JarDiscovery.find(jarsPath, discoveryOptions, ".jar")) {
+            artifacts = PomGenerator.createArtifactList(jars, true);
+        }
+        SourceIndex sourceArtifacts = sourceScan.join();
+        // Sub folders are walked in parallel, sort so the generated file is the same on every run
+        artifacts.sort(Comparator.comparing(artifact -> artifact.localJarPath().map(Path::toString).orElse("")));
+
+        // Match the JARs and its sources
+        return Optional.of(matchJarsAndSources(artifacts, sourceArtifacts));
     }
 
+    /**
+     * Finds the source JAR of an artifact by the name the downloader gives it, {@code <artifactId>-sources.jar}.
+     *
+     * @param artifact     The artifact.
+     * @param sourceFolder The folder the source JARs are downloaded to, or null if sources are not included.
+     * @return The source artifact, or empty if there is no such file.
+     */
+    private static Optional<Artifact> findDownloadedSource(Artifact artifact, Path sourceFolder) {
+        if (sourceFolder == null) {
+            return Optional.empty();
+        }
+        Path sourceJar = sourceFolder.resolve(artifact.artifactId() + "-sources.jar");
+        if (!Files.isRegularFile(sourceJar)) {
+            return Optional.empty();
+        }
+        return Optional.of(new Artifact(artifact.groupId(), artifact.artifactId(), artifact.version(),
+                Optional.of(sourceJar)));
+    }
+
+    /**
+     * Writes a user libraries file with a single library holding the artifacts.
+     *
+     * @param artifactPairs The artifacts of the library with their source artifacts.
+     * @param libraryName   The name of the library.
+     * @param outputPath    The user libraries file to write.
+     * @param changelogPath The changes file to record added, updated and removed archives in, or null.
+     * @see #generateUserLibraries(Map, Path, String)
+     */
     public static void generateUserLibraries(List<ArtifactPair> artifactPairs, String libraryName, Path outputPath, String changelogPath) {
+        generateUserLibraries(Map.of(libraryName, artifactPairs), outputPath, changelogPath);
+    }
+
+    /**
+     * Writes a user libraries file with the libraries. The file is only written when its archives differ from those
+     * already in the file, so Eclipse does not reload unchanged libraries. It is written to a temporary file first and
+     * then moved over the existing file, so a failed write never leaves a partial file.
+     *
+     * @param libraries     The library names to the artifacts of each library with their source artifacts, in the order
+     *                      the libraries are written.
+     * @param outputPath    The user libraries file to write.
+     * @param changelogPath The changes file to record added, updated and removed archives in, or null.
+     */
+    public static void generateUserLibraries(Map<String, List<ArtifactPair>> libraries, Path outputPath,
+                                             String changelogPath) {
         Logger logger = LoggerFactory.getLogger(UserLibrariesGenerator.class);
+
+        // Library name to its archive paths to their source paths, or an empty string for archives without sources
+        Map<String, Map<String, String>> archivesByLibrary = new LinkedHashMap<>();
+        libraries.forEach((libraryName, artifactPairs) -> {
+            Map<String, String> archives = new LinkedHashMap<>();
+            for (ArtifactPair pair : artifactPairs) {
+                Artifact artifact = pair.artifact();
+                Optional<Artifact> sourceArtifact = pair.sourceArtifact();
+
+                String jarPath = artifact.localJarPath().map(path -> path.toString().replace("\\", "/")).orElse("");
+                String sourcePath = sourceArtifact.flatMap(Artifact::localJarPath).map(path -> path.toString().replace("\\", "/")).orElse("");
+                archives.put(jarPath, sourcePath);
+            }
+            archivesByLibrary.put(libraryName, archives);
+        });
+
+        Optional<Map<String, Map<String, String>>> existingLibraries = readLibraries(outputPath);
+        if (existingLibraries.isPresent() && existingLibraries.get().equals(archivesByLibrary)) {
+            AnsiLogger.info("User libraries file is up to date, skipped writing: {}", outputPath);
+            return;
+        }
+
         Document document = new Document();
         Element root = new Element("eclipse-userlibraries");
         root.setAttribute("version", "2");
         document.setRootElement(root);
 
-        Element library = new Element("library");
-        library.setAttribute("name", libraryName);
-        library.setAttribute("systemlibrary", "false");
-
-        for (ArtifactPair pair : artifactPairs) {
-            Artifact artifact = pair.artifact();
-            Optional<Artifact> sourceArtifact = pair.sourceArtifact();
-
-            String jarPath = artifact.localJarPath().map(path -> path.toString().replace("\\", "/")).orElse("");
-            String sourcePath = sourceArtifact.flatMap(Artifact::localJarPath).map(path -> path.toString().replace("\\", "/")).orElse("");
+        archivesByLibrary.forEach((libraryName, archives) -> {
+            Element library = new Element("library");
+            library.setAttribute("name", libraryName);
+            library.setAttribute("systemlibrary", "false");
 
-            Element archive = new Element("archive");
-            archive.setAttribute("path", jarPath);
-            if (!sourcePath.isEmpty()) {
-                archive.setAttribute("source", sourcePath);
+            for (Map.Entry<String, String> entry : archives.entrySet()) {
+                Element archive = new Element("archive");
+                archive.setAttribute("path", entry.getKey());
+                if (!entry.getValue().isEmpty()) {
+                    archive.setAttribute("source", entry.getValue());
+                }
+                library.addContent(archive);
             }
-            library.addContent(archive);
-        }
 
-        root.addContent(library);
+            root.addContent(library);
+        });
 
         XMLOutputter outputter = new XMLOutputter(Format.getPrettyFormat());
-        try (FileWriter writer = new FileWriter(outputPath.toFile())) {
-            outputter.output(document, writer);
+        try {
+            Path tempPath = CommonUtils.createSiblingTempFile(outputPath);
+            try {
+                try (Writer writer = Files.newBufferedWriter(tempPath, StandardCharsets.UTF_8)) {
+                    outputter.output(document, writer);
+                }
+                CommonUtils.replaceIfChanged(tempPath, outputPath);
+            } finally {
+                Files.deleteIfExists(tempPath);
+            }
             AnsiLogger.info("User libraries file generated successfully: {}", outputPath);
         } catch (IOException e) {
             AnsiLogger.error("Error generating user libraries file: {}", e.getMessage());
             logger.error("Error generating user libraries file", e);
+            return;
         }
 
-        // Add code to write changelog if needed
+        if (!Strings.isNullOrEmpty(changelogPath)) {
+            ChangesFileUtil changesLog = ChangesFileUtil.getInstance(Paths.get(changelogPath));
+            Map<String, Map<String, String>> previousLibraries = existingLibraries.orElse(Map.of());
+            archivesByLibrary.forEach((libraryName, archives) -> recordChanges(changesLog, libraryName,
+                    previousLibraries.getOrDefault(libraryName, Map.of()), archives));
+            previousLibraries.forEach((libraryName, archives) -> {
+                if (!archivesByLibrary.containsKey(libraryName)) {
+                    recordChanges(changesLog, libraryName, archives, Map.of());
+                }
+            });
+        }
+    }
+
+    /**
+     * Reads the libraries of an existing user libraries file.
+     *
+     * @param outputPath The user libraries file.
+     * @return The library names to their archive paths to their source paths, or empty if the file does not exist or
+     * cannot be read.
+     */
+    private static Optional<Map<String, Map<String, String>>> readLibraries(Path outputPath) {
+        if (!Files.isRegularFile(outputPath)) {
+            return Optional.empty();
+        }
+        try {
+            Element root = new SAXBuilder().build(outputPath.toFile()).getRootElement();
+            if (!root.getName().equals("eclipse-userlibraries")) {
+                return Optional.empty();
+            }
+            Map<String, Map<String, String>> libraries = new LinkedHashMap<>();
+            for (Element library : root.getChildren("library")) {
+                Map<String, String> archives = new LinkedHashMap<>();
+                for (Element archive : library.getChildren("archive")) {
+                    archives.put(archive.getAttributeValue("path", ""), archive.getAttributeValue("source", ""));
+                }
+                if (libraries.putIfAbsent(library.getAttributeValue("name", ""), archives) != null) {
+                    // A library listed twice is never generated, so the file has to be replaced
+                    return Optional.empty();
+                }
+            }
+            return Optional.of(libraries);
+        } catch (JDOMException | IOException e) {
+            LoggerFactory.getLogger(UserLibrariesGenerator.class)
+                    .warn("Could not read existing user libraries file {}, it will be replaced", outputPath, e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Records the archives that were added, removed, or had their source changed.
+     */
+    private static void recordChanges(ChangesFileUtil changesLog, String libraryName,
+                                      Map<String, String> previousArchives, Map<String, String> archives) {
+        for (Map.Entry<String, String> entry : archives.entrySet()) {
+            String previousSource = previousArchives.get(entry.getKey());
+            if (previousSource == null) {
+                changesLog.addArchiveEntry(ChangesFileUtil.Action.ADDED, libraryName, entry.getKey(), entry.getValue());
+            } else if (!previousSource.equals(entry.getValue())) {
+                changesLog.addArchiveEntry(ChangesFileUtil.Action.UPDATED, libraryName, entry.getKey(),
+                        entry.getValue());
+            }
+        }
+        for (Map.Entry<String, String> entry : previousArchives.entrySet()) {
+            if (!archives.containsKey(entry.getKey())) {
+                changesLog.addArchiveEntry(ChangesFileUtil.Action.REMOVED, libraryName, entry.getKey(),
+                        entry.getValue());
+            }
+        }
     }
 
     /**
      * Match the JARs and its sources
      *
      * @param artifacts       List of JAR artifacts
-     * @param sourceArtifacts List of source JAR artifacts
+     * @param sourceArtifacts Index of the source JARs, or null if sources are not included
      * @return List of ArtifactPair
      */
-    private static List<ArtifactPair> matchJarsAndSources(List<Artifact> artifacts, List<Artifact> sourceArtifacts) {
+    private static List<ArtifactPair> matchJarsAndSources(List<Artifact> artifacts, SourceIndex sourceArtifacts) {
 
         // If the artifact list is empty, return empty list
         if (artifacts.isEmpty()) {
             return List.of();
         }
 
-        List<ArtifactPair> pairs = new ArrayList<>();
+        List<ArtifactPair> pairs = new ArrayList<>(artifacts.size());
 
-        // if the source artifact list is empty, or null, return the list of artifacts with empty source
-        if (sourceArtifacts == null || sourceArtifacts.isEmpty()) {
+        // if there is no source index, return the list of artifacts with empty source
+        if (sourceArtifacts == null) {
             for (Artifact artifact : artifacts) {
                 pairs.add(new ArtifactPair(artifact, Optional.empty()));
             }
@@ -137,14 +615,202 @@ public class UserLibrariesGenerator {
 
         for (Artifact artifact : artifacts) {
             // Check if there is a source artifact for the current artifact
-            Artifact sourceArtifact = sourceArtifacts.stream()
-                    .filter(a -> a.groupId().equals(artifact.groupId()) && a.artifactId().
-                            equals(artifact.artifactId()) && a.version().equals(artifact.version()))
-                    .findFirst()
-                    .orElse(null);
-            pairs.add(new ArtifactPair(artifact, Optional.ofNullable(sourceArtifact)));
+            pairs.add(new ArtifactPair(artifact, sourceArtifacts.find(artifact)));
         }
 
         return pairs;
     }
+
+    /**
+     * Downloads the artifacts of one or more libraries. Each artifact is downloaded and paired with its source JAR on
+     * its own, as soon as a download thread is free. An artifact requested by several libraries with the same folders is
+     * downloaded only once, and a JAR folder is scanned for existing JARs only once.
+     * <p>
+     * All downloads of a pipeline are one run, cancelled together on Ctrl-C or when the deadline passes, and the files
+     * are recorded in one lockfile, written for each spec file.
+     */
+    private static class DownloadPipeline implements AutoCloseable {
+        private final ExecutorService executor = Executors.newFixedThreadPool(ArtifactDownloader.DOWNLOAD_PARALLELISM);
+        private final DownloadRun run = new DownloadRun(Config.getInstance().getHttpRequestTimeout());
+        private final LockFile lock = LockFile.create();
+        private final ChangesFileUtil changesLog;
+        private final boolean dontOverwrite;
+        private final JarDiscovery.Options discoveryOptions;
+        // JAR folder to the JARs already in it
+        private final Map<Path, CompletableFuture<ArtifactCatalog>> existingArtifacts = new ConcurrentHashMap<>();
+        // Requested artifact and its folders to the downloaded artifact with its source
+        private final Map<List<Object>, CompletableFuture<Optional<ArtifactPair>>> downloads =
+                new ConcurrentHashMap<>();
+
+        DownloadPipeline(ChangesFileUtil changesLog, boolean dontOverwrite, JarDiscovery.Options discoveryOptions) {
+            this.changesLog = changesLog;
+            this.dontOverwrite = dontOverwrite;
+            this.discoveryOptions = discoveryOptions;
+            run.cancelOnExit();
+        }
+
+        /**
+         * Starts downloading the artifacts of a library.
+         *
+         * @param artifacts  The artifacts of the library.
+         * @param jarsPath   The folder to download the JARs to.
+         * @param sourcePath The folder to download the source JARs to, or null to not download sources.
+         * @return A future completing with the artifacts that could be downloaded or kept, in the order of the
+         * artifacts.
+         */
+        CompletableFuture<List<ArtifactPair>> library(List<Artifact> artifacts, Path jarsPath, Path sourcePath) {
+            List<CompletableFuture<Optional<ArtifactPair>>> pairs = artifacts.stream()
+                    .map(artifact -> download(artifact, jarsPath, sourcePath))
+                    .toList();
+            return CompletableFuture.allOf(pairs.toArray(CompletableFuture[]::new))
+                    .thenApply(done -> pairs.stream().map(CompletableFuture::join).flatMap(Optional::stream).toList());
+        }
+
+        /**
+         * Waits for the libraries to be downloaded and writes the summary of the run.
+         *
+         * @param libraries The futures of the libraries, as returned by {@link #library(List, Path, Path)}.
+         * @param deadline  The longest the downloads may take, or null for no limit.
+         * @return The artifacts of each library, in the order of the libraries.
+         * @throws VerifyException If the run was cancelled.
+         */
+        List<List<ArtifactPair>> await(List<CompletableFuture<List<ArtifactPair>>> libraries, Duration deadline) {
+            run.await(libraries, deadline);
+            run.printSummary();
+            Verify.verify(!run.isCancelled(), "Download cancelled: %s", run.cancelReason());
+            return libraries.stream().map(CompletableFuture::join).toList();
+        }
+
+        /**
+         * Writes the lockfile of a spec file with what its artifacts were downloaded as. A failed write is only
+         * reported, as the JARs are in place.
+         *
+         * @param specFile  The spec file.
+         * @param artifacts The artifacts of the spec file.
+         */
+        void writeLockFile(Path specFile, List<Artifact> artifacts) {
+            Logger logger = LoggerFactory.getLogger(UserLibrariesGenerator.class);
+            Path lockFilePath = LockFile.pathFor(specFile);
+            try {
+                if (lock.write(lockFilePath, artifacts.stream().map(LockFile::specOf).toList())) {
+                    AnsiLogger.info(logger, "Wrote lockfile {}", lockFilePath);
+                } else {
+                    AnsiLogger.info(logger, "Lockfile unchanged, skipped writing: {}", lockFilePath);
+                }
+            } catch (IOException e) {
+                AnsiLogger.warning(logger, "Failed to write lockfile {}: {}", lockFilePath, e.getMessage());
+                logger.warn("Failed to write lockfile", e);
+            }
+        }
+
+        private CompletableFuture<Optional<ArtifactPair>> download(Artifact artifact, Path jarsPath, Path sourcePath) {
+            List<Object> key = Arrays.asList(artifact.groupId(), artifact.artifactId(), artifact.version(), jarsPath,
+                    sourcePath);
+            return downloads.computeIfAbsent(key, ignored -> existingArtifacts(jarsPath).thenCompose(catalog -> {
+                Artifact existingArtifact = catalog.findByArtifactId(artifact.artifactId()).orElse(null);
+                // The source JAR is matched on the download thread, as soon as the download is done
+                return ArtifactDownloader.startDownload(artifact, existingArtifact, dontOverwrite, jarsPath,
+                                sourcePath, changesLog, false, false, executor, lock, run)
+                        .thenApply(downloaded -> pair(artifact, downloaded, existingArtifact, sourcePath));
+            }));
+        }
+
+        /**
+         * @return The JARs already in the folder, which only need to be scanned if they can be kept.
+         */
+        private CompletableFuture<ArtifactCatalog> existingArtifacts(Path jarsPath) {
+            if (!dontOverwrite) {
+                return CompletableFuture.completedFuture(new ArtifactCatalog());
+            }
+            return existingArtifacts.computeIfAbsent(jarsPath, folder -> CompletableFuture.supplyAsync(() -> {
+                try (Stream<Path> jars = JarDiscovery.find(folder, discoveryOptions, ".jar")) {
+                    return PomGenerator.createArtifactCatalog(jars, true);
+                }
+            }, executor));
+        }
+
+        private Optional<ArtifactPair> pair(Artifact artifact, Optional<Artifact> downloaded,
+                                            Artifact existingArtifact, Path sourcePath) {
+            Logger logger = LoggerFactory.getLogger(UserLibrariesGenerator.class);
+            if (run.isCancelled()) {
+                // The run fails as a whole, so the library is not generated
+                return Optional.empty();
+            }
+            if (downloaded.isPresent()) {
+                return Optional.of(new ArtifactPair(downloaded.get(),
+                        findDownloadedSource(downloaded.get(), sourcePath)));
+            }
+            if (existingArtifact != null) {
+                AnsiLogger.warning(logger, "Could not download {}:{}, keeping the existing JAR: {}",
+                        artifact.groupId(), artifact.artifactId(), existingArtifact.localJarPath().orElse(null));
+                return Optional.of(new ArtifactPair(existingArtifact, findDownloadedSource(existingArtifact,
+                        sourcePath)));
+            }
+            AnsiLogger.error(logger, "Could not download {}:{}, it is left out of the library",
+                    artifact.groupId(), artifact.artifactId());
+            return Optional.empty();
+        }
+
+        @Override
+        public void close() {
+            executor.shutdownNow();
+            run.finish();
+        }
+    }
+
+    /**
+     * Index of the source JARs in a folder, used to find the source JAR of each JAR without scanning the whole list.
+     */
+    private static class SourceIndex {
+        private static final String SOURCES_SUFFIX = "-sources.jar";
+
+        private final ArtifactCatalog artifacts = new ArtifactCatalog();
+        // Source JAR file name without the "-sources.jar" suffix to its path, for source JARs without POM properties
+        private final Map<String, Path> filesByName = new HashMap<>();
+
+        /**
+         * Scans the source JARs in the folder.
+         *
+         * @param sourceFolder     The folder containing the source JARs.
+         * @param discoveryOptions The options controlling which source JARs below the folder are used.
+         * @return The index of the source JARs.
+         */
+        static SourceIndex scan(Path sourceFolder, JarDiscovery.Options discoveryOptions) {
+            SourceIndex index = new SourceIndex();
+            try (Stream<Path> sourceJars = JarDiscovery.find(sourceFolder, discoveryOptions, SOURCES_SUFFIX)) {
+                PomGenerator.scanArtifacts(sourceJars.peek(index::addFile), false, index.artifacts::add);
+            }
+            return index;
+        }
+
+        private void addFile(Path sourceJar) {
+            String fileName = sourceJar.getFileName().toString();
+            filesByName.putIfAbsent(fileName.substring(0, fileName.length() - SOURCES_SUFFIX.length()), sourceJar);
+        }
+
+        /**
+         * Finds the source JAR of a JAR. Matches on the exact coordinates first, then on the group ID and artifact ID
+         * in any version, and finally on the file name, for example {@code guava-sources.jar} for {@code guava.jar}.
+         *
+         * @param artifact The artifact of the JAR.
+         * @return The source artifact, or empty if no source JAR matches.
+         */
+        Optional<Artifact> find(Artifact artifact) {
+            Optional<Artifact> sourceArtifact = artifacts.find(artifact.groupId(), artifact.artifactId(),
+                    artifact.version());
+            if (sourceArtifact.isEmpty()) {
+                sourceArtifact = artifacts.find(artifact.groupId(), artifact.artifactId());
+            }
+            if (sourceArtifact.isEmpty() && artifact.localJarPath().isPresent()) {
+                String jarName = artifact.localJarPath().get().getFileName().toString();
+                String stem = jarName.endsWith(".jar") ? jarName.substring(0, jarName.length() - 4) : jarName;
+                Path sourceJar = filesByName.get(stem);
+                if (sourceJar != null) {
+                    sourceArtifact = Optional.of(new Artifact(artifact.groupId(), artifact.artifactId(),
+                            artifact.version(), Optional.of(sourceJar)));
+                }
+            }
+            return sourceArtifact;
+        }
+    }
 }
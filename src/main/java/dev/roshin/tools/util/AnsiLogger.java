@@ -2,6 +2,20 @@ package dev.roshin.tools.util;
 
 import org.slf4j.Logger;
 
+import java.io.PrintStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Writes colored messages to the console.
+ * <p>
+ * Messages of every thread are collected in a shared buffer and written to the standard output in batches: once the
+ * buffer is full, shortly after the first message of a batch, when {@link #flush()} is called, and when the JVM exits.
+ * A thread adding a message never waits for the console, so parallel downloads and scans are not slowed down by it.
+ * Code writing to the standard output directly should call {@link #flush()} first to keep messages in order.
+ */
 public class AnsiLogger {
     private static final String RESET = "\u001B[0m";
     private static final String RED = "\u001B[31m";
@@ -11,70 +25,128 @@ public class AnsiLogger {
     private static final String MAGENTA = "\u001B[35m";
     private static final String CYAN = "\u001B[36m";
 
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\{}");
+
+    // Buffered characters written as soon as they are reached, and the longest a message waits to be written
+    private static final int FLUSH_THRESHOLD = 8192;
+    private static final long FLUSH_DELAY_MILLIS = 50;
+
+    private static final StringBuilder buffer = new StringBuilder();
+    // Held while writing to the console, so batches taken from the buffer are written in order
+    private static final Object writeLock = new Object();
+    private static boolean flushScheduled;
+    private static ScheduledExecutorService flusher;
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(AnsiLogger::flush, "console-flush"));
+    }
+
     public static void info(String message) {
-        System.out.println(BLUE + "[INFO] " + message + RESET);
+        println(BLUE + "[INFO] " + message + RESET);
     }
 
     public static void info(String template, Object... args) {
-        System.out.println(BLUE + "[INFO] " + RESET + formatTemplate(template, BLUE, args));
+        println(BLUE + "[INFO] " + RESET + formatTemplate(template, BLUE, args));
     }
 
     public static void info(Logger logger, String template, Object... args) {
         logger.info(template, args);
-        System.out.println(BLUE + "[INFO] " + RESET + formatTemplate(template, BLUE, args));
+        println(BLUE + "[INFO] " + RESET + formatTemplate(template, BLUE, args));
     }
 
     public static void success(String message) {
-        System.out.println(GREEN + "[SUCCESS] " + message + RESET);
+        println(GREEN + "[SUCCESS] " + message + RESET);
     }
 
     public static void success(String template, Object... args) {
-        System.out.println(GREEN + "[SUCCESS] " + RESET + formatTemplate(template, GREEN, args));
+        println(GREEN + "[SUCCESS] " + RESET + formatTemplate(template, GREEN, args));
     }
 
     public static void warning(String message) {
-        System.out.println(YELLOW + "[WARNING] " + message + RESET);
+        println(YELLOW + "[WARNING] " + message + RESET);
     }
 
     public static void warning(String template, Object... args) {
-        System.out.println(YELLOW + "[WARNING] " + RESET + formatTemplate(template, YELLOW, args));
+        println(YELLOW + "[WARNING] " + RESET + formatTemplate(template, YELLOW, args));
     }
 
     public static void warning(Logger logger, String template, Object... args) {
         logger.warn(template, args);
-        System.out.println(YELLOW + "[WARNING] " + RESET + formatTemplate(template, YELLOW, args));
+        println(YELLOW + "[WARNING] " + RESET + formatTemplate(template, YELLOW, args));
     }
 
     public static void error(String message) {
-        System.out.println(RED + "[ERROR] " + message + RESET);
+        println(RED + "[ERROR] " + message + RESET);
     }
 
     public static void error(String template, Object... args) {
-        System.out.println(RED + "[ERROR] " + RESET + formatTemplate(template, RED, args));
+        println(RED + "[ERROR] " + RESET + formatTemplate(template, RED, args));
     }
     public static void error(Logger logger, String template, Object... args) {
        logger.error(template, args);
-        System.out.println(RED + "[ERROR] " + RESET + formatTemplate(template, RED, args));
+        println(RED + "[ERROR] " + RESET + formatTemplate(template, RED, args));
     }
 
     public static void debug(String message) {
-        System.out.println(MAGENTA + "[DEBUG] " + message + RESET);
+        println(MAGENTA + "[DEBUG] " + message + RESET);
     }
 
     public static void debug(String template, Object... args) {
-        System.out.println(MAGENTA + "[DEBUG] " + RESET + formatTemplate(template, MAGENTA, args));
+        println(MAGENTA + "[DEBUG] " + RESET + formatTemplate(template, MAGENTA, args));
     }
 
     public static void custom(String prefix, String message, String color) {
-        System.out.println("[" + prefix + "] " + message);
+        println("[" + prefix + "] " + message);
     }
 
     public static void custom(String prefix, String template, String color, Object... args) {
-        System.out.println("[" + prefix + "] " + formatTemplate(template, color, args));
+        println("[" + prefix + "] " + formatTemplate(template, color, args));
+    }
+
+    /**
+     * Writes the buffered messages to the standard output.
+     */
+    public static void flush() {
+        synchronized (writeLock) {
+            String pending;
+            synchronized (buffer) {
+                flushScheduled = false;
+                if (buffer.length() == 0) {
+                    return;
+                }
+                pending = buffer.toString();
+                buffer.setLength(0);
+            }
+            PrintStream out = System.out;
+            out.print(pending);
+            out.flush();
+        }
+    }
+
+    private static void println(String line) {
+        boolean full;
+        synchronized (buffer) {
+            buffer.append(line).append(System.lineSeparator());
+            full = buffer.length() >= FLUSH_THRESHOLD;
+            if (!full && !flushScheduled) {
+                flushScheduled = true;
+                if (flusher == null) {
+                    flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                        Thread thread = new Thread(runnable, "console-flusher");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                }
+                flusher.schedule(AnsiLogger::flush, FLUSH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (full) {
+            flush();
+        }
     }
 
     private static String formatTemplate(String template, String color, Object... args) {
-        String[] parts = template.split("\\{}");
+        String[] parts = PLACEHOLDER.split(template);
         StringBuilder sb = new StringBuilder();
 
         for (int i = 0; i < parts.length; i++) {
@@ -10,15 +10,17 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class ChangesFileUtil {
-    private static ChangesFileUtil instance;
+    private static final Map<Path, ChangesFileUtil> instances = new ConcurrentHashMap<>();
     private final Path changesFile;
     private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
     private final Logger logger;
 
     public enum Action {
-        ADDED, UPDATED, SKIPPED
+        ADDED, UPDATED, SKIPPED, REMOVED
     }
 
     private ChangesFileUtil(Path changesFile) {
@@ -27,11 +29,13 @@ public class ChangesFileUtil {
         this.logger = LoggerFactory.getLogger(ChangesFileUtil.class);
     }
 
+    /**
+     * @param changesFile The changes file.
+     * @return The instance appending to the changes file, the same one for every call with the same file.
+     */
     public static ChangesFileUtil getInstance(Path changesFile) {
-        if (instance == null) {
-            instance = new ChangesFileUtil(changesFile);
-        }
-        return instance;
+        Preconditions.checkNotNull(changesFile, "Changes file path cannot be null or empty.");
+        return instances.computeIfAbsent(changesFile.toAbsolutePath().normalize(), ChangesFileUtil::new);
     }
 
     public void addEntry(Action action, String jarName, String groupId, String artifactId, String version, String previousVersion) {
@@ -48,10 +52,48 @@ public class ChangesFileUtil {
             case SKIPPED:
                 entry = String.format("%s Skipped: %s (%s:%s:%s)", timestamp, jarName, groupId, artifactId, version);
                 break;
+            case REMOVED:
+                entry = String.format("%s Removed: %s (%s:%s:%s)", timestamp, jarName, groupId, artifactId, version);
+                break;
+            default:
+                throw new IllegalArgumentException("Invalid action: " + action);
+        }
+
+        appendEntry(entry);
+    }
+
+    /**
+     * Records a change to an archive of a user library.
+     *
+     * @param action      What happened to the archive.
+     * @param libraryName The name of the user library.
+     * @param archivePath The path of the archive.
+     * @param sourcePath  The path of the source archive, or an empty string if there is none.
+     */
+    public void addArchiveEntry(Action action, String libraryName, String archivePath, String sourcePath) {
+        String timestamp = LocalDateTime.now().format(TIMESTAMP_FORMAT);
+        String entry;
+
+        switch (action) {
+            case ADDED:
+                entry = String.format("%s Added to %s: %s", timestamp, libraryName, archivePath);
+                break;
+            case UPDATED:
+                entry = String.format("%s Updated in %s: %s [Source: %s]", timestamp, libraryName, archivePath,
+                        sourcePath);
+                break;
+            case REMOVED:
+                entry = String.format("%s Removed from %s: %s", timestamp, libraryName, archivePath);
+                break;
             default:
                 throw new IllegalArgumentException("Invalid action: " + action);
         }
 
+        appendEntry(entry);
+    }
+
+    // Synchronized as downloads run in parallel and log their changes as they finish
+    private synchronized void appendEntry(String entry) {
         try (BufferedWriter writer = Files.newBufferedWriter(changesFile,
                 Files.exists(changesFile) ? java.nio.file.StandardOpenOption.APPEND :
                         java.nio.file.StandardOpenOption.CREATE)) {
@@ -1,13 +1,22 @@
 package dev.roshin.tools.util;
 
 import com.google.common.base.Preconditions;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.core.LoggerContext;
 import org.apache.logging.log4j.core.appender.FileAppender;
 import org.apache.logging.log4j.core.config.Configuration;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class CommonUtils {
 
@@ -29,6 +38,71 @@ public class CommonUtils {
         return fileName.substring(0, dotIndex);
     }
 
+    /**
+     * Creates an empty temporary file in the same directory as the target file, so it can later be moved over the
+     * target atomically. The file gets the default permissions of a new file, as the target would if it was written
+     * directly, rather than the owner-only permissions of {@link Files#createTempFile}.
+     *
+     * @param target The file the temporary file will eventually replace.
+     * @return The path to the temporary file.
+     * @throws IOException If the temporary file could not be created.
+     */
+    public static Path createSiblingTempFile(Path target) throws IOException {
+        Preconditions.checkNotNull(target, "Target path cannot be null.");
+        Path parent = target.toAbsolutePath().getParent();
+        while (true) {
+            Path tempFile = parent.resolve("." + target.getFileName() + Long.toUnsignedString(
+                    ThreadLocalRandom.current().nextLong()) + ".tmp");
+            try {
+                return Files.createFile(tempFile);
+            } catch (FileAlreadyExistsException e) {
+                // Another temporary file has the same name, try another one
+            }
+        }
+    }
+
+    /**
+     * Moves the temporary file over the target file, unless the target already has exactly the same content.
+     * The move is atomic where the file system supports it. The temporary file is deleted if it is not moved. An
+     * existing target keeps its permissions, as it would if it was overwritten in place.
+     *
+     * @param tempFile The temporary file holding the new content.
+     * @param target   The file to replace.
+     * @return True if the target was replaced, false if its content was unchanged.
+     * @throws IOException If the files could not be compared, moved or deleted.
+     */
+    public static boolean replaceIfChanged(Path tempFile, Path target) throws IOException {
+        Preconditions.checkNotNull(tempFile, "Temporary file path cannot be null.");
+        Preconditions.checkNotNull(target, "Target path cannot be null.");
+        if (Files.exists(target) && Files.mismatch(tempFile, target) == -1) {
+            Files.delete(tempFile);
+            return false;
+        }
+        if (Files.exists(target)) {
+            PosixFileAttributeView permissions = Files.getFileAttributeView(tempFile, PosixFileAttributeView.class);
+            if (permissions != null) {
+                permissions.setPermissions(Files.getPosixFilePermissions(target));
+            }
+        }
+        try {
+            Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return true;
+    }
+
+    /**
+     * The SHA-1 hash function, for the checksums Maven repositories and lockfiles record. They are compared to catch
+     * damaged or replaced files, not to resist tampering, which is what Guava deprecates SHA-1 for.
+     *
+     * @return The SHA-1 hash function.
+     */
+    @SuppressWarnings("deprecation")
+    public static HashFunction sha1() {
+        return Hashing.sha1();
+    }
+
     public static void printLogLocation() {
         LoggerContext loggerContext = (LoggerContext) LogManager.getContext(false);
         Configuration configuration = loggerContext.getConfiguration();
@@ -0,0 +1,206 @@
+package dev.roshin.tools.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Places existing files at a new path with as little copying as possible.
+ * <p>
+ * A file is hard linked when the source and target are on the same file store, which takes no space and no copying.
+ * Otherwise, or when the file store does not support links, it is copied by the kernel with
+ * {@link FileChannel#transferTo}, so the content does not pass through the JVM. If that fails too, it is copied
+ * through a buffer. The file store of each folder is looked up once, as finding it means reading the mount table, and a
+ * file store that refused a link is not asked again.
+ * <p>
+ * The file is placed at a temporary path next to the target and then moved over it, never written into the target,
+ * so a link placed earlier does not carry a change back to its source, and a placement that fails leaves the target
+ * as it was.
+ */
+public class FilePlacement {
+
+    private static final Logger logger = LoggerFactory.getLogger(FilePlacement.class);
+
+    private static final Map<Path, FileStore> FILE_STORES = new ConcurrentHashMap<>();
+    private static final Set<FileStore> NO_LINKS = ConcurrentHashMap.newKeySet();
+
+    public enum Strategy {
+        HARD_LINK, TRANSFER, COPY
+    }
+
+    // Private constructor to prevent instantiation
+    private FilePlacement() {
+    }
+
+    /**
+     * Places a file with the cheapest strategy that works, replacing the file at the target.
+     *
+     * @param source The file to place.
+     * @param target The path to place it at.
+     * @return The strategy used.
+     * @throws IOException If the file could not be placed.
+     */
+    public static Strategy place(Path source, Path target) throws IOException {
+        Path temporary = freeSiblingPath(target);
+        try {
+            Strategy strategy = placeNew(source, temporary);
+            moveOver(temporary, target);
+            return strategy;
+        } finally {
+            // Only left behind if placing or moving failed
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /*
+     * Places a file at a path that does not exist yet.
+     */
+    private static Strategy placeNew(Path source, Path target) throws IOException {
+        FileStore store = fileStore(source);
+        if (store != null && store.equals(fileStore(target)) && !NO_LINKS.contains(store)) {
+            try {
+                Files.createLink(target, source);
+                return Strategy.HARD_LINK;
+            } catch (FileAlreadyExistsException | NoSuchFileException e) {
+                // Not a sign that the file store cannot link
+                throw e;
+            } catch (IOException | UnsupportedOperationException e) {
+                logger.debug("Could not link {} to {}, copying files on {} from now on", target, source, store, e);
+                NO_LINKS.add(store);
+            }
+        }
+        try {
+            transfer(source, target);
+            return Strategy.TRANSFER;
+        } catch (IOException e) {
+            logger.debug("Could not transfer {} to {}, copying it", source, target, e);
+            Files.deleteIfExists(target);
+        }
+        copy(source, target);
+        return Strategy.COPY;
+    }
+
+    /**
+     * Places a file with the given strategy, replacing the file at the target. Meant for comparing the strategies.
+     *
+     * @param source   The file to place.
+     * @param target   The path to place it at.
+     * @param strategy The strategy.
+     * @throws IOException If the strategy does not work for the file.
+     */
+    public static void place(Path source, Path target, Strategy strategy) throws IOException {
+        Path temporary = freeSiblingPath(target);
+        try {
+            switch (strategy) {
+                case HARD_LINK -> Files.createLink(temporary, source);
+                case TRANSFER -> transfer(source, temporary);
+                case COPY -> copy(source, temporary);
+            }
+            moveOver(temporary, target);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Replaces an existing file with a hard link to another file. The link is made next to the target and moved over
+     * it, so the target is never missing, and a failure leaves it as it was.
+     *
+     * @param source The file to link to.
+     * @param target The file to replace, on the same file store as the source.
+     * @throws IOException If the link could not be made or moved over the target.
+     */
+    public static void replaceWithLink(Path source, Path target) throws IOException {
+        Path temporary = freeSiblingPath(target);
+        try {
+            Files.createLink(temporary, source);
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            // Only left behind if linking or moving failed
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * @return Whether the two paths are on the same file store, so a file can be linked from one to the other.
+     */
+    public static boolean sameFileStore(Path first, Path second) {
+        FileStore store = fileStore(first);
+        return store != null && store.equals(fileStore(second));
+    }
+
+    /*
+     * A path next to the target that no other run uses, freed again so a file can be created at it.
+     */
+    private static Path freeSiblingPath(Path target) throws IOException {
+        Path temporary = CommonUtils.createSiblingTempFile(target);
+        Files.delete(temporary);
+        return temporary;
+    }
+
+    private static void moveOver(Path temporary, Path target) throws IOException {
+        try {
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void transfer(Path source, Path target) throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                long transferred = in.transferTo(position, size - position, out);
+                // Nothing is left to transfer once the source is shorter than it was, so this would never end
+                if (transferred == 0) {
+                    throw new IOException("File shrank while being copied: " + source);
+                }
+                position += transferred;
+            }
+        }
+    }
+
+    private static void copy(Path source, Path target) throws IOException {
+        try (InputStream in = Files.newInputStream(source);
+             OutputStream out = Files.newOutputStream(target, StandardOpenOption.CREATE_NEW)) {
+            in.transferTo(out);
+        }
+    }
+
+    /*
+     * The file store of the folder of a file, or null if it cannot be found.
+     */
+    private static FileStore fileStore(Path file) {
+        Path folder = file.toAbsolutePath().getParent();
+        if (folder == null) {
+            return null;
+        }
+        FileStore store = FILE_STORES.get(folder);
+        if (store == null) {
+            try {
+                store = Files.getFileStore(folder);
+            } catch (IOException e) {
+                return null;
+            }
+            FILE_STORES.put(folder, store);
+        }
+        return store;
+    }
+}
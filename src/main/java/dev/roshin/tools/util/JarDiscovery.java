@@ -0,0 +1,225 @@
+package dev.roshin.tools.util;
+
+import com.google.common.base.Preconditions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Finds JAR files below a folder. Sub folders are walked in parallel and every file found is handed to the returned
+ * stream straight away, so the consumer can start scanning while the walk is still in progress.
+ */
+public class JarDiscovery {
+
+    private static final Logger logger = LoggerFactory.getLogger(JarDiscovery.class);
+
+    // Marks the end of the walk in the queue feeding the stream
+    private static final Path END_OF_WALK = Path.of("");
+
+    // Number of files found but not yet taken from the stream, after which the walk waits for the consumer
+    private static final int QUEUE_CAPACITY = 256;
+
+    // How often a walk waiting for room in the queue checks whether the stream was closed
+    private static final long CLOSED_CHECK_MILLIS = 100;
+
+    // Private constructor to prevent instantiation
+    private JarDiscovery() {
+    }
+
+    /**
+     * Options controlling how deep to walk and which files to keep.
+     * <p>
+     * Include and exclude patterns are globs, matched against both the path relative to the root folder and the file
+     * name. A file is kept if it matches any include pattern (or no include patterns are given) and no exclude
+     * pattern. Folders that match an exclude pattern are not entered.
+     *
+     * @param maxDepth The maximum depth to walk, where 1 only lists the root folder itself.
+     * @param includes The glob patterns of the files to keep.
+     * @param excludes The glob patterns of the files and folders to skip.
+     */
+    public record Options(int maxDepth, List<String> includes, List<String> excludes) {
+        public Options {
+            Preconditions.checkArgument(maxDepth > 0, "Max depth must be positive: %s", maxDepth);
+            includes = includes == null ? List.of() : List.copyOf(includes);
+            excludes = excludes == null ? List.of() : List.copyOf(excludes);
+        }
+
+        /**
+         * @return Options that only list the root folder, which is how folders were always read.
+         */
+        public static Options flat() {
+            return new Options(1, List.of(), List.of());
+        }
+
+        /**
+         * @return Options that walk the whole tree below the root folder.
+         */
+        public static Options recursive() {
+            return new Options(Integer.MAX_VALUE, List.of(), List.of());
+        }
+    }
+
+    /**
+     * Finds the files below the root folder whose name ends with the given suffix.
+     * <p>
+     * The walk runs on its own pool and is stopped when the returned stream is closed, so callers should close the
+     * stream once done with it. It only runs a bounded number of files ahead of the consumer, so a slow consumer does
+     * not make it hold the whole tree in memory.
+     *
+     * @param root       The folder to walk.
+     * @param options    The options controlling the walk.
+     * @param fileSuffix The suffix that the file names must end with, for example {@code ".jar"}.
+     * @return A stream of the files found, in no particular order.
+     */
+    public static Stream<Path> find(Path root, Options options, String fileSuffix) {
+        Preconditions.checkNotNull(root, "Root folder cannot be null.");
+        Preconditions.checkNotNull(options, "Options cannot be null.");
+        Preconditions.checkNotNull(fileSuffix, "File suffix cannot be null.");
+
+        FileSystem fileSystem = root.getFileSystem();
+        List<PathMatcher> includes = compile(fileSystem, options.includes());
+        List<PathMatcher> excludes = compile(fileSystem, options.excludes());
+
+        BlockingQueue<Path> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        AtomicBoolean closed = new AtomicBoolean();
+        ForkJoinPool pool = new ForkJoinPool();
+        Consumer<Path> found = file -> {
+            Path relative = root.relativize(file);
+            if (file.getFileName().toString().endsWith(fileSuffix)
+                    && (includes.isEmpty() || matches(includes, relative))
+                    && !matches(excludes, relative)) {
+                put(queue, file, closed);
+            }
+        };
+        WalkTask rootTask = new WalkTask(root, root, 1, options.maxDepth(), excludes, found);
+        pool.execute(() -> {
+            try {
+                rootTask.invoke();
+            } finally {
+                put(queue, END_OF_WALK, closed);
+            }
+        });
+
+        Spliterator<Path> spliterator = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE,
+                Spliterator.NONNULL | Spliterator.DISTINCT) {
+            private boolean done;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super Path> action) {
+                if (done) {
+                    return false;
+                }
+                try {
+                    Path next = queue.take();
+                    if (next == END_OF_WALK) {
+                        done = true;
+                        return false;
+                    }
+                    action.accept(next);
+                    return true;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    done = true;
+                    return false;
+                }
+            }
+        };
+        return StreamSupport.stream(spliterator, false).onClose(() -> {
+            closed.set(true);
+            pool.shutdownNow();
+        });
+    }
+
+    /*
+    Waits for room in the queue. Once the stream is closed nothing takes files any more, so the rest are dropped.
+     */
+    private static void put(BlockingQueue<Path> queue, Path file, AtomicBoolean closed) {
+        try {
+            while (!closed.get()) {
+                if (queue.offer(file, CLOSED_CHECK_MILLIS, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static List<PathMatcher> compile(FileSystem fileSystem, List<String> globs) {
+        List<PathMatcher> matchers = new ArrayList<>(globs.size());
+        for (String glob : globs) {
+            matchers.add(fileSystem.getPathMatcher("glob:" + glob));
+        }
+        return matchers;
+    }
+
+    private static boolean matches(List<PathMatcher> matchers, Path relative) {
+        Path fileName = relative.getFileName();
+        for (PathMatcher matcher : matchers) {
+            if (matcher.matches(relative) || (fileName != null && matcher.matches(fileName))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Lists a single folder, reports its files and forks a task for each sub folder within the depth limit.
+     */
+    private static class WalkTask extends RecursiveAction {
+        private final Path root;
+        private final Path folder;
+        private final int depth;
+        private final int maxDepth;
+        private final List<PathMatcher> excludes;
+        private final Consumer<Path> found;
+
+        WalkTask(Path root, Path folder, int depth, int maxDepth, List<PathMatcher> excludes, Consumer<Path> found) {
+            this.root = root;
+            this.folder = folder;
+            this.depth = depth;
+            this.maxDepth = maxDepth;
+            this.excludes = excludes;
+            this.found = found;
+        }
+
+        @Override
+        protected void compute() {
+            List<WalkTask> subTasks = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(folder)) {
+                for (Path entry : entries) {
+                    if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                        if (depth < maxDepth && !matches(excludes, root.relativize(entry))) {
+                            subTasks.add(new WalkTask(root, entry, depth + 1, maxDepth, excludes, found));
+                        }
+                    } else if (Files.isRegularFile(entry)) {
+                        found.accept(entry);
+                    }
+                }
+            } catch (IOException e) {
+                AnsiLogger.warning(logger, "Could not list folder {}: {}", folder, e.getMessage());
+            }
+            invokeAll(subTasks);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package dev.roshin.tools.util;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Open addressing hash map from primitive {@code long} keys to non-negative {@code int} values. It is meant for
+ * indexes with millions of entries, where boxed keys and values would cost several times the memory of the data.
+ * <p>
+ * This class is not thread safe.
+ */
+public class LongIntHashMap {
+
+    /**
+     * Returned by {@link #get(long)} and {@link #putIfAbsent(long, int)} when the key is not present.
+     */
+    public static final int NOT_FOUND = -1;
+
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+    private int resizeThreshold;
+
+    // Zero marks an empty slot, so the zero key is stored on the side
+    private boolean hasZeroKey;
+    private int zeroValue;
+
+    public LongIntHashMap() {
+        this(16);
+    }
+
+    /**
+     * @param expectedSize The number of entries the map should hold before it needs to grow.
+     */
+    public LongIntHashMap(int expectedSize) {
+        Preconditions.checkArgument(expectedSize >= 0, "Expected size cannot be negative: %s", expectedSize);
+        int capacity = Integer.highestOneBit(Math.max(16, (int) Math.ceil(expectedSize / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * @param key The key to look up.
+     * @return The value mapped to the key, or {@link #NOT_FOUND}.
+     */
+    public int get(long key) {
+        if (key == 0) {
+            return hasZeroKey ? zeroValue : NOT_FOUND;
+        }
+        int mask = keys.length - 1;
+        for (int slot = slot(key, mask); ; slot = (slot + 1) & mask) {
+            long existing = keys[slot];
+            if (existing == key) {
+                return values[slot];
+            }
+            if (existing == 0) {
+                return NOT_FOUND;
+            }
+        }
+    }
+
+    /**
+     * @param key The key to look up.
+     * @return Whether the key is present.
+     */
+    public boolean containsKey(long key) {
+        return get(key) != NOT_FOUND;
+    }
+
+    /**
+     * Maps the key to the value, replacing any previous value.
+     *
+     * @param key   The key.
+     * @param value The value, which must not be negative.
+     */
+    public void put(long key, int value) {
+        insert(key, value, true);
+    }
+
+    /**
+     * Maps the key to the value, unless the key is already present.
+     *
+     * @param key   The key.
+     * @param value The value, which must not be negative.
+     * @return The value already mapped to the key, or {@link #NOT_FOUND} if the value was added.
+     */
+    public int putIfAbsent(long key, int value) {
+        return insert(key, value, false);
+    }
+
+    /**
+     * @return The number of entries in the map.
+     */
+    public int size() {
+        return size;
+    }
+
+    private int insert(long key, int value, boolean replace) {
+        Preconditions.checkArgument(value >= 0, "Value cannot be negative: %s", value);
+        if (key == 0) {
+            if (hasZeroKey) {
+                int previous = zeroValue;
+                if (replace) {
+                    zeroValue = value;
+                }
+                return previous;
+            }
+            hasZeroKey = true;
+            zeroValue = value;
+            size++;
+            return NOT_FOUND;
+        }
+        int mask = keys.length - 1;
+        for (int slot = slot(key, mask); ; slot = (slot + 1) & mask) {
+            long existing = keys[slot];
+            if (existing == key) {
+                int previous = values[slot];
+                if (replace) {
+                    values[slot] = value;
+                }
+                return previous;
+            }
+            if (existing == 0) {
+                keys[slot] = key;
+                values[slot] = value;
+                if (++size > resizeThreshold) {
+                    rehash(keys.length << 1);
+                }
+                return NOT_FOUND;
+            }
+        }
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            long key = oldKeys[i];
+            if (key != 0) {
+                int slot = slot(key, mask);
+                while (keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        Preconditions.checkState(capacity > 0, "Map cannot grow any further.");
+        keys = new long[capacity];
+        values = new int[capacity];
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int slot(long key, int mask) {
+        // Spread the bits so keys that only differ in their high bits do not collide
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,527 @@
+package dev.roshin.tools.verify_jars;
+
+import com.google.common.base.Throwables;
+import com.google.common.base.Verify;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import dev.roshin.tools.config.Config;
+import dev.roshin.tools.download_jars.LockFile;
+import dev.roshin.tools.download_jars.domain.Artifact;
+import dev.roshin.tools.download_jars.util.HttpClientProvider;
+import dev.roshin.tools.pom_generator.PomGenerator;
+import dev.roshin.tools.util.AnsiLogger;
+import dev.roshin.tools.util.CommonUtils;
+import dev.roshin.tools.util.JarDiscovery;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.core5.http.io.HttpClientResponseHandler;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Checks that the JAR files in a folder are intact.
+ * <p>
+ * Each JAR file is memory mapped and its ZIP structure is read straight from the mapping: the end of central directory
+ * record, every central directory entry and the local header each entry points to. Unless only the central directory is
+ * checked, every entry is then decompressed from the mapping and its CRC and size compared with the central directory.
+ * When a lockfile or the repository gives the SHA-1 of a JAR file, the whole mapping is hashed as well. Nothing is
+ * copied to the heap but the decompressed bytes, which only pass through a small buffer.
+ * <p>
+ * A mapping cannot be released before it is garbage collected, and on Windows it keeps the file from being replaced
+ * until then. There, JAR files are read into the heap through their channel instead of being mapped.
+ * <p>
+ * Offsets are relative to the start of the ZIP data, as {@link java.util.zip.ZipFile} reads them, so a JAR file with
+ * data before it, such as a launcher script, is checked like any other.
+ * <p>
+ * JAR files are checked in parallel.
+ */
+public class JarVerifier {
+
+    private static final Logger logger = LoggerFactory.getLogger(JarVerifier.class);
+
+    // Number of JAR files checked at the same time
+    private static final int PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+    // Problems reported per JAR file, so a badly damaged file does not flood the output
+    private static final int MAX_PROBLEMS_PER_JAR = 10;
+
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY = 0x06064b50;
+    private static final int ZIP64_LOCATOR = 0x07064b50;
+    private static final int ZIP64_EXTRA_FIELD = 0x0001;
+    private static final long MAX_32 = 0xFFFFFFFFL;
+    private static final int MAX_16 = 0xFFFF;
+
+    // Whether a mapped file can be replaced while the mapping waits to be garbage collected
+    private static final boolean MAP_FILES = !System.getProperty("os.name", "").startsWith("Windows");
+
+    /**
+     * A problem found in a JAR file.
+     *
+     * @param jar     The JAR file.
+     * @param message What is wrong with it.
+     */
+    public record Problem(Path jar, String message) {
+    }
+
+    /**
+     * The result of a verification.
+     *
+     * @param jarCount      The number of JAR files that were checked.
+     * @param checksumCount The number of JAR files whose SHA-1 was compared with an expected one.
+     * @param problems      The problems found, grouped per JAR file.
+     */
+    public record VerificationReport(int jarCount, int checksumCount, List<Problem> problems) {
+
+        /**
+         * @return True if any JAR file has a problem.
+         */
+        public boolean hasProblems() {
+            return !problems.isEmpty();
+        }
+    }
+
+    /**
+     * Checks the JAR files below the folder and prints a report.
+     *
+     * @param folderPath           The folder containing the JAR files.
+     * @param discoveryOptions     The options controlling which JAR files below the folder are checked.
+     * @param centralDirectoryOnly Only check the ZIP structure, without decompressing the entries to check their CRCs.
+     * @param lockFilePath         The lockfile to compare the SHA-1 of the JAR files with, or null.
+     * @param repositoryChecksums  Compare the SHA-1 of JAR files with POM properties with the {@code .sha1} file of the
+     *                             Maven repository, for JAR files the lockfile does not cover.
+     * @return The report of the problems found.
+     */
+    public static VerificationReport verify(Path folderPath, JarDiscovery.Options discoveryOptions,
+                                            boolean centralDirectoryOnly, Path lockFilePath,
+                                            boolean repositoryChecksums) {
+        Verify.verify(Files.isDirectory(folderPath), "Folder does not exist: %s", folderPath);
+
+        Map<String, String> lockedChecksums = new HashMap<>();
+        if (lockFilePath != null) {
+            Verify.verify(Files.exists(lockFilePath), "Lockfile does not exist: %s", lockFilePath);
+            lockedChecksums = checksumsByFileName(LockFile.read(lockFilePath));
+        }
+        Map<String, String> locked = lockedChecksums;
+        Function<Path, Optional<String>> expectedSha1 = jar -> {
+            String sha1 = locked.get(jar.getFileName().toString());
+            if (sha1 != null) {
+                return Optional.of(sha1);
+            }
+            return repositoryChecksums ? repositorySha1(jar) : Optional.empty();
+        };
+
+        VerificationReport report;
+        try (Stream<Path> jars = JarDiscovery.find(folderPath, discoveryOptions, ".jar")) {
+            report = buildReport(jars, centralDirectoryOnly, expectedSha1);
+        }
+        printReport(folderPath, report);
+        return report;
+    }
+
+    /**
+     * Checks every JAR file in the stream and builds the report.
+     *
+     * @param jars                 The JAR files to check.
+     * @param centralDirectoryOnly Only check the ZIP structure.
+     * @param expectedSha1         Gives the expected SHA-1 of a JAR file, if known.
+     * @return The report of the problems found.
+     */
+    protected static VerificationReport buildReport(Stream<Path> jars, boolean centralDirectoryOnly,
+                                                    Function<Path, Optional<String>> expectedSha1) {
+        ExecutorService executor = Executors.newFixedThreadPool(PARALLELISM);
+        List<JarResult> results = new ArrayList<>();
+        try {
+            List<Future<JarResult>> checks = Lists.newArrayList();
+            jars.forEach(jar -> checks.add(executor.submit(() -> {
+                Optional<String> sha1 = expectedSha1.apply(jar);
+                return new JarResult(jar, sha1.isPresent(),
+                        verifyJar(jar, centralDirectoryOnly, sha1.orElse(null)));
+            })));
+            for (Future<JarResult> check : checks) {
+                results.add(Futures.getUnchecked(check));
+            }
+        } catch (UncheckedExecutionException e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw e;
+        } finally {
+            executor.shutdownNow();
+        }
+
+        results.sort(Comparator.comparing(JarResult::jar));
+        List<Problem> problems = new ArrayList<>();
+        int checksumCount = 0;
+        for (JarResult result : results) {
+            if (result.checksumChecked()) {
+                checksumCount++;
+            }
+            result.problems().forEach(message -> problems.add(new Problem(result.jar(), message)));
+        }
+        return new VerificationReport(results.size(), checksumCount, problems);
+    }
+
+    /**
+     * Checks a single JAR file.
+     *
+     * @param jar                  The JAR file.
+     * @param centralDirectoryOnly Only check the ZIP structure.
+     * @param expectedSha1         The expected SHA-1 of the file, or null to not check it.
+     * @return The problems found, empty if the file is intact.
+     */
+    static List<String> verifyJar(Path jar, boolean centralDirectoryOnly, String expectedSha1) {
+        List<String> problems = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(jar, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                problems.add("Too large to check: " + size + " bytes");
+                return problems;
+            }
+            ByteBuffer content = MAP_FILES ? channel.map(FileChannel.MapMode.READ_ONLY, 0, size)
+                    : read(channel, (int) size);
+            content.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (expectedSha1 != null) {
+                String actual = CommonUtils.sha1().newHasher().putBytes(content.duplicate()).hash().toString();
+                if (!actual.equalsIgnoreCase(expectedSha1)) {
+                    problems.add("SHA-1 " + actual + " does not match the expected " + expectedSha1);
+                }
+            }
+            new ZipChecker(content, centralDirectoryOnly, problems).check();
+        } catch (IndexOutOfBoundsException e) {
+            // A length field pointing past the end of the file that the checks did not catch
+            problems.add("Malformed ZIP structure: " + e.getMessage());
+        } catch (IOException e) {
+            problems.add("Could not be read: " + e.getMessage());
+        }
+        if (problems.size() > MAX_PROBLEMS_PER_JAR) {
+            int more = problems.size() - MAX_PROBLEMS_PER_JAR;
+            problems.subList(MAX_PROBLEMS_PER_JAR, problems.size()).clear();
+            problems.add("... and " + more + " more problems");
+        }
+        return problems;
+    }
+
+    /*
+     * Reads a whole file into the heap.
+     */
+    private static ByteBuffer read(FileChannel channel, int size) throws IOException {
+        ByteBuffer content = ByteBuffer.allocate(size);
+        while (content.hasRemaining()) {
+            if (channel.read(content) < 0) {
+                throw new IOException("File shrank while being read");
+            }
+        }
+        return content.flip();
+    }
+
+    /**
+     * Maps the file names a lockfile entry can have in a target folder to its SHA-1: {@code <artifactId>.jar} and the
+     * remote name for JAR files, {@code <artifactId>-sources.jar} for source JAR files.
+     */
+    private static Map<String, String> checksumsByFileName(LockFile lock) {
+        Map<String, String> checksums = new HashMap<>();
+        for (LockFile.Entry entry : lock.entries()) {
+            String artifactId = entry.spec().split(":")[1];
+            if (entry.kind() == LockFile.Kind.SOURCES) {
+                checksums.put(artifactId + "-sources.jar", entry.sha1());
+            } else {
+                checksums.put(artifactId + ".jar", entry.sha1());
+                checksums.put(entry.url().substring(entry.url().lastIndexOf('/') + 1), entry.sha1());
+            }
+        }
+        return checksums;
+    }
+
+    /**
+     * Gets the SHA-1 the Maven repository publishes for the artifact described by the POM properties of a JAR file.
+     *
+     * @param jar The JAR file.
+     * @return The SHA-1, or empty if the JAR file has no POM properties or the repository has no checksum for it.
+     */
+    private static Optional<String> repositorySha1(Path jar) {
+        Optional<Artifact> artifact = PomGenerator.readArtifact(jar);
+        if (artifact.isEmpty() || artifact.get().version().isEmpty()) {
+            return Optional.empty();
+        }
+        String version = artifact.get().version().get();
+        String url = String.format("%s/%s/%s/%s/%s-%s.jar.sha1", Config.getInstance().getMavenBaseUrl(),
+                artifact.get().groupId().replace('.', '/'), artifact.get().artifactId(), version,
+                artifact.get().artifactId(), version);
+        HttpClientResponseHandler<String> responseHandler = response -> response.getCode() == 200
+                ? EntityUtils.toString(response.getEntity(), StandardCharsets.US_ASCII) : null;
+        try {
+            HttpGet request = new HttpGet(new URI(url));
+            request.setConfig(HttpClientProvider.requestConfig());
+            request.setHeader("X-JFrog-Art-Api", Config.getInstance().getMavenApiKey().orElse(""));
+            String checksum = HttpClientProvider.getClient().execute(request, responseHandler);
+            if (checksum == null || checksum.isBlank()) {
+                logger.info("No checksum for {} at {}", jar, url);
+                return Optional.empty();
+            }
+            // The file can hold just the checksum or the checksum followed by the file name
+            return Optional.of(checksum.trim().split("\\s+")[0]);
+        } catch (Exception e) {
+            AnsiLogger.warning(logger, "Could not get the checksum of {} from {}: {}", jar.getFileName(), url,
+                    e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private static void printReport(Path folderPath, VerificationReport report) {
+        AnsiLogger.info("Checked {} JAR files in: {}, {} of them against a checksum", report.jarCount(), folderPath,
+                report.checksumCount());
+        Path previousJar = null;
+        for (Problem problem : report.problems()) {
+            if (!problem.jar().equals(previousJar)) {
+                AnsiLogger.error(logger, "{} is damaged:", problem.jar());
+                previousJar = problem.jar();
+            }
+            AnsiLogger.error("    {}", problem.message());
+        }
+        if (report.hasProblems()) {
+            AnsiLogger.error("Found {} damaged JAR files", report.problems().stream().map(Problem::jar).distinct()
+                    .count());
+        } else {
+            AnsiLogger.success("All JAR files are intact");
+        }
+    }
+
+    private record JarResult(Path jar, boolean checksumChecked, List<String> problems) {
+    }
+
+    /**
+     * Reads the ZIP structure of a file. Offsets are checked before every read, so a damaged file gives a problem
+     * rather than an exception.
+     */
+    private static class ZipChecker {
+        private final ByteBuffer zip;
+        private final boolean centralDirectoryOnly;
+        private final List<String> problems;
+        private final int size;
+
+        ZipChecker(ByteBuffer zip, boolean centralDirectoryOnly, List<String> problems) {
+            this.zip = zip;
+            this.centralDirectoryOnly = centralDirectoryOnly;
+            this.problems = problems;
+            this.size = zip.capacity();
+        }
+
+        void check() {
+            int end = findEndOfCentralDirectory();
+            if (end < 0) {
+                problems.add("Not a ZIP file: no end of central directory record");
+                return;
+            }
+            long entryCount = zip.getShort(end + 10) & MAX_16;
+            long directorySize = zip.getInt(end + 12) & MAX_32;
+            long directoryOffset = zip.getInt(end + 16) & MAX_32;
+            long directoryEnd = end;
+
+            if (entryCount == MAX_16 || directorySize == MAX_32 || directoryOffset == MAX_32) {
+                int locator = end - 20;
+                if (locator < 0 || zip.getInt(locator) != ZIP64_LOCATOR) {
+                    problems.add("ZIP64 end of central directory locator is missing");
+                    return;
+                }
+                long zip64End = zip.getLong(locator + 8);
+                if (zip64End < 0 || zip64End + 56 > locator
+                        || zip.getInt((int) zip64End) != ZIP64_END_OF_CENTRAL_DIRECTORY) {
+                    problems.add("ZIP64 end of central directory record is missing");
+                    return;
+                }
+                entryCount = zip.getLong((int) zip64End + 32);
+                directorySize = zip.getLong((int) zip64End + 40);
+                directoryOffset = zip.getLong((int) zip64End + 48);
+                directoryEnd = zip64End;
+            }
+            // The central directory ends where the end records start, anything before the ZIP data shifts offsets
+            long prefix = directoryEnd - directorySize - directoryOffset;
+            if (directoryOffset < 0 || directorySize < 0 || prefix < 0) {
+                problems.add("Central directory at " + directoryOffset + " with " + directorySize
+                        + " bytes does not fit before the end of central directory record at " + directoryEnd);
+                return;
+            }
+            directoryOffset += prefix;
+
+            CRC32 crc = new CRC32();
+            Inflater inflater = new Inflater(true);
+            byte[] buffer = new byte[64 * 1024];
+            try {
+                int position = (int) directoryOffset;
+                int limit = (int) (directoryOffset + directorySize);
+                for (long entry = 0; entry < entryCount; entry++) {
+                    if (position + 46 > limit || zip.getInt(position) != CENTRAL_HEADER) {
+                        problems.add("Central directory entry " + entry + " of " + entryCount + " is missing");
+                        return;
+                    }
+                    int next = position + 46 + (zip.getShort(position + 28) & MAX_16)
+                            + (zip.getShort(position + 30) & MAX_16) + (zip.getShort(position + 32) & MAX_16);
+                    if (next > limit) {
+                        problems.add("Central directory entry " + entry + " runs past the central directory");
+                        return;
+                    }
+                    checkEntry(position, directoryOffset, prefix, crc, inflater, buffer);
+                    position = next;
+                }
+                if (position != limit) {
+                    problems.add("Central directory has " + (limit - position) + " bytes after its " + entryCount
+                            + " entries");
+                }
+            } finally {
+                inflater.end();
+            }
+        }
+
+        /*
+         * Checks the local header and, unless only the central directory is checked, the data of an entry.
+         */
+        private void checkEntry(int header, long directoryOffset, long prefix, CRC32 crc, Inflater inflater,
+                                byte[] buffer) {
+            int flags = zip.getShort(header + 8) & MAX_16;
+            int method = zip.getShort(header + 10) & MAX_16;
+            long expectedCrc = zip.getInt(header + 16) & MAX_32;
+            long compressedSize = zip.getInt(header + 20) & MAX_32;
+            long uncompressedSize = zip.getInt(header + 24) & MAX_32;
+            int nameLength = zip.getShort(header + 28) & MAX_16;
+            int extraLength = zip.getShort(header + 30) & MAX_16;
+            long localOffset = zip.getInt(header + 42) & MAX_32;
+            String name = name(header + 46, nameLength);
+
+            // ZIP64 sizes and offsets are in the extra field, in this order, for the values that did not fit
+            if (uncompressedSize == MAX_32 || compressedSize == MAX_32 || localOffset == MAX_32) {
+                int field = findExtraField(header + 46 + nameLength, extraLength);
+                if (field < 0) {
+                    problems.add(name + ": ZIP64 extra field is missing");
+                    return;
+                }
+                int value = field + 4;
+                if (uncompressedSize == MAX_32) {
+                    uncompressedSize = zip.getLong(value);
+                    value += 8;
+                }
+                if (compressedSize == MAX_32) {
+                    compressedSize = zip.getLong(value);
+                    value += 8;
+                }
+                if (localOffset == MAX_32) {
+                    localOffset = zip.getLong(value);
+                }
+            }
+            localOffset += prefix;
+
+            if (localOffset < 0 || localOffset + 30 > directoryOffset
+                    || zip.getInt((int) localOffset) != LOCAL_HEADER) {
+                problems.add(name + ": local header at " + localOffset + " is missing");
+                return;
+            }
+            long dataStart = localOffset + 30 + (zip.getShort((int) localOffset + 26) & MAX_16)
+                    + (zip.getShort((int) localOffset + 28) & MAX_16);
+            if (compressedSize < 0 || dataStart + compressedSize > directoryOffset) {
+                problems.add(name + ": data runs past the central directory");
+                return;
+            }
+            // Encrypted entries cannot be checked without the password
+            if (centralDirectoryOnly || (flags & 1) != 0) {
+                return;
+            }
+
+            crc.reset();
+            long actualSize;
+            if (method == 0) {
+                crc.update(zip.slice((int) dataStart, (int) compressedSize));
+                actualSize = compressedSize;
+            } else if (method == 8) {
+                inflater.reset();
+                inflater.setInput(zip.slice((int) dataStart, (int) compressedSize));
+                actualSize = 0;
+                try {
+                    while (!inflater.finished()) {
+                        int count = inflater.inflate(buffer);
+                        if (count == 0 && !inflater.finished()
+                                && (inflater.needsInput() || inflater.needsDictionary())) {
+                            problems.add(name + ": compressed data is truncated");
+                            return;
+                        }
+                        crc.update(buffer, 0, count);
+                        actualSize += count;
+                    }
+                } catch (DataFormatException e) {
+                    problems.add(name + ": compressed data is corrupt: " + e.getMessage());
+                    return;
+                }
+            } else {
+                problems.add(name + ": unsupported compression method " + method);
+                return;
+            }
+            if (crc.getValue() != expectedCrc) {
+                problems.add(String.format("%s: CRC %08x does not match %08x", name, crc.getValue(), expectedCrc));
+            } else if (actualSize != uncompressedSize) {
+                problems.add(name + ": size " + actualSize + " does not match " + uncompressedSize);
+            }
+        }
+
+        /*
+         * The position of the end of central directory record, or -1. It is followed by a comment of up to 64 KB, so
+         * it is searched backwards from the end of the file.
+         */
+        private int findEndOfCentralDirectory() {
+            int lowest = Math.max(0, size - 22 - MAX_16);
+            for (int position = size - 22; position >= lowest; position--) {
+                if (zip.getInt(position) == END_OF_CENTRAL_DIRECTORY
+                        && position + 22 + (zip.getShort(position + 20) & MAX_16) == size) {
+                    return position;
+                }
+            }
+            return -1;
+        }
+
+        /*
+         * The position of the ZIP64 field in the extra fields, or -1.
+         */
+        private int findExtraField(int start, int length) {
+            int position = start;
+            while (position + 4 <= start + length) {
+                int id = zip.getShort(position) & MAX_16;
+                int fieldLength = zip.getShort(position + 2) & MAX_16;
+                if (id == ZIP64_EXTRA_FIELD) {
+                    return position;
+                }
+                position += 4 + fieldLength;
+            }
+            return -1;
+        }
+
+        private String name(int start, int length) {
+            byte[] bytes = new byte[length];
+            zip.get(start, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package dev.roshin.tools.batch;
+
+import dev.roshin.tools.JarManagerCLI;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchRunnerTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void parseManifest() throws IOException {
+        Path manifest = Files.writeString(tempDir.resolve("batch.txt"), """
+                # Release libraries
+                generate-pom --folder-path "jars folder" --output-path pom.xml
+
+                combine-userlibs 'a.xml b.xml' --output-xml all.xml
+                """);
+
+        List<BatchRunner.ManifestLine> lines = BatchRunner.parseManifest(manifest);
+
+        assertEquals(2, lines.size());
+        assertEquals(2, lines.get(0).lineNumber());
+        assertEquals(List.of("generate-pom", "--folder-path", "jars folder", "--output-path", "pom.xml"),
+                lines.get(0).args());
+        assertEquals(4, lines.get(1).lineNumber());
+        assertEquals(List.of("combine-userlibs", "a.xml b.xml", "--output-xml", "all.xml"), lines.get(1).args());
+    }
+
+    @Test
+    void tokenize_unterminatedQuote() {
+        assertThrows(IllegalArgumentException.class, () -> BatchRunner.tokenize("generate-pom \"jars", 1));
+    }
+
+    @Test
+    void dependencies() {
+        List<BatchRunner.Step> steps = List.of(
+                step(1, Set.of("spec.txt"), Set.of("jars")),
+                step(2, Set.of("other-spec.txt"), Set.of("other-jars")),
+                // Reads a file in the folder written by the first step
+                step(3, Set.of("jars/sub"), Set.of("pom.xml")),
+                // Only reads what the second step reads
+                step(4, Set.of("other-spec.txt"), Set.of("report.txt")),
+                // Writes the spec the first step reads
+                step(5, Set.of(), Set.of("spec.txt")));
+
+        assertEquals(List.of(List.of(), List.of(), List.of(0), List.of(), List.of(0)),
+                BatchRunner.dependencies(steps));
+    }
+
+    @Test
+    void dependencies_commandsSharingFiles() {
+        List<BatchRunner.Step> steps = List.of(
+                command(1, "generate-pom", "--folder-path", "jars", "--output-path", "hello.xml",
+                        "--additional-info"),
+                // Reads the additional file of the first step, which replaces its extension
+                command(2, "download-jars", "hello.additional", "--target-folder", "target",
+                        "--changes-log", "changes.log"),
+                // Appends to the changes log of the second step
+                command(3, "generate-userlibs", "other-lib", "other.txt", "--output-xml", "other.userlibraries",
+                        "--jars-path", "other", "--changes-log", "changes.log"),
+                command(4, "generate-userlibs", "lib", "spec.txt", "--output-xml", "lib.userlibraries",
+                        "--jars-path", "lib"));
+
+        assertEquals(List.of(List.of(), List.of(0), List.of(1), List.of()), BatchRunner.dependencies(steps));
+    }
+
+    @Test
+    void run_independentStepsRunInParallel() {
+        // Both steps have to be running at the same time to get past the latch
+        CountDownLatch bothRunning = new CountDownLatch(2);
+        BatchStep waitForOther = new TestStep(Set.of(), Set.of("a")) {
+            @Override
+            public Integer call() throws Exception {
+                bothRunning.countDown();
+                return bothRunning.await(10, TimeUnit.SECONDS) ? 0 : 1;
+            }
+        };
+        BatchStep other = new TestStep(Set.of(), Set.of("b")) {
+            @Override
+            public Integer call() throws Exception {
+                bothRunning.countDown();
+                return bothRunning.await(10, TimeUnit.SECONDS) ? 0 : 1;
+            }
+        };
+
+        List<BatchRunner.StepResult> results = BatchRunner.run(List.of(
+                new BatchRunner.Step(1, "a", waitForOther), new BatchRunner.Step(2, "b", other)), 2);
+
+        assertEquals(BatchRunner.Status.SUCCEEDED, results.get(0).status());
+        assertEquals(BatchRunner.Status.SUCCEEDED, results.get(1).status());
+    }
+
+    @Test
+    void run_skipsStepsDependingOnFailedSteps() {
+        BatchStep failing = new TestStep(Set.of(), Set.of("jars")) {
+            @Override
+            public Integer call() {
+                throw new IllegalArgumentException("Spec path cannot be null or empty.");
+            }
+        };
+
+        List<BatchRunner.StepResult> results = BatchRunner.run(List.of(
+                new BatchRunner.Step(1, "download", failing),
+                step(2, Set.of("jars"), Set.of("pom.xml")),
+                step(3, Set.of("other"), Set.of("other.xml"))), 1);
+
+        assertEquals(BatchRunner.Status.FAILED, results.get(0).status());
+        assertEquals(1, results.get(0).exitCode());
+        assertEquals(BatchRunner.Status.SKIPPED, results.get(1).status());
+        assertEquals(BatchRunner.Status.SUCCEEDED, results.get(2).status());
+    }
+
+    private static BatchRunner.Step command(int lineNumber, String... args) {
+        Object command = new CommandLine(new JarManagerCLI()).parseArgs(args).subcommand().commandSpec()
+                .userObject();
+        return new BatchRunner.Step(lineNumber, String.join(" ", args), (BatchStep) command);
+    }
+
+    private static BatchRunner.Step step(int lineNumber, Set<String> inputs, Set<String> outputs) {
+        return new BatchRunner.Step(lineNumber, "step " + lineNumber, new TestStep(inputs, outputs));
+    }
+
+    private static class TestStep implements BatchStep {
+        private final Set<String> inputs;
+        private final Set<String> outputs;
+
+        TestStep(Set<String> inputs, Set<String> outputs) {
+            this.inputs = inputs;
+            this.outputs = outputs;
+        }
+
+        @Override
+        public Set<Path> inputs() {
+            return inputs.stream().map(Paths::get).collect(Collectors.toSet());
+        }
+
+        @Override
+        public Set<Path> outputs() {
+            return outputs.stream().map(Paths::get).collect(Collectors.toSet());
+        }
+
+        @Override
+        public Integer call() throws Exception {
+            return 0;
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package dev.roshin.tools.config;
 
+import dev.roshin.tools.download_jars.util.HttpClientProvider;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.core5.util.Timeout;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
@@ -8,6 +11,7 @@ import java.io.IOException;
 import java.lang.reflect.Field;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Optional;
 import java.util.Properties;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -58,6 +62,47 @@ class ConfigTest {
         assertEquals(defaultUrl, config.getMavenBaseUrl());
     }
 
+    @Test
+    void testRestoreDefaults() throws IOException {
+        Path externalConfigFile = tempDir.resolve("external-config.properties");
+        Files.writeString(externalConfigFile, "base.url=https://external-base-url.com");
+        config.loadExternalConfig(externalConfigFile);
+
+        config.restoreDefaults();
+
+        // The default of the bundled configuration file
+        assertEquals("https://repo1.maven.org/maven2", config.getMavenBaseUrl());
+    }
+
+    @Test
+    void testRestoreDefaults_httpTimeoutsOfTheNextCommand() throws IOException {
+        Path externalConfigFile = tempDir.resolve("external-config.properties");
+        Files.writeString(externalConfigFile, "http.connect.timeout.seconds=3\nhttp.socket.timeout.seconds=4\n");
+        config.loadExternalConfig(externalConfigFile);
+
+        RequestConfig requestConfig = HttpClientProvider.requestConfig();
+        assertEquals(Timeout.ofSeconds(3), requestConfig.getConnectionRequestTimeout());
+        assertEquals(Timeout.ofSeconds(4), requestConfig.getResponseTimeout());
+
+        // The next command of a daemon gets the default of the bundled configuration file
+        config.restoreDefaults();
+        assertEquals(Timeout.ofSeconds(30), HttpClientProvider.requestConfig().getResponseTimeout());
+    }
+
+    @Test
+    void testLocalRepository() throws IOException {
+        Path externalConfigFile = tempDir.resolve("external-config.properties");
+        Files.writeString(externalConfigFile, "local.repository=" + tempDir.toString().replace("\\", "/"));
+        config.loadExternalConfig(externalConfigFile);
+
+        assertEquals(Optional.of(tempDir), config.getLocalRepository());
+
+        Files.writeString(externalConfigFile, "local.repository=none");
+        config.loadExternalConfig(externalConfigFile);
+
+        assertEquals(Optional.empty(), config.getLocalRepository());
+    }
+
     @Test
     void testSingletonInstance() {
         Config instance1 = Config.getInstance();
@@ -0,0 +1,101 @@
+package dev.roshin.tools.conflict_checker;
+
+import dev.roshin.tools.util.JarDiscovery;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClassConflictDetectorTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void checkConflicts() throws IOException {
+        createJar(tempDir.resolve("first.jar"), Map.of(
+                "com/example/Shared.class", "same",
+                "com/example/Changed.class", "version 1",
+                "com/example/OnlyFirst.class", "first"));
+        createJar(tempDir.resolve("second.jar"), Map.of(
+                "com/example/Shared.class", "same",
+                "com/example/Changed.class", "version 2",
+                "module-info.class", "module"));
+        createJar(tempDir.resolve("third.jar"), Map.of(
+                "org/other/Unrelated.class", "unrelated",
+                "META-INF/versions/11/org/other/Unrelated.class", "unrelated"));
+
+        ClassConflictDetector.ConflictReport report = ClassConflictDetector.checkConflicts(tempDir,
+                JarDiscovery.Options.flat());
+
+        assertTrue(report.hasConflicts());
+        assertEquals(3, report.jarCount());
+        assertEquals(4, report.classCount());
+
+        assertEquals(1, report.duplicateClasses().size());
+        ClassConflictDetector.DuplicateClasses duplicates = report.duplicateClasses().get(0);
+        assertEquals(tempDir.resolve("first.jar"), duplicates.firstJar());
+        assertEquals(tempDir.resolve("second.jar"), duplicates.secondJar());
+        assertEquals(1, duplicates.identicalCount());
+        assertEquals(List.of("com.example.Shared"), duplicates.sampleIdentical());
+        assertEquals(List.of("com.example.Changed"), duplicates.differingClasses());
+
+        assertEquals(1, report.splitPackages().size());
+        assertEquals("com.example", report.splitPackages().get(0).packageName());
+        assertEquals(List.of(tempDir.resolve("first.jar"), tempDir.resolve("second.jar")),
+                report.splitPackages().get(0).jars());
+    }
+
+    @Test
+    void checkConflicts_comparesEveryPair() throws IOException {
+        createJar(tempDir.resolve("first.jar"), Map.of("com/example/Shared.class", "version 1"));
+        createJar(tempDir.resolve("second.jar"), Map.of("com/example/Shared.class", "version 2"));
+        createJar(tempDir.resolve("third.jar"), Map.of("com/example/Shared.class", "version 3"));
+        createJar(tempDir.resolve("fourth.jar"), Map.of("com/example/Shared.class", "version 3"));
+
+        ClassConflictDetector.ConflictReport report = ClassConflictDetector.checkConflicts(tempDir,
+                JarDiscovery.Options.flat());
+
+        // Not only the pairs with whichever JAR file was read first
+        assertEquals(6, report.duplicateClasses().size());
+        for (ClassConflictDetector.DuplicateClasses duplicates : report.duplicateClasses()) {
+            boolean sameVersion = duplicates.firstJar().equals(tempDir.resolve("fourth.jar"))
+                    && duplicates.secondJar().equals(tempDir.resolve("third.jar"));
+            assertEquals(sameVersion ? 1 : 0, duplicates.identicalCount());
+            assertEquals(sameVersion ? List.of() : List.of("com.example.Shared"), duplicates.differingClasses());
+        }
+    }
+
+    @Test
+    void checkConflicts_noConflicts() throws IOException {
+        createJar(tempDir.resolve("first.jar"), Map.of("com/example/First.class", "first"));
+        createJar(tempDir.resolve("second.jar"), Map.of("org/example/Second.class", "second"));
+        // Source JARs are not checked
+        createJar(tempDir.resolve("first-sources.jar"), Map.of("com/example/First.class", "source"));
+
+        ClassConflictDetector.ConflictReport report = ClassConflictDetector.checkConflicts(tempDir,
+                JarDiscovery.Options.flat());
+
+        assertFalse(report.hasConflicts());
+        assertEquals(2, report.jarCount());
+    }
+
+    private static void createJar(Path jarPath, Map<String, String> entries) throws IOException {
+        try (JarOutputStream jos = new JarOutputStream(Files.newOutputStream(jarPath))) {
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                jos.putNextEntry(new JarEntry(entry.getKey()));
+                jos.write(entry.getValue().getBytes(StandardCharsets.UTF_8));
+                jos.closeEntry();
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package dev.roshin.tools.daemon;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.OptionalInt;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToIntFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JarManagerDaemonTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void forwardsCommandsUntilStopped() throws Exception {
+        Path socket = tempDir.resolve("daemon.sock");
+        AtomicInteger commands = new AtomicInteger();
+        CompletableFuture<Void> daemon = CompletableFuture.runAsync(() -> serve(socket, Duration.ofMinutes(1),
+                args -> {
+                    commands.incrementAndGet();
+                    System.out.print("out:" + String.join(",", args));
+                    System.err.print("err");
+                    return 3;
+                }));
+        awaitSocket(socket);
+
+        // Commands run in the same JVM, one after the other
+        for (int i = 1; i <= 2; i++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ByteArrayOutputStream err = new ByteArrayOutputStream();
+            OptionalInt exitCode = DaemonClient.forward(socket, new String[]{"generate-pom", "--sorted"}, out, err);
+
+            assertEquals(OptionalInt.of(3), exitCode);
+            assertEquals("out:generate-pom,--sorted", out.toString(StandardCharsets.UTF_8));
+            assertEquals("err", err.toString(StandardCharsets.UTF_8));
+            assertEquals(i, commands.get());
+        }
+
+        assertTrue(DaemonClient.stop(socket));
+        daemon.get(10, TimeUnit.SECONDS);
+        assertFalse(Files.exists(socket));
+    }
+
+    @Test
+    void stopsWhenIdle() throws Exception {
+        Path socket = tempDir.resolve("daemon.sock");
+        CompletableFuture<Void> daemon = CompletableFuture.runAsync(() -> serve(socket, Duration.ofMillis(200),
+                args -> 0));
+
+        daemon.get(10, TimeUnit.SECONDS);
+
+        assertFalse(Files.exists(socket));
+        assertEquals(OptionalInt.empty(), DaemonClient.forward(socket, new String[0]));
+    }
+
+    @Test
+    void refusesTheDaemonCommand() throws Exception {
+        Path socket = tempDir.resolve("daemon.sock");
+        CompletableFuture<Void> daemon = CompletableFuture.runAsync(() -> serve(socket, Duration.ofMinutes(1),
+                args -> 0));
+        awaitSocket(socket);
+
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        OptionalInt exitCode = DaemonClient.forward(socket, new String[]{"daemon"}, new ByteArrayOutputStream(), err);
+
+        assertEquals(OptionalInt.of(2), exitCode);
+        assertFalse(err.toString(StandardCharsets.UTF_8).isEmpty());
+        assertTrue(DaemonClient.stop(socket));
+        daemon.get(10, TimeUnit.SECONDS);
+    }
+
+    private static void serve(Path socket, Duration idleTimeout, ToIntFunction<String[]> runner) {
+        try {
+            JarManagerDaemon.serve(socket, idleTimeout, runner);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void awaitSocket(Path socket) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!Files.exists(socket)) {
+            assertTrue(System.nanoTime() < deadline, "Daemon did not start");
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package dev.roshin.tools.dedupe_jars;
+
+import dev.roshin.tools.util.JarDiscovery;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JarDeduplicatorTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path first;
+    private Path second;
+    private Path third;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        first = Files.createDirectories(tempDir.resolve("first"));
+        second = Files.createDirectories(tempDir.resolve("second"));
+        third = Files.createDirectories(tempDir.resolve("third"));
+        Files.writeString(first.resolve("guava.jar"), "guava content");
+        Files.writeString(second.resolve("guava.jar"), "guava content");
+        Files.writeString(third.resolve("guava-33.1.0-jre.jar"), "guava content");
+        // Same size, different content
+        Files.writeString(third.resolve("other.jar"), "other content");
+        Files.writeString(first.resolve("unique.jar"), "a size of its own");
+    }
+
+    @Test
+    void dedupe() throws IOException {
+        JarDeduplicator.DedupeReport report = JarDeduplicator.dedupe(List.of(first, second, third),
+                JarDiscovery.Options.flat(), false);
+
+        assertEquals(5, report.jarCount());
+        assertEquals(4, report.hashedCount());
+        assertEquals(1, report.groups().size());
+        JarDeduplicator.DuplicateGroup group = report.groups().get(0);
+        assertEquals(first.resolve("guava.jar"), group.kept());
+        assertEquals(List.of(second.resolve("guava.jar"), third.resolve("guava-33.1.0-jre.jar")),
+                group.duplicates());
+        assertEquals(2, report.linkedCount());
+        assertEquals(2 * "guava content".length(), report.savedBytes());
+
+        assertTrue(Files.isSameFile(first.resolve("guava.jar"), second.resolve("guava.jar")));
+        assertTrue(Files.isSameFile(first.resolve("guava.jar"), third.resolve("guava-33.1.0-jre.jar")));
+        assertFalse(Files.isSameFile(first.resolve("guava.jar"), third.resolve("other.jar")));
+        assertEquals("guava content", Files.readString(second.resolve("guava.jar")));
+
+        // Files that are already linked are not replaced again
+        JarDeduplicator.DedupeReport again = JarDeduplicator.dedupe(List.of(first, second, third),
+                JarDiscovery.Options.flat(), false);
+        assertTrue(again.groups().isEmpty());
+        assertEquals(0, again.linkedCount());
+    }
+
+    @Test
+    void fileState_changesWhenTheFileIsWrittenOrReplaced() throws IOException {
+        Path jar = first.resolve("guava.jar");
+        JarDeduplicator.FileState state = JarDeduplicator.FileState.of(
+                Files.readAttributes(jar, BasicFileAttributes.class));
+        assertTrue(state.matches(jar));
+
+        // Same size, written in place
+        Files.writeString(jar, "GUAVA CONTENT");
+        Files.setLastModifiedTime(jar, FileTime.fromMillis(System.currentTimeMillis() + 60_000));
+        assertFalse(state.matches(jar));
+
+        // Same size and modification time, but another file
+        state = JarDeduplicator.FileState.of(Files.readAttributes(jar, BasicFileAttributes.class));
+        Path replacement = Files.writeString(first.resolve("replacement.jar"), "guava content");
+        Files.setLastModifiedTime(replacement, state.lastModified());
+        Files.move(replacement, jar, StandardCopyOption.REPLACE_EXISTING);
+        assertFalse(state.matches(jar));
+        assertFalse(state.matches(first.resolve("missing.jar")));
+    }
+
+    @Test
+    void dedupe_keepsTheFileWithTheMostLinks() throws IOException {
+        Files.delete(first.resolve("guava.jar"));
+        Files.createLink(first.resolve("guava.jar"), third.resolve("guava-33.1.0-jre.jar"));
+
+        JarDeduplicator.DedupeReport report = JarDeduplicator.dedupe(List.of(first, second, third),
+                JarDiscovery.Options.flat(), false);
+
+        assertEquals(1, report.groups().size());
+        assertEquals(first.resolve("guava.jar"), report.groups().get(0).kept());
+        assertEquals(List.of(second.resolve("guava.jar")), report.groups().get(0).duplicates());
+        assertTrue(Files.isSameFile(second.resolve("guava.jar"), third.resolve("guava-33.1.0-jre.jar")));
+    }
+
+    @Test
+    void dedupe_dryRun() throws IOException {
+        JarDeduplicator.DedupeReport report = JarDeduplicator.dedupe(List.of(first, second, third),
+                JarDiscovery.Options.flat(), true);
+
+        assertEquals(2, report.linkedCount());
+        assertEquals(2 * "guava content".length(), report.savedBytes());
+        assertFalse(Files.isSameFile(first.resolve("guava.jar"), second.resolve("guava.jar")));
+    }
+}
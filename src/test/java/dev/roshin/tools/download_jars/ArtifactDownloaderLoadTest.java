@@ -0,0 +1,85 @@
+package dev.roshin.tools.download_jars;
+
+import com.google.common.hash.Hashing;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Downloads large spec files from a {@link LocalMavenRepository}, so the downloader can be load tested without a
+ * network. Tagged {@code load}, so they only run with {@code mvn -Pload test}.
+ */
+@Tag("load")
+class ArtifactDownloaderLoadTest {
+
+    private static final int ARTIFACT_COUNT = 1000;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void downloadArtifacts_thousandArtifacts() throws IOException {
+        try (LocalMavenRepository repository = LocalMavenRepository.start()) {
+            List<String> coordinates = repository.addSyntheticArtifacts(ARTIFACT_COUNT, 4096);
+            repository.setLatency(Duration.ofMillis(1));
+            Path specFile = Files.write(tempDir.resolve("spec.txt"), coordinates);
+            Path jarsPath = Files.createDirectory(tempDir.resolve("jars"));
+            Path sourcesPath = Files.createDirectory(tempDir.resolve("sources"));
+            Path changesLog = tempDir.resolve("changes.log");
+
+            ArtifactDownloader.downloadArtifacts(specFile, jarsPath, sourcesPath.toString(), false,
+                    changesLog.toString(), false, false);
+
+            for (int i = 0; i < ARTIFACT_COUNT; i++) {
+                String[] parts = coordinates.get(i).split(":");
+                String versionPath = "/" + parts[0].replace('.', '/') + "/" + parts[1] + "/" + parts[2] + "/"
+                        + parts[1] + "-" + parts[2];
+                // Every file was requested once and written as served
+                assertEquals(1, repository.requestCount(versionPath + ".jar"));
+                assertEquals(1, repository.requestCount(versionPath + "-sources.jar"));
+                assertEquals(sha1(repository, versionPath + ".jar"), Hashing.sha1()
+                        .hashBytes(Files.readAllBytes(jarsPath.resolve(parts[1] + ".jar"))).toString());
+                assertTrue(Files.exists(sourcesPath.resolve(parts[1] + "-sources.jar")));
+            }
+            assertEquals(ARTIFACT_COUNT, Files.readAllLines(changesLog).stream()
+                    .filter(line -> line.contains("Added: ")).count());
+        }
+    }
+
+    @Test
+    void downloadArtifacts_failedRequestsOnlyLoseTheirArtifacts() throws IOException {
+        try (LocalMavenRepository repository = LocalMavenRepository.start()) {
+            List<String> coordinates = repository.addSyntheticArtifacts(200, 1024);
+            repository.setErrorRate(0.1, 42);
+            Path specFile = Files.write(tempDir.resolve("spec.txt"), coordinates);
+            Path jarsPath = Files.createDirectory(tempDir.resolve("jars"));
+
+            ArtifactDownloader.downloadArtifacts(specFile, jarsPath, null, false, null, false, false);
+
+            long missing = coordinates.stream()
+                    .filter(coordinate -> !Files.exists(jarsPath.resolve(coordinate.split(":")[1] + ".jar")))
+                    .count();
+            // Only artifacts whose request failed are lost, fewer than the failures when the client retried one, and
+            // the others are still downloaded
+            assertTrue(repository.failedRequests() > 0);
+            assertTrue(missing <= repository.failedRequests());
+        }
+    }
+
+    private static String sha1(LocalMavenRepository repository, String path) throws IOException {
+        try (InputStream in = URI.create(repository.baseUrl() + path + ".sha1").toURL().openStream()) {
+            return new String(in.readAllBytes(), StandardCharsets.US_ASCII);
+        }
+    }
+}
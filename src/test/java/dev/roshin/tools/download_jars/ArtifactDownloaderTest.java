@@ -1,7 +1,9 @@
 package dev.roshin.tools.download_jars;
 
 import com.google.common.base.VerifyException;
+import com.google.common.hash.Hashing;
 import dev.roshin.tools.download_jars.domain.Artifact;
+import dev.roshin.tools.util.JarDiscovery;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -10,9 +12,12 @@ import org.junit.jupiter.api.io.TempDir;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.List;
 import java.util.Optional;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.jar.JarEntry;
 import java.util.jar.JarOutputStream;
 
@@ -45,29 +50,65 @@ class ArtifactDownloaderTest {
     }
 
     @Test
-    void downloadArtifact() {
-        Artifact testArtifact = new Artifact("com.google.guava", "guava", Optional.empty(),
-                Optional.empty());
-
-        // Call the downloadArtifact method
-        boolean useRemoteName = false;
-        boolean explicitDelete = false;
-        Optional<Artifact> downloadedArtifact = ArtifactDownloader.downloadArtifact(
-                testArtifact, null, false,
-                "https://repo1.maven.org/maven2/com/google/guava/guava",
-                targetFolderPath, sourceTargetFolderPath, true, false, "",
-                useRemoteName, explicitDelete);
+    void downloadArtifact() throws IOException {
+        try (LocalMavenRepository repository = LocalMavenRepository.start()) {
+            addArtifact(repository, "com.google.guava", "guava", "33.1.0-jre");
+            Artifact testArtifact = new Artifact("com.google.guava", "guava", Optional.empty(),
+                    Optional.empty());
 
-        // Assert that the artifact was downloaded successfully
-        assertTrue(downloadedArtifact.isPresent());
-        Artifact artifact = downloadedArtifact.get();
-        assertEquals("com.google.guava", artifact.groupId());
-        assertEquals("guava", artifact.artifactId());
-        assertTrue(artifact.version().isPresent());
+            // Call the downloadArtifact method
+            boolean useRemoteName = false;
+            boolean explicitDelete = false;
+            Optional<Artifact> downloadedArtifact = ArtifactDownloader.downloadArtifact(
+                    testArtifact, null, false,
+                    repository.baseUrl() + "/com/google/guava/guava",
+                    targetFolderPath, sourceTargetFolderPath, true, null, "",
+                    useRemoteName, explicitDelete, null, DownloadRun.unlimited());
+
+            // Assert that the artifact was downloaded successfully
+            assertTrue(downloadedArtifact.isPresent());
+            Artifact artifact = downloadedArtifact.get();
+            assertEquals("com.google.guava", artifact.groupId());
+            assertEquals("guava", artifact.artifactId());
+            assertTrue(artifact.version().isPresent());
+
+            // Assert that the artifact and sources were downloaded to the correct paths
+            assertTrue(targetFolderPath.resolve("guava.jar").toFile().exists());
+            assertTrue(sourceTargetFolderPath.resolve("guava-sources.jar").toFile().exists());
+        }
+    }
 
-        // Assert that the artifact and sources were downloaded to the correct paths
-        assertTrue(targetFolderPath.resolve("guava.jar").toFile().exists());
-        assertTrue(sourceTargetFolderPath.resolve("guava-sources.jar").toFile().exists());
+    @Test
+    void downloadArtifact_fromLocalRepository() throws IOException {
+        try (LocalMavenRepository repository = LocalMavenRepository.start()) {
+            addArtifact(repository, "com.example", "local", "1.0.0");
+            Path localRepository = tempDir.resolve("m2");
+            Path versionFolder = Files.createDirectories(localRepository.resolve("com/example/local/1.0.0"));
+            byte[] localJar = jarBytes("com.example", "local", "1.0.0");
+            Files.write(versionFolder.resolve("local-1.0.0.jar"), localJar);
+            Files.writeString(versionFolder.resolve("local-1.0.0.jar.sha1"),
+                    Hashing.sha1().hashBytes(localJar) + "  local-1.0.0.jar");
+            // A sources JAR that does not match its checksum is downloaded instead
+            Files.writeString(versionFolder.resolve("local-1.0.0-sources.jar"), "corrupt");
+            Files.writeString(versionFolder.resolve("local-1.0.0-sources.jar.sha1"),
+                    Hashing.sha1().hashBytes(localJar).toString());
+            // A download replaces a file linked to the local repository, rather than writing through it
+            Files.createLink(sourceTargetFolderPath.resolve("local-sources.jar"),
+                    versionFolder.resolve("local-1.0.0-sources.jar"));
+            repository.setLocalRepository(localRepository);
+
+            Optional<Artifact> downloadedArtifact = ArtifactDownloader.downloadArtifact(
+                    new Artifact("com.example", "local", Optional.of("1.0.0"), Optional.empty()), null, false,
+                    repository.baseUrl() + "/com/example/local", targetFolderPath, sourceTargetFolderPath, true,
+                    null, "", false, false, null, DownloadRun.unlimited());
+
+            assertTrue(downloadedArtifact.isPresent());
+            assertEquals(0, repository.requestCount("/com/example/local/1.0.0/local-1.0.0.jar"));
+            assertEquals(1, repository.requestCount("/com/example/local/1.0.0/local-1.0.0-sources.jar"));
+            assertArrayEquals(localJar, Files.readAllBytes(targetFolderPath.resolve("local.jar")));
+            assertTrue(Files.size(sourceTargetFolderPath.resolve("local-sources.jar")) > "corrupt".length());
+            assertEquals("corrupt", Files.readString(versionFolder.resolve("local-1.0.0-sources.jar")));
+        }
     }
 
     @Test
@@ -83,8 +124,8 @@ class ArtifactDownloaderTest {
         boolean explicitDelete = false;
         Optional<Artifact> downloadedArtifact = ArtifactDownloader.downloadArtifact(
                 testArtifact, existingArtifact, true, "com/example/test-artifact",
-                targetFolderPath, sourceTargetFolderPath, false, false, "",
-                useRemoteName, explicitDelete);
+                targetFolderPath, sourceTargetFolderPath, false, null, "",
+                useRemoteName, explicitDelete, null, DownloadRun.unlimited());
 
         // Assert that the existing artifact was returned
         assertTrue(downloadedArtifact.isPresent());
@@ -103,8 +144,8 @@ class ArtifactDownloaderTest {
         boolean explicitDelete = false;
         Optional<Artifact> downloadedArtifact = ArtifactDownloader.downloadArtifact(
                 testArtifact, null, false, "com/example/invalid-artifact",
-                targetFolderPath, sourceTargetFolderPath, false, false,
-                "your-api-key", useRemoteName, explicitDelete);
+                targetFolderPath, sourceTargetFolderPath, false, null,
+                "your-api-key", useRemoteName, explicitDelete, null, DownloadRun.unlimited());
 
         // Assert that the artifact download failed
         assertFalse(downloadedArtifact.isPresent());
@@ -112,28 +153,195 @@ class ArtifactDownloaderTest {
 
     @Test
     void downloadArtifacts() throws IOException {
-        // Arrange
-        String sourceTargetFolder = sourceTargetFolderPath.toString();
-        boolean updateNewOnly = false;
-        Files.writeString(specFilePath, "com.google.guava:guava:33.1.0-jre\norg.jetbrains.kotlinx:kotlinx-" +
-                "serialization-json-jvm");
+        try (LocalMavenRepository repository = LocalMavenRepository.start()) {
+            addArtifact(repository, "com.google.guava", "guava", "33.1.0-jre");
+            addArtifact(repository, "org.jetbrains.kotlinx", "kotlinx-serialization-json-jvm", "1.6.3");
 
-        // Act
-        boolean useRemoteName = false;
-        boolean explicitDelete = false;
-        ArtifactDownloader.downloadArtifacts(specFilePath, targetFolderPath, sourceTargetFolder, updateNewOnly,
-                changesLogPath.toString(), useRemoteName, explicitDelete);
+            // Arrange
+            String sourceTargetFolder = sourceTargetFolderPath.toString();
+            boolean updateNewOnly = false;
+            Files.writeString(specFilePath, "com.google.guava:guava:33.1.0-jre\norg.jetbrains.kotlinx:kotlinx-" +
+                    "serialization-json-jvm");
 
-        // Assert
-        assertTrue(Files.exists(targetFolderPath.resolve("kotlinx-serialization-json-jvm.jar")));
-        assertTrue(Files.exists(targetFolderPath.resolve("guava.jar")));
-        assertTrue(Files.exists(changesLogPath));
-
-        // Read the changes log file and assert its content
-        String changesLogContent = Files.readString(changesLogPath);
-        assertTrue(changesLogContent.contains("Added: guava.jar (com.google.guava:guava:33.1.0-jre)"));
-        assertTrue(changesLogContent.contains("Added: kotlinx-serialization-json-jvm.jar" +
-                " (org.jetbrains.kotlinx:kotlinx-serialization-json-jvm:1.6.3)"));
+            // Act
+            boolean useRemoteName = false;
+            boolean explicitDelete = false;
+            ArtifactDownloader.downloadArtifacts(specFilePath, targetFolderPath, sourceTargetFolder, updateNewOnly,
+                    changesLogPath.toString(), useRemoteName, explicitDelete);
+
+            // Assert
+            assertTrue(Files.exists(targetFolderPath.resolve("kotlinx-serialization-json-jvm.jar")));
+            assertTrue(Files.exists(targetFolderPath.resolve("guava.jar")));
+            assertTrue(Files.exists(changesLogPath));
+
+            // Read the changes log file and assert its content
+            String changesLogContent = Files.readString(changesLogPath);
+            assertTrue(changesLogContent.contains("Added: guava.jar (com.google.guava:guava:33.1.0-jre)"));
+            assertTrue(changesLogContent.contains("Added: kotlinx-serialization-json-jvm.jar" +
+                    " (org.jetbrains.kotlinx:kotlinx-serialization-json-jvm:1.6.3)"));
+        }
+    }
+
+    @Test
+    void downloadArtifacts_writesLockfile() throws IOException {
+        try (LocalMavenRepository repository = LocalMavenRepository.start()) {
+            addArtifact(repository, "com.google.guava", "guava", "33.1.0-jre");
+            Files.writeString(specFilePath, "com.google.guava:guava\n");
+
+            ArtifactDownloader.downloadArtifacts(specFilePath, targetFolderPath, sourceTargetFolderPath.toString(),
+                    false, null, false, false);
+
+            Path jar = targetFolderPath.resolve("guava.jar");
+            String url = repository.baseUrl() + "/com/google/guava/guava/33.1.0-jre/guava-33.1.0-jre";
+            List<String> entries = Files.readAllLines(LockFile.pathFor(specFilePath)).stream()
+                    .filter(line -> !line.startsWith("#"))
+                    .toList();
+            assertEquals(List.of(
+                    String.join(";", "com.google.guava:guava", "jar", "33.1.0-jre", Long.toString(Files.size(jar)),
+                            LockFile.sha1(jar), url + ".jar"),
+                    String.join(";", "com.google.guava:guava", "sources", "33.1.0-jre",
+                            Long.toString(Files.size(jar)), LockFile.sha1(jar), url + "-sources.jar")), entries);
+        }
+    }
+
+    @Test
+    void downloadArtifacts_locked() throws IOException {
+        try (LocalMavenRepository repository = LocalMavenRepository.start()) {
+            addArtifact(repository, "com.google.guava", "guava", "33.1.0-jre");
+            Files.writeString(specFilePath, "com.google.guava:guava\n");
+            ArtifactDownloader.downloadArtifacts(specFilePath, targetFolderPath, null, false, null, false, false);
+            byte[] locked = Files.readAllBytes(targetFolderPath.resolve("guava.jar"));
+
+            // A newer release does not change what a locked run downloads, and no metadata is requested
+            addArtifact(repository, "com.google.guava", "guava", "33.2.0-jre");
+            Files.delete(targetFolderPath.resolve("guava.jar"));
+            ArtifactDownloader.downloadArtifacts(specFilePath, targetFolderPath, null, false, null, false, false,
+                    JarDiscovery.Options.flat(), true);
+            assertArrayEquals(locked, Files.readAllBytes(targetFolderPath.resolve("guava.jar")));
+            assertEquals(1, repository.requestCount("/com/google/guava/guava/maven-metadata.xml"));
+            String jarPath = "/com/google/guava/guava/33.1.0-jre/guava-33.1.0-jre.jar";
+            assertEquals(2, repository.requestCount(jarPath));
+
+            // A file matching the lockfile is kept
+            ArtifactDownloader.downloadArtifacts(specFilePath, targetFolderPath, null, false, null, false, false,
+                    JarDiscovery.Options.flat(), true);
+            assertEquals(2, repository.requestCount(jarPath));
+        }
+    }
+
+    @Test
+    void downloadArtifacts_locked_shouldThrowExceptionWhenFileDoesNotMatch() throws IOException {
+        try (LocalMavenRepository repository = LocalMavenRepository.start()) {
+            addArtifact(repository, "com.google.guava", "guava", "33.1.0-jre");
+            Files.writeString(specFilePath, "com.google.guava:guava\n");
+            ArtifactDownloader.downloadArtifacts(specFilePath, targetFolderPath, null, false, null, false, false);
+
+            // The repository now serves different content for the locked version
+            byte[] changed = jarBytes("com.google.guava", "guava", "changed");
+            repository.addArtifact("com.google.guava", "guava", "33.1.0-jre", changed, changed);
+            Files.delete(targetFolderPath.resolve("guava.jar"));
+
+            assertThrows(VerifyException.class, () -> ArtifactDownloader.downloadArtifacts(specFilePath,
+                    targetFolderPath, null, false, null, false, false, JarDiscovery.Options.flat(), true));
+        }
+    }
+
+    @Test
+    void downloadArtifacts_locked_shouldThrowExceptionWhenLockfileDoesNotExist() throws IOException {
+        Files.writeString(specFilePath, "com.google.guava:guava\n");
+
+        assertThrows(VerifyException.class, () -> ArtifactDownloader.downloadArtifacts(specFilePath,
+                targetFolderPath, null, false, null, false, false, JarDiscovery.Options.flat(), true));
+    }
+
+    @Test
+    void downloadArtifact_shouldAbortRequestPastItsDeadline() throws IOException {
+        try (LocalMavenRepository repository = LocalMavenRepository.start()) {
+            // Still sending, but far too slowly to finish within the deadline
+            repository.addArtifact("com.google.guava", "guava", "33.1.0-jre", new byte[100_000], null);
+            repository.setBandwidth(10_000);
+            Artifact artifact = new Artifact("com.google.guava", "guava", Optional.of("33.1.0-jre"),
+                    Optional.empty());
+
+            long start = System.nanoTime();
+            Optional<Artifact> downloaded = ArtifactDownloader.downloadArtifact(artifact, null, false,
+                    repository.baseUrl() + "/com/google/guava/guava", targetFolderPath, sourceTargetFolderPath,
+                    false, null, "", false, false, null, new DownloadRun(Duration.ofMillis(500)));
+
+            assertTrue(downloaded.isEmpty());
+            assertTrue(Duration.ofNanos(System.nanoTime() - start).toSeconds() < 5);
+            assertFalse(Files.exists(targetFolderPath.resolve("guava.jar")));
+            assertFalse(Files.exists(targetFolderPath.resolve("guava.jar.part")));
+        }
+    }
+
+    @Test
+    void downloadArtifact_shouldAbortSlowVersionLookup() throws Exception {
+        try (LocalMavenRepository repository = LocalMavenRepository.start()) {
+            addArtifact(repository, "com.google.guava", "guava", "33.1.0-jre");
+            repository.setLatency(Duration.ofSeconds(10));
+            Artifact artifact = new Artifact("com.google.guava", "guava", Optional.empty(), Optional.empty());
+            String artifactPath = repository.baseUrl() + "/com/google/guava/guava";
+
+            // The metadata request gets the deadline of the run's requests
+            long start = System.nanoTime();
+            assertTrue(ArtifactDownloader.downloadArtifact(artifact, null, false, artifactPath, targetFolderPath,
+                    sourceTargetFolderPath, false, null, "", false, false, null,
+                    new DownloadRun(Duration.ofMillis(500))).isEmpty());
+            assertTrue(Duration.ofNanos(System.nanoTime() - start).toSeconds() < 5);
+
+            // And is aborted when the run is cancelled
+            DownloadRun run = DownloadRun.unlimited();
+            CompletableFuture<Optional<Artifact>> download = CompletableFuture.supplyAsync(() ->
+                    ArtifactDownloader.downloadArtifact(artifact, null, false, artifactPath, targetFolderPath,
+                            sourceTargetFolderPath, false, null, "", false, false, null, run));
+            Thread.sleep(300);
+            run.cancel("test");
+
+            assertTrue(download.get(5, TimeUnit.SECONDS).isEmpty());
+            assertEquals(1, run.cancelledArtifacts());
+            assertEquals(0, repository.requestCount("/com/google/guava/guava/33.1.0-jre/guava-33.1.0-jre.jar"));
+        }
+    }
+
+    @Test
+    void downloadArtifact_cancelled() throws Exception {
+        try (LocalMavenRepository repository = LocalMavenRepository.start()) {
+            addArtifact(repository, "com.google.guava", "guava", "33.1.0-jre");
+            repository.setLatency(Duration.ofSeconds(10));
+            Artifact artifact = new Artifact("com.google.guava", "guava", Optional.of("33.1.0-jre"),
+                    Optional.empty());
+            DownloadRun run = DownloadRun.unlimited();
+
+            CompletableFuture<Optional<Artifact>> download = CompletableFuture.supplyAsync(() ->
+                    ArtifactDownloader.downloadArtifact(artifact, null, false,
+                            repository.baseUrl() + "/com/google/guava/guava", targetFolderPath,
+                            sourceTargetFolderPath, false, null, "", false, false, null, run));
+            Thread.sleep(300);
+            run.cancel("test");
+
+            assertTrue(download.get(5, TimeUnit.SECONDS).isEmpty());
+            assertEquals(1, run.cancelledArtifacts());
+            assertFalse(Files.exists(targetFolderPath.resolve("guava.jar")));
+        }
+    }
+
+    @Test
+    void downloadArtifacts_shouldThrowExceptionWhenDeadlinePasses() throws IOException {
+        try (LocalMavenRepository repository = LocalMavenRepository.start()) {
+            addArtifact(repository, "com.google.guava", "guava", "33.1.0-jre");
+            repository.setLatency(Duration.ofSeconds(10));
+            Files.writeString(specFilePath, "com.google.guava:guava:33.1.0-jre\n");
+
+            long start = System.nanoTime();
+            assertThrows(VerifyException.class, () -> ArtifactDownloader.downloadArtifacts(specFilePath,
+                    targetFolderPath, null, false, null, false, false, JarDiscovery.Options.flat(), false,
+                    Duration.ofSeconds(1)));
+
+            assertTrue(Duration.ofNanos(System.nanoTime() - start).toSeconds() < 5);
+            assertFalse(Files.exists(targetFolderPath.resolve("guava.jar")));
+            assertFalse(Files.exists(LockFile.pathFor(specFilePath)));
+        }
     }
 
     @Test
@@ -177,42 +385,46 @@ class ArtifactDownloaderTest {
 
     @Test
     void downloadArtifacts_shouldUpdateOnlyOldArtifacts() throws Exception {
-        // Arrange
-        String sourceTargetFolder = sourceTargetFolderPath.toString();
-        Files.writeString(specFilePath, "com.google.guava:guava:33.1.0-jre\n");
-
-        // Create a temporary JAR file with pom.properties
-        // Create existing artifact files
-        Path jarPath = targetFolderPath.resolve("guava.jar");
-        try (JarOutputStream jos = new JarOutputStream(Files.newOutputStream(jarPath))) {
-            jos.putNextEntry(new JarEntry("META-INF/maven/com.example/test/pom.properties"));
-            Properties props = new Properties();
-            props.setProperty("groupId", "com.google.guava");
-            props.setProperty("artifactId", "guava");
-            props.setProperty("version", "1.0.0");
-            props.store(jos, null);
-            jos.closeEntry();
+        try (LocalMavenRepository repository = LocalMavenRepository.start()) {
+            addArtifact(repository, "com.google.guava", "guava", "33.1.0-jre");
+
+            // Arrange
+            String sourceTargetFolder = sourceTargetFolderPath.toString();
+            Files.writeString(specFilePath, "com.google.guava:guava:33.1.0-jre\n");
+
+            // Create a temporary JAR file with pom.properties
+            // Create existing artifact files
+            Path jarPath = targetFolderPath.resolve("guava.jar");
+            try (JarOutputStream jos = new JarOutputStream(Files.newOutputStream(jarPath))) {
+                jos.putNextEntry(new JarEntry("META-INF/maven/com.example/test/pom.properties"));
+                Properties props = new Properties();
+                props.setProperty("groupId", "com.google.guava");
+                props.setProperty("artifactId", "guava");
+                props.setProperty("version", "1.0.0");
+                props.store(jos, null);
+                jos.closeEntry();
+            }
+            boolean updateNewOnly = true;
+
+            // Get the update time of the existing artifact
+            long existingArtifactUpdateTime = Files.getLastModifiedTime(jarPath).toMillis();
+
+            // Act
+            boolean useRemoteName = false;
+            boolean explicitDelete = false;
+            ArtifactDownloader.downloadArtifacts(specFilePath, targetFolderPath, sourceTargetFolder, updateNewOnly,
+                    changesLogPath.toString(), useRemoteName, explicitDelete);
+
+            // Assert
+            assertTrue(Files.exists(targetFolderPath.resolve("guava.jar")));
+            // Assert that the existing artifact was updated
+            long updatedArtifactUpdateTime = Files.getLastModifiedTime(jarPath).toMillis();
+            assertNotEquals(existingArtifactUpdateTime, updatedArtifactUpdateTime);
+
+            // Read the changes log file and assert its content
+            String changesLogContent = Files.readString(changesLogPath);
+            assertTrue(changesLogContent.contains("Updated: guava.jar (com.google.guava:guava:33.1.0-jre)"));
         }
-        boolean updateNewOnly = true;
-
-        // Get the update time of the existing artifact
-        long existingArtifactUpdateTime = Files.getLastModifiedTime(jarPath).toMillis();
-
-        // Act
-        boolean useRemoteName = false;
-        boolean explicitDelete = false;
-        ArtifactDownloader.downloadArtifacts(specFilePath, targetFolderPath, sourceTargetFolder, updateNewOnly,
-                changesLogPath.toString(), useRemoteName, explicitDelete);
-
-        // Assert
-        assertTrue(Files.exists(targetFolderPath.resolve("guava.jar")));
-        // Assert that the existing artifact was updated
-        long updatedArtifactUpdateTime = Files.getLastModifiedTime(jarPath).toMillis();
-        assertNotEquals(existingArtifactUpdateTime, updatedArtifactUpdateTime);
-
-        // Read the changes log file and assert its content
-        String changesLogContent = Files.readString(changesLogPath);
-        assertTrue(changesLogContent.contains("Updated: guava.jar (com.google.guava:guava:33.1.0-jre)"));
     }
 
     @Test
@@ -311,4 +523,24 @@ class ArtifactDownloaderTest {
         // Call the parseSpecFile method and expect an exception
         assertThrows(RuntimeException.class, () -> ArtifactDownloader.parseSpecFile(specFilePath));
     }
-}
\ No newline at end of file
+
+    private void addArtifact(LocalMavenRepository repository, String groupId, String artifactId, String version)
+            throws IOException {
+        byte[] jar = jarBytes(groupId, artifactId, version);
+        repository.addArtifact(groupId, artifactId, version, jar, jar);
+    }
+
+    private byte[] jarBytes(String groupId, String artifactId, String version) throws IOException {
+        Path jarPath = Files.createTempFile(tempDir, artifactId, ".jar");
+        try (JarOutputStream jos = new JarOutputStream(Files.newOutputStream(jarPath))) {
+            jos.putNextEntry(new JarEntry("META-INF/maven/" + groupId + "/" + artifactId + "/pom.properties"));
+            Properties props = new Properties();
+            props.setProperty("groupId", groupId);
+            props.setProperty("artifactId", artifactId);
+            props.setProperty("version", version);
+            props.store(jos, null);
+            jos.closeEntry();
+        }
+        return Files.readAllBytes(jarPath);
+    }
+}
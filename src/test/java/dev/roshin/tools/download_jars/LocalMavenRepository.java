@@ -0,0 +1,396 @@
+package dev.roshin.tools.download_jars;
+
+import com.google.common.base.Preconditions;
+import com.google.common.hash.Hashing;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import dev.roshin.tools.config.Config;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Maven repository served from memory on a local port, so downloads can be tested without a network.
+ * <p>
+ * While it is open, the repository is the configured base URL of {@link Config}, and the local Maven repository is
+ * turned off so files are not taken from the one of the machine. Closing it stops the server and restores the previous
+ * configuration.
+ * <p>
+ * Every file is served with {@code .sha1} and {@code .md5} checksum files and a strong ETag, answers
+ * {@code If-None-Match} with 304 and single byte ranges with 206. To load test against something closer to a remote
+ * repository, each response can be delayed, throttled to a bandwidth, or failed with a 503 at a given rate. The
+ * failures are drawn from a seeded random generator, so a single-threaded run fails the same requests every time.
+ */
+public class LocalMavenRepository implements AutoCloseable {
+
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d*)-(\\d*)");
+    private static final int WRITE_CHUNK_SIZE = 8192;
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final Map<String, StoredFile> files = new ConcurrentHashMap<>();
+    private final Map<String, List<String>> versions = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> requestCounts = new ConcurrentHashMap<>();
+    private final AtomicInteger failedRequests = new AtomicInteger();
+    private final AtomicLong bytesServed = new AtomicLong();
+    private final String previousBaseUrl;
+    private final Optional<Path> previousLocalRepository;
+
+    private volatile Duration latency = Duration.ZERO;
+    private volatile long bytesPerSecond;
+    private volatile double errorRate;
+    private volatile Random errors = new Random(0);
+    private volatile boolean rangeRequests = true;
+
+    /**
+     * A file of the repository.
+     *
+     * @param content The content.
+     * @param etag    The quoted ETag, derived from the SHA-1 of the content.
+     */
+    private record StoredFile(byte[] content, String etag) {
+    }
+
+    static {
+        // Without TCP_NODELAY, the server writes the headers and a small body in separate packets and each small
+        // response waits for the delayed ACK of the client, around 40 ms
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private LocalMavenRepository() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::handle);
+        // The default executor serves one request at a time, which would hide the parallelism of the downloader
+        server.setExecutor(executor);
+        server.start();
+        previousBaseUrl = Config.getInstance().getMavenBaseUrl();
+        previousLocalRepository = Config.getInstance().getLocalRepository();
+        setConfig("base.url", baseUrl());
+        setLocalRepository(null);
+    }
+
+    /**
+     * Starts an empty repository and makes it the configured base URL.
+     *
+     * @return The repository.
+     * @throws IOException If the server could not be started.
+     */
+    public static LocalMavenRepository start() throws IOException {
+        return new LocalMavenRepository();
+    }
+
+    /**
+     * @return The URL of the repository, without a trailing slash.
+     */
+    public String baseUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    /**
+     * Adds a version of an artifact, which also becomes its latest release.
+     *
+     * @param groupId    The group ID.
+     * @param artifactId The artifact ID.
+     * @param version    The version.
+     * @param jar        The content of the JAR file.
+     * @param sources    The content of the source JAR file, or null if the artifact has no sources.
+     */
+    public void addArtifact(String groupId, String artifactId, String version, byte[] jar, byte[] sources) {
+        String artifactPath = "/" + groupId.replace('.', '/') + "/" + artifactId;
+        String versionPath = artifactPath + "/" + version + "/" + artifactId + "-" + version;
+        addFile(versionPath + ".jar", jar);
+        if (sources != null) {
+            addFile(versionPath + "-sources.jar", sources);
+        }
+        List<String> artifactVersions = versions.computeIfAbsent(artifactPath, key -> new ArrayList<>());
+        StringBuilder metadata = new StringBuilder();
+        synchronized (artifactVersions) {
+            artifactVersions.remove(version);
+            artifactVersions.add(version);
+            metadata.append("<metadata><groupId>").append(groupId).append("</groupId><artifactId>").append(artifactId)
+                    .append("</artifactId><versioning><latest>").append(version).append("</latest><release>")
+                    .append(version).append("</release><versions>");
+            for (String artifactVersion : artifactVersions) {
+                metadata.append("<version>").append(artifactVersion).append("</version>");
+            }
+            metadata.append("</versions></versioning></metadata>");
+            addFile(artifactPath + "/maven-metadata.xml", metadata.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Adds generated artifacts, each a JAR with its {@code pom.properties} and a source JAR. The content depends only
+     * on the index and size, so repositories built with the same arguments serve the same bytes.
+     *
+     * @param count   The number of artifacts.
+     * @param jarSize The approximate size of each JAR file, in bytes.
+     * @return The coordinates of the artifacts, as {@code groupId:artifactId:version} spec file lines.
+     */
+    public List<String> addSyntheticArtifacts(int count, int jarSize) {
+        Preconditions.checkArgument(count >= 0, "Artifact count cannot be negative.");
+        Preconditions.checkArgument(jarSize >= 0, "JAR size cannot be negative.");
+        List<String> coordinates = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            // Groups of ten artifacts share a group ID, as in real dependency sets
+            String groupId = "com.example.synthetic.group" + (i / 10);
+            String artifactId = "synthetic-" + i;
+            String version = "1." + (i % 7) + "." + (i % 3);
+            Random random = new Random(i);
+            addArtifact(groupId, artifactId, version, syntheticJar(groupId, artifactId, version, jarSize, random),
+                    syntheticJar(groupId, artifactId, version, jarSize / 2, random));
+            coordinates.add(groupId + ":" + artifactId + ":" + version);
+        }
+        return coordinates;
+    }
+
+    /**
+     * @param localRepository The local Maven repository checked before this one, or null for none.
+     * @throws IOException If the configuration could not be changed.
+     */
+    public void setLocalRepository(Path localRepository) throws IOException {
+        setConfig("local.repository", localRepository == null ? "none" : localRepository.toString());
+    }
+
+    /**
+     * @param latency How long each request waits before it is answered.
+     */
+    public void setLatency(Duration latency) {
+        Preconditions.checkArgument(!latency.isNegative(), "Latency cannot be negative.");
+        this.latency = latency;
+    }
+
+    /**
+     * @param bytesPerSecond The rate each response body is written at, or 0 to write as fast as possible.
+     */
+    public void setBandwidth(long bytesPerSecond) {
+        Preconditions.checkArgument(bytesPerSecond >= 0, "Bandwidth cannot be negative.");
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * @param errorRate The share of requests answered with a 503, from 0 to 1.
+     * @param seed      The seed of the random generator deciding which requests fail.
+     */
+    public void setErrorRate(double errorRate, long seed) {
+        Preconditions.checkArgument(errorRate >= 0 && errorRate <= 1, "Error rate must be between 0 and 1.");
+        this.errors = new Random(seed);
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * @param rangeRequests Whether {@code Range} headers are honored. When not, the whole file is always sent.
+     */
+    public void setRangeRequests(boolean rangeRequests) {
+        this.rangeRequests = rangeRequests;
+    }
+
+    /**
+     * @param path The path of a file in the repository, for example {@code /com/example/demo/1.0/demo-1.0.jar}.
+     * @return The number of times the file was requested.
+     */
+    public int requestCount(String path) {
+        AtomicInteger count = requestCounts.get(path);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * @return The number of requests answered with an injected 503, including retries of failed requests.
+     */
+    public int failedRequests() {
+        return failedRequests.get();
+    }
+
+    /**
+     * @return The number of response body bytes written.
+     */
+    public long bytesServed() {
+        return bytesServed.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.stop(0);
+        executor.shutdownNow();
+        setConfig("base.url", previousBaseUrl);
+        setLocalRepository(previousLocalRepository.orElse(null));
+    }
+
+    private void addFile(String path, byte[] content) {
+        String sha1 = Hashing.sha1().hashBytes(content).toString();
+        files.put(path, new StoredFile(content, "\"" + sha1 + "\""));
+        @SuppressWarnings("deprecation")
+        String md5 = Hashing.md5().hashBytes(content).toString();
+        files.put(path + ".sha1", checksumFile(sha1));
+        files.put(path + ".md5", checksumFile(md5));
+    }
+
+    private static StoredFile checksumFile(String checksum) {
+        byte[] content = checksum.getBytes(StandardCharsets.US_ASCII);
+        return new StoredFile(content, "\"" + Hashing.sha1().hashBytes(content) + "\"");
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String path = exchange.getRequestURI().getPath();
+            requestCounts.computeIfAbsent(path, key -> new AtomicInteger()).incrementAndGet();
+            if (!latency.isZero()) {
+                Thread.sleep(latency.toMillis(), latency.toNanosPart() % 1_000_000);
+            }
+            if (errorRate > 0 && nextError()) {
+                failedRequests.incrementAndGet();
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+            StoredFile file = files.get(path);
+            if (file == null) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            exchange.getResponseHeaders().set("ETag", file.etag());
+            if (file.etag().equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+            byte[] content = file.content();
+            int start = 0;
+            int end = content.length;
+            int status = 200;
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            if (rangeRequests) {
+                exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+                if (range != null) {
+                    long[] bounds = parseRange(range, content.length);
+                    if (bounds == null) {
+                        exchange.getResponseHeaders().set("Content-Range", "bytes */" + content.length);
+                        exchange.sendResponseHeaders(416, -1);
+                        return;
+                    }
+                    start = (int) bounds[0];
+                    end = (int) bounds[1] + 1;
+                    status = 206;
+                    exchange.getResponseHeaders().set("Content-Range",
+                            "bytes " + bounds[0] + "-" + bounds[1] + "/" + content.length);
+                }
+            }
+            // A length of -1 tells the server there is no body
+            boolean head = "HEAD".equals(exchange.getRequestMethod());
+            exchange.sendResponseHeaders(status, head || end == start ? -1 : end - start);
+            if (!head && end > start) {
+                write(exchange.getResponseBody(), content, start, end);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean nextError() {
+        Random random = errors;
+        synchronized (random) {
+            return random.nextDouble() < errorRate;
+        }
+    }
+
+    /*
+     * Parses a single byte range.
+     *
+     * @return The first and last byte of the range, or null if it cannot be satisfied.
+     */
+    private static long[] parseRange(String range, int length) {
+        Matcher matcher = RANGE.matcher(range.trim());
+        if (!matcher.matches() || (matcher.group(1).isEmpty() && matcher.group(2).isEmpty())) {
+            return null;
+        }
+        long first;
+        long last;
+        if (matcher.group(1).isEmpty()) {
+            // Suffix range, the last n bytes
+            first = Math.max(length - Long.parseLong(matcher.group(2)), 0);
+            last = length - 1;
+        } else {
+            first = Long.parseLong(matcher.group(1));
+            last = matcher.group(2).isEmpty() ? length - 1 : Math.min(Long.parseLong(matcher.group(2)), length - 1);
+        }
+        return first < length && first <= last ? new long[]{first, last} : null;
+    }
+
+    private void write(OutputStream body, byte[] content, int start, int end) throws IOException,
+            InterruptedException {
+        long rate = bytesPerSecond;
+        long startNanos = System.nanoTime();
+        try (body) {
+            for (int offset = start; offset < end; offset += WRITE_CHUNK_SIZE) {
+                int length = Math.min(WRITE_CHUNK_SIZE, end - offset);
+                body.write(content, offset, length);
+                bytesServed.addAndGet(length);
+                if (rate > 0) {
+                    // Sleep until the bytes written so far fit in the bandwidth
+                    long dueNanos = TimeUnit.SECONDS.toNanos(offset + length - start) / rate;
+                    long aheadNanos = dueNanos - (System.nanoTime() - startNanos);
+                    if (aheadNanos > 0) {
+                        TimeUnit.NANOSECONDS.sleep(aheadNanos);
+                    }
+                }
+            }
+        }
+    }
+
+    private static byte[] syntheticJar(String groupId, String artifactId, String version, int size, Random random) {
+        ByteArrayOutputStream jar = new ByteArrayOutputStream(size + 512);
+        try (JarOutputStream jos = new JarOutputStream(jar)) {
+            // Random bytes do not compress, so the entry keeps the JAR close to the requested size
+            byte[] classBytes = new byte[size];
+            random.nextBytes(classBytes);
+            jos.putNextEntry(new JarEntry(groupId.replace('.', '/') + "/" + artifactId.replace('-', '_')
+                    + "/Synthetic.class"));
+            jos.write(classBytes);
+            jos.closeEntry();
+            jos.putNextEntry(new JarEntry("META-INF/maven/" + groupId + "/" + artifactId + "/pom.properties"));
+            Properties props = new Properties();
+            props.setProperty("groupId", groupId);
+            props.setProperty("artifactId", artifactId);
+            props.setProperty("version", version);
+            props.store(jos, null);
+            jos.closeEntry();
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to generate a JAR in memory", e);
+        }
+        return jar.toByteArray();
+    }
+
+    private static void setConfig(String key, String value) throws IOException {
+        Path configFile = Files.createTempFile("local-maven-repository", ".properties");
+        try {
+            Properties properties = new Properties();
+            properties.setProperty(key, value);
+            try (OutputStream out = Files.newOutputStream(configFile)) {
+                properties.store(out, null);
+            }
+            Config.getInstance().loadExternalConfig(configFile);
+        } finally {
+            Files.delete(configFile);
+        }
+    }
+}
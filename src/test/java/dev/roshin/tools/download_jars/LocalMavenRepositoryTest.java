@@ -0,0 +1,93 @@
+package dev.roshin.tools.download_jars;
+
+import com.google.common.hash.Hashing;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocalMavenRepositoryTest {
+
+    private static final String JAR_PATH = "/com/example/demo/1.0/demo-1.0.jar";
+    private static final byte[] JAR = "not really a jar".getBytes(StandardCharsets.UTF_8);
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private LocalMavenRepository repository;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        repository = LocalMavenRepository.start();
+        repository.addArtifact("com.example", "demo", "0.9", new byte[0], null);
+        repository.addArtifact("com.example", "demo", "1.0", JAR, null);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        repository.close();
+    }
+
+    @Test
+    void servesMetadataAndChecksums() throws Exception {
+        String metadata = get("/com/example/demo/maven-metadata.xml").body();
+        assertTrue(metadata.contains("<release>1.0</release>"));
+        assertTrue(metadata.contains("<versions><version>0.9</version><version>1.0</version></versions>"));
+        assertEquals(Hashing.sha1().hashBytes(JAR).toString(), get(JAR_PATH + ".sha1").body());
+        assertEquals(32, get(JAR_PATH + ".md5").body().length());
+        assertEquals(404, get("/com/example/missing/maven-metadata.xml").statusCode());
+    }
+
+    @Test
+    void rangesAndETags() throws Exception {
+        HttpResponse<byte[]> range = send(request(JAR_PATH).header("Range", "bytes=4-").build());
+        assertEquals(206, range.statusCode());
+        assertArrayEquals(Arrays.copyOfRange(JAR, 4, JAR.length), range.body());
+        assertEquals("bytes 4-" + (JAR.length - 1) + "/" + JAR.length,
+                range.headers().firstValue("Content-Range").orElseThrow());
+        assertEquals(416, send(request(JAR_PATH).header("Range", "bytes=100-").build()).statusCode());
+
+        String etag = range.headers().firstValue("ETag").orElseThrow();
+        assertEquals(304, send(request(JAR_PATH).header("If-None-Match", etag).build()).statusCode());
+
+        repository.setRangeRequests(false);
+        HttpResponse<byte[]> whole = send(request(JAR_PATH).header("Range", "bytes=4-").build());
+        assertEquals(200, whole.statusCode());
+        assertArrayEquals(JAR, whole.body());
+    }
+
+    @Test
+    void injectsErrorsAndThrottles() throws Exception {
+        repository.setErrorRate(1, 0);
+        assertEquals(503, get(JAR_PATH).statusCode());
+        assertEquals(1, repository.failedRequests());
+
+        repository.setErrorRate(0, 0);
+        repository.addArtifact("com.example", "large", "1.0", new byte[20_000], null);
+        repository.setBandwidth(100_000);
+        long start = System.nanoTime();
+        assertEquals(200, get("/com/example/large/1.0/large-1.0.jar").statusCode());
+        // 20 kB at 100 kB/s take at least 200 ms, less the first chunk, which is written at once
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() >= 110);
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        return client.send(request(path).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<byte[]> send(HttpRequest request) throws IOException, InterruptedException {
+        return client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    private HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder(URI.create(repository.baseUrl() + path));
+    }
+}
@@ -0,0 +1,99 @@
+package dev.roshin.tools.download_jars;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LockFileTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void write_readsBackInSpecOrder() throws IOException {
+        Path jar = tempDir.resolve("a.jar");
+        Files.writeString(jar, "content");
+        LockFile lock = LockFile.create();
+        lock.record("org.example:b", LockFile.Kind.JAR, "2.0", jar, "https://repo/b-2.0.jar");
+        lock.record("org.example:a:1.0", LockFile.Kind.SOURCES, "1.0", jar, "https://repo/a-1.0-sources.jar");
+        lock.record("org.example:a:1.0", LockFile.Kind.JAR, "1.0", jar, "https://repo/a-1.0.jar");
+
+        Path lockFile = LockFile.pathFor(tempDir.resolve("spec.txt"));
+        lock.write(lockFile, List.of("org.example:a:1.0", "org.example:b", "org.example:missing"));
+
+        assertEquals(tempDir.resolve("spec.txt.lock"), lockFile);
+        List<String> entries = Files.readAllLines(lockFile).stream().filter(line -> !line.startsWith("#")).toList();
+        assertEquals(3, entries.size());
+        assertTrue(entries.get(0).startsWith("org.example:a:1.0;jar;1.0;7;"));
+        assertTrue(entries.get(1).startsWith("org.example:a:1.0;sources;1.0;7;"));
+        assertTrue(entries.get(2).startsWith("org.example:b;jar;2.0;7;"));
+
+        LockFile read = LockFile.read(lockFile);
+        assertEquals(lock.get("org.example:b", LockFile.Kind.JAR), read.get("org.example:b", LockFile.Kind.JAR));
+        assertTrue(read.get("org.example:b", LockFile.Kind.SOURCES).isEmpty());
+    }
+
+    @Test
+    void write_skipsUnchangedLockfile() throws IOException {
+        Path jar = tempDir.resolve("a.jar");
+        Files.writeString(jar, "content");
+        LockFile lock = LockFile.create();
+        lock.record("org.example:a", LockFile.Kind.JAR, "1.0", jar, "https://repo/a-1.0.jar");
+        Path lockFile = tempDir.resolve("spec.txt.lock");
+
+        assertTrue(lock.write(lockFile, List.of("org.example:a")));
+        assertFalse(lock.write(lockFile, List.of("org.example:a")));
+        lock.record("org.example:a", LockFile.Kind.JAR, "1.1", jar, "https://repo/a-1.1.jar");
+        assertTrue(lock.write(lockFile, List.of("org.example:a")));
+
+        // No temporary files are left behind
+        try (var files = Files.list(tempDir)) {
+            assertEquals(List.of("a.jar", "spec.txt.lock"),
+                    files.map(file -> file.getFileName().toString()).sorted().toList());
+        }
+    }
+
+    @Test
+    void matches_hashesOnlyFilesChangedAfterTheLockfile() throws IOException {
+        Path jar = tempDir.resolve("a.jar");
+        Files.writeString(jar, "content");
+        LockFile lock = LockFile.create();
+        lock.record("org.example:a", LockFile.Kind.JAR, "1.0", jar, "https://repo/a-1.0.jar");
+        Path lockFile = tempDir.resolve("spec.txt.lock");
+        lock.write(lockFile, List.of("org.example:a"));
+        Files.setLastModifiedTime(lockFile, FileTime.fromMillis(System.currentTimeMillis() - 60_000));
+
+        LockFile read = LockFile.read(lockFile);
+        LockFile.Entry entry = read.get("org.example:a", LockFile.Kind.JAR).orElseThrow();
+        assertTrue(read.matches(entry, jar));
+
+        // Same size, different content, even with the modification time of a file older than the lockfile
+        Path copy = tempDir.resolve("copy.jar");
+        Files.writeString(copy, "CONTENT");
+        Files.setLastModifiedTime(copy, FileTime.fromMillis(0));
+        Files.delete(jar);
+        Files.createLink(jar, copy);
+        assertFalse(read.matches(entry, jar));
+        Files.setLastModifiedTime(jar, FileTime.fromMillis(System.currentTimeMillis() + 60_000));
+        assertFalse(read.matches(entry, jar));
+
+        Files.writeString(jar, "longer content");
+        assertFalse(read.matches(entry, jar));
+        assertFalse(read.matches(entry, tempDir.resolve("missing.jar")));
+    }
+
+    @Test
+    void read_shouldThrowExceptionOnInvalidEntry() throws IOException {
+        Path lockFile = tempDir.resolve("spec.txt.lock");
+        Files.writeString(lockFile, "# comment\norg.example:a;jar;1.0\n");
+
+        assertThrows(IllegalArgumentException.class, () -> LockFile.read(lockFile));
+    }
+}
@@ -0,0 +1,69 @@
+package dev.roshin.tools.download_jars.domain;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ArtifactCatalogTest {
+
+    private final Artifact guava = new Artifact("com.google.guava", "guava", Optional.of("33.1.0-jre"),
+            Optional.of(Path.of("jars/guava.jar")));
+    private final Artifact oldGuava = new Artifact("com.google.guava", "guava", Optional.of("30.1-jre"),
+            Optional.of(Path.of("old/guava.jar")));
+    private final Artifact failureAccess = new Artifact("com.google.guava", "failureaccess", Optional.empty(),
+            Optional.empty());
+
+    @Test
+    void find() {
+        ArtifactCatalog catalog = ArtifactCatalog.of(List.of(guava, oldGuava, failureAccess));
+
+        assertEquals(3, catalog.size());
+        assertEquals(Optional.of(guava), catalog.find("com.google.guava", "guava", Optional.of("33.1.0-jre")));
+        assertEquals(Optional.of(oldGuava), catalog.find("com.google.guava", "guava", Optional.of("30.1-jre")));
+        assertEquals(Optional.of(guava), catalog.find("com.google.guava", "guava"));
+        assertEquals(Optional.of(failureAccess), catalog.find("com.google.guava", "failureaccess", Optional.empty()));
+        assertEquals(Optional.empty(), catalog.find("com.google.guava", "guava", Optional.of("1.0")));
+        assertEquals(Optional.empty(), catalog.find("com.google.guava", "guava", Optional.empty()));
+        assertEquals(Optional.empty(), catalog.find("org.example", "guava"));
+    }
+
+    @Test
+    void findByArtifactIdAndPath() {
+        ArtifactCatalog catalog = ArtifactCatalog.of(List.of(guava, oldGuava, failureAccess));
+
+        assertEquals(Optional.of(guava), catalog.findByArtifactId("guava"));
+        assertEquals(Optional.empty(), catalog.findByArtifactId("missing"));
+        assertEquals(Optional.of(oldGuava), catalog.findByPath(Path.of("old/guava.jar")));
+        assertEquals(Optional.empty(), catalog.findByPath(Path.of("missing.jar")));
+    }
+
+    @Test
+    void contains() {
+        ArtifactCatalog catalog = ArtifactCatalog.of(List.of(guava, oldGuava, failureAccess));
+
+        assertTrue(catalog.contains(oldGuava));
+        assertTrue(catalog.contains(failureAccess));
+        // Same coordinates, different path
+        assertFalse(catalog.contains(new Artifact("com.google.guava", "guava", Optional.of("30.1-jre"),
+                Optional.empty())));
+    }
+
+    @Test
+    void artifacts() {
+        List<Artifact> artifacts = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            artifacts.add(new Artifact("com.example.group" + (i % 10), "artifact-" + i, Optional.of("1." + (i % 3)),
+                    Optional.of(Path.of("artifact-" + i + ".jar"))));
+        }
+
+        ArtifactCatalog catalog = ArtifactCatalog.of(artifacts);
+
+        assertEquals(artifacts, catalog.artifacts());
+        assertEquals(Optional.of(artifacts.get(500)), catalog.findByPath(Path.of("artifact-500.jar")));
+    }
+}
@@ -1,23 +1,30 @@
 package dev.roshin.tools.download_jars.util;
 
+import dev.roshin.tools.download_jars.LocalMavenRepository;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class MavenMetadataUtilityTest {
 
     @Test
-    void getLatestVersion() {
-        String baseUrl = "https://repo1.maven.org/maven2";
-        String groupId = "com.google.guava";
-        String artifactId = "guava";
-        String apiKey = "";
-        String artifactParentPath = String.format("%s/%s", baseUrl,
-                groupId.replace('.', '/') + "/" + artifactId);
-        String latestVersion = MavenMetadataUtility.getLatestVersion(artifactParentPath, apiKey).orElseThrow();
-        System.out.println("Latest Version: " + latestVersion);
-        assertEquals("33.1.0-jre", latestVersion);
+    void getLatestVersion() throws IOException {
+        try (LocalMavenRepository repository = LocalMavenRepository.start()) {
+            repository.addArtifact("com.google.guava", "guava", "32.1.3-jre", new byte[0], null);
+            repository.addArtifact("com.google.guava", "guava", "33.1.0-jre", new byte[0], null);
+            String baseUrl = repository.baseUrl();
+            String groupId = "com.google.guava";
+            String artifactId = "guava";
+            String apiKey = "";
+            String artifactParentPath = String.format("%s/%s", baseUrl,
+                    groupId.replace('.', '/') + "/" + artifactId);
+            String latestVersion = MavenMetadataUtility.getLatestVersion(artifactParentPath, apiKey).orElseThrow();
+            System.out.println("Latest Version: " + latestVersion);
+            assertEquals("33.1.0-jre", latestVersion);
+        }
     }
 
 
-}
\ No newline at end of file
+}
@@ -13,7 +13,10 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Properties;
 import java.util.Vector;
 import java.util.jar.JarEntry;
@@ -48,11 +51,81 @@ class PomGeneratorTest {
     }
 
     @Test
-    void generatePomEntries() {
+    void generatePomEntries() throws IOException {
+        Path jarsDir = Files.createDirectory(tempDir.resolve("jars"));
+        createJar(jarsDir.resolve("zeta.jar"), "org.zeta", "zeta", "2.0.0");
+        createJar(jarsDir.resolve("alpha.jar"), "com.alpha", "alpha", "1.0.0");
+        Path target = tempDir.resolve("pom.xml");
+
+        PomGenerator.generatePomEntries(jarsDir, target, false, false, true);
+
+        String expected = """
+                <dependencies>
+                 <dependency>
+                 <groupId>com.alpha</groupId>
+                 <artifactId>alpha</artifactId>
+                 <version>1.0.0</version>
+                 </dependency>
+                 <dependency>
+                 <groupId>org.zeta</groupId>
+                 <artifactId>zeta</artifactId>
+                 <version>2.0.0</version>
+                 </dependency>
+                </dependencies>
+                """;
+        assertEquals(expected, Files.readString(target));
     }
 
     @Test
-    void writePomEntry() {
+    void generatePomEntries_unchangedContentIsNotRewritten() throws IOException {
+        Path jarsDir = Files.createDirectory(tempDir.resolve("jars"));
+        createJar(jarsDir.resolve("alpha.jar"), "com.alpha", "alpha", "1.0.0");
+        Path target = tempDir.resolve("pom.xml");
+
+        PomGenerator.generatePomEntries(jarsDir, target, false, false, true);
+        Files.setLastModifiedTime(target, FileTime.fromMillis(0));
+        PomGenerator.generatePomEntries(jarsDir, target, false, false, true);
+
+        // The file was left untouched and no temporary files were left behind
+        assertEquals(0, Files.getLastModifiedTime(target).toMillis());
+        try (var siblings = Files.list(tempDir)) {
+            assertEquals(2, siblings.count());
+        }
+    }
+
+    @Test
+    void scanArtifacts_passesArtifactsInStreamOrder() throws IOException {
+        List<Path> jars = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            // Larger JAR files first, so later ones tend to finish scanning before earlier ones
+            Path jar = tempDir.resolve("jar" + i + ".jar");
+            createJar(jar, "org.example", "artifact" + i, "1.0", 100 - i);
+            jars.add(jar);
+            expected.add("artifact" + i);
+        }
+
+        List<String> scanned = new ArrayList<>();
+        PomGenerator.scanArtifacts(jars.stream(), true, artifact -> scanned.add(artifact.artifactId()));
+
+        assertEquals(expected, scanned);
+    }
+
+    @Test
+    void writePomEntry() throws IOException {
+        StringWriter output = new StringWriter();
+        try (BufferedWriter bufferedWriter = new BufferedWriter(output)) {
+            PomGenerator.writePomEntry(bufferedWriter, "com.example", "demo-artifact", "1.0.0");
+        }
+
+        String expected = """
+                 <dependency>
+                 <groupId>com.example</groupId>
+                 <artifactId>demo-artifact</artifactId>
+                 <version>1.0.0</version>
+                 </dependency>
+                """;
+        assertEquals(expected, output.toString());
     }
 
     @Test
@@ -135,5 +208,27 @@ class PomGeneratorTest {
         }
     }
 
+    private static void createJar(Path jarPath, String groupId, String artifactId, String version) throws IOException {
+        createJar(jarPath, groupId, artifactId, version, 0);
+    }
+
+    private static void createJar(Path jarPath, String groupId, String artifactId, String version, int paddingEntries)
+            throws IOException {
+        try (JarOutputStream jos = new JarOutputStream(Files.newOutputStream(jarPath))) {
+            // Padding entries come first, so the properties are found after reading past them
+            for (int i = 0; i < paddingEntries; i++) {
+                jos.putNextEntry(new JarEntry("padding/Entry" + i + ".class"));
+                jos.closeEntry();
+            }
+            jos.putNextEntry(new JarEntry("META-INF/maven/" + groupId + "/" + artifactId + "/pom.properties"));
+            Properties props = new Properties();
+            props.setProperty("groupId", groupId);
+            props.setProperty("artifactId", artifactId);
+            props.setProperty("version", version);
+            props.store(jos, null);
+            jos.closeEntry();
+        }
+    }
+
 
 }
\ No newline at end of file
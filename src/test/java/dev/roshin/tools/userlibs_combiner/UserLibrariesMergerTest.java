@@ -0,0 +1,227 @@
+package dev.roshin.tools.userlibs_combiner;
+
+import com.google.common.base.VerifyException;
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.JDOMException;
+import org.jdom2.input.SAXBuilder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserLibrariesMergerTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void mergeUserLibraries() throws Exception {
+        Path first = writeUserLibraries("first.userlibraries", """
+                <?xml version="1.0" encoding="UTF-8"?>
+                <eclipse-userlibraries version="2">
+                  <library name="first" systemlibrary="false">
+                    <archive path="C:/jars/a.jar" source="C:/sources/a-sources.jar" />
+                  </library>
+                </eclipse-userlibraries>
+                """);
+        Path second = writeUserLibraries("second.userlibraries", """
+                <?xml version="1.0" encoding="UTF-8"?>
+                <eclipse-userlibraries version="2">
+                  <library name="second" systemlibrary="false">
+                    <archive path="C:/jars/b.jar">
+                      <attributes>
+                        <attribute name="javadoc_location" value="file:/C:/docs/b/" />
+                      </attributes>
+                    </archive>
+                  </library>
+                  <library name="third" systemlibrary="false" />
+                </eclipse-userlibraries>
+                """);
+        Path output = tempDir.resolve("combined.userlibraries");
+
+        UserLibrariesMerger.mergeUserLibraries(output, List.of(first, second));
+
+        Element root = read(output);
+        assertEquals("2", root.getAttributeValue("version"));
+        List<Element> libraries = root.getChildren("library");
+        assertEquals(List.of("first", "second", "third"),
+                libraries.stream().map(library -> library.getAttributeValue("name")).toList());
+        assertEquals("C:/sources/a-sources.jar",
+                libraries.get(0).getChild("archive").getAttributeValue("source"));
+        assertEquals("file:/C:/docs/b/", libraries.get(1).getChild("archive").getChild("attributes")
+                .getChild("attribute").getAttributeValue("value"));
+    }
+
+    @Test
+    void mergeUserLibraries_keepsInputOrder() throws Exception {
+        // More inputs than are parsed at the same time
+        List<Path> inputs = new ArrayList<>();
+        List<String> expectedNames = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            inputs.add(writeUserLibraries("input-" + i + ".userlibraries", """
+                    <eclipse-userlibraries version="2">
+                      <library name="library-%1$d-a"><archive path="C:/jars/%1$d/a.jar" /></library>
+                      <library name="library-%1$d-b"><archive path="C:/jars/%1$d/b.jar" /></library>
+                    </eclipse-userlibraries>
+                    """.formatted(i)));
+            expectedNames.add("library-" + i + "-a");
+            expectedNames.add("library-" + i + "-b");
+        }
+        Path output = tempDir.resolve("combined.userlibraries");
+
+        UserLibrariesMerger.MergeReport report = UserLibrariesMerger.mergeUserLibraries(output, inputs,
+                UserLibrariesMerger.DuplicatePolicy.FIRST_WINS);
+
+        assertEquals(expectedNames, names(read(output).getChildren("library")));
+        assertEquals(100, report.archiveCount());
+    }
+
+    @Test
+    void mergeUserLibraries_invalidRoot() throws IOException {
+        Path valid = writeUserLibraries("valid.userlibraries", "<eclipse-userlibraries version=\"2\"/>");
+        Path invalid = writeUserLibraries("invalid.userlibraries", "<libraries/>");
+        Path output = tempDir.resolve("combined.userlibraries");
+
+        assertThrows(XMLStreamException.class,
+                () -> UserLibrariesMerger.mergeUserLibraries(output, List.of(valid, invalid)));
+        // Nothing is written when an input is invalid
+        assertFalse(Files.exists(output));
+    }
+
+    @Test
+    void mergeUserLibraries_firstWins() throws Exception {
+        Path output = tempDir.resolve("combined.userlibraries");
+
+        UserLibrariesMerger.MergeReport report = UserLibrariesMerger.mergeUserLibraries(output, duplicateInputs(),
+                UserLibrariesMerger.DuplicatePolicy.FIRST_WINS);
+
+        List<Element> libraries = read(output).getChildren("library");
+        assertEquals(List.of("shared", "other"), names(libraries));
+        assertEquals(List.of("C:/jars/a.jar", "C:/jars/b.jar"), archivePaths(libraries.get(0)));
+        // b.jar is already in the first library, under a different spelling of its path
+        assertEquals(List.of("C:/jars/d.jar"), archivePaths(libraries.get(1)));
+        assertEquals(1, report.duplicateLibraries().size());
+        assertEquals("shared", report.duplicateLibraries().get(0).name());
+        assertEquals(2, report.libraryCount());
+        assertEquals(3, report.archiveCount());
+    }
+
+    @Test
+    void mergeUserLibraries_lastWins() throws Exception {
+        Path output = tempDir.resolve("combined.userlibraries");
+
+        UserLibrariesMerger.mergeUserLibraries(output, duplicateInputs(),
+                UserLibrariesMerger.DuplicatePolicy.LAST_WINS);
+
+        List<Element> libraries = read(output).getChildren("library");
+        assertEquals(List.of("other", "shared"), names(libraries));
+        assertEquals(List.of("C:/jars/d.jar", "C:\\jars\\.\\B.jar"), archivePaths(libraries.get(0)));
+        assertEquals(List.of("C:/jars/c.jar"), archivePaths(libraries.get(1)));
+    }
+
+    @Test
+    void mergeUserLibraries_union() throws Exception {
+        Path output = tempDir.resolve("combined.userlibraries");
+
+        UserLibrariesMerger.MergeReport report = UserLibrariesMerger.mergeUserLibraries(output, duplicateInputs(),
+                UserLibrariesMerger.DuplicatePolicy.UNION);
+
+        List<Element> libraries = read(output).getChildren("library");
+        assertEquals(List.of("shared", "other"), names(libraries));
+        assertEquals(List.of("C:/jars/a.jar", "C:/jars/b.jar", "C:/jars/c.jar"), archivePaths(libraries.get(0)));
+        assertEquals(List.of("C:/jars/d.jar"), archivePaths(libraries.get(1)));
+        // b.jar is in both definitions of the shared library, and in the other library
+        assertEquals(2, report.duplicateArchives().size());
+    }
+
+    @Test
+    void mergeUserLibraries_fail() throws Exception {
+        Path output = tempDir.resolve("combined.userlibraries");
+        List<Path> inputs = duplicateInputs();
+
+        assertThrows(VerifyException.class, () -> UserLibrariesMerger.mergeUserLibraries(output, inputs,
+                UserLibrariesMerger.DuplicatePolicy.FAIL));
+        assertFalse(Files.exists(output));
+    }
+
+    @Test
+    void mergeUserLibraries_keepAll() throws Exception {
+        Path output = tempDir.resolve("combined.userlibraries");
+
+        UserLibrariesMerger.MergeReport report = UserLibrariesMerger.mergeUserLibraries(output, duplicateInputs());
+
+        assertEquals(List.of("shared", "other", "shared"), names(read(output).getChildren("library")));
+        assertEquals(6, report.archiveCount());
+        assertTrue(report.duplicateArchives().isEmpty());
+    }
+
+    @Test
+    void normalizeArchivePath() {
+        assertEquals("c:/jars/a.jar", UserLibrariesMerger.normalizeArchivePath("C:\\jars\\lib\\..\\A.jar"));
+        assertEquals("/opt/jars/a.jar", UserLibrariesMerger.normalizeArchivePath("/opt//jars/./a.jar"));
+        assertEquals("//server/share/a.jar", UserLibrariesMerger.normalizeArchivePath("\\\\server\\share\\a.jar"));
+        assertEquals("../jars/A.jar", UserLibrariesMerger.normalizeArchivePath("../jars/A.jar"));
+    }
+
+    @Test
+    void duplicatePolicyFromLabel() {
+        assertEquals(UserLibrariesMerger.DuplicatePolicy.FIRST_WINS,
+                UserLibrariesMerger.DuplicatePolicy.fromLabel("first-wins"));
+        assertEquals(UserLibrariesMerger.DuplicatePolicy.LAST_WINS,
+                UserLibrariesMerger.DuplicatePolicy.fromLabel("LAST_WINS"));
+        assertThrows(IllegalArgumentException.class, () -> UserLibrariesMerger.DuplicatePolicy.fromLabel("newest"));
+    }
+
+    /**
+     * @return Two inputs that both define the shared library, where the other library also has an archive of the
+     * shared library, with a different spelling of its path.
+     */
+    private List<Path> duplicateInputs() throws IOException {
+        Path first = writeUserLibraries("first.userlibraries", """
+                <eclipse-userlibraries version="2">
+                  <library name="shared" systemlibrary="false">
+                    <archive path="C:/jars/a.jar" />
+                    <archive path="C:/jars/b.jar" />
+                  </library>
+                </eclipse-userlibraries>
+                """);
+        Path second = writeUserLibraries("second.userlibraries", """
+                <eclipse-userlibraries version="2">
+                  <library name="other" systemlibrary="false">
+                    <archive path="C:/jars/d.jar" />
+                    <archive path="C:\\jars\\.\\B.jar" />
+                  </library>
+                  <library name="shared" systemlibrary="false">
+                    <archive path="C:/jars/b.jar" />
+                    <archive path="C:/jars/c.jar" />
+                  </library>
+                </eclipse-userlibraries>
+                """);
+        return List.of(first, second);
+    }
+
+    private static List<String> names(List<Element> libraries) {
+        return libraries.stream().map(library -> library.getAttributeValue("name")).toList();
+    }
+
+    private static List<String> archivePaths(Element library) {
+        return library.getChildren("archive").stream().map(archive -> archive.getAttributeValue("path")).toList();
+    }
+
+    private Path writeUserLibraries(String fileName, String content) throws IOException {
+        return Files.writeString(tempDir.resolve(fileName), content);
+    }
+
+    private static Element read(Path path) throws IOException, JDOMException {
+        Document document = new SAXBuilder().build(path.toFile());
+        return document.getRootElement();
+    }
+}
@@ -0,0 +1,276 @@
+package dev.roshin.tools.userlibs_generator;
+
+import com.google.common.base.VerifyException;
+import dev.roshin.tools.download_jars.LocalMavenRepository;
+import dev.roshin.tools.download_jars.LockFile;
+import dev.roshin.tools.util.JarDiscovery;
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.JDOMException;
+import org.jdom2.input.SAXBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.List;
+import java.util.Properties;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserLibrariesGeneratorTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path jarsPath;
+    private Path sourcesPath;
+    private Path specFilePath;
+    private Path outputXml;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        jarsPath = Files.createDirectory(tempDir.resolve("jars"));
+        sourcesPath = Files.createDirectory(tempDir.resolve("sources"));
+        specFilePath = Files.writeString(tempDir.resolve("spec.txt"), "");
+        outputXml = tempDir.resolve("output.userlibraries");
+    }
+
+    @Test
+    void generateUserLibs() throws IOException, JDOMException {
+        createJar(jarsPath.resolve("alpha.jar"), "com.example", "alpha", "1.0.0");
+        createJar(jarsPath.resolve("beta.jar"), "com.example", "beta", "2.0.0");
+        createJar(jarsPath.resolve("gamma.jar"), "com.example", "gamma", "3.0.0");
+        // Matched on coordinates
+        createJar(sourcesPath.resolve("alpha-1.0.0-sources.jar"), "com.example", "alpha", "1.0.0");
+        // Matched on file name, as it has no POM properties
+        try (JarOutputStream jos = new JarOutputStream(Files.newOutputStream(sourcesPath.resolve("beta-sources.jar")))) {
+            jos.putNextEntry(new JarEntry("com/example/Beta.java"));
+            jos.closeEntry();
+        }
+
+        UserLibrariesGenerator.generateUserLibs("test-lib", specFilePath, outputXml, jarsPath, sourcesPath.toString(),
+                null);
+
+        Element library = readLibrary();
+        assertEquals("test-lib", library.getAttributeValue("name"));
+        List<Element> archives = library.getChildren("archive");
+        assertEquals(3, archives.size());
+        assertArchive(archives.get(0), jarsPath.resolve("alpha.jar"), sourcesPath.resolve("alpha-1.0.0-sources.jar"));
+        assertArchive(archives.get(1), jarsPath.resolve("beta.jar"), sourcesPath.resolve("beta-sources.jar"));
+        assertArchive(archives.get(2), jarsPath.resolve("gamma.jar"), null);
+    }
+
+    @Test
+    void generateUserLibs_unchangedLibraryIsNotRewritten() throws IOException {
+        createJar(jarsPath.resolve("alpha.jar"), "com.example", "alpha", "1.0.0");
+
+        UserLibrariesGenerator.generateUserLibs("test-lib", specFilePath, outputXml, jarsPath, null, null);
+        Files.setLastModifiedTime(outputXml, FileTime.fromMillis(0));
+        UserLibrariesGenerator.generateUserLibs("test-lib", specFilePath, outputXml, jarsPath, null, null);
+
+        assertEquals(0, Files.getLastModifiedTime(outputXml).toMillis());
+    }
+
+    @Test
+    void generateUserLibs_recordsChanges() throws IOException, JDOMException {
+        Path changesLog = tempDir.resolve("changes.log");
+        createJar(jarsPath.resolve("alpha.jar"), "com.example", "alpha", "1.0.0");
+        createJar(jarsPath.resolve("beta.jar"), "com.example", "beta", "2.0.0");
+        UserLibrariesGenerator.generateUserLibs("test-lib", specFilePath, outputXml, jarsPath, null,
+                changesLog.toString());
+
+        Files.delete(jarsPath.resolve("beta.jar"));
+        createJar(jarsPath.resolve("gamma.jar"), "com.example", "gamma", "3.0.0");
+        createJar(sourcesPath.resolve("alpha-sources.jar"), "com.example", "alpha", "1.0.0");
+        UserLibrariesGenerator.generateUserLibs("test-lib", specFilePath, outputXml, jarsPath, sourcesPath.toString(),
+                changesLog.toString());
+
+        assertEquals(2, readLibrary().getChildren("archive").size());
+        List<String> entries = Files.readAllLines(changesLog);
+        assertEquals(5, entries.size());
+        String alpha = jarsPath.resolve("alpha.jar").toString().replace("\\", "/");
+        assertTrue(entries.get(0).endsWith("Added to test-lib: " + alpha));
+        assertTrue(entries.get(1).endsWith("Added to test-lib: " + jarsPath.resolve("beta.jar").toString()
+                .replace("\\", "/")));
+        assertTrue(entries.get(2).endsWith("Updated in test-lib: " + alpha + " [Source: " +
+                sourcesPath.resolve("alpha-sources.jar").toString().replace("\\", "/") + "]"));
+        assertTrue(entries.get(3).contains("Added to test-lib: ") && entries.get(3).endsWith("gamma.jar"));
+        assertTrue(entries.get(4).contains("Removed from test-lib: ") && entries.get(4).endsWith("beta.jar"));
+    }
+
+    @Test
+    void generateUserLibsFromSpec() throws IOException, JDOMException {
+        Files.writeString(specFilePath, """
+                com.example:alpha:1.0.0
+                com.example:missing:1.0.0
+                com.example:beta
+                """);
+        // Not opened, so they do not need to be valid JARs
+        Files.writeString(jarsPath.resolve("alpha.jar"), "");
+        Files.writeString(jarsPath.resolve("beta.jar"), "");
+        Files.writeString(sourcesPath.resolve("beta-sources.jar"), "");
+
+        UserLibrariesGenerator.generateUserLibsFromSpec("test-lib", specFilePath, outputXml, jarsPath,
+                sourcesPath.toString(), null, false, false);
+
+        List<Element> archives = readLibrary().getChildren("archive");
+        assertEquals(2, archives.size());
+        assertArchive(archives.get(0), jarsPath.resolve("alpha.jar"), null);
+        assertArchive(archives.get(1), jarsPath.resolve("beta.jar"), sourcesPath.resolve("beta-sources.jar"));
+
+        // Trusted remote names are written as is, without the entry that has no version
+        UserLibrariesGenerator.generateUserLibsFromSpec("test-lib", specFilePath, outputXml, jarsPath, null, null,
+                true, true);
+
+        archives = readLibrary().getChildren("archive");
+        assertEquals(2, archives.size());
+        assertArchive(archives.get(0), jarsPath.resolve("alpha-1.0.0.jar"), null);
+        assertArchive(archives.get(1), jarsPath.resolve("missing-1.0.0.jar"), null);
+    }
+
+    @Test
+    void downloadAndGenerateUserLibs() throws IOException, JDOMException {
+        try (LocalMavenRepository repository = LocalMavenRepository.start()) {
+            repository.addArtifact("com.example", "alpha", "1.0.0", jarBytes("com.example", "alpha", "1.0.0"),
+                    jarBytes("com.example", "alpha", "1.0.0"));
+            repository.addArtifact("com.example", "beta", "2.0.0", jarBytes("com.example", "beta", "2.0.0"),
+                    jarBytes("com.example", "beta", "2.0.0"));
+            Files.writeString(specFilePath, """
+                    com.example:alpha:1.0.0
+                    com.example:missing:1.0.0
+                    com.example:beta
+                    """);
+
+            UserLibrariesGenerator.downloadAndGenerateUserLibs("test-lib", specFilePath, outputXml, jarsPath,
+                    sourcesPath.toString(), null, false, JarDiscovery.Options.flat());
+
+            // In spec order, without the artifact that could not be downloaded
+            List<Element> archives = readLibrary().getChildren("archive");
+            assertEquals(2, archives.size());
+            assertArchive(archives.get(0), jarsPath.resolve("alpha.jar"), sourcesPath.resolve("alpha-sources.jar"));
+            assertArchive(archives.get(1), jarsPath.resolve("beta.jar"), sourcesPath.resolve("beta-sources.jar"));
+
+            // The downloads are recorded in the lockfile of the spec file
+            LockFile lock = LockFile.read(LockFile.pathFor(specFilePath));
+            assertEquals("2.0.0", lock.get("com.example:beta", LockFile.Kind.JAR).orElseThrow().version());
+            assertTrue(lock.get("com.example:alpha:1.0.0", LockFile.Kind.SOURCES).isPresent());
+            assertTrue(lock.get("com.example:missing:1.0.0", LockFile.Kind.JAR).isEmpty());
+
+            // JARs that already have the requested version are kept
+            UserLibrariesGenerator.downloadAndGenerateUserLibs("test-lib", specFilePath, outputXml, jarsPath,
+                    sourcesPath.toString(), null, true, JarDiscovery.Options.flat());
+
+            assertEquals(1, repository.requestCount("/com/example/alpha/1.0.0/alpha-1.0.0.jar"));
+            assertEquals(1, repository.requestCount("/com/example/beta/2.0.0/beta-2.0.0.jar"));
+            assertEquals(2, readLibrary().getChildren("archive").size());
+        }
+    }
+
+    @Test
+    void downloadAndGenerateUserLibs_deadlinePasses() throws IOException {
+        try (LocalMavenRepository repository = LocalMavenRepository.start()) {
+            repository.addArtifact("com.example", "alpha", "1.0.0", jarBytes("com.example", "alpha", "1.0.0"), null);
+            repository.setLatency(Duration.ofSeconds(10));
+            Files.writeString(specFilePath, "com.example:alpha:1.0.0\n");
+
+            long start = System.nanoTime();
+            assertThrows(VerifyException.class, () -> UserLibrariesGenerator.downloadAndGenerateUserLibs("test-lib",
+                    specFilePath, outputXml, jarsPath, null, null, false, JarDiscovery.Options.flat(),
+                    Duration.ofSeconds(1)));
+
+            assertTrue(Duration.ofNanos(System.nanoTime() - start).toSeconds() < 5);
+            assertFalse(Files.exists(outputXml));
+            assertFalse(Files.exists(LockFile.pathFor(specFilePath)));
+        }
+    }
+
+    @Test
+    void parseSharedLibsFile() throws IOException {
+        Path sharedLibsFile = Files.writeString(tempDir.resolve("shared-libs.txt"), """
+                # Libraries of the build
+                core;spec.txt;jars;sources
+
+                invalid;spec.txt
+                web;spec.txt;jars
+                """);
+
+        List<UserLibrariesGenerator.SharedLibrary> libraries = UserLibrariesGenerator.parseSharedLibsFile(sharedLibsFile);
+
+        assertEquals(List.of(
+                new UserLibrariesGenerator.SharedLibrary("core", specFilePath, jarsPath, sourcesPath),
+                new UserLibrariesGenerator.SharedLibrary("web", specFilePath, jarsPath, null)), libraries);
+    }
+
+    @Test
+    void generateSharedLibs() throws IOException, JDOMException {
+        try (LocalMavenRepository repository = LocalMavenRepository.start()) {
+            repository.addArtifact("com.example", "alpha", "1.0.0", jarBytes("com.example", "alpha", "1.0.0"), null);
+            repository.addArtifact("com.example", "beta", "2.0.0", jarBytes("com.example", "beta", "2.0.0"), null);
+            Files.writeString(specFilePath, "com.example:alpha:1.0.0\n");
+            Files.writeString(tempDir.resolve("web.txt"), "com.example:alpha:1.0.0\ncom.example:beta:2.0.0\n");
+            Path sharedLibsFile = Files.writeString(tempDir.resolve("shared-libs.txt"), """
+                    core;spec.txt;jars
+                    web;web.txt;jars
+                    """);
+
+            UserLibrariesGenerator.generateSharedLibs(sharedLibsFile, outputXml, false, true, false, null,
+                    JarDiscovery.Options.flat());
+
+            // A JAR shared by both libraries is downloaded once
+            assertEquals(1, repository.requestCount("/com/example/alpha/1.0.0/alpha-1.0.0.jar"));
+            List<Element> libraries = new SAXBuilder().build(outputXml.toFile()).getRootElement()
+                    .getChildren("library");
+            assertEquals(2, libraries.size());
+            assertEquals("core", libraries.get(0).getAttributeValue("name"));
+            assertEquals(1, libraries.get(0).getChildren("archive").size());
+            assertEquals("web", libraries.get(1).getAttributeValue("name"));
+            assertEquals(2, libraries.get(1).getChildren("archive").size());
+            assertTrue(Files.exists(LockFile.pathFor(specFilePath)));
+            assertEquals(2, LockFile.read(LockFile.pathFor(tempDir.resolve("web.txt"))).entries().size());
+
+            // Separate files are generated from the JARs already downloaded
+            Path outputFolder = Files.createDirectory(tempDir.resolve("output"));
+            UserLibrariesGenerator.generateSharedLibs(sharedLibsFile, outputFolder, true, false, false, null,
+                    JarDiscovery.Options.flat());
+
+            assertTrue(Files.exists(outputFolder.resolve("core.userlibraries")));
+            assertTrue(Files.exists(outputFolder.resolve("web.userlibraries")));
+        }
+    }
+
+    private Element readLibrary() throws IOException, JDOMException {
+        Document document = new SAXBuilder().build(outputXml.toFile());
+        assertEquals("eclipse-userlibraries", document.getRootElement().getName());
+        return document.getRootElement().getChild("library");
+    }
+
+    private static void assertArchive(Element archive, Path jar, Path source) {
+        assertEquals(jar.toString().replace("\\", "/"), archive.getAttributeValue("path"));
+        assertEquals(source == null ? null : source.toString().replace("\\", "/"), archive.getAttributeValue("source"));
+    }
+
+    private byte[] jarBytes(String groupId, String artifactId, String version) throws IOException {
+        Path jar = Files.createTempFile(tempDir, artifactId, ".jar");
+        createJar(jar, groupId, artifactId, version);
+        return Files.readAllBytes(jar);
+    }
+
+    private static void createJar(Path jarPath, String groupId, String artifactId, String version) throws IOException {
+        try (JarOutputStream jos = new JarOutputStream(Files.newOutputStream(jarPath))) {
+            jos.putNextEntry(new JarEntry("META-INF/maven/" + groupId + "/" + artifactId + "/pom.properties"));
+            Properties props = new Properties();
+            props.setProperty("groupId", groupId);
+            props.setProperty("artifactId", artifactId);
+            props.setProperty("version", version);
+            props.store(jos, null);
+            jos.closeEntry();
+        }
+    }
+}
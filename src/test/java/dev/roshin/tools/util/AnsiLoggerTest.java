@@ -0,0 +1,52 @@
+package dev.roshin.tools.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AnsiLoggerTest {
+
+    @Test
+    void flush_writesMessagesOfAllThreadsInOrder() throws InterruptedException {
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        PrintStream previousOut = System.out;
+        AnsiLogger.flush();
+        System.setOut(new PrintStream(captured, true, StandardCharsets.UTF_8));
+        try {
+            List<Thread> threads = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                int threadNumber = thread;
+                Thread writer = new Thread(() -> {
+                    for (int message = 0; message < 1000; message++) {
+                        AnsiLogger.info("thread {} message {}", threadNumber, message);
+                    }
+                });
+                writer.start();
+                threads.add(writer);
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            AnsiLogger.flush();
+        } finally {
+            System.setOut(previousOut);
+        }
+
+        String[] lines = captured.toString(StandardCharsets.UTF_8).split(System.lineSeparator());
+        assertEquals(4000, lines.length);
+        // Each thread's messages keep their order, whichever batch they were written in
+        int[] next = new int[4];
+        for (String line : lines) {
+            String plain = line.replaceAll("\u001B\\[[0-9;]*m", "");
+            String[] words = plain.split(" ");
+            int thread = Integer.parseInt(words[2]);
+            assertEquals(next[thread]++, Integer.parseInt(words[4]));
+        }
+    }
+}
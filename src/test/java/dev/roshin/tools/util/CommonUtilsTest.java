@@ -1,11 +1,20 @@
 package dev.roshin.tools.util;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 class CommonUtilsTest {
 
@@ -26,4 +35,27 @@ class CommonUtilsTest {
         assertEquals("example.md", newPath.getFileName().toString());
         System.out.println("New Path: " + newPath);
     }
-}
\ No newline at end of file
+
+    @Test
+    void replaceIfChanged_keepsPermissions(@TempDir Path tempDir) throws IOException {
+        assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+
+        // A new file gets the default permissions of a new file, not those of a temporary file
+        Path target = tempDir.resolve("pom.xml");
+        Path tempFile = CommonUtils.createSiblingTempFile(target);
+        Files.writeString(tempFile, "first");
+        CommonUtils.replaceIfChanged(tempFile, target);
+        Path plain = Files.writeString(tempDir.resolve("plain.xml"), "first");
+        assertEquals(Files.getPosixFilePermissions(plain), Files.getPosixFilePermissions(target));
+
+        // An existing file keeps its permissions when it is replaced
+        Set<PosixFilePermission> permissions = PosixFilePermissions.fromString("rw-r-----");
+        Files.setPosixFilePermissions(target, permissions);
+        tempFile = CommonUtils.createSiblingTempFile(target);
+        Files.writeString(tempFile, "second");
+        CommonUtils.replaceIfChanged(tempFile, target);
+        assertEquals("second", Files.readString(target));
+        assertEquals(permissions, Files.getPosixFilePermissions(target));
+        assertNotEquals(Files.getPosixFilePermissions(plain), permissions);
+    }
+}
@@ -0,0 +1,76 @@
+package dev.roshin.tools.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FilePlacementTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void place_linksOnTheSameFileStore() throws IOException {
+        Path source = Files.writeString(tempDir.resolve("source.jar"), "content");
+        Path target = tempDir.resolve("target.jar");
+
+        assertTrue(FilePlacement.sameFileStore(source, target));
+        assertEquals(FilePlacement.Strategy.HARD_LINK, FilePlacement.place(source, target));
+        assertTrue(Files.isSameFile(source, target));
+
+        // Placing another file over the link leaves the first source alone
+        Path other = Files.writeString(tempDir.resolve("other.jar"), "other content");
+        FilePlacement.place(other, target);
+        assertEquals("content", Files.readString(source));
+        assertEquals("other content", Files.readString(target));
+    }
+
+    @Test
+    void place_failureLeavesTheTarget() throws IOException {
+        Path target = Files.writeString(tempDir.resolve("target.jar"), "content");
+
+        assertThrows(IOException.class, () -> FilePlacement.place(tempDir.resolve("missing.jar"), target));
+
+        assertEquals("content", Files.readString(target));
+        try (var files = Files.list(tempDir)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    void replaceWithLink() throws IOException {
+        Path source = Files.writeString(tempDir.resolve("source.jar"), "content");
+        Path target = Files.writeString(tempDir.resolve("target.jar"), "content");
+
+        FilePlacement.replaceWithLink(source, target);
+
+        assertTrue(Files.isSameFile(source, target));
+        assertEquals("content", Files.readString(target));
+        try (var files = Files.list(tempDir)) {
+            assertEquals(2, files.count());
+        }
+    }
+
+    @Test
+    void place_withEachStrategy() throws IOException {
+        byte[] content = new byte[100_000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        Path source = Files.write(tempDir.resolve("source.jar"), content);
+        for (FilePlacement.Strategy strategy : FilePlacement.Strategy.values()) {
+            Path target = tempDir.resolve(strategy + ".jar");
+            Files.writeString(target, "replaced");
+
+            FilePlacement.place(source, target, strategy);
+
+            assertArrayEquals(content, Files.readAllBytes(target));
+            assertEquals(strategy == FilePlacement.Strategy.HARD_LINK, Files.isSameFile(source, target));
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package dev.roshin.tools.util;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class JarDiscoveryTest {
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        // root.jar
+        // notes.txt
+        // libs/a.jar
+        // libs/a-sources.jar
+        // libs/deep/b.jar
+        // test/c.jar
+        Files.createDirectories(tempDir.resolve("libs/deep"));
+        Files.createDirectories(tempDir.resolve("test"));
+        for (String file : List.of("root.jar", "notes.txt", "libs/a.jar", "libs/a-sources.jar", "libs/deep/b.jar",
+                "test/c.jar")) {
+            Files.createFile(tempDir.resolve(file));
+        }
+    }
+
+    @Test
+    void find_flat() {
+        assertEquals(Set.of("root.jar"), find(JarDiscovery.Options.flat(), ".jar"));
+    }
+
+    @Test
+    void find_recursive() {
+        assertEquals(Set.of("root.jar", "a.jar", "a-sources.jar", "b.jar", "c.jar"),
+                find(JarDiscovery.Options.recursive(), ".jar"));
+        assertEquals(Set.of("a-sources.jar"), find(JarDiscovery.Options.recursive(), "-sources.jar"));
+    }
+
+    @Test
+    void find_withMaxDepth() {
+        assertEquals(Set.of("root.jar", "a.jar", "a-sources.jar", "c.jar"),
+                find(new JarDiscovery.Options(2, List.of(), List.of()), ".jar"));
+    }
+
+    @Test
+    void find_withIncludesAndExcludes() {
+        JarDiscovery.Options options = new JarDiscovery.Options(Integer.MAX_VALUE, List.of("libs/**"),
+                List.of("*-sources.jar"));
+        assertEquals(Set.of("a.jar", "b.jar"), find(options, ".jar"));
+
+        // Excluded folders are not entered
+        options = new JarDiscovery.Options(Integer.MAX_VALUE, List.of(), List.of("test", "deep"));
+        assertEquals(Set.of("root.jar", "a.jar", "a-sources.jar"), find(options, ".jar"));
+    }
+
+    private Set<String> find(JarDiscovery.Options options, String suffix) {
+        try (Stream<Path> jars = JarDiscovery.find(tempDir, options, suffix)) {
+            return jars.map(path -> path.getFileName().toString()).collect(Collectors.toSet());
+        }
+    }
+}
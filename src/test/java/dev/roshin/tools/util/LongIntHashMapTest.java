@@ -0,0 +1,38 @@
+package dev.roshin.tools.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LongIntHashMapTest {
+
+    @Test
+    void putAndGet() {
+        LongIntHashMap map = new LongIntHashMap();
+        // Enough entries to force several resizes, including the zero key
+        for (int i = 0; i < 10_000; i++) {
+            map.put(i * 31L, i);
+        }
+
+        assertEquals(10_000, map.size());
+        for (int i = 0; i < 10_000; i++) {
+            assertEquals(i, map.get(i * 31L));
+        }
+        assertEquals(LongIntHashMap.NOT_FOUND, map.get(-1L));
+        assertFalse(map.containsKey(7L));
+    }
+
+    @Test
+    void putIfAbsent() {
+        LongIntHashMap map = new LongIntHashMap();
+
+        assertEquals(LongIntHashMap.NOT_FOUND, map.putIfAbsent(0L, 1));
+        assertEquals(1, map.putIfAbsent(0L, 2));
+        assertEquals(LongIntHashMap.NOT_FOUND, map.putIfAbsent(Long.MIN_VALUE, 3));
+        assertEquals(3, map.putIfAbsent(Long.MIN_VALUE, 4));
+
+        assertEquals(1, map.get(0L));
+        assertEquals(3, map.get(Long.MIN_VALUE));
+        assertEquals(2, map.size());
+    }
+}
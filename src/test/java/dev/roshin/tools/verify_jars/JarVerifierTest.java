@@ -0,0 +1,147 @@
+package dev.roshin.tools.verify_jars;
+
+import com.google.common.hash.Hashing;
+import dev.roshin.tools.download_jars.LockFile;
+import dev.roshin.tools.util.JarDiscovery;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JarVerifierTest {
+
+    private static final String STORED_CONTENT = "stored entry content that is easy to find";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void verify_intactJars() throws IOException {
+        createJar(tempDir.resolve("first.jar"));
+        createJar(tempDir.resolve("second.jar"));
+
+        JarVerifier.VerificationReport report = JarVerifier.verify(tempDir, JarDiscovery.Options.flat(), false,
+                null, false);
+
+        assertFalse(report.hasProblems());
+        assertEquals(2, report.jarCount());
+        assertEquals(0, report.checksumCount());
+    }
+
+    @Test
+    void verify_corruptedEntry() throws IOException {
+        Path jar = tempDir.resolve("corrupted.jar");
+        createJar(jar);
+        byte[] bytes = Files.readAllBytes(jar);
+        int content = indexOf(bytes, STORED_CONTENT.getBytes(StandardCharsets.UTF_8));
+        bytes[content + 3] ^= 0x20;
+        Files.write(jar, bytes);
+
+        JarVerifier.VerificationReport report = JarVerifier.verify(tempDir, JarDiscovery.Options.flat(), false,
+                null, false);
+        assertEquals(1, report.problems().size());
+        assertEquals(jar, report.problems().get(0).jar());
+        assertTrue(report.problems().get(0).message().startsWith("stored.txt: CRC"));
+
+        // The central directory itself is intact
+        assertFalse(JarVerifier.verify(tempDir, JarDiscovery.Options.flat(), true, null, false).hasProblems());
+    }
+
+    @Test
+    void verify_truncatedJar() throws IOException {
+        Path jar = tempDir.resolve("truncated.jar");
+        createJar(jar);
+        byte[] bytes = Files.readAllBytes(jar);
+        Files.write(jar, Arrays.copyOf(bytes, bytes.length - 10));
+
+        JarVerifier.VerificationReport report = JarVerifier.verify(tempDir, JarDiscovery.Options.flat(), true,
+                null, false);
+
+        assertEquals(List.of(new JarVerifier.Problem(jar, "Not a ZIP file: no end of central directory record")),
+                report.problems());
+    }
+
+    @Test
+    void verify_jarWithLauncherScript() throws IOException {
+        Path jar = tempDir.resolve("launcher.jar");
+        createJar(jar);
+        byte[] script = "#!/bin/sh\nexec java -jar \"$0\" \"$@\"\n".getBytes(StandardCharsets.UTF_8);
+        byte[] zip = Files.readAllBytes(jar);
+        byte[] bytes = Arrays.copyOf(script, script.length + zip.length);
+        System.arraycopy(zip, 0, bytes, script.length, zip.length);
+        Files.write(jar, bytes);
+
+        // Offsets are relative to the ZIP data, which ZipFile accepts as well
+        try (ZipFile zipFile = new ZipFile(jar.toFile())) {
+            assertNotNull(zipFile.getEntry("stored.txt"));
+        }
+        assertFalse(JarVerifier.verify(tempDir, JarDiscovery.Options.flat(), false, null, false).hasProblems());
+    }
+
+    @Test
+    void verify_againstLockfile() throws IOException {
+        Path jar = tempDir.resolve("demo.jar");
+        createJar(jar);
+        Path other = tempDir.resolve("other.jar");
+        createJar(other);
+        String sha1 = Hashing.sha1().hashBytes(Files.readAllBytes(jar)).toString();
+        Path lockFile = tempDir.resolve("spec.txt.lock");
+        Files.writeString(lockFile, String.join("\n",
+                "org.example:demo;jar;1.0;1;" + sha1 + ";https://repo/demo-1.0.jar",
+                "org.example:other;jar;1.0;1;" + "0".repeat(40) + ";https://repo/other-1.0.jar"));
+
+        JarVerifier.VerificationReport report = JarVerifier.verify(tempDir, JarDiscovery.Options.flat(), false,
+                lockFile, false);
+
+        assertEquals(2, report.jarCount());
+        assertEquals(2, report.checksumCount());
+        assertEquals(1, report.problems().size());
+        assertEquals(other, report.problems().get(0).jar());
+        assertTrue(report.problems().get(0).message().contains("does not match the expected"));
+        assertTrue(LockFile.read(lockFile).get("org.example:demo", LockFile.Kind.JAR).isPresent());
+    }
+
+    private static void createJar(Path jar) throws IOException {
+        try (JarOutputStream jos = new JarOutputStream(Files.newOutputStream(jar))) {
+            // Directories are empty deflated entries
+            jos.putNextEntry(new JarEntry("com/example/"));
+            jos.closeEntry();
+            jos.putNextEntry(new JarEntry("com/example/Deflated.class"));
+            jos.write("deflated ".repeat(100).getBytes(StandardCharsets.UTF_8));
+            jos.closeEntry();
+
+            byte[] stored = STORED_CONTENT.getBytes(StandardCharsets.UTF_8);
+            CRC32 crc = new CRC32();
+            crc.update(stored);
+            JarEntry entry = new JarEntry("stored.txt");
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(stored.length);
+            entry.setCompressedSize(stored.length);
+            entry.setCrc(crc.getValue());
+            jos.putNextEntry(entry);
+            jos.write(stored);
+            jos.closeEntry();
+        }
+    }
+
+    private static int indexOf(byte[] bytes, byte[] part) {
+        for (int i = 0; i + part.length <= bytes.length; i++) {
+            if (Arrays.equals(bytes, i, i + part.length, part, 0, part.length)) {
+                return i;
+            }
+        }
+        throw new AssertionError("Content not found");
+    }
+}